@@ -0,0 +1,125 @@
+package com.fincher.iochannel;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures loopback throughput and latency from a sending channel to a
+ * receiving channel. Subclasses create the channels and send messages of the
+ * size under test.
+ * 
+ * <p>
+ * {@code throughput} reports messages per second and, through the
+ * {@code bytes} counter, bytes per second. {@code latency} samples the time
+ * from sending one message until it is delivered to the receiving channel's
+ * listener, from which JMH reports percentiles.
+ *
+ * @author Brian Fincher
+ *
+ */
+@State(Scope.Benchmark)
+public abstract class ChannelBenchmark {
+
+    /** The number of messages sent before waiting for them to be received. */
+    protected static final int BATCH_SIZE = 64;
+
+    /** The time to wait for messages before considering them lost. */
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong numReceived = new AtomicLong();
+
+    /** Given to the receiving channel to count received messages. */
+    protected final Consumer<MessageBuffer> listener = mb -> numReceived.incrementAndGet();
+
+    /** Counts bytes delivered and messages that never arrived. */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long bytes;
+        public long lost;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            lost = 0;
+        }
+    }
+
+    /**
+     * Get the size of the messages being sent.
+     * 
+     * @return the size of the messages being sent
+     */
+    protected abstract int getMessageSize();
+
+    /**
+     * Send one message of the size under test.
+     * 
+     * @throws ChannelException If an error occurs while sending
+     */
+    protected abstract void send() throws ChannelException;
+
+    /**
+     * Wait until the receiving channel is ready.
+     * 
+     * @param channel The channel
+     */
+    protected static void awaitConnected(IoChannelIfc<?> channel) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!channel.isConnected()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException(channel.getId() + " did not connect");
+            }
+            Thread.yield();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void throughput(Counters counters) throws ChannelException {
+        long target = numReceived.get() + BATCH_SIZE;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            send();
+        }
+
+        long missing = awaitReceived(target);
+        counters.lost += missing;
+        counters.bytes += (long) (BATCH_SIZE - missing) * getMessageSize();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long latency() throws ChannelException {
+        long target = numReceived.get() + 1;
+        send();
+        return awaitReceived(target);
+    }
+
+    /** Spin until target messages have been received and return the number missing. */
+    private long awaitReceived(long target) {
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        long received;
+        while ((received = numReceived.get()) < target) {
+            if (System.nanoTime() > deadline) {
+                return target - received;
+            }
+            Thread.onSpinWait();
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,99 @@
+package com.fincher.iochannel;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Compares the original get/compare/set transaction ID generator with the CAS
+ * based generator, with and without per-thread ID blocks, at 1 to 32 threads.
+ *
+ * @author Brian Fincher
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public abstract class TransactionIdFactoryBenchmark {
+
+    /** The generator used prior to the CAS based implementation. */
+    @State(Scope.Benchmark)
+    public static class LegacyState {
+        private final long minTID = 0;
+        private final long maxTID = Long.MAX_VALUE;
+        private final AtomicLong nextTID = new AtomicLong(minTID);
+
+        long getNextTid() {
+            long returnValue = nextTID.get();
+            if (returnValue == maxTID) {
+                nextTID.set(minTID);
+            } else {
+                nextTID.incrementAndGet();
+            }
+
+            return returnValue;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SharedState {
+        @Setup
+        public void setup() {
+            TransactionIdFactory.init(0, Long.MAX_VALUE);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class LeasedState {
+        @Setup
+        public void setup() {
+            TransactionIdFactory.init(0, Long.MAX_VALUE, 1024);
+        }
+    }
+
+    @Benchmark
+    public long legacy(LegacyState state) {
+        return state.getNextTid();
+    }
+
+    @Benchmark
+    public long shared(SharedState state) {
+        return TransactionIdFactory.getNextTid();
+    }
+
+    @Benchmark
+    public long leased(LeasedState state) {
+        return TransactionIdFactory.getNextTid();
+    }
+
+    @Threads(1)
+    public static class Threads01 extends TransactionIdFactoryBenchmark {
+    }
+
+    @Threads(2)
+    public static class Threads02 extends TransactionIdFactoryBenchmark {
+    }
+
+    @Threads(4)
+    public static class Threads04 extends TransactionIdFactoryBenchmark {
+    }
+
+    @Threads(8)
+    public static class Threads08 extends TransactionIdFactoryBenchmark {
+    }
+
+    @Threads(16)
+    public static class Threads16 extends TransactionIdFactoryBenchmark {
+    }
+
+    @Threads(32)
+    public static class Threads32 extends TransactionIdFactoryBenchmark {
+    }
+}
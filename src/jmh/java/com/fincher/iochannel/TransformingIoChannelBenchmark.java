@@ -0,0 +1,114 @@
+package com.fincher.iochannel;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.helpers.NOPLogger;
+
+/**
+ * Measures the overhead a {@link TransformingIoChannel} adds to delivering a
+ * received message, compared with delivering the message directly from the
+ * underlying channel. The transformation decodes the message as a UTF-8
+ * string.
+ *
+ * @author Brian Fincher
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TransformingIoChannelBenchmark {
+
+    @Param({ "16", "256", "1024", "4096", "16384", "65536" })
+    public int messageSize;
+
+    private ReceivingChannel direct;
+
+    private ReceivingChannel delegate;
+
+    private MessageBuffer message;
+
+    /** A channel whose received messages are supplied by the benchmark. */
+    private static class ReceivingChannel extends IoChannel<MessageBuffer> {
+        ReceivingChannel(String id) {
+            super(id, IoType.INPUT_ONLY);
+        }
+
+        void receive(MessageBuffer mb) {
+            messageReceived(mb, NOPLogger.NOP_LOGGER, "");
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public IoChannelDataType getDataType() {
+            return IoChannelDataType.RAW_DATA;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void send(MessageBuffer mb) {
+        }
+    }
+
+    private static class StringChannel extends TransformingIoChannel<MessageBuffer, String, String> {
+        StringChannel(String id, IoChannelIfc<MessageBuffer> delegate) {
+            super(id, delegate);
+        }
+
+        @Override
+        protected String decode(MessageBuffer msg) {
+            return new String(msg.getBytes(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        protected MessageBuffer encode(String msg) {
+            return new MessageBuffer(msg.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup(Blackhole blackhole) {
+        direct = new ReceivingChannel("direct");
+        direct.addMessageListener(blackhole::consume);
+
+        delegate = new ReceivingChannel("delegate");
+        StringChannel transforming = new StringChannel("transforming", delegate);
+        transforming.addTransformedMessageListener(blackhole::consume);
+
+        byte[] bytes = new byte[messageSize];
+        Arrays.fill(bytes, (byte) 'a');
+        message = new MessageBuffer(bytes);
+    }
+
+    @Benchmark
+    public void direct() {
+        direct.receive(message);
+    }
+
+    @Benchmark
+    public void transformed() {
+        delegate.receive(message);
+    }
+}
@@ -0,0 +1,69 @@
+package com.fincher.iochannel.tcp;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.fincher.iochannel.ChannelBenchmark;
+import com.fincher.iochannel.ChannelException;
+
+/**
+ * Loopback throughput and latency from a {@link TcpClientChannel} to a
+ * {@link TcpServerChannel} using {@link SimpleStreamIo}, with and without
+ * {@link WriteCoalescingPolicy write coalescing}.
+ *
+ * @author Brian Fincher
+ *
+ */
+public class TcpChannelBenchmark extends ChannelBenchmark {
+
+    @Param({ "16", "256", "1024", "4096", "16384", "65536" })
+    public int messageSize;
+
+    @Param({ "false", "true" })
+    public boolean coalesce;
+
+    private TcpServerChannel server;
+
+    private TcpClientChannel client;
+
+    private byte[] message;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        SimpleStreamIo streamIo = new SimpleStreamIo();
+        InetSocketAddress serverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), 5100);
+
+        server = TcpServerChannel.createChannel("server", listener, streamIo, serverAddress);
+        client = TcpClientChannel.createOutputOnlyChannel("client", streamIo, null, serverAddress);
+        if (coalesce) {
+            client.setWriteCoalescingPolicy(new WriteCoalescingPolicy());
+        }
+        server.connect();
+        client.connect();
+        awaitConnected(server);
+        awaitConnected(client);
+
+        message = streamIo.prePendLength(new byte[messageSize]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws ChannelException {
+        client.close();
+        server.close();
+    }
+
+    @Override
+    protected int getMessageSize() {
+        return messageSize;
+    }
+
+    @Override
+    protected void send() throws ChannelException {
+        client.send(message);
+    }
+}
@@ -0,0 +1,67 @@
+package com.fincher.iochannel.udp;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.fincher.iochannel.ChannelBenchmark;
+import com.fincher.iochannel.ChannelException;
+import com.fincher.iochannel.MessageBuffer;
+
+/**
+ * Loopback throughput and latency between two unicast {@link UdpChannel}s.
+ * The largest size is the largest UDP payload. Datagrams dropped by the kernel
+ * are reported by the {@code lost} counter.
+ *
+ * @author Brian Fincher
+ *
+ */
+public class UdpChannelBenchmark extends ChannelBenchmark {
+
+    @Param({ "16", "256", "1024", "4096", "16384", "65507" })
+    public int messageSize;
+
+    private UdpChannel input;
+
+    private UdpChannel output;
+
+    private byte[] message;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        InetSocketAddress inputAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), 5101);
+
+        input = UdpChannel.createInputChannel("input", listener, inputAddress);
+        UdpSocketOptions socketOptions = new UdpSocketOptions();
+        socketOptions.setReceiveBufferSize(4 * 1024 * 1024);
+        input.setSocketOptions(socketOptions);
+
+        output = UdpChannel.createOutputChannel("output", null, inputAddress);
+        input.connect();
+        output.connect();
+        awaitConnected(input);
+        awaitConnected(output);
+
+        message = new byte[messageSize];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws ChannelException {
+        output.close();
+        input.close();
+    }
+
+    @Override
+    protected int getMessageSize() {
+        return messageSize;
+    }
+
+    @Override
+    protected void send() throws ChannelException {
+        output.send(new MessageBuffer(message));
+    }
+}
@@ -0,0 +1,93 @@
+package com.fincher.iochannel.udp;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.Enumeration;
+
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.fincher.iochannel.ChannelBenchmark;
+import com.fincher.iochannel.ChannelException;
+import com.fincher.iochannel.MessageBuffer;
+
+/**
+ * Throughput and latency between two {@link UdpMulticastChannel}s on the first
+ * multicast capable interface. Datagrams dropped by the kernel are reported by
+ * the {@code lost} counter.
+ *
+ * @author Brian Fincher
+ *
+ */
+@Fork(jvmArgsAppend = { "-Djava.net.preferIPv4Stack=true" })
+public class UdpMulticastChannelBenchmark extends ChannelBenchmark {
+
+    @Param({ "16", "256", "1024", "4096", "16384", "65507" })
+    public int messageSize;
+
+    private UdpMulticastChannel input;
+
+    private UdpMulticastChannel output;
+
+    private byte[] message;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        NetworkInterface networkInterface = findMulticastInterface();
+        InetAddress address = findIpv4Address(networkInterface);
+        InetSocketAddress multicastAddress = new InetSocketAddress(InetAddress.getByName("239.1.1.2"), 5102);
+
+        input = UdpMulticastChannel.createInputChannel("input", listener, new InetSocketAddress(address, 5102),
+                multicastAddress.getAddress(), networkInterface);
+        output = UdpMulticastChannel.createOutputChannel("output", new InetSocketAddress(address, 0),
+                multicastAddress);
+        input.connect();
+        output.connect();
+        awaitConnected(input);
+        awaitConnected(output);
+
+        message = new byte[messageSize];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws ChannelException {
+        output.close();
+        input.close();
+    }
+
+    private static NetworkInterface findMulticastInterface() throws SocketException {
+        for (Enumeration<NetworkInterface> e = NetworkInterface.getNetworkInterfaces(); e.hasMoreElements();) {
+            NetworkInterface ifc = e.nextElement();
+            if (ifc.isUp() && ifc.supportsMulticast() && findIpv4Address(ifc) != null) {
+                return ifc;
+            }
+        }
+        throw new IllegalStateException("No multicast capable network interface");
+    }
+
+    private static InetAddress findIpv4Address(NetworkInterface networkInterface) {
+        for (InterfaceAddress addr : networkInterface.getInterfaceAddresses()) {
+            if (addr.getAddress() instanceof Inet4Address) {
+                return addr.getAddress();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected int getMessageSize() {
+        return messageSize;
+    }
+
+    @Override
+    protected void send() throws ChannelException {
+        output.send(new MessageBuffer(message));
+    }
+}
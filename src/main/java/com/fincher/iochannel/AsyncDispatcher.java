@@ -0,0 +1,253 @@
+package com.fincher.iochannel;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Decouples the thread that receives messages from the listeners that process
+ * them. Each listener has its own bounded queue that is drained by a task on
+ * the given executor, so messages are delivered to each listener in the order
+ * they were received and a slow listener does not delay other listeners or the
+ * receiving thread.
+ * 
+ * <p>
+ * A dispatcher should be used by a single channel so that its queue depth and
+ * drop counts describe that channel.
+ * 
+ * @author Brian Fincher
+ *
+ * @param <T> The type of message dispatched
+ */
+public class AsyncDispatcher<T extends Exchangeable> {
+
+    private static final Logger LOG = Utilities.getInstance().getLogger(AsyncDispatcher.class);
+
+    /** The maximum number of messages delivered by a task before yielding. */
+    private static final int MAX_BATCH_SIZE = 64;
+
+    private final Executor executor;
+
+    private final int queueCapacity;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final Map<Consumer<T>, ListenerQueue> queues = new ConcurrentHashMap<>();
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    private final AtomicLong dropCount = new AtomicLong();
+
+    private volatile Consumer<T> overflowHandler = msg -> {
+    };
+
+    /**
+     * Constructs a new AsyncDispatcher.
+     * 
+     * @param executor The executor used to notify listeners
+     * @param queueCapacity The maximum number of messages queued for each listener
+     * @param overflowPolicy What to do with a message when a listener's queue is
+     *        full
+     */
+    public AsyncDispatcher(Executor executor, int queueCapacity, OverflowPolicy overflowPolicy) {
+        Preconditions.checkNotNull(executor, "executor cannot be null");
+        Preconditions.checkNotNull(overflowPolicy, "overflowPolicy cannot be null");
+        Preconditions.checkArgument(queueCapacity > 0, "queueCapacity must be greater than zero");
+        this.executor = executor;
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Sets the handler given messages that do not fit in a listener's queue when
+     * the overflow policy is {@link OverflowPolicy#CALLBACK}. The handler is
+     * invoked on the receiving thread.
+     * 
+     * @param overflowHandler The overflow handler
+     */
+    public void setOverflowHandler(Consumer<T> overflowHandler) {
+        Preconditions.checkNotNull(overflowHandler, "overflowHandler cannot be null");
+        this.overflowHandler = overflowHandler;
+    }
+
+    /**
+     * Get the overflow policy.
+     * 
+     * @return the overflow policy
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Get the maximum number of messages queued for each listener.
+     * 
+     * @return the maximum number of messages queued for each listener
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Get the number of messages waiting to be delivered to all listeners.
+     * 
+     * @return the number of messages waiting to be delivered to all listeners
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * Get the number of messages that were not queued for a listener because its
+     * queue was full.
+     * 
+     * @return the number of messages that were not queued because a queue was
+     *         full
+     */
+    public long getDropCount() {
+        return dropCount.get();
+    }
+
+    /**
+     * Queue a message for delivery to a listener.
+     * 
+     * @param listener The listener
+     * @param message The message
+     */
+    public void dispatch(Consumer<T> listener, T message) {
+        ListenerQueue queue = queues.computeIfAbsent(listener, ListenerQueue::new);
+        message.retain();
+        queue.enqueue(message);
+    }
+
+    /**
+     * Stop tracking a listener that has been removed from its channel. Messages
+     * already queued for the listener are still delivered.
+     * 
+     * @param listener The listener
+     */
+    public void remove(Consumer<T> listener) {
+        queues.remove(listener);
+    }
+
+    /** The queue of messages waiting to be delivered to a single listener. */
+    private class ListenerQueue implements Runnable {
+
+        private final Consumer<T> listener;
+
+        private final BlockingQueue<T> queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        /** Is a task scheduled or running to drain this queue. */
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        ListenerQueue(Consumer<T> listener) {
+            this.listener = listener;
+        }
+
+        void enqueue(T message) {
+            if (!offer(message)) {
+                dropCount.incrementAndGet();
+                if (overflowPolicy == OverflowPolicy.CALLBACK) {
+                    notifyOverflowHandler(message);
+                }
+                message.release();
+            }
+
+            schedule();
+        }
+
+        /** Add a message to the queue according to the overflow policy. */
+        private boolean offer(T message) {
+            if (queue.offer(message)) {
+                queueDepth.incrementAndGet();
+                return true;
+            }
+
+            switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    schedule();
+                    queue.put(message);
+                    queueDepth.incrementAndGet();
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+
+            case DROP_OLDEST:
+                while (!queue.offer(message)) {
+                    T oldest = queue.poll();
+                    if (oldest != null) {
+                        queueDepth.decrementAndGet();
+                        dropCount.incrementAndGet();
+                        oldest.release();
+                    }
+                }
+                queueDepth.incrementAndGet();
+                return true;
+
+            default:
+                return false;
+            }
+        }
+
+        private void notifyOverflowHandler(T message) {
+            try {
+                overflowHandler.accept(message);
+            } catch (RuntimeException e) {
+                LOG.error(e.getMessage(), e);
+            }
+        }
+
+        private void schedule() {
+            if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                    LOG.error(e.getMessage(), e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < MAX_BATCH_SIZE; i++) {
+                    T message = queue.poll();
+                    if (message == null) {
+                        break;
+                    }
+
+                    queueDepth.decrementAndGet();
+                    deliver(message);
+                }
+            } finally {
+                scheduled.set(false);
+                schedule();
+            }
+        }
+
+        private void deliver(T message) {
+            try {
+                listener.accept(message);
+            } catch (RuntimeException e) {
+                LOG.error(e.getMessage(), e);
+            } finally {
+                message.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.fincher.iochannel;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A pool of fixed size ByteBuffers used to avoid allocating a new buffer for
+ * each received message. Requests larger than the pool's buffer size are
+ * satisfied with a new unpooled buffer.
+ *
+ * <p>
+ * Idle buffers are held in an array sized by the maximum number of pooled
+ * buffers so that, once warmed up, acquiring and releasing buffers does not
+ * allocate.
+ *
+ * @author Brian Fincher
+ *
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+
+    private final int maxPooledBuffers;
+
+    private final boolean direct;
+
+    private final Queue<ByteBuffer> buffers;
+
+    /** The number of buffers currently held in the queue. */
+    private final AtomicInteger numPooledBuffers = new AtomicInteger();
+
+    private BufferPool(int bufferSize, int maxPooledBuffers, boolean direct) {
+        Preconditions.checkArgument(bufferSize > 0, "bufferSize must be greater than zero");
+        Preconditions.checkArgument(maxPooledBuffers >= 0, "maxPooledBuffers cannot be negative");
+        this.bufferSize = bufferSize;
+        this.maxPooledBuffers = maxPooledBuffers;
+        this.direct = direct;
+
+        // an array backed queue does not allocate a node per offer
+        buffers = new ArrayBlockingQueue<>(Math.max(1, maxPooledBuffers));
+    }
+
+    /**
+     * Creates a new pool of heap ByteBuffers.
+     * 
+     * @param bufferSize The size of each pooled buffer
+     * @param maxPooledBuffers The maximum number of idle buffers retained by the
+     *        pool
+     * @return a new pool of heap ByteBuffers
+     */
+    public static BufferPool createHeapPool(int bufferSize, int maxPooledBuffers) {
+        return new BufferPool(bufferSize, maxPooledBuffers, false);
+    }
+
+    /**
+     * Creates a new pool of direct ByteBuffers.
+     * 
+     * @param bufferSize The size of each pooled buffer
+     * @param maxPooledBuffers The maximum number of idle buffers retained by the
+     *        pool
+     * @return a new pool of direct ByteBuffers
+     */
+    public static BufferPool createDirectPool(int bufferSize, int maxPooledBuffers) {
+        return new BufferPool(bufferSize, maxPooledBuffers, true);
+    }
+
+    /**
+     * Get a buffer with at least the given capacity. The buffer's position is zero
+     * and its limit is its capacity.
+     * 
+     * @param minCapacity The minimum capacity of the buffer
+     * @return a buffer with at least the given capacity
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        if (minCapacity > bufferSize) {
+            return allocate(minCapacity);
+        }
+
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return allocate(bufferSize);
+        }
+
+        numPooledBuffers.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to this pool. Buffers that were not created by this pool or
+     * that exceed the pool's capacity are discarded.
+     * 
+     * @param buffer The buffer to return
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || buffer.isDirect() != direct) {
+            return;
+        }
+
+        if (numPooledBuffers.incrementAndGet() <= maxPooledBuffers) {
+            buffer.clear();
+            buffers.offer(buffer);
+        } else {
+            numPooledBuffers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Get the size of each pooled buffer.
+     * 
+     * @return the size of each pooled buffer
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Does this pool create direct ByteBuffers.
+     * 
+     * @return true if this pool creates direct ByteBuffers
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Get the number of idle buffers currently held by this pool.
+     * 
+     * @return the number of idle buffers currently held by this pool
+     */
+    public int getNumPooledBuffers() {
+        return numPooledBuffers.get();
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+}
@@ -0,0 +1,75 @@
+package com.fincher.iochannel;
+
+/**
+ * Records activity on IO Channels. Set on a channel with
+ * {@link IoChannel#setMetrics(ChannelMetrics)}. Every method defaults to doing
+ * nothing, so an implementation only overrides the events it records.
+ *
+ * <p>
+ * The message methods are called on the send and receive paths of the channel
+ * and must not block or allocate. Channels skip timing entirely when their
+ * metrics are {@link #NO_OP}.
+ *
+ * @author Brian Fincher
+ *
+ */
+public interface ChannelMetrics {
+
+    /** Metrics that record nothing. The default for every channel. */
+    public static final ChannelMetrics NO_OP = new ChannelMetrics() {
+    };
+
+    /**
+     * Called after bytes are written to the network. A TCP channel sending to
+     * several sockets reports each write separately.
+     * 
+     * @param channelId The ID of the channel
+     * @param numBytes The number of bytes written, including any framing
+     * @param latencyNanos The time taken to write the bytes, including waiting for
+     *        other sends to the same destination
+     */
+    public default void messageSent(String channelId, int numBytes, long latencyNanos) {
+    }
+
+    /**
+     * Called after a received message has been given to the channel's listeners.
+     * When the channel has an {@link AsyncDispatcher} the dispatch time is the
+     * time taken to hand the message to the dispatcher.
+     * 
+     * @param channelId The ID of the channel
+     * @param numBytes The length of the message or zero if not known
+     * @param dispatchNanos The time taken to notify the listeners
+     */
+    public default void messageReceived(String channelId, int numBytes, long dispatchNanos) {
+    }
+
+    /**
+     * Called when the state of a channel changes.
+     * 
+     * @param channelId The ID of the channel
+     * @param previous The previous state
+     * @param state The new state
+     */
+    public default void stateChanged(String channelId, ChannelState previous, ChannelState state) {
+    }
+
+    /**
+     * Called when a TCP socket connection is established.
+     * 
+     * @param channelId The ID of the channel
+     * @param socketId The ID of the socket
+     * @param reconnect True if a client is connecting again after losing its
+     *        connection
+     */
+    public default void connectionEstablished(String channelId, String socketId, boolean reconnect) {
+    }
+
+    /**
+     * Called when a TCP socket connection is lost.
+     * 
+     * @param channelId The ID of the channel
+     * @param socketId The ID of the socket
+     */
+    public default void connectionLost(String channelId, String socketId) {
+    }
+}
@@ -1,6 +1,7 @@
 package com.fincher.iochannel;
 
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 /**
@@ -29,6 +30,16 @@ public interface DelegatingIoChannelIfc<T extends Exchangeable> extends IoChanne
         getDelegate().addMessageListener(listener, predicate);
     }
 
+    @Override
+    default void setMessageKeyExtractor(Function<? super T, ?> keyExtractor) {
+        getDelegate().setMessageKeyExtractor(keyExtractor);
+    }
+
+    @Override
+    default void addKeyedMessageListener(Object key, Consumer<T> listener) {
+        getDelegate().addKeyedMessageListener(key, listener);
+    }
+
     @Override
     default boolean removeMessageListener(Consumer<T> listener) {
         return getDelegate().removeMessageListener(listener);
@@ -47,4 +47,24 @@ public interface Exchangeable {
      */
     public void addParentTransactionId(long parentTransactionId);
 
+    /**
+     * Increment the reference count of this exchangeable if it is reference
+     * counted. Has no effect by default.
+     * 
+     * @return this exchangeable
+     */
+    public default Exchangeable retain() {
+        return this;
+    }
+
+    /**
+     * Decrement the reference count of this exchangeable if it is reference
+     * counted. Has no effect by default.
+     * 
+     * @return true if the storage for this exchangeable was reclaimed
+     */
+    public default boolean release() {
+        return false;
+    }
+
 }
@@ -0,0 +1,238 @@
+package com.fincher.iochannel;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Channel metrics that keep counters and {@link LatencyHistogram}s for each
+ * channel ID. A single instance may be shared by many channels. Recording a
+ * message does not allocate once a channel's statistics have been created.
+ *
+ * @author Brian Fincher
+ *
+ */
+public class HistogramChannelMetrics implements ChannelMetrics {
+
+    /** The statistics recorded for a single channel. */
+    public static final class ChannelStats {
+
+        private final AtomicLong messagesSent = new AtomicLong();
+
+        private final AtomicLong bytesSent = new AtomicLong();
+
+        private final AtomicLong messagesReceived = new AtomicLong();
+
+        private final AtomicLong bytesReceived = new AtomicLong();
+
+        private final LatencyHistogram sendLatency = new LatencyHistogram();
+
+        private final LatencyHistogram dispatchTime = new LatencyHistogram();
+
+        private final AtomicLong connects = new AtomicLong();
+
+        private final AtomicLong reconnects = new AtomicLong();
+
+        private final AtomicLong connectionsLost = new AtomicLong();
+
+        /** The number of transitions into each state, indexed by ordinal. */
+        private final AtomicLongArray stateTransitions = new AtomicLongArray(ChannelState.values().length);
+
+        private volatile ChannelState state = ChannelState.INITIAL;
+
+        /** The state of each socket that is currently connected. */
+        private final Map<String, ChannelState> socketStates = new ConcurrentHashMap<>();
+
+        private ChannelStats() {
+        }
+
+        /**
+         * Get the number of writes to the network.
+         * 
+         * @return the number of writes to the network
+         */
+        public long getMessagesSent() {
+            return messagesSent.get();
+        }
+
+        /**
+         * Get the number of bytes written to the network.
+         * 
+         * @return the number of bytes written to the network
+         */
+        public long getBytesSent() {
+            return bytesSent.get();
+        }
+
+        /**
+         * Get the number of messages received.
+         * 
+         * @return the number of messages received
+         */
+        public long getMessagesReceived() {
+            return messagesReceived.get();
+        }
+
+        /**
+         * Get the number of bytes received.
+         * 
+         * @return the number of bytes received
+         */
+        public long getBytesReceived() {
+            return bytesReceived.get();
+        }
+
+        /**
+         * Get the histogram of send latencies in nanoseconds.
+         * 
+         * @return the histogram of send latencies
+         */
+        public LatencyHistogram getSendLatency() {
+            return sendLatency;
+        }
+
+        /**
+         * Get the histogram of listener dispatch times in nanoseconds.
+         * 
+         * @return the histogram of listener dispatch times
+         */
+        public LatencyHistogram getDispatchTime() {
+            return dispatchTime;
+        }
+
+        /**
+         * Get the number of TCP connections established, including reconnects.
+         * 
+         * @return the number of TCP connections established
+         */
+        public long getConnects() {
+            return connects.get();
+        }
+
+        /**
+         * Get the number of times a TCP client connected again after losing its
+         * connection.
+         * 
+         * @return the number of reconnects
+         */
+        public long getReconnects() {
+            return reconnects.get();
+        }
+
+        /**
+         * Get the number of TCP connections lost.
+         * 
+         * @return the number of TCP connections lost
+         */
+        public long getConnectionsLost() {
+            return connectionsLost.get();
+        }
+
+        /**
+         * Get the number of times the channel has entered the given state.
+         * 
+         * @param state The state
+         * @return the number of transitions into the state
+         */
+        public long getStateTransitions(ChannelState state) {
+            return stateTransitions.get(state.ordinal());
+        }
+
+        /**
+         * Get the most recently recorded state of the channel.
+         * 
+         * @return the state of the channel
+         */
+        public ChannelState getState() {
+            return state;
+        }
+
+        /**
+         * Get the state of a socket. Sockets are forgotten once their connection is
+         * lost.
+         * 
+         * @param socketId The ID of the socket
+         * @return the state of the socket or CLOSED if the socket is not connected
+         */
+        public ChannelState getSocketState(String socketId) {
+            return socketStates.getOrDefault(socketId, ChannelState.CLOSED);
+        }
+
+        /**
+         * Get the IDs of the connected sockets.
+         * 
+         * @return the IDs of the connected sockets
+         */
+        public Set<String> getSocketIds() {
+            return Collections.unmodifiableSet(socketStates.keySet());
+        }
+    }
+
+    private final Map<String, ChannelStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Get the statistics recorded for a channel.
+     * 
+     * @param channelId The ID of the channel
+     * @return the statistics for the channel, which are created if necessary
+     */
+    public ChannelStats getStats(String channelId) {
+        ChannelStats channelStats = stats.get(channelId);
+        if (channelStats == null) {
+            channelStats = stats.computeIfAbsent(channelId, id -> new ChannelStats());
+        }
+        return channelStats;
+    }
+
+    /**
+     * Get the IDs of the channels for which statistics have been recorded.
+     * 
+     * @return the channel IDs
+     */
+    public Set<String> getChannelIds() {
+        return Collections.unmodifiableSet(stats.keySet());
+    }
+
+    @Override
+    public void messageSent(String channelId, int numBytes, long latencyNanos) {
+        ChannelStats channelStats = getStats(channelId);
+        channelStats.messagesSent.incrementAndGet();
+        channelStats.bytesSent.addAndGet(numBytes);
+        channelStats.sendLatency.record(latencyNanos);
+    }
+
+    @Override
+    public void messageReceived(String channelId, int numBytes, long dispatchNanos) {
+        ChannelStats channelStats = getStats(channelId);
+        channelStats.messagesReceived.incrementAndGet();
+        channelStats.bytesReceived.addAndGet(numBytes);
+        channelStats.dispatchTime.record(dispatchNanos);
+    }
+
+    @Override
+    public void stateChanged(String channelId, ChannelState previous, ChannelState state) {
+        ChannelStats channelStats = getStats(channelId);
+        channelStats.stateTransitions.incrementAndGet(state.ordinal());
+        channelStats.state = state;
+    }
+
+    @Override
+    public void connectionEstablished(String channelId, String socketId, boolean reconnect) {
+        ChannelStats channelStats = getStats(channelId);
+        channelStats.connects.incrementAndGet();
+        if (reconnect) {
+            channelStats.reconnects.incrementAndGet();
+        }
+        channelStats.socketStates.put(socketId, ChannelState.CONNECTED);
+    }
+
+    @Override
+    public void connectionLost(String channelId, String socketId) {
+        ChannelStats channelStats = getStats(channelId);
+        channelStats.connectionsLost.incrementAndGet();
+        channelStats.socketStates.remove(socketId);
+    }
+}
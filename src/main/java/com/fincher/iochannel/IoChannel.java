@@ -1,7 +1,9 @@
 package com.fincher.iochannel;
 
 import java.util.Iterator;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 import org.slf4j.Logger;
@@ -30,6 +32,15 @@ public abstract class IoChannel<T extends Exchangeable> implements IoChannelIfc<
     /** The state of this TCP socket. */
     private ChannelState state = ChannelState.INITIAL;
 
+    /** Used to deliver received messages to listeners on another thread. */
+    private AsyncDispatcher<T> asyncDispatcher;
+
+    /** Delivers a received message to a listener. */
+    private BiConsumer<Consumer<T>, T> dispatchAction = Consumer::accept;
+
+    /** Records activity on this channel. */
+    private ChannelMetrics metrics = ChannelMetrics.NO_OP;
+
     /**
      * Constructs a new IOChannel.
      * 
@@ -68,7 +79,80 @@ public abstract class IoChannel<T extends Exchangeable> implements IoChannelIfc<
      * @param state The state of this IO Channel
      */
     protected void setState(ChannelState state) {
+        ChannelState previous = this.state;
         this.state = state;
+        if (previous != state) {
+            metrics.stateChanged(id, previous, state);
+        }
+    }
+
+    /**
+     * Record activity on this channel with the given metrics.
+     * 
+     * @param metrics The metrics that record activity on this channel
+     */
+    public void setMetrics(ChannelMetrics metrics) {
+        Preconditions.checkState(state == ChannelState.INITIAL, "The state must be INITIAL for setMetrics");
+        Preconditions.checkNotNull(metrics, "metrics cannot be null");
+
+        this.metrics = metrics;
+    }
+
+    /**
+     * Get the metrics that record activity on this channel.
+     * 
+     * @return the metrics, which are {@link ChannelMetrics#NO_OP} by default
+     */
+    public ChannelMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the time at which a send started, for use with
+     * {@link #messageSent(int, long)}.
+     * 
+     * @return the current time in nanoseconds or zero if metrics are disabled
+     */
+    protected final long sendStarted() {
+        return metrics == ChannelMetrics.NO_OP ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Record that bytes were written to the network.
+     * 
+     * @param numBytes The number of bytes written
+     * @param startNanos The value returned by {@link #sendStarted()}
+     */
+    protected final void messageSent(int numBytes, long startNanos) {
+        if (metrics != ChannelMetrics.NO_OP) {
+            metrics.messageSent(id, numBytes, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Deliver received messages to listeners using the given dispatcher rather
+     * than on the thread that received the message.
+     * 
+     * @param asyncDispatcher The dispatcher used to notify listeners
+     */
+    public void setAsyncDispatcher(AsyncDispatcher<T> asyncDispatcher) {
+        Preconditions.checkState(state == ChannelState.INITIAL,
+                "The async dispatcher must be set before the channel is connected");
+        Preconditions.checkState(ioType.isInput(), "Cannot set an async dispatcher on an output only channel");
+        Preconditions.checkNotNull(asyncDispatcher, "asyncDispatcher cannot be null");
+
+        this.asyncDispatcher = asyncDispatcher;
+        dispatchAction = asyncDispatcher::dispatch;
+    }
+
+    /**
+     * Get the dispatcher used to notify listeners.
+     * 
+     * @return the dispatcher used to notify listeners or null if listeners are
+     *         notified on the thread that received the message
+     */
+    public AsyncDispatcher<T> getAsyncDispatcher() {
+        return asyncDispatcher;
     }
 
     /**
@@ -79,8 +163,18 @@ public abstract class IoChannel<T extends Exchangeable> implements IoChannelIfc<
      * @param logString log information about the received message
      */
     protected void messageReceived(T mb, Logger logger, String logString) {
-        logger.info("Message received on IO Thread {} {} {}", getId(), mb.getTransactionId(), logString);
-        listeners.getListenersThatMatch(mb).forEach(l -> l.accept(mb));
+        if (logger.isDebugEnabled()) {
+            logger.debug("Message received on IO Thread {} {} {}", getId(), mb.getTransactionId(), logString);
+        }
+        if (metrics == ChannelMetrics.NO_OP) {
+            listeners.forEachListenerThatMatches(mb, dispatchAction);
+            return;
+        }
+
+        long start = System.nanoTime();
+        listeners.forEachListenerThatMatches(mb, dispatchAction);
+        int length = mb instanceof MessageBuffer ? ((MessageBuffer) mb).getLength() : 0;
+        metrics.messageReceived(id, length, System.nanoTime() - start);
     }
 
     @Override
@@ -100,9 +194,34 @@ public abstract class IoChannel<T extends Exchangeable> implements IoChannelIfc<
         listeners.addListener(listener, predicate);
     }
 
+    @Override
+    public void setMessageKeyExtractor(Function<? super T, ?> keyExtractor) {
+        Preconditions.checkState(ioType.isInput(), "Cannot set a message key extractor on an output only channel");
+        Preconditions.checkState(state == ChannelState.INITIAL,
+                "The state must be INITIAL for setMessageKeyExtractor");
+        Preconditions.checkNotNull(keyExtractor, "keyExtractor cannot be null");
+
+        listeners.setKeyExtractor(keyExtractor);
+    }
+
+    @Override
+    public void addKeyedMessageListener(Object key, Consumer<T> listener) {
+        Preconditions.checkState(ioType.isInput(), "Cannot set a message listener on an output only channel");
+        Preconditions.checkNotNull(listener, "Listener cannot be null");
+
+        listeners.addKeyedListener(key, listener);
+    }
+
     @Override
     public boolean removeMessageListener(Consumer<T> listener) {
-        return listeners != null && listeners.removeListener(listener);
+        if (listeners == null || !listeners.removeListener(listener)) {
+            return false;
+        }
+
+        if (asyncDispatcher != null) {
+            asyncDispatcher.remove(listener);
+        }
+        return true;
     }
 
     @Override
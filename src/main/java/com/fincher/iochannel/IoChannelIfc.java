@@ -2,6 +2,7 @@ package com.fincher.iochannel;
 
 import java.io.Closeable;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 /**
@@ -38,6 +39,33 @@ public interface IoChannelIfc<T extends Exchangeable> extends Closeable {
      */
     public void addMessageListener(Consumer<T> listener, Predicate<T> predicate);
 
+    /**
+     * Sets the function used to extract a routing key from each received message.
+     * Listeners added with {@link #addKeyedMessageListener(Object, Consumer)} are
+     * found by a hash lookup of the key rather than by evaluating a predicate. Not
+     * applicable for output only channels. The default implementation throws
+     * UnsupportedOperationException
+     * 
+     * @param keyExtractor The key extractor. May return null for a message without
+     *        a key. See {@link MessageKeyExtractors}
+     */
+    public default void setMessageKeyExtractor(Function<? super T, ?> keyExtractor) {
+        throw new UnsupportedOperationException(getId() + " does not support keyed message listeners");
+    }
+
+    /**
+     * Adds a listener to be notified of received messages whose key, as returned
+     * by the message key extractor, equals the given key. Keyed listeners are
+     * notified before listeners added without a key. Not applicable for output only
+     * channels. The default implementation throws UnsupportedOperationException
+     * 
+     * @param key The key of the messages of interest
+     * @param listener The message listener
+     */
+    public default void addKeyedMessageListener(Object key, Consumer<T> listener) {
+        throw new UnsupportedOperationException(getId() + " does not support keyed message listeners");
+    }
+
     /**
      * Remove a previously registered message listener.
      * 
@@ -0,0 +1,155 @@
+package com.fincher.iochannel;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A concurrent histogram of non-negative long values, such as latencies in
+ * nanoseconds, in the style of HdrHistogram. Values below 128 are counted
+ * exactly. Larger values are counted in log-linear buckets: each power of two
+ * is split into 64 buckets, so a reported value is within 1/64 (about 1.6%) of
+ * the recorded value. All buckets are allocated up front and recording does
+ * not allocate or lock.
+ *
+ * @author Brian Fincher
+ *
+ */
+public class LatencyHistogram {
+
+    /** The number of values below which each value has its own bucket. */
+    private static final int LINEAR_COUNT = 128;
+
+    /** The number of buckets per power of two above LINEAR_COUNT. */
+    private static final int SUB_BUCKET_COUNT = 64;
+
+    private static final int SUB_BUCKET_BITS = 6;
+
+    /** Enough buckets for Long.MAX_VALUE. */
+    private static final int NUM_BUCKETS = LINEAR_COUNT + (Long.SIZE - 1 - SUB_BUCKET_BITS - 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+
+    private final AtomicLong totalCount = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a value.
+     * 
+     * @param value The value, which is treated as zero if negative
+     */
+    public void record(long value) {
+        long v = Math.max(value, 0);
+        counts.incrementAndGet(bucketIndex(v));
+        totalCount.incrementAndGet();
+        sum.addAndGet(v);
+        max.accumulateAndGet(v, Math::max);
+    }
+
+    /**
+     * Get the number of recorded values.
+     * 
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Get the largest recorded value.
+     * 
+     * @return the largest recorded value or zero if none have been recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the mean of the recorded values.
+     * 
+     * @return the mean or zero if no values have been recorded
+     */
+    public double getMean() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    /**
+     * Get the value at or below which the given percentage of recorded values
+     * fall. The result is the highest value in the bucket containing the
+     * percentile, limited to the largest recorded value.
+     * 
+     * @param percentile The percentile, from 0 to 100
+     * @return the value at the given percentile or zero if no values have been
+     *         recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        Preconditions.checkArgument(percentile >= 0 && percentile <= 100, "percentile must be from 0 to 100");
+
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueInBucket(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /** Discard all recorded values. Values recorded concurrently may be lost. */
+    public void reset() {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Get the index of the bucket that counts a value.
+     * 
+     * @param value A non-negative value
+     * @return the index of the bucket
+     */
+    static int bucketIndex(long value) {
+        if (value < LINEAR_COUNT) {
+            return (int) value;
+        }
+
+        // keep the top seven bits of the value, which range from 64 to 127
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - 1 - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return LINEAR_COUNT + (shift - 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Get the highest value counted by a bucket.
+     * 
+     * @param index The index of the bucket
+     * @return the highest value counted by the bucket
+     */
+    static long highestValueInBucket(int index) {
+        if (index < LINEAR_COUNT) {
+            return index;
+        }
+
+        int offset = index - LINEAR_COUNT;
+        int shift = offset / SUB_BUCKET_COUNT + 1;
+        long subBucket = offset % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        long highest = ((subBucket + 1) << shift) - 1;
+
+        // the last bucket would overflow
+        return highest < 0 ? Long.MAX_VALUE : highest;
+    }
+}
@@ -1,13 +1,33 @@
 package com.fincher.iochannel;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
+import org.slf4j.Logger;
+
+import com.google.common.base.Preconditions;
+
 /**
- * An abstraction of registered listeners
+ * An abstraction of registered listeners. Listeners are stored in an array that
+ * is copied whenever a listener is added or removed so that notifying listeners
+ * does not require a lock and is not affected by concurrent registration.
  * 
+ * <p>
+ * Listeners may also be registered for a key. When a key extractor is set, the
+ * key of each data item is used to look up the keyed listeners in a hash map so
+ * that the cost of notification does not grow with the number of keys. The
+ * listeners registered without a key are notified after the keyed listeners.
+ * If the key extractor throws an exception, only the listeners registered
+ * without a key are notified. The failures are counted and only the first is
+ * logged with its stack trace.
+ *
  * @author bfincher
  *
  * @param <L> The listener type
@@ -15,7 +35,52 @@ import java.util.stream.Stream;
  */
 public class Listeners<L, D> {
 
-    private final List<ListenerEntry> listenerList = new LinkedList<>();
+    private static final Logger LOG = Utilities.getInstance().getLogger(Listeners.class);
+
+    private static final ListenerEntry<?, ?>[] EMPTY = new ListenerEntry<?, ?>[0];
+
+    @SuppressWarnings("unchecked")
+    private volatile ListenerEntry<L, D>[] listenerArray = (ListenerEntry<L, D>[]) EMPTY;
+
+    /** The listeners registered for each key. Each array is copied when it changes. */
+    private final Map<Object, ListenerEntry<L, D>[]> keyedListeners = new ConcurrentHashMap<>();
+
+    /** The number of keyed listeners. Guarded by this for writes. */
+    private volatile int numKeyedListeners;
+
+    private volatile Function<? super D, ?> keyExtractor;
+
+    /** The number of times the key extractor threw an exception. */
+    private final AtomicLong numKeyExtractorFailures = new AtomicLong();
+
+    /**
+     * Set the function used to extract the key of each data item when notifying
+     * keyed listeners.
+     * 
+     * @param keyExtractor The key extractor. The extractor may return null if a
+     *        data item does not have a key
+     */
+    public void setKeyExtractor(Function<? super D, ?> keyExtractor) {
+        this.keyExtractor = keyExtractor;
+    }
+
+    /**
+     * Get the function used to extract the key of each data item.
+     * 
+     * @return the key extractor or null if one has not been set
+     */
+    public Function<? super D, ?> getKeyExtractor() {
+        return keyExtractor;
+    }
+
+    /**
+     * Get the number of times the key extractor threw an exception.
+     * 
+     * @return the number of key extractor failures
+     */
+    public long getNumKeyExtractorFailures() {
+        return numKeyExtractorFailures.get();
+    }
 
     /**
      * Add a listener
@@ -23,7 +88,7 @@ public class Listeners<L, D> {
      * @param listener The lisener
      */
     public void addListener(L listener) {
-        listenerList.add(new ListenerEntry(listener));
+        add(new ListenerEntry<>(listener, null));
     }
 
     /**
@@ -34,17 +99,119 @@ public class Listeners<L, D> {
      *        the predicate matches
      */
     public void addListener(L listener, Predicate<D> predicate) {
-        listenerList.add(new ListenerEntry(listener, predicate));
+        add(new ListenerEntry<>(listener, predicate));
     }
 
     /**
-     * Remove a listener
+     * Add a listener that is only notified of data whose extracted key equals the
+     * given key
+     * 
+     * @param key The key
+     * @param listener The listener
+     */
+    public synchronized void addKeyedListener(Object key, L listener) {
+        Preconditions.checkState(keyExtractor != null, "A key extractor must be set before adding a keyed listener");
+        Preconditions.checkNotNull(key, "key cannot be null");
+
+        ListenerEntry<L, D>[] current = keyedListeners.get(key);
+        ListenerEntry<L, D>[] newArray;
+        if (current == null) {
+            newArray = newArray(1);
+        } else {
+            newArray = Arrays.copyOf(current, current.length + 1);
+        }
+        newArray[newArray.length - 1] = new ListenerEntry<>(listener, null);
+        keyedListeners.put(key, newArray);
+        numKeyedListeners++;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <L, D> ListenerEntry<L, D>[] newArray(int length) {
+        return (ListenerEntry<L, D>[]) new ListenerEntry<?, ?>[length];
+    }
+
+    private synchronized void add(ListenerEntry<L, D> entry) {
+        ListenerEntry<L, D>[] newArray = Arrays.copyOf(listenerArray, listenerArray.length + 1);
+        newArray[newArray.length - 1] = entry;
+        listenerArray = newArray;
+    }
+
+    /**
+     * Remove a listener, whether or not it was registered for a key
      * 
      * @param listener The listener to be removed
      * @return true if a listener was removed
      */
-    public boolean removeListener(L listener) {
-        return listenerList.removeIf(entry -> entry.listener.equals(listener));
+    public synchronized boolean removeListener(L listener) {
+        boolean removed = false;
+        ListenerEntry<L, D>[] current = listenerArray;
+        ListenerEntry<L, D>[] newArray = remove(current, listener);
+        if (newArray != current) {
+            listenerArray = newArray;
+            removed = true;
+        }
+
+        if (numKeyedListeners > 0) {
+            for (Iterator<Map.Entry<Object, ListenerEntry<L, D>[]>> it = keyedListeners.entrySet().iterator(); it
+                    .hasNext();) {
+                Map.Entry<Object, ListenerEntry<L, D>[]> keyed = it.next();
+                current = keyed.getValue();
+                newArray = remove(current, listener);
+                if (newArray != current) {
+                    numKeyedListeners -= current.length - newArray.length;
+                    removed = true;
+                    if (newArray.length == 0) {
+                        it.remove();
+                    } else {
+                        keyed.setValue(newArray);
+                    }
+                }
+            }
+        }
+
+        return removed;
+    }
+
+    /** Get a copy of the array without the listener or the same array if it does not contain the listener. */
+    private static <L, D> ListenerEntry<L, D>[] remove(ListenerEntry<L, D>[] current, L listener) {
+        ListenerEntry<L, D>[] newArray = Arrays.copyOf(current, current.length);
+
+        int size = 0;
+        for (ListenerEntry<L, D> entry : current) {
+            if (!entry.listener.equals(listener)) {
+                newArray[size++] = entry;
+            }
+        }
+
+        if (size == current.length) {
+            return current;
+        }
+
+        return Arrays.copyOf(newArray, size);
+    }
+
+    /**
+     * Invoke the given action for each listener registered for the key of the data
+     * and then for each listener whose predicate matches the data. Listeners
+     * without a predicate always match. Listeners added or removed while this
+     * method is executing do not affect the current invocation.
+     * 
+     * @param data The data to be matched by the predicate and given to the action
+     * @param action The action to invoke with each matching listener and the data
+     */
+    public void forEachListenerThatMatches(D data, BiConsumer<? super L, ? super D> action) {
+        ListenerEntry<L, D>[] keyed = getKeyedListeners(data);
+        for (int i = 0; i < keyed.length; i++) {
+            action.accept(keyed[i].listener, data);
+        }
+
+        ListenerEntry<L, D>[] snapshot = listenerArray;
+        for (int i = 0; i < snapshot.length; i++) {
+            ListenerEntry<L, D> entry = snapshot[i];
+            if (entry.matches(data)) {
+                action.accept(entry.listener, data);
+            }
+        }
     }
 
     /**
@@ -56,7 +223,8 @@ public class Listeners<L, D> {
      *         listeners
      */
     public Stream<L> getListenersThatMatch(D data) {
-        return listenerList.stream().filter(l -> l.predicate.test(data)).map(l -> l.listener);
+        return Stream.concat(Arrays.stream(getKeyedListeners(data)),
+                Arrays.stream(listenerArray).filter(l -> l.matches(data))).map(l -> l.listener);
     }
 
     /**
@@ -65,10 +233,52 @@ public class Listeners<L, D> {
      * @return all listeners
      */
     public Stream<L> getListeners() {
-        return listenerList.stream().map(l -> l.listener);
+        return Stream.concat(Arrays.stream(listenerArray),
+                keyedListeners.values().stream().flatMap(Arrays::stream)).map(l -> l.listener);
+    }
+
+    /**
+     * Get the number of registered listeners
+     * 
+     * @return the number of registered listeners
+     */
+    public int size() {
+        return listenerArray.length + numKeyedListeners;
+    }
+
+    /** Get the listeners registered for the key of the data. */
+    @SuppressWarnings("unchecked")
+    private ListenerEntry<L, D>[] getKeyedListeners(D data) {
+        Function<? super D, ?> extractor = keyExtractor;
+        if (extractor != null && numKeyedListeners > 0) {
+            Object key;
+            try {
+                key = extractor.apply(data);
+            } catch (RuntimeException e) {
+                keyExtractorFailed(e);
+                key = null;
+            }
+
+            if (key != null) {
+                ListenerEntry<L, D>[] keyed = keyedListeners.get(key);
+                if (keyed != null) {
+                    return keyed;
+                }
+            }
+        }
+        return (ListenerEntry<L, D>[]) EMPTY;
+    }
+
+    /** Count a key extractor failure, logging the stack trace only the first time. */
+    private void keyExtractorFailed(RuntimeException e) {
+        if (numKeyExtractorFailures.incrementAndGet() == 1) {
+            LOG.warn("Unable to extract a key, notifying only the listeners without a key", e);
+        } else if (LOG.isDebugEnabled()) {
+            LOG.debug("Unable to extract a key, notifying only the listeners without a key: {}", e.toString());
+        }
     }
 
-    private class ListenerEntry {
+    private static final class ListenerEntry<L, D> {
         private final L listener;
         private final Predicate<D> predicate;
 
@@ -77,8 +287,8 @@ public class Listeners<L, D> {
             this.predicate = predicate;
         }
 
-        ListenerEntry(L listener) {
-            this(listener, t -> true);
+        boolean matches(D data) {
+            return predicate == null || predicate.test(data);
         }
     }
 
@@ -0,0 +1,31 @@
+package com.fincher.iochannel;
+
+import java.util.concurrent.Future;
+
+import com.fincher.thread.CallableTask;
+import com.fincher.thread.LongLivedTask;
+import com.fincher.thread.RunnableTask;
+
+/**
+ * Starts tasks with {@link LongLivedTask}.
+ * 
+ * @author Brian Fincher
+ *
+ */
+final class LongLivedTaskExecutor implements TaskExecutor {
+
+    static final LongLivedTaskExecutor INSTANCE = new LongLivedTaskExecutor();
+
+    private LongLivedTaskExecutor() {
+    }
+
+    @Override
+    public Future<Void> start(String name, RunnableTask task) {
+        return LongLivedTask.create(name, task).start();
+    }
+
+    @Override
+    public <T> Future<T> start(String name, CallableTask<T> task) {
+        return LongLivedTask.create(name, task).start();
+    }
+}
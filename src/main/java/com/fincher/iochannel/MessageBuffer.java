@@ -1,5 +1,7 @@
 package com.fincher.iochannel;
 
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
@@ -11,12 +13,15 @@ public class MessageBuffer implements Exchangeable {
 
     private long transactionId;
 
-    private List<Long> parentTransactionIds = new ArrayList<>();
+    /** Created on first use so that received messages do not allocate a list. */
+    private List<Long> parentTransactionIds;
 
-    private final long originationTime;
+    private long originationTime;
 
     private String receivedFromIoChannel;
 
+    private InetAddress destinationAddress;
+
     /**
      * Constructs a new MessageBuffer.
      * 
@@ -41,6 +46,18 @@ public class MessageBuffer implements Exchangeable {
         System.arraycopy(bytes, offset, this.bytes, 0, length);
     }
 
+    /**
+     * Constructs a new MessageBuffer whose bytes are provided by a subclass via
+     * {@link #getBytes()}. The other accessors read the bytes through
+     * {@link #getBytes()}, so a subclass may override them to avoid a copy but
+     * need not.
+     */
+    protected MessageBuffer() {
+        transactionId = TransactionIdFactory.getNextTid();
+        originationTime = System.currentTimeMillis();
+        this.bytes = null;
+    }
+
     /**
      * Constructs a new Message Buffer from the given byte arrays
      * 
@@ -64,6 +81,25 @@ public class MessageBuffer implements Exchangeable {
         }
     }
 
+    /**
+     * Creates a MessageBuffer containing a copy of the given bytes. If a pool is
+     * given the copy is stored in a buffer obtained from the pool and the caller
+     * must {@link #release()} the returned message.
+     * 
+     * @param pool The pool from which storage will be obtained. May be null
+     * @param bytes The encoded message bytes
+     * @param offset The offset into the bytes array
+     * @param length The number of bytes to copy
+     * @return a new MessageBuffer
+     */
+    public static MessageBuffer copyOf(BufferPool pool, byte[] bytes, int offset, int length) {
+        if (pool == null) {
+            return new MessageBuffer(bytes, offset, length);
+        } else {
+            return PooledMessageBuffer.copyOf(pool, bytes, offset, length);
+        }
+    }
+
     /**
      * Get the encoded bytes.
      * 
@@ -73,6 +109,60 @@ public class MessageBuffer implements Exchangeable {
         return bytes;
     }
 
+    /**
+     * Get a single encoded byte without copying the message.
+     * 
+     * @param index The index of the byte
+     * @return the byte at the given index
+     */
+    public byte getByte(int index) {
+        return getBytes()[index];
+    }
+
+    /**
+     * Get the number of encoded bytes.
+     * 
+     * @return the number of encoded bytes
+     */
+    public int getLength() {
+        return getBytes().length;
+    }
+
+    /**
+     * Get a read only view of the encoded bytes. The view's position is zero and
+     * its limit is the message length.
+     * 
+     * @return a read only view of the encoded bytes
+     */
+    public ByteBuffer getByteBuffer() {
+        return ByteBuffer.wrap(getBytes()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Increment the reference count of this message. A listener that holds on to a
+     * message received from a channel that uses a {@link BufferPool} must retain
+     * it and later {@link #release()} it. Has no effect for messages that are not
+     * pooled.
+     * 
+     * @return this MessageBuffer
+     */
+    @Override
+    public MessageBuffer retain() {
+        return this;
+    }
+
+    /**
+     * Decrement the reference count of this message. When the count reaches zero
+     * a pooled message's storage is returned to its pool and the message can no
+     * longer be used. Has no effect for messages that are not pooled.
+     * 
+     * @return true if the storage for this message was returned to a pool
+     */
+    @Override
+    public boolean release() {
+        return false;
+    }
+
     @Override
     public long getTransactionId() {
         return transactionId;
@@ -85,12 +175,15 @@ public class MessageBuffer implements Exchangeable {
 
     @Override
     public List<Long> getParentTransactionIds() {
+        if (parentTransactionIds == null) {
+            parentTransactionIds = new ArrayList<>();
+        }
         return parentTransactionIds;
     }
 
     @Override
     public void addParentTransactionId(long parentTransactionId) {
-        parentTransactionIds.add(parentTransactionId);
+        getParentTransactionIds().add(parentTransactionId);
     }
 
     @Override
@@ -111,7 +204,7 @@ public class MessageBuffer implements Exchangeable {
         sb.append(getTransactionId());
         sb.append(", " + getOriginationTime());
         sb.append(", hex dump: ");
-        sb.append(toHexString(bytes));
+        sb.append(toHexString(getBytes()));
         return sb.toString();
     }
 
@@ -158,6 +251,26 @@ public class MessageBuffer implements Exchangeable {
         return receivedFromIoChannel;
     }
 
+    /**
+     * Sets the address to which this message was sent, such as the multicast group
+     * on which it was received.
+     * 
+     * @param destinationAddress the address to which this message was sent
+     */
+    public void setDestinationAddress(InetAddress destinationAddress) {
+        this.destinationAddress = destinationAddress;
+    }
+
+    /**
+     * Gets the address to which this message was sent. Set by channels that
+     * receive from several multicast groups.
+     * 
+     * @return the address to which this message was sent, or null if not known
+     */
+    public InetAddress getDestinationAddress() {
+        return destinationAddress;
+    }
+
     /**
      * Convert the hex string into a MessageBuffer.
      * 
@@ -180,9 +293,23 @@ public class MessageBuffer implements Exchangeable {
         return new MessageBuffer(bytes);
     }
 
+    /**
+     * Give a reused message a new identity as though it had just been
+     * constructed.
+     */
+    void recycle() {
+        transactionId = TransactionIdFactory.getNextTid();
+        originationTime = System.currentTimeMillis();
+        receivedFromIoChannel = null;
+        destinationAddress = null;
+        if (parentTransactionIds != null) {
+            parentTransactionIds.clear();
+        }
+    }
+
     @Override
     public String toString() {
-        return "MessageBuffer [transactionId=" + transactionId + ", parentTransactionIds=" + parentTransactionIds
+        return "MessageBuffer [transactionId=" + transactionId + ", parentTransactionIds=" + getParentTransactionIds()
                 + ", originationTime=" + originationTime + ", receivedFromIoChannel=" + receivedFromIoChannel
                 + ", toHexString()=" + toHexString() + "]";
     }
@@ -0,0 +1,76 @@
+package com.fincher.iochannel;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Key extractors over the encoded bytes of a {@link MessageBuffer}, for use with
+ * {@link IoChannelIfc#setMessageKeyExtractor(Function)}. Each extractor returns
+ * null for a message too short to contain the key.
+ *
+ * @author Brian Fincher
+ *
+ */
+public final class MessageKeyExtractors {
+
+    private MessageKeyExtractors() {
+    }
+
+    /**
+     * Extract an ASCII string key, such as a symbol, from a fixed position. Trailing
+     * spaces and zero bytes are not part of the key.
+     * 
+     * @param offset The offset of the key within the message
+     * @param length The maximum length of the key
+     * @return the key extractor
+     */
+    public static Function<MessageBuffer, Object> asciiString(int offset, int length) {
+        Preconditions.checkArgument(offset >= 0, "offset cannot be negative");
+        Preconditions.checkArgument(length > 0, "length must be greater than zero");
+
+        return mb -> {
+            if (mb.getLength() < offset + length) {
+                return null;
+            }
+
+            int end = length;
+            while (end > 0 && isPadding(mb.getByte(offset + end - 1))) {
+                end--;
+            }
+
+            byte[] key = new byte[end];
+            for (int i = 0; i < end; i++) {
+                key[i] = mb.getByte(offset + i);
+            }
+            return new String(key, StandardCharsets.US_ASCII);
+        };
+    }
+
+    /**
+     * Extract a four byte big endian integer key from a fixed position.
+     * 
+     * @param offset The offset of the key within the message
+     * @return the key extractor
+     */
+    public static Function<MessageBuffer, Object> bigEndianInt(int offset) {
+        Preconditions.checkArgument(offset >= 0, "offset cannot be negative");
+
+        return mb -> {
+            if (mb.getLength() < offset + Integer.BYTES) {
+                return null;
+            }
+
+            int key = 0;
+            for (int i = 0; i < Integer.BYTES; i++) {
+                key = (key << 8) | (mb.getByte(offset + i) & 0xff);
+            }
+            return key;
+        };
+    }
+
+    private static boolean isPadding(byte b) {
+        return b == ' ' || b == 0;
+    }
+}
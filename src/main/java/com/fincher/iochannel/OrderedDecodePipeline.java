@@ -0,0 +1,300 @@
+package com.fincher.iochannel;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Decodes the messages received by a {@link TransformingIoChannel} on an
+ * executor so that a CPU heavy decoder is not limited to the receiving thread.
+ * Up to the parallelism messages are decoded at once. Each message is given a
+ * sequence number when it is received and a message that is decoded early waits
+ * in a reorder buffer until every message received before it has been
+ * delivered, so listeners see decoded messages in the order they were received.
+ *
+ * <p>
+ * A message is in flight from when it is received until it has been delivered.
+ * Receiving blocks while the maximum number of messages are in flight, which
+ * bounds the reorder buffer and pushes back on the receiving thread.
+ *
+ * <p>
+ * If the executor rejects a task, or the pipeline is closed, the messages
+ * waiting to be decoded are released and skipped so that delivery of the
+ * messages after them is not held up.
+ *
+ * @author Brian Fincher
+ *
+ * @param <T> The type of message received
+ * @param <R> The type of decoded message
+ */
+class OrderedDecodePipeline<T extends Exchangeable, R> {
+
+    private static final Logger LOG = Utilities.getInstance().getLogger(OrderedDecodePipeline.class);
+
+    /** The maximum number of messages decoded by a task before yielding. */
+    private static final int MAX_BATCH_SIZE = 64;
+
+    /** Takes the place of the result of a message that could not be decoded. */
+    private static final Object FAILED = new Object();
+
+    /** Decodes a single message. */
+    @FunctionalInterface
+    interface Decoder<T, R> {
+        R decode(T message) throws ChannelException;
+    }
+
+    /** A received message and its sequence number. */
+    private static final class Task<T> {
+        final long sequence;
+
+        final T message;
+
+        Task(long sequence, T message) {
+            this.sequence = sequence;
+            this.message = message;
+        }
+    }
+
+    private final String id;
+
+    private final Executor executor;
+
+    private final int parallelism;
+
+    private final Decoder<T, R> decoder;
+
+    private final Consumer<R> sink;
+
+    /** One permit for each message that may be in flight. */
+    private final Semaphore inFlight;
+
+    private final int maxInFlight;
+
+    /** Messages waiting to be decoded. */
+    private final Queue<Task<T>> pending = new ConcurrentLinkedQueue<>();
+
+    /** The number of tasks scheduled or running to decode messages. */
+    private final AtomicInteger numWorkers = new AtomicInteger();
+
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    /** Decoded messages waiting for earlier messages to be delivered, by sequence number. */
+    private final Map<Long, Object> reorderBuffer = new HashMap<>();
+
+    /** Is a thread delivering decoded messages. */
+    private final AtomicBoolean delivering = new AtomicBoolean(false);
+
+    /** The sequence number of the next message to deliver. */
+    private volatile long nextToDeliver;
+
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new OrderedDecodePipeline.
+     * 
+     * @param id The ID of the channel, used for logging
+     * @param executor The executor on which messages are decoded and delivered
+     * @param parallelism The maximum number of messages decoded at once
+     * @param maxInFlight The maximum number of messages received but not yet
+     *        delivered
+     * @param decoder Decodes each message
+     * @param sink Receives decoded messages in the order they were received
+     */
+    OrderedDecodePipeline(String id, Executor executor, int parallelism, int maxInFlight, Decoder<T, R> decoder,
+            Consumer<R> sink) {
+        Preconditions.checkNotNull(executor, "executor cannot be null");
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be greater than zero");
+        Preconditions.checkArgument(maxInFlight >= parallelism, "maxInFlight cannot be less than parallelism");
+        this.id = id;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.maxInFlight = maxInFlight;
+        this.decoder = decoder;
+        this.sink = sink;
+        inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Get the number of messages received but not yet delivered.
+     * 
+     * @return the number of messages in flight
+     */
+    int getNumInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    /**
+     * Queue a received message to be decoded, blocking while the maximum number of
+     * messages are in flight. The message is discarded if the pipeline is closed.
+     * 
+     * @param message The received message
+     */
+    void submit(T message) {
+        if (closed) {
+            return;
+        }
+
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("{} interrupted while waiting to decode, message discarded", id);
+            return;
+        }
+
+        if (closed) {
+            inFlight.release();
+            return;
+        }
+
+        message.retain();
+        pending.add(new Task<>(nextSequence.getAndIncrement(), message));
+        if (closed) {
+            // closed while queueing, so the close may have missed this message
+            failPending();
+            return;
+        }
+        startWorker();
+    }
+
+    /**
+     * Stop decoding. Messages waiting to be decoded are released without being
+     * delivered and later messages are discarded. Messages already being decoded
+     * are still delivered. The executor is not shut down.
+     */
+    void close() {
+        closed = true;
+        failPending();
+    }
+
+    private void startWorker() {
+        int workers = numWorkers.get();
+        while (workers < parallelism) {
+            if (numWorkers.compareAndSet(workers, workers + 1)) {
+                try {
+                    executor.execute(this::decodePending);
+                } catch (RejectedExecutionException e) {
+                    numWorkers.decrementAndGet();
+                    LOG.error(id + " decode rejected, discarding the messages waiting to be decoded", e);
+                    failPending();
+                }
+                return;
+            }
+            workers = numWorkers.get();
+        }
+    }
+
+    private void decodePending() {
+        try {
+            for (int i = 0; i < MAX_BATCH_SIZE; i++) {
+                Task<T> task = pending.poll();
+                if (task == null) {
+                    break;
+                }
+
+                decode(task);
+            }
+        } finally {
+            numWorkers.decrementAndGet();
+        }
+
+        // a message may have been queued after the last poll but before the
+        // decrement, while this task still counted against the parallelism
+        if (!pending.isEmpty()) {
+            startWorker();
+        }
+    }
+
+    private void decode(Task<T> task) {
+        Object result;
+        try {
+            result = decoder.decode(task.message);
+        } catch (ChannelException | RuntimeException e) {
+            LOG.error(e.getMessage(), e);
+            result = FAILED;
+        } finally {
+            task.message.release();
+        }
+
+        synchronized (reorderBuffer) {
+            reorderBuffer.put(task.sequence, result);
+        }
+        deliverReady();
+    }
+
+    /**
+     * Release the messages waiting to be decoded and mark them as failed, so that
+     * their permits are released and delivery moves past them.
+     */
+    private void failPending() {
+        boolean failed = false;
+        Task<T> task;
+        while ((task = pending.poll()) != null) {
+            task.message.release();
+            synchronized (reorderBuffer) {
+                reorderBuffer.put(task.sequence, FAILED);
+            }
+            failed = true;
+        }
+
+        if (failed) {
+            deliverReady();
+        }
+    }
+
+    /** Deliver decoded messages until the next message in sequence has not been decoded. */
+    private void deliverReady() {
+        while (delivering.compareAndSet(false, true)) {
+            try {
+                while (true) {
+                    Object result;
+                    synchronized (reorderBuffer) {
+                        if (!reorderBuffer.containsKey(nextToDeliver)) {
+                            break;
+                        }
+                        result = reorderBuffer.remove(nextToDeliver);
+                    }
+
+                    nextToDeliver++;
+                    deliver(result);
+                    inFlight.release();
+                }
+            } finally {
+                delivering.set(false);
+            }
+
+            // another thread may have added the next message after the last check
+            // but before delivering was cleared
+            synchronized (reorderBuffer) {
+                if (!reorderBuffer.containsKey(nextToDeliver)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deliver(Object result) {
+        if (result == FAILED) {
+            return;
+        }
+
+        try {
+            sink.accept((R) result);
+        } catch (RuntimeException e) {
+            LOG.error(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.fincher.iochannel;
+
+/**
+ * Determines what an {@link AsyncDispatcher} does with a message when a
+ * listener's queue is full.
+ * 
+ * @author Brian Fincher
+ *
+ */
+public enum OverflowPolicy {
+
+    /** Block the receiving thread until there is room in the queue. */
+    BLOCK,
+
+    /** Discard the oldest queued message to make room for the new message. */
+    DROP_OLDEST,
+
+    /** Discard the new message. */
+    DROP_NEWEST,
+
+    /** Give the new message to the dispatcher's overflow handler. */
+    CALLBACK
+}
@@ -0,0 +1,197 @@
+package com.fincher.iochannel;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A reference counted MessageBuffer that wraps a region of a ByteBuffer
+ * obtained from a {@link BufferPool} without copying it. The buffer is returned
+ * to the pool when the last reference is released.
+ *
+ * <p>
+ * Only the buffer is returned to the pool. A released message is only reused
+ * when the caller whose {@link #release()} returned true passes it to
+ * {@link #wrap(PooledMessageBuffer, BufferPool, ByteBuffer, int, int)}.
+ * Receive tasks reuse a message whenever they release its last reference, so a
+ * holder must not use or release a message again after releasing its own
+ * reference.
+ *
+ * <p>
+ * {@link #getBytes()} copies the bytes into a new array the first time it is
+ * called. Use {@link #getByteBuffer()} to read the bytes without a copy.
+ *
+ * @author Brian Fincher
+ *
+ */
+public class PooledMessageBuffer extends MessageBuffer {
+
+    private static final AtomicIntegerFieldUpdater<PooledMessageBuffer> REF_COUNT = AtomicIntegerFieldUpdater
+            .newUpdater(PooledMessageBuffer.class, "refCount");
+
+    private BufferPool pool;
+
+    /** The buffer obtained from the pool. */
+    private ByteBuffer buffer;
+
+    /** The offset of this message within buffer. */
+    private int offset;
+
+    /** The length of this message. */
+    private int length;
+
+    /** Updated through REF_COUNT so that each message is a single allocation. */
+    private volatile int refCount = 1;
+
+    /** A copy of the message bytes created on the first call to getBytes. */
+    private byte[] bytes;
+
+    private PooledMessageBuffer(BufferPool pool, ByteBuffer buffer, int offset, int length) {
+        this.pool = pool;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Wraps a region of a pooled buffer. The new message has a reference count of
+     * one and takes ownership of the buffer.
+     * 
+     * @param pool The pool to which the buffer will be returned
+     * @param buffer The buffer obtained from the pool
+     * @param offset The offset of the message within the buffer
+     * @param length The length of the message
+     * @return a new PooledMessageBuffer
+     */
+    public static PooledMessageBuffer wrap(BufferPool pool, ByteBuffer buffer, int offset, int length) {
+        Preconditions.checkPositionIndexes(offset, offset + length, buffer.capacity());
+        return new PooledMessageBuffer(pool, buffer, offset, length);
+    }
+
+    /**
+     * Wraps a region of a pooled buffer, reusing a released message rather than
+     * creating a new one. The message is given a new transaction ID and
+     * origination time, has a reference count of one and takes ownership of the
+     * buffer.
+     * 
+     * @param released A message whose last reference was released by the caller,
+     *        that is whose {@link #release()} returned true, or null to create a
+     *        new message
+     * @param pool The pool to which the buffer will be returned
+     * @param buffer The buffer obtained from the pool
+     * @param offset The offset of the message within the buffer
+     * @param length The length of the message
+     * @return the released message or a new PooledMessageBuffer
+     */
+    public static PooledMessageBuffer wrap(PooledMessageBuffer released, BufferPool pool, ByteBuffer buffer,
+            int offset, int length) {
+        if (released == null) {
+            return wrap(pool, buffer, offset, length);
+        }
+
+        Preconditions.checkPositionIndexes(offset, offset + length, buffer.capacity());
+        Preconditions.checkState(released.refCount == 0 && released.buffer == null,
+                "Only a released MessageBuffer can be reused");
+
+        released.recycle();
+        released.pool = pool;
+        released.buffer = buffer;
+        released.offset = offset;
+        released.length = length;
+
+        // publishes the fields above to threads that check the reference count
+        released.refCount = 1;
+        return released;
+    }
+
+    /**
+     * Copies bytes into a buffer obtained from the given pool.
+     * 
+     * @param pool The pool from which the buffer will be obtained
+     * @param bytes The encoded message bytes
+     * @param offset The offset into the bytes array
+     * @param length The number of bytes to copy
+     * @return a new PooledMessageBuffer with a reference count of one
+     */
+    public static PooledMessageBuffer copyOf(BufferPool pool, byte[] bytes, int offset, int length) {
+        ByteBuffer buffer = pool.acquire(length);
+        buffer.put(bytes, offset, length);
+        return new PooledMessageBuffer(pool, buffer, 0, length);
+    }
+
+    @Override
+    public synchronized byte[] getBytes() {
+        checkNotReleased();
+        if (bytes == null) {
+            bytes = new byte[length];
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(offset);
+            duplicate.get(bytes);
+        }
+        return bytes;
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public byte getByte(int index) {
+        checkNotReleased();
+        Preconditions.checkElementIndex(index, length);
+        return buffer.get(offset + index);
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer() {
+        checkNotReleased();
+        ByteBuffer duplicate = buffer.asReadOnlyBuffer();
+        duplicate.limit(offset + length).position(offset);
+        return duplicate.slice();
+    }
+
+    @Override
+    public PooledMessageBuffer retain() {
+        int count;
+        do {
+            count = refCount;
+            Preconditions.checkState(count > 0, "Cannot retain a released MessageBuffer");
+        } while (!REF_COUNT.compareAndSet(this, count, count + 1));
+
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        int count = REF_COUNT.decrementAndGet(this);
+        if (count == 0) {
+            ByteBuffer releasedBuffer = buffer;
+            buffer = null;
+            bytes = null;
+            pool.release(releasedBuffer);
+            return true;
+        }
+
+        if (count < 0) {
+            REF_COUNT.incrementAndGet(this);
+            throw new IllegalStateException("MessageBuffer has already been released");
+        }
+
+        return false;
+    }
+
+    /**
+     * Get the number of outstanding references to this message.
+     * 
+     * @return the number of outstanding references to this message
+     */
+    public int getRefCount() {
+        return refCount;
+    }
+
+    private void checkNotReleased() {
+        Preconditions.checkState(refCount > 0, "MessageBuffer has been released");
+    }
+}
@@ -4,6 +4,8 @@ import java.net.InetSocketAddress;
 
 import org.slf4j.Logger;
 
+import com.google.common.base.Preconditions;
+
 /**
  * An IO Thread that is implemented for network socket communication.
  * 
@@ -15,6 +17,12 @@ public abstract class SocketIoChannel extends IoChannel<MessageBuffer> {
     /** The local network address and port to which this socket will be bound. */
     private final InetSocketAddress localAddress;
 
+    /** If not null, received messages are stored in buffers from this pool. */
+    private BufferPool bufferPool;
+
+    /** Starts the long lived tasks used by this channel. */
+    private TaskExecutor taskExecutor = TaskExecutor.platformThreads();
+
     /**
      * Constructs a new SocketIoChannel.
      * 
@@ -44,6 +52,51 @@ public abstract class SocketIoChannel extends IoChannel<MessageBuffer> {
         return localAddress;
     }
 
+    /**
+     * Sets the pool from which received messages will obtain their storage. When
+     * set, received messages are {@link PooledMessageBuffer}s that are released as
+     * soon as all listeners have been notified, so a listener that holds on to a
+     * message must {@link MessageBuffer#retain()} it and later release it.
+     * 
+     * @param bufferPool The buffer pool or null to allocate a new array for each
+     *        received message
+     */
+    public void setBufferPool(BufferPool bufferPool) {
+        Preconditions.checkState(getState() == ChannelState.INITIAL, "The state must be INITIAL for setBufferPool");
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Gets the pool from which received messages obtain their storage.
+     * 
+     * @return the buffer pool or null if received messages are not pooled
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Sets the executor used to start the connect and receive tasks of this
+     * channel. Defaults to {@link TaskExecutor#platformThreads()}.
+     * 
+     * @param taskExecutor The task executor
+     */
+    public void setTaskExecutor(TaskExecutor taskExecutor) {
+        Preconditions.checkState(getState() == ChannelState.INITIAL, "The state must be INITIAL for setTaskExecutor");
+        Preconditions.checkNotNull(taskExecutor, "taskExecutor cannot be null");
+        this.taskExecutor = taskExecutor;
+    }
+
+    /**
+     * Gets the executor used to start the connect and receive tasks of this
+     * channel.
+     * 
+     * @return the task executor
+     */
+    public TaskExecutor getTaskExecutor() {
+        return taskExecutor;
+    }
+
     /**
      * Get the type of data processed by this IoChannel.
      * 
@@ -64,6 +117,9 @@ public abstract class SocketIoChannel extends IoChannel<MessageBuffer> {
     @Override
     protected void messageReceived(MessageBuffer mb, Logger logger, String logString) {
         mb.setReceivedFromIoChannelId(getId());
-        super.messageReceived(mb, logger, logString + " size = " + mb.getBytes().length);
+        if (logger.isDebugEnabled()) {
+            logString = logString + " size = " + mb.getLength();
+        }
+        super.messageReceived(mb, logger, logString);
     }
 }
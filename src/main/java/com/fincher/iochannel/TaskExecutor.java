@@ -0,0 +1,80 @@
+package com.fincher.iochannel;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.fincher.thread.CallableTask;
+import com.fincher.thread.RunnableTask;
+
+/**
+ * Starts the long lived tasks used by a channel, such as connect and receive
+ * loops. A task is invoked repeatedly until it no longer wishes to continue
+ * execution or the returned future is cancelled.
+ * 
+ * @author Brian Fincher
+ *
+ */
+public interface TaskExecutor {
+
+    /**
+     * Start a task.
+     * 
+     * @param name The name of the task
+     * @param task The task
+     * @return a future that may be cancelled to terminate the task
+     */
+    Future<Void> start(String name, RunnableTask task);
+
+    /**
+     * Start a task.
+     * 
+     * @param <T> The type of result produced by the task
+     * @param name The name of the task
+     * @param task The task
+     * @return a future that may be cancelled to terminate the task. Its result is
+     *         the result of the last invocation of the task
+     */
+    <T> Future<T> start(String name, CallableTask<T> task);
+
+    /**
+     * Get an executor that starts each task on a dedicated platform thread. This is
+     * the default.
+     * 
+     * @return an executor that starts each task on a dedicated platform thread
+     */
+    static TaskExecutor platformThreads() {
+        return LongLivedTaskExecutor.INSTANCE;
+    }
+
+    /**
+     * Get an executor that starts each task on a new thread created by the given
+     * factory.
+     * 
+     * @param threadFactory Used to create a thread for each task
+     * @return an executor that starts each task on a new thread created by the
+     *         given factory
+     */
+    static TaskExecutor fromThreadFactory(ThreadFactory threadFactory) {
+        return new ThreadFactoryTaskExecutor(threadFactory);
+    }
+
+    /**
+     * Get an executor that starts each task on a new virtual thread so that
+     * blocking channels can service many thousands of connections.
+     * 
+     * @return an executor that starts each task on a new virtual thread
+     * @throws UnsupportedOperationException If the runtime is older than Java 21
+     */
+    static TaskExecutor virtualThreads() {
+        return new ThreadFactoryTaskExecutor(VirtualThreads.newThreadFactory());
+    }
+
+    /**
+     * Does the runtime support virtual threads.
+     * 
+     * @return true if {@link #virtualThreads()} may be used
+     */
+    static boolean isVirtualThreadsSupported() {
+        return VirtualThreads.isSupported();
+    }
+}
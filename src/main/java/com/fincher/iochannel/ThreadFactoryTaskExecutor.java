@@ -0,0 +1,81 @@
+package com.fincher.iochannel;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+
+import com.fincher.thread.CallableTask;
+import com.fincher.thread.RunnableTask;
+import com.google.common.base.Preconditions;
+
+/**
+ * Starts each task on a new thread created by a {@link ThreadFactory}.
+ * 
+ * @author Brian Fincher
+ *
+ */
+final class ThreadFactoryTaskExecutor implements TaskExecutor {
+
+    private static final Logger LOG = Utilities.getInstance().getLogger(ThreadFactoryTaskExecutor.class);
+
+    private final ThreadFactory threadFactory;
+
+    ThreadFactoryTaskExecutor(ThreadFactory threadFactory) {
+        Preconditions.checkNotNull(threadFactory, "threadFactory cannot be null");
+        this.threadFactory = threadFactory;
+    }
+
+    @Override
+    public Future<Void> start(String name, RunnableTask task) {
+        return start(name, new CallableTask<Void>() {
+            @Override
+            public Void call() {
+                task.run();
+                return null;
+            }
+
+            @Override
+            public boolean continueExecution() {
+                return task.continueExecution();
+            }
+
+            @Override
+            public void terminate() {
+                task.terminate();
+            }
+        });
+    }
+
+    @Override
+    public <T> Future<T> start(String name, CallableTask<T> task) {
+        FutureTask<T> future = new FutureTask<>(() -> execute(name, task)) {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                task.terminate();
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+
+        Thread thread = threadFactory.newThread(future);
+        thread.setName(name);
+        thread.setDaemon(true);
+        thread.start();
+        return future;
+    }
+
+    private static <T> T execute(String name, CallableTask<T> task) {
+        T result = null;
+        while (task.continueExecution() && !Thread.currentThread().isInterrupted()) {
+            try {
+                result = task.call();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                LOG.error(name + " " + e.getMessage(), e);
+            }
+        }
+        return result;
+    }
+}
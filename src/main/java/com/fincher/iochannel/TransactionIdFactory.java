@@ -2,22 +2,48 @@ package com.fincher.iochannel;
 
 import java.util.concurrent.atomic.AtomicLong;
 
+import com.google.common.base.Preconditions;
+
 /**
- * Used to generate unique transaction IDs.
- * 
+ * Used to generate unique transaction IDs. IDs wrap around from the maximum
+ * value to the minimum value.
+ *
+ * <p>
+ * By default every ID is taken from a single shared counter. Optionally each
+ * thread can lease a block of IDs from the shared counter and assign IDs from
+ * its block without touching shared state. In that mode IDs are unique but are
+ * not assigned in increasing order across threads.
+ *
  * @author Brian Fincher
  *
  */
 class TransactionIdFactory {
 
     /** The minimum value for a transaction ID. */
-    private static long minTID = 0;
+    private static volatile long minTID = 0;
 
     /** The maximum value for a transaction ID. */
-    private static long maxTID = Long.MAX_VALUE;
+    private static volatile long maxTID = Long.MAX_VALUE;
+
+    /** The number of IDs leased to a thread at a time. 1 disables leasing */
+    private static volatile int blockSize = 1;
+
+    /** Incremented by init so that threads discard blocks leased before it. */
+    private static volatile int generation = 0;
 
     /** The value of the next TID to be assigned. */
-    private static AtomicLong nextTID = new AtomicLong(minTID);
+    private static final AtomicLong nextTID = new AtomicLong(minTID);
+
+    /** The block of IDs leased by the current thread. */
+    private static final ThreadLocal<Block> blocks = ThreadLocal.withInitial(Block::new);
+
+    /** A range of IDs leased by a single thread. */
+    private static final class Block {
+        private long next;
+        private long last;
+        private int generation = -1;
+        private boolean exhausted = true;
+    }
 
     private TransactionIdFactory() {
     }
@@ -29,9 +55,33 @@ class TransactionIdFactory {
      * @param maxTransactionId The maximum value for a transaction ID
      */
     static void init(long minTransactionId, long maxTransactionId) {
+        init(minTransactionId, maxTransactionId, 1);
+    }
+
+    /**
+     * Initialize the TransactionIdFactory.
+     * 
+     * @param minTransactionId The minimum value for a transaction ID
+     * @param maxTransactionId The maximum value for a transaction ID
+     * @param idBlockSize The number of IDs leased to each thread at a time. 1
+     *        disables leasing. Cannot exceed the number of IDs in the range
+     */
+    static synchronized void init(long minTransactionId, long maxTransactionId, int idBlockSize) {
+        Preconditions.checkArgument(minTransactionId <= maxTransactionId,
+                "minTransactionId must not be greater than maxTransactionId");
+        Preconditions.checkArgument(idBlockSize > 0, "idBlockSize must be greater than zero");
+
+        // a span that overflows is larger than any block size. Otherwise every lease
+        // of a block larger than the range would start at the minimum ID
+        long span = maxTransactionId - minTransactionId;
+        Preconditions.checkArgument(span < 0 || idBlockSize - 1 <= span,
+                "idBlockSize %s exceeds the number of transaction IDs", idBlockSize);
+
         minTID = minTransactionId;
         maxTID = maxTransactionId;
+        blockSize = idBlockSize;
         nextTID.set(minTID);
+        generation++;
     }
 
     /**
@@ -40,14 +90,51 @@ class TransactionIdFactory {
      * @return the next Transaction ID
      */
     static long getNextTid() {
-        long returnValue = nextTID.get();
-        if (returnValue == maxTID) {
-            nextTID.set(minTID);
-        } else {
-            nextTID.incrementAndGet();
+        if (blockSize == 1) {
+            return lease(1);
+        }
+
+        Block block = blocks.get();
+        if (block.exhausted || block.generation != generation) {
+            block.generation = generation;
+            block.next = lease(blockSize);
+            block.last = Math.min(block.next + (blockSize - 1), maxTID);
+
+            // guard against overflow when the block ends at Long.MAX_VALUE
+            if (block.last < block.next) {
+                block.last = maxTID;
+            }
         }
 
+        long returnValue = block.next;
+        block.exhausted = returnValue == block.last;
+        if (!block.exhausted) {
+            block.next++;
+        }
         return returnValue;
     }
 
+    /**
+     * Reserve up to numIds consecutive IDs from the shared counter. Fewer IDs are
+     * reserved if the maximum ID is reached.
+     * 
+     * @param numIds The number of IDs to reserve
+     * @return The first ID reserved
+     */
+    private static long lease(int numIds) {
+        long max = maxTID;
+        long current;
+        long next;
+        do {
+            current = nextTID.get();
+            if (current > max - numIds) {
+                next = minTID;
+            } else {
+                next = current + numIds;
+            }
+        } while (!nextTID.compareAndSet(current, next));
+
+        return current;
+    }
+
 }
@@ -1,10 +1,13 @@
 package com.fincher.iochannel;
 
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
 import org.slf4j.Logger;
 
+import com.google.common.base.Preconditions;
+
 /**
  * An IO Channel that transforms data by encoding U typed data to T before
  * sending and transforming T data to U when receiving
@@ -24,6 +27,9 @@ public abstract class TransformingIoChannel<T extends Exchangeable, S, R>
     private final IoChannelIfc<T> delegate;
     private final String id;
 
+    /** If not null, received messages are decoded in parallel by this pipeline. */
+    private volatile OrderedDecodePipeline<T, R> decodePipeline;
+
     /**
      * Constructs a new TransformingIOChannel
      * 
@@ -46,6 +52,39 @@ public abstract class TransformingIoChannel<T extends Exchangeable, S, R>
         return delegate;
     }
 
+    /**
+     * Decode received messages on an executor rather than on the thread that
+     * received them, so that a CPU heavy decoder may use more than one core.
+     * Decoded messages are still delivered to transformed message listeners in the
+     * order they were received, on a thread of the executor. Receiving blocks
+     * while maxInFlight messages have been received but not yet delivered.
+     * 
+     * @param executor The executor on which messages are decoded and delivered
+     * @param parallelism The maximum number of messages decoded at once
+     * @param maxInFlight The maximum number of messages received but not yet
+     *        delivered. Must be at least the parallelism
+     */
+    public void setParallelDecoding(Executor executor, int parallelism, int maxInFlight) {
+        Preconditions.checkState(getState() == ChannelState.INITIAL,
+                "The state must be INITIAL for setParallelDecoding");
+        Preconditions.checkState(decodePipeline == null, "Parallel decoding has already been set");
+
+        decodePipeline = new OrderedDecodePipeline<>(id, executor, parallelism, maxInFlight, this::decode,
+                this::deliver);
+    }
+
+    /**
+     * Get the number of messages received but not yet delivered when decoding in
+     * parallel.
+     * 
+     * @return the number of messages in flight or zero if messages are decoded on
+     *         the receiving thread
+     */
+    public int getNumDecodesInFlight() {
+        OrderedDecodePipeline<T, R> pipeline = decodePipeline;
+        return pipeline == null ? 0 : pipeline.getNumInFlight();
+    }
+
     @Override
     public void addTransformedMessageListener(Consumer<R> listener) {
         listeners.addListener(listener);
@@ -71,12 +110,37 @@ public abstract class TransformingIoChannel<T extends Exchangeable, S, R>
     protected abstract T encode(S msg) throws ChannelException;
 
     protected void handleMessage(T msg) {
+        OrderedDecodePipeline<T, R> pipeline = decodePipeline;
+        if (pipeline != null) {
+            pipeline.submit(msg);
+            return;
+        }
+
         try {
-            R decoded = decode(msg);
-            listeners.getListenersThatMatch(decoded).forEach(listener -> listener.accept(decoded));
+            deliver(decode(msg));
         } catch (ChannelException e) {
             LOG.error(e.getMessage(), e);
         }
     }
 
+    /**
+     * Close the delegate and then stop parallel decoding, releasing the messages
+     * that are waiting to be decoded.
+     */
+    @Override
+    public void close() throws ChannelException {
+        try {
+            DelegatingIoChannelIfc.super.close();
+        } finally {
+            OrderedDecodePipeline<T, R> pipeline = decodePipeline;
+            if (pipeline != null) {
+                pipeline.close();
+            }
+        }
+    }
+
+    private void deliver(R decoded) {
+        listeners.forEachListenerThatMatches(decoded, Consumer::accept);
+    }
+
 }
@@ -1,8 +1,6 @@
 package com.fincher.iochannel;
 
-import java.time.Clock;
 import java.time.Duration;
-import java.time.Instant;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,8 +10,6 @@ public class Utilities {
 
     private static Utilities instance = new Utilities();
 
-    private static final Clock clock = Clock.systemDefaultZone();
-
     /**
      * Get the singleton utilities instance
      * 
@@ -46,19 +42,21 @@ public class Utilities {
     }
 
     /**
-     * Sleep for the given duration
+     * Sleep for the given duration. The synchronizer's monitor is released while
+     * waiting, so sleeping does not block other threads that synchronize on it.
+     * Returns immediately if the duration is zero or negative.
      * 
      * @param synchronizer The object to synchronize on for the sleep (wait)
      * @param duration The duration to sleep
      * @throws InterruptedException If interrupted while sleeping
      */
     public static void sleep(final Object synchronizer, Duration duration) throws InterruptedException {
-        Instant sleepUntil = clock.instant().plus(duration);
+        long remaining = duration.toNanos();
+        long sleepUntil = System.nanoTime() + remaining;
         synchronized (synchronizer) { // NOSONAR
-            Duration sleepTime = Duration.between(Instant.now(), sleepUntil);
-            while (sleepTime.isNegative() || sleepTime.isZero()) {
-                synchronizer.wait(sleepTime.toSeconds(), sleepTime.getNano());
-                sleepTime = Duration.between(Instant.now(), sleepUntil);
+            while (remaining > 0) {
+                synchronizer.wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+                remaining = sleepUntil - System.nanoTime();
             }
         }
     }
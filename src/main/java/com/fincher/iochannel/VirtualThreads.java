@@ -0,0 +1,24 @@
+package com.fincher.iochannel;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads. This version is used on runtimes older than Java
+ * 21. The Java 21 version is in the versioned section of the multi-release jar.
+ * 
+ * @author Brian Fincher
+ *
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    static boolean isSupported() {
+        return false;
+    }
+
+    static ThreadFactory newThreadFactory() {
+        throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+    }
+}
@@ -70,9 +70,13 @@ abstract class AbstractReceiveTask implements RunnableTask {
 
     protected void messageReceived(byte[] buf, int offset, int length) {
         if (!isTerminated()) {
-            MessageBuffer mb = new MessageBuffer(buf, offset, length);
-            mb.setReceivedFromIoChannelId(getId());
-            getParent().messageReceived(mb, LOGGER, "");
+            MessageBuffer mb = MessageBuffer.copyOf(getParent().getBufferPool(), buf, offset, length);
+            try {
+                mb.setReceivedFromIoChannelId(getId());
+                getParent().messageReceived(mb, LOGGER, "");
+            } finally {
+                mb.release();
+            }
         }
     }
 
@@ -1,6 +1,7 @@
 package com.fincher.iochannel.tcp;
 
 import java.util.Collection;
+import java.util.List;
 
 import com.fincher.iochannel.ChannelException;
 import com.fincher.iochannel.DelegatingIoChannelIfc;
@@ -51,4 +52,29 @@ public interface DelegatingTcpChannel extends TcpChannelIfc, DelegatingIoChannel
         getDelegate().send(mb, channelId);
     }
 
+    @Override
+    default void send(StreamIo streamIo, MessageBuffer mb) throws ChannelException {
+        getDelegate().send(streamIo, mb);
+    }
+
+    @Override
+    default void send(StreamIo streamIo, MessageBuffer mb, String channelId) throws ChannelException {
+        getDelegate().send(streamIo, mb, channelId);
+    }
+
+    @Override
+    default void send(List<MessageBuffer> messages) throws ChannelException {
+        getDelegate().send(messages);
+    }
+
+    @Override
+    default void send(StreamIo streamIo, List<MessageBuffer> messages) throws ChannelException {
+        getDelegate().send(streamIo, messages);
+    }
+
+    @Override
+    default void flush() throws ChannelException {
+        getDelegate().flush();
+    }
+
 }
@@ -0,0 +1,255 @@
+package com.fincher.iochannel.tcp;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Finds the end of each message with a delimiter, such as a new line, and
+ * optionally expects each message to begin with a start byte, such as STX. The
+ * start byte and delimiter are not part of the message. The delimiter is found
+ * by examining eight bytes at a time.
+ *
+ * @author Brian Fincher
+ *
+ */
+public class DelimiterStreamIo implements StreamIo {
+
+    /** The start of text byte. */
+    public static final byte STX = 0x02;
+
+    /** The end of text byte. */
+    public static final byte ETX = 0x03;
+
+    /** The default largest frame, including the start byte and delimiter. */
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 1024 * 1024;
+
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+
+    private static final long ONES = 0x0101010101010101L;
+
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private final boolean hasStartByte;
+
+    private final byte startByte;
+
+    private final byte[] delimiter;
+
+    private final int maxFrameLength;
+
+    /**
+     * Constructs a new DelimiterStreamIo.
+     * 
+     * @param hasStartByte Does each message begin with startByte
+     * @param startByte The byte that begins each message. Ignored if hasStartByte
+     *        is false
+     * @param delimiter The bytes that end each message
+     * @param maxFrameLength The largest frame, including the start byte and
+     *        delimiter. A stream without a delimiter within this many bytes is
+     *        invalid
+     */
+    public DelimiterStreamIo(boolean hasStartByte, byte startByte, byte[] delimiter, int maxFrameLength) {
+        Preconditions.checkArgument(delimiter.length > 0, "delimiter cannot be empty");
+        Preconditions.checkArgument(maxFrameLength > delimiter.length, "maxFrameLength is too small");
+
+        this.hasStartByte = hasStartByte;
+        this.startByte = startByte;
+        this.delimiter = delimiter.clone();
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    /**
+     * Constructs a new DelimiterStreamIo without a start byte.
+     * 
+     * @param delimiter The bytes that end each message
+     */
+    public DelimiterStreamIo(byte... delimiter) {
+        this(false, (byte) 0, delimiter, DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    /**
+     * Creates a StreamIo for messages that each end with a new line.
+     * 
+     * @return a new DelimiterStreamIo
+     */
+    public static DelimiterStreamIo newLine() {
+        return new DelimiterStreamIo((byte) '\n');
+    }
+
+    /**
+     * Creates a StreamIo for messages that each begin with STX and end with ETX.
+     * 
+     * @return a new DelimiterStreamIo
+     */
+    public static DelimiterStreamIo stxEtx() {
+        return new DelimiterStreamIo(true, STX, new byte[] { ETX }, DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    /**
+     * Not supported because messages do not have a length header.
+     * 
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public int getHeaderLength() {
+        throw new UnsupportedOperationException("DelimiterStreamIo does not have a length header");
+    }
+
+    /**
+     * Not supported because messages do not have a length header.
+     * 
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public int getMessageLength(byte[] header) {
+        throw new UnsupportedOperationException("DelimiterStreamIo does not have a length header");
+    }
+
+    /**
+     * The start byte and delimiter are never part of the message.
+     * 
+     * @return false
+     */
+    @Override
+    public boolean headerPartOfMessage() {
+        return false;
+    }
+
+    @Override
+    public boolean hasFixedLengthHeader() {
+        return false;
+    }
+
+    @Override
+    public boolean decodeFrame(byte[] buf, int offset, int available, Frame frame) throws IOException {
+        int messageOffset = offset;
+        if (hasStartByte) {
+            if (available == 0) {
+                return false;
+            }
+            if (buf[offset] != startByte) {
+                throw new IOException("Expected a start byte but found " + buf[offset]);
+            }
+            messageOffset++;
+        }
+
+        int end = offset + available;
+        int from = Math.max(messageOffset, offset + frame.getScanned());
+        int delimiterIndex = indexOf(buf, from, end);
+        if (delimiterIndex < 0) {
+            if (available >= maxFrameLength) {
+                throw new IOException("No delimiter found within " + maxFrameLength + " bytes");
+            }
+
+            // a partial delimiter at the end must be examined again
+            frame.setScanned(Math.max(messageOffset - offset, available - delimiter.length + 1));
+            return false;
+        }
+
+        int frameLength = delimiterIndex + delimiter.length - offset;
+        if (frameLength > maxFrameLength) {
+            throw new IOException("Frame length " + frameLength + " is larger than " + maxFrameLength);
+        }
+
+        frame.set(messageOffset, delimiterIndex - messageOffset, frameLength);
+        return true;
+    }
+
+    /** Find the first occurrence of the delimiter starting between from and end. */
+    private int indexOf(byte[] buf, int from, int end) {
+        byte first = delimiter[0];
+        int pos = from;
+        while (true) {
+            pos = indexOf(buf, pos, end, first);
+            if (pos < 0 || end - pos < delimiter.length) {
+                return -1;
+            }
+
+            boolean matches = true;
+            for (int i = 1; i < delimiter.length && matches; i++) {
+                matches = buf[pos + i] == delimiter[i];
+            }
+            if (matches) {
+                return pos;
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * Find the first occurrence of the delimiter between from and end using
+     * absolute reads, for buffers without an accessible array.
+     */
+    private int indexOf(ByteBuffer buf, int from, int end) {
+        for (int pos = from; pos <= end - delimiter.length; pos++) {
+            boolean matches = true;
+            for (int i = 0; i < delimiter.length && matches; i++) {
+                matches = buf.get(pos + i) == delimiter[i];
+            }
+            if (matches) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first occurrence of a byte, examining eight bytes at a time.
+     * 
+     * @param buf The bytes to search
+     * @param from The index of the first byte to examine
+     * @param end The index after the last byte to examine
+     * @param b The byte to find
+     * @return the index of the byte or -1 if not found
+     */
+    static int indexOf(byte[] buf, int from, int end, byte b) {
+        long pattern = (b & 0xffL) * ONES;
+        int pos = from;
+        for (; pos <= end - Long.BYTES; pos += Long.BYTES) {
+            // each byte equal to b becomes zero. The lowest zero byte sets its high bit
+            // in found; bytes above it may also be set by the borrow but are ignored
+            long word = (long) LONG_VIEW.get(buf, pos) ^ pattern;
+            long found = (word - ONES) & ~word & HIGH_BITS;
+            if (found != 0) {
+                return pos + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+
+        for (; pos < end; pos++) {
+            if (buf[pos] == b) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Frames a message with the start byte, if any, and the delimiter.
+     * 
+     * @throws IllegalArgumentException If the message contains the delimiter
+     */
+    @Override
+    public ByteBuffer[] encode(ByteBuffer payload) {
+        int delimiterIndex;
+        if (payload.hasArray()) {
+            int start = payload.arrayOffset() + payload.position();
+            delimiterIndex = indexOf(payload.array(), start, start + payload.remaining());
+        } else {
+            // read only and direct buffers do not expose an array
+            delimiterIndex = indexOf(payload, payload.position(), payload.limit());
+        }
+        Preconditions.checkArgument(delimiterIndex < 0, "The message contains the delimiter");
+
+        ByteBuffer trailer = ByteBuffer.wrap(delimiter).asReadOnlyBuffer();
+        if (hasStartByte) {
+            return new ByteBuffer[] { ByteBuffer.wrap(new byte[] { startByte }), payload, trailer };
+        }
+        return new ByteBuffer[] { payload, trailer };
+    }
+}
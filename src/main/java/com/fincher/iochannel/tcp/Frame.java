@@ -0,0 +1,106 @@
+package com.fincher.iochannel.tcp;
+
+/**
+ * The location of a message found by {@link StreamIo#decodeFrame}. A single
+ * instance is reused for every frame read from a stream so that decoding does
+ * not allocate.
+ *
+ * @author Brian Fincher
+ *
+ */
+public final class Frame {
+
+    private int messageOffset;
+
+    private int messageLength;
+
+    private int frameLength;
+
+    private int scanned;
+
+    private byte[] header;
+
+    /**
+     * Set the location of the message.
+     * 
+     * @param messageOffset The offset of the message within the buffer
+     * @param messageLength The length of the message
+     * @param frameLength The number of bytes consumed by the frame, including any
+     *        header and delimiter
+     */
+    public void set(int messageOffset, int messageLength, int frameLength) {
+        this.messageOffset = messageOffset;
+        this.messageLength = messageLength;
+        this.frameLength = frameLength;
+    }
+
+    /**
+     * Get the offset of the message within the buffer.
+     * 
+     * @return the offset of the message
+     */
+    public int getMessageOffset() {
+        return messageOffset;
+    }
+
+    /**
+     * Get the length of the message.
+     * 
+     * @return the length of the message
+     */
+    public int getMessageLength() {
+        return messageLength;
+    }
+
+    /**
+     * Get the number of bytes consumed by the frame. When a frame is incomplete
+     * this is the number of bytes required, or zero if that is not yet known.
+     * 
+     * @return the number of bytes consumed by the frame
+     */
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    /**
+     * Set the number of bytes at the start of an incomplete frame that have already
+     * been examined, so that a StreamIo that scans for a delimiter can resume
+     * where it left off when more bytes arrive.
+     * 
+     * @param scanned The number of bytes examined
+     */
+    public void setScanned(int scanned) {
+        this.scanned = scanned;
+    }
+
+    /**
+     * Get the number of bytes at the start of the frame that have already been
+     * examined.
+     * 
+     * @return the number of bytes examined, zero for a new frame
+     */
+    public int getScanned() {
+        return scanned;
+    }
+
+    /**
+     * Get an array in which a fixed length header can be copied.
+     * 
+     * @param length The length of the header
+     * @return an array of the given length that is reused for each frame
+     */
+    byte[] getHeader(int length) {
+        if (header == null || header.length != length) {
+            header = new byte[length];
+        }
+        return header;
+    }
+
+    /** Prepare for the next frame. */
+    void reset() {
+        messageOffset = 0;
+        messageLength = 0;
+        frameLength = 0;
+        scanned = 0;
+    }
+}
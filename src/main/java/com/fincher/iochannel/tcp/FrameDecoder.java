@@ -0,0 +1,273 @@
+package com.fincher.iochannel.tcp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Accumulates bytes read from a TCP stream and splits them into messages using
+ * a {@link StreamIo}. Partial messages are retained until the remainder of the
+ * message has been read. The buffer grows, shrinks and hands large messages to
+ * a pooled buffer as directed by a {@link ReceiveBufferPolicy}.
+ *
+ * @author Brian Fincher
+ *
+ */
+class FrameDecoder {
+
+    /** Notified for each complete message found in the stream. */
+    @FunctionalInterface
+    interface FrameHandler {
+
+        /**
+         * Called when a complete message has been decoded. The bytes are only valid
+         * for the duration of this call.
+         * 
+         * @param buf The buffer containing the message
+         * @param offset The offset of the message within buf
+         * @param length The length of the message
+         */
+        void frameDecoded(byte[] buf, int offset, int length);
+    }
+
+    private final StreamIo streamIo;
+
+    private final ReceiveBufferPolicy policy;
+
+    /** The size to which the buffer shrinks after growing. */
+    private final int initialCapacity;
+
+    /** The location of the frame being decoded. */
+    private final Frame frame = new Frame();
+
+    /** The bytes that have been read from the stream. */
+    private byte[] buf;
+
+    /** A ByteBuffer view of buf used when reading from a channel. */
+    private ByteBuffer byteBuffer;
+
+    /** The index of the first byte that has not yet been decoded. */
+    private int start;
+
+    /** The index after the last byte read from the stream. */
+    private int end;
+
+    /** The number of consecutive frames that fit within the initial capacity. */
+    private int smallFrames;
+
+    /** A buffer from the large frame pool holding a single large frame, or null. */
+    private ByteBuffer slab;
+
+    /** The offset of the message within slab. */
+    private int slabMessageOffset;
+
+    /** The length of the message within slab. */
+    private int slabMessageLength;
+
+    /**
+     * Constructs a new FrameDecoder.
+     * 
+     * @param streamIo Used to determine the length of each message
+     * @param initialCapacity The initial size of the receive buffer
+     */
+    FrameDecoder(StreamIo streamIo, int initialCapacity) {
+        this(streamIo, initialCapacity, new ReceiveBufferPolicy());
+    }
+
+    /**
+     * Constructs a new FrameDecoder.
+     * 
+     * @param streamIo Used to determine the length of each message
+     * @param initialCapacity The initial size of the receive buffer
+     * @param policy Determines how the receive buffer grows and shrinks
+     */
+    FrameDecoder(StreamIo streamIo, int initialCapacity, ReceiveBufferPolicy policy) {
+        this.streamIo = streamIo;
+        this.policy = policy;
+        int headerLength = streamIo.hasFixedLengthHeader() ? streamIo.getHeaderLength() : 1;
+        this.initialCapacity = Math.max(initialCapacity, headerLength);
+        buf = new byte[this.initialCapacity];
+        byteBuffer = ByteBuffer.wrap(buf);
+    }
+
+    /**
+     * Read as many bytes as are available from the given channel.
+     * 
+     * @param channel The channel from which to read
+     * @return The number of bytes read or -1 if the end of stream was reached
+     * @throws IOException If an exception occurs while reading
+     */
+    int read(ReadableByteChannel channel) throws IOException {
+        if (slab != null) {
+            return channel.read(slab);
+        }
+
+        ensureWritable(1);
+        byteBuffer.limit(buf.length).position(end);
+        int bytesRead = channel.read(byteBuffer);
+        if (bytesRead > 0) {
+            end += bytesRead;
+        }
+        return bytesRead;
+    }
+
+    /**
+     * Read as many bytes as are available from the given stream, blocking until at
+     * least one byte is available.
+     * 
+     * @param input The stream from which to read
+     * @return The number of bytes read or -1 if the end of stream was reached
+     * @throws IOException If an exception occurs while reading
+     */
+    int read(InputStream input) throws IOException {
+        if (slab != null) {
+            int bytesRead = input.read(slab.array(), slab.arrayOffset() + slab.position(), slab.remaining());
+            if (bytesRead > 0) {
+                slab.position(slab.position() + bytesRead);
+            }
+            return bytesRead;
+        }
+
+        ensureWritable(1);
+        int bytesRead = input.read(buf, end, buf.length - end);
+        if (bytesRead > 0) {
+            end += bytesRead;
+        }
+        return bytesRead;
+    }
+
+    /**
+     * Decode all complete messages that have been read.
+     * 
+     * @param handler Notified of each decoded message
+     * @return The number of messages decoded
+     * @throws IOException If the StreamIo is unable to determine a message length
+     *         or a message is larger than the maximum frame size
+     */
+    int decode(FrameHandler handler) throws IOException {
+        if (slab != null) {
+            if (slab.hasRemaining()) {
+                return 0;
+            }
+
+            try {
+                handler.frameDecoded(slab.array(), slab.arrayOffset() + slabMessageOffset, slabMessageLength);
+            } finally {
+                releaseSlab();
+            }
+            smallFrames = 0;
+            return 1;
+        }
+
+        int numFrames = 0;
+        while (end > start) {
+            boolean complete = streamIo.decodeFrame(buf, start, end - start, frame);
+            int frameLength = frame.getFrameLength();
+            policy.checkFrameLength(frameLength);
+
+            if (!complete) {
+                if (policy.usePool(frameLength, initialCapacity)) {
+                    moveToSlab(frameLength);
+                } else if (frameLength > 0) {
+                    ensureCapacity(frameLength);
+                }
+                break;
+            }
+
+            handler.frameDecoded(buf, frame.getMessageOffset(), frame.getMessageLength());
+            start += frameLength;
+            frame.reset();
+            numFrames++;
+            smallFrames = frameLength <= initialCapacity ? smallFrames + 1 : 0;
+        }
+
+        if (start == end) {
+            start = 0;
+            end = 0;
+        }
+
+        if (policy.shouldShrink(buf.length, initialCapacity, smallFrames) && end - start <= initialCapacity) {
+            resize(initialCapacity);
+            smallFrames = 0;
+        }
+
+        return numFrames;
+    }
+
+    /** Discard all bytes that have been read but not decoded. */
+    void clear() {
+        start = 0;
+        end = 0;
+        frame.reset();
+        releaseSlab();
+    }
+
+    /**
+     * Get the size of the receive buffer.
+     * 
+     * @return the size of the receive buffer
+     */
+    int capacity() {
+        return buf.length;
+    }
+
+    /** Make room for at least numBytes more bytes after end. */
+    private void ensureWritable(int numBytes) throws IOException {
+        if (buf.length - end < numBytes) {
+            // a frame of unknown length cannot be allowed to grow the buffer forever
+            policy.checkFrameLength(end - start + numBytes);
+            ensureCapacity(end - start + numBytes);
+        }
+    }
+
+    /** Make sure a frame of the given length starting at start will fit. */
+    private void ensureCapacity(int frameLength) {
+        if (buf.length - start >= frameLength) {
+            return;
+        }
+
+        if (buf.length >= frameLength) {
+            int remaining = end - start;
+            System.arraycopy(buf, start, buf, 0, remaining);
+            start = 0;
+            end = remaining;
+        } else {
+            resize(policy.grow(buf.length, frameLength));
+        }
+    }
+
+    /** Move the undecoded bytes to the start of a new buffer of the given size. */
+    private void resize(int capacity) {
+        int remaining = end - start;
+        byte[] newBuf = new byte[capacity];
+        System.arraycopy(buf, start, newBuf, 0, remaining);
+        buf = newBuf;
+        byteBuffer = ByteBuffer.wrap(buf);
+        start = 0;
+        end = remaining;
+    }
+
+    /**
+     * Continue reading an incomplete frame into a buffer from the large frame pool
+     * so that the connection's buffer does not need to grow.
+     */
+    private void moveToSlab(int frameLength) {
+        slab = policy.getLargeFramePool().acquire(frameLength);
+        slab.limit(frameLength);
+        slab.put(buf, start, end - start);
+        slabMessageOffset = frame.getMessageOffset() - start;
+        slabMessageLength = frame.getMessageLength();
+
+        start = 0;
+        end = 0;
+        frame.reset();
+    }
+
+    private void releaseSlab() {
+        if (slab != null) {
+            policy.getLargeFramePool().release(slab);
+            slab = null;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.fincher.iochannel.tcp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Precedes each message with an unsigned integer length of one to four bytes in
+ * either byte order. {@link SimpleStreamIo} is equivalent to a four byte big
+ * endian length.
+ *
+ * @author Brian Fincher
+ *
+ */
+public class LengthPrefixStreamIo implements StreamIo {
+
+    private final int headerLength;
+
+    private final ByteOrder byteOrder;
+
+    private final boolean headerPartOfMessage;
+
+    /** The largest length that can be encoded in the header. */
+    private final long maxLength;
+
+    /**
+     * Constructs a new LengthPrefixStreamIo.
+     * 
+     * @param headerLength The number of bytes in the length, from one to four
+     * @param byteOrder The byte order of the length
+     * @param headerPartOfMessage Is the header considered a part of the message
+     */
+    public LengthPrefixStreamIo(int headerLength, ByteOrder byteOrder, boolean headerPartOfMessage) {
+        Preconditions.checkArgument(headerLength >= 1 && headerLength <= 4, "headerLength must be from 1 to 4");
+        Preconditions.checkNotNull(byteOrder, "byteOrder cannot be null");
+
+        this.headerLength = headerLength;
+        this.byteOrder = byteOrder;
+        this.headerPartOfMessage = headerPartOfMessage;
+        maxLength = Math.min((1L << (headerLength * 8)) - 1, Integer.MAX_VALUE - headerLength);
+    }
+
+    /**
+     * Creates a StreamIo that precedes each message with a two byte big endian
+     * length that does not include the header.
+     * 
+     * @return a new LengthPrefixStreamIo
+     */
+    public static LengthPrefixStreamIo twoByteBigEndian() {
+        return new LengthPrefixStreamIo(2, ByteOrder.BIG_ENDIAN, false);
+    }
+
+    /**
+     * Creates a StreamIo that precedes each message with a four byte little endian
+     * length that does not include the header.
+     * 
+     * @return a new LengthPrefixStreamIo
+     */
+    public static LengthPrefixStreamIo fourByteLittleEndian() {
+        return new LengthPrefixStreamIo(4, ByteOrder.LITTLE_ENDIAN, false);
+    }
+
+    @Override
+    public int getHeaderLength() {
+        return headerLength;
+    }
+
+    @Override
+    public int getMessageLength(byte[] header) throws IOException {
+        return readLength(header, 0);
+    }
+
+    @Override
+    public boolean headerPartOfMessage() {
+        return headerPartOfMessage;
+    }
+
+    /**
+     * Reads the length directly from the stream bytes rather than copying the
+     * header.
+     */
+    @Override
+    public boolean decodeFrame(byte[] buf, int offset, int available, Frame frame) throws IOException {
+        if (available < headerLength) {
+            return false;
+        }
+
+        int length = readLength(buf, offset);
+        if (headerPartOfMessage) {
+            if (length < headerLength) {
+                throw new IOException("Invalid message length " + length);
+            }
+            frame.set(offset, length, length);
+        } else {
+            frame.set(offset + headerLength, length, headerLength + length);
+        }
+
+        return available >= frame.getFrameLength();
+    }
+
+    @Override
+    public ByteBuffer[] encode(ByteBuffer payload) {
+        long length = payload.remaining();
+        if (headerPartOfMessage) {
+            length += headerLength;
+        }
+        Preconditions.checkArgument(length <= maxLength,
+                "A message of length " + length + " cannot be encoded in a " + headerLength + " byte header");
+
+        byte[] header = new byte[headerLength];
+        for (int i = 0; i < headerLength; i++) {
+            int shift = byteOrder == ByteOrder.BIG_ENDIAN ? (headerLength - 1 - i) * 8 : i * 8;
+            header[i] = (byte) (length >>> shift);
+        }
+
+        return new ByteBuffer[] { ByteBuffer.wrap(header), payload };
+    }
+
+    private int readLength(byte[] buf, int offset) throws IOException {
+        long length = 0;
+        for (int i = 0; i < headerLength; i++) {
+            int shift = byteOrder == ByteOrder.BIG_ENDIAN ? (headerLength - 1 - i) * 8 : i * 8;
+            length |= (buf[offset + i] & 0xffL) << shift;
+        }
+
+        if (length > Integer.MAX_VALUE - headerLength) {
+            throw new IOException("Invalid message length " + length);
+        }
+        return (int) length;
+    }
+}
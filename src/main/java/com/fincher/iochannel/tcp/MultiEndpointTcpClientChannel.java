@@ -0,0 +1,207 @@
+package com.fincher.iochannel.tcp;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.fincher.iochannel.IoType;
+import com.fincher.iochannel.MessageBuffer;
+
+/**
+ * A TCP client that connects to several endpoints, such as the shards of a
+ * back end, and sends each message to one of them.
+ *
+ * <p>
+ * If a send key extractor is set, messages with a key are routed by consistent
+ * hashing: each endpoint owns many points on a hash ring and a message goes to
+ * the owner of the first point at or after the hash of its key. While an
+ * endpoint is down its keys move to the next endpoints on the ring and the keys
+ * of the other endpoints do not move. When it returns its keys move back.
+ *
+ * <p>
+ * Messages without a key go to the connected endpoint with the fewest bytes
+ * currently being sent. Sends block while a socket's send buffer is full, so a
+ * slow endpoint receives less traffic.
+ *
+ * @author Brian Fincher
+ *
+ */
+public class MultiEndpointTcpClientChannel extends TcpClientGroupChannel {
+
+    /** The number of points each endpoint owns on the hash ring. */
+    static final int POINTS_PER_ENDPOINT = 128;
+
+    /** The points on the hash ring, in ascending order. */
+    private final long[] ringPoints;
+
+    /** The index of the member that owns each point on the hash ring. */
+    private final int[] ringOwners;
+
+    /** The member at which the search for the least loaded member starts. */
+    private final AtomicInteger nextMember = new AtomicInteger();
+
+    /**
+     * Constructs a new multi endpoint TCP client.
+     * 
+     * @param id The ID of this IO Channel
+     * @param ioType Specifies the input/output status of this channel
+     * @param streamIo Used to determine how many bytes should be read from the
+     *        socket for each message
+     * @param localAddress The local address of each connection. If null
+     *        "localhost" will be used that the OS will choose an available port
+     * @param remoteAddresses The endpoints to which connections are made
+     */
+    private MultiEndpointTcpClientChannel(String id, IoType ioType, StreamIo streamIo,
+            InetSocketAddress localAddress, List<InetSocketAddress> remoteAddresses) {
+        super(id, ioType, streamIo, localAddress, remoteAddresses);
+
+        int numPoints = remoteAddresses.size() * POINTS_PER_ENDPOINT;
+        long[] points = new long[numPoints];
+        for (int i = 0; i < remoteAddresses.size(); i++) {
+            // hash the address rather than the index so that an endpoint keeps its
+            // keys when the list is reordered
+            InetSocketAddress address = remoteAddresses.get(i);
+            long endpointHash = (address.getHostString() + ":" + address.getPort()).hashCode();
+            for (int j = 0; j < POINTS_PER_ENDPOINT; j++) {
+                points[i * POINTS_PER_ENDPOINT + j] = mix(endpointHash * 0x9E3779B97F4A7C15L + j);
+            }
+        }
+
+        // sort the points and their owners together
+        Integer[] order = new Integer[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(points[a], points[b]));
+
+        ringPoints = new long[numPoints];
+        ringOwners = new int[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            ringPoints[i] = points[order[i]];
+            ringOwners[i] = order[i] / POINTS_PER_ENDPOINT;
+        }
+    }
+
+    /**
+     * Creates a new multi endpoint TCP client that is capable of both sending and
+     * receiving data.
+     * 
+     * @param id The ID of this IO Channel
+     * @param messageHandler Used to notify clients of received data
+     * @param streamIo Used to determine how many bytes should be read from the
+     *        socket for each message
+     * @param localAddress The local address of each connection. If null
+     *        "localhost" will be used that the OS will choose an available port
+     * @param remoteAddresses The endpoints to which connections are made
+     * @return a new multi endpoint TCP client that is capable of both sending and
+     *         receiving data
+     */
+    public static MultiEndpointTcpClientChannel createChannel(String id, Consumer<MessageBuffer> messageHandler,
+            StreamIo streamIo, InetSocketAddress localAddress, List<InetSocketAddress> remoteAddresses) {
+        MultiEndpointTcpClientChannel channel = new MultiEndpointTcpClientChannel(id, IoType.INPUT_AND_OUTPUT,
+                streamIo, localAddress, remoteAddresses);
+        channel.addMessageListener(messageHandler);
+        return channel;
+    }
+
+    /**
+     * Creates a new multi endpoint TCP client that is capable of both sending and
+     * receiving data.
+     * 
+     * @param id The ID of this IO Channel
+     * @param streamIo Used to determine how many bytes should be read from the
+     *        socket for each message
+     * @param localAddress The local address of each connection. If null
+     *        "localhost" will be used that the OS will choose an available port
+     * @param remoteAddresses The endpoints to which connections are made
+     * @return a new multi endpoint TCP client that is capable of both sending and
+     *         receiving data
+     */
+    public static MultiEndpointTcpClientChannel createChannel(String id, StreamIo streamIo,
+            InetSocketAddress localAddress, List<InetSocketAddress> remoteAddresses) {
+        return new MultiEndpointTcpClientChannel(id, IoType.INPUT_AND_OUTPUT, streamIo, localAddress,
+                remoteAddresses);
+    }
+
+    /**
+     * Creates a new multi endpoint TCP client that is capable of only sending
+     * data.
+     * 
+     * @param id The ID of this IO Channel
+     * @param streamIo Used to determine how many bytes should be read from the
+     *        socket for each message
+     * @param localAddress The local address of each connection. If null
+     *        "localhost" will be used that the OS will choose an available port
+     * @param remoteAddresses The endpoints to which connections are made
+     * @return a new multi endpoint TCP client that is capable of only sending data
+     */
+    public static MultiEndpointTcpClientChannel createOutputOnlyChannel(String id, StreamIo streamIo,
+            InetSocketAddress localAddress, List<InetSocketAddress> remoteAddresses) {
+        return new MultiEndpointTcpClientChannel(id, IoType.OUTPUT_ONLY, streamIo, localAddress, remoteAddresses);
+    }
+
+    @Override
+    protected int chooseMember(MessageBuffer message) {
+        Object key = getSendKey(message);
+        return key == null ? getLeastLoadedMember() : getMemberForKey(key);
+    }
+
+    /**
+     * Get the connected member that owns a key on the hash ring.
+     * 
+     * @param key The key
+     * @return the index of the member or -1 if no member is connected
+     */
+    int getMemberForKey(Object key) {
+        int start = Arrays.binarySearch(ringPoints, mix(key.hashCode()));
+        if (start < 0) {
+            start = -start - 1;
+        }
+
+        for (int i = 0; i < ringPoints.length; i++) {
+            int owner = ringOwners[(start + i) % ringPoints.length];
+            if (isMemberConnected(owner)) {
+                return owner;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the connected member with the fewest outstanding bytes. The search starts
+     * at a different member each time so that ties are spread evenly.
+     * 
+     * @return the index of the member or -1 if no member is connected
+     */
+    int getLeastLoadedMember() {
+        int numMembers = getNumMembers();
+        int start = Math.floorMod(nextMember.getAndIncrement(), numMembers);
+
+        int leastLoaded = -1;
+        long fewestBytes = Long.MAX_VALUE;
+        for (int i = 0; i < numMembers; i++) {
+            int index = (start + i) % numMembers;
+            if (isMemberConnected(index)) {
+                long bytes = getOutstandingBytes(index);
+                if (bytes < fewestBytes) {
+                    leastLoaded = index;
+                    fewestBytes = bytes;
+                }
+            }
+        }
+        return leastLoaded;
+    }
+
+    /** Spread the bits of a hash, using the finalizer of MurmurHash3. */
+    private static long mix(long hash) {
+        long h = hash;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
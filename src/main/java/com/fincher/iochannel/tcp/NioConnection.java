@@ -0,0 +1,262 @@
+package com.fincher.iochannel.tcp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.slf4j.Logger;
+
+import com.fincher.iochannel.MessageBuffer;
+import com.fincher.iochannel.Utilities;
+
+/**
+ * The state of a single non-blocking socket serviced by a {@link NioEventLoop}.
+ *
+ * @author Brian Fincher
+ *
+ */
+class NioConnection {
+
+    private static final Logger LOG = Utilities.getInstance().getLogger(NioConnection.class);
+
+    private final String socketId;
+
+    private final Socket socket;
+
+    private final SocketChannel channel;
+
+    private final TcpChannel parent;
+
+    private final NioEventLoop eventLoop;
+
+    private final FrameDecoder decoder;
+
+    /** The outcome of a call to {@link NioConnection#write(ByteBuffer[])}. */
+    enum WriteResult {
+        /** All bytes were written to the socket. */
+        WRITTEN,
+
+        /** Some bytes were queued to be written when the socket becomes writable. */
+        QUEUED,
+
+        /** The message was discarded because the connection is not writable. */
+        DROPPED,
+
+        /** The connection should be closed because it is not keeping up. */
+        EVICT
+    }
+
+    private static final ByteBuffer[] EMPTY = new ByteBuffer[0];
+
+    /** Bytes that could not be written without blocking. */
+    private final Deque<ByteBuffer> pendingWrites = new ArrayDeque<>();
+
+    private final int lowWatermark;
+
+    private final int highWatermark;
+
+    private final SlowConsumerPolicy slowConsumerPolicy;
+
+    /** The number of bytes in pendingWrites. */
+    private long pendingBytes;
+
+    /** False once pendingBytes exceeds the high watermark until it drains below the low watermark. */
+    private boolean writable = true;
+
+    private SelectionKey key;
+
+    /**
+     * Constructs a new NioConnection.
+     * 
+     * @param socketId The ID of the socket
+     * @param socket The socket. Must have an associated SocketChannel
+     * @param streamIo Used to determine how many bytes should be read for each
+     *        message
+     * @param parent The parent TCP Channel
+     * @param eventLoop The event loop servicing this connection
+     * @param lowWatermark A connection that is not writable becomes writable again
+     *        once its queued bytes drain to this many bytes
+     * @param highWatermark A connection is not writable once more than this many
+     *        bytes are queued
+     * @param slowConsumerPolicy What to do when the high watermark is exceeded
+     */
+    NioConnection(String socketId, Socket socket, StreamIo streamIo, TcpChannel parent,
+            NioEventLoop eventLoop, int lowWatermark, int highWatermark, SlowConsumerPolicy slowConsumerPolicy) {
+        this.socketId = socketId;
+        this.socket = socket;
+        this.channel = socket.getChannel();
+        this.parent = parent;
+        this.eventLoop = eventLoop;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.slowConsumerPolicy = slowConsumerPolicy;
+        ReceiveBufferPolicy policy = parent.getReceiveBufferPolicy();
+        decoder = new FrameDecoder(streamIo, policy.getInitialSize(), policy);
+    }
+
+    String getSocketId() {
+        return socketId;
+    }
+
+    Socket getSocket() {
+        return socket;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    NioEventLoop getEventLoop() {
+        return eventLoop;
+    }
+
+    /**
+     * Called by the event loop once the channel has been registered with its
+     * selector.
+     * 
+     * @param key The selection key for this connection
+     */
+    synchronized void registered(SelectionKey key) {
+        this.key = key;
+        if (!pendingWrites.isEmpty()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Read the bytes available on the socket and notify the parent of any
+     * complete messages.
+     * 
+     * @throws IOException If an exception occurs while reading or the end of
+     *         stream is reached
+     */
+    void read() throws IOException {
+        if (decoder.read(channel) == -1) {
+            throw new EOFException();
+        }
+
+        if (parent.getIoType().isInput()) {
+            decoder.decode(this::messageReceived);
+        } else {
+            decoder.clear();
+        }
+    }
+
+    private void messageReceived(byte[] buf, int offset, int length) {
+        MessageBuffer mb = MessageBuffer.copyOf(parent.getBufferPool(), buf, offset, length);
+        try {
+            mb.setReceivedFromIoChannelId(socketId);
+            parent.messageReceived(mb, LOG, "");
+        } finally {
+            mb.release();
+        }
+    }
+
+    /**
+     * Write bytes to the socket with a single gathering write. Any bytes that
+     * cannot be written without blocking are copied and queued to be written by
+     * the event loop when the socket becomes writable. The positions of the
+     * source buffers are advanced past the bytes written or queued.
+     * 
+     * @param srcs The buffers to write
+     * @return The outcome of the write
+     * @throws IOException If an exception occurs while writing
+     */
+    synchronized WriteResult write(ByteBuffer[] srcs) throws IOException {
+        if (!writable) {
+            return slowConsumerPolicy == SlowConsumerPolicy.EVICT ? WriteResult.EVICT : WriteResult.DROPPED;
+        }
+
+        if (pendingWrites.isEmpty()) {
+            channel.write(srcs);
+        }
+
+        long remaining = 0;
+        for (ByteBuffer src : srcs) {
+            remaining += src.remaining();
+        }
+
+        if (remaining == 0) {
+            return WriteResult.WRITTEN;
+        }
+
+        ByteBuffer copy = ByteBuffer.allocate(Math.toIntExact(remaining));
+        for (ByteBuffer src : srcs) {
+            copy.put(src);
+        }
+        copy.flip();
+        pendingWrites.add(copy);
+        pendingBytes += remaining;
+
+        if (key != null && key.isValid()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            eventLoop.wakeup();
+        }
+
+        if (pendingBytes > highWatermark) {
+            writable = false;
+            LOG.warn("{} {} bytes queued exceeds the high watermark", socketId, pendingBytes);
+            if (slowConsumerPolicy == SlowConsumerPolicy.EVICT) {
+                return WriteResult.EVICT;
+            }
+        }
+
+        return WriteResult.QUEUED;
+    }
+
+    /**
+     * Write as much queued data as possible without blocking.
+     * 
+     * @throws IOException If an exception occurs while writing
+     */
+    synchronized void flush() throws IOException {
+        if (!pendingWrites.isEmpty()) {
+            pendingBytes -= channel.write(pendingWrites.toArray(EMPTY));
+            while (!pendingWrites.isEmpty() && !pendingWrites.peek().hasRemaining()) {
+                pendingWrites.poll();
+            }
+        }
+
+        if (!writable && pendingBytes <= lowWatermark) {
+            writable = true;
+            LOG.debug("{} writable with {} bytes queued", socketId, pendingBytes);
+        }
+
+        if (pendingWrites.isEmpty() && key != null && key.isValid()) {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Get the number of bytes waiting to be written to the socket.
+     * 
+     * @return the number of bytes waiting to be written to the socket
+     */
+    synchronized long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    /**
+     * Can messages be written to this connection without exceeding the high
+     * watermark.
+     * 
+     * @return true if messages can be written to this connection
+     */
+    synchronized boolean isWritable() {
+        return writable;
+    }
+
+    /** Stop servicing this connection. */
+    synchronized void cancel() {
+        if (key != null) {
+            key.cancel();
+        }
+        pendingWrites.clear();
+        pendingBytes = 0;
+    }
+}
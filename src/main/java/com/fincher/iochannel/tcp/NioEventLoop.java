@@ -0,0 +1,162 @@
+package com.fincher.iochannel.tcp;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+
+import com.fincher.iochannel.ChannelException;
+import com.fincher.iochannel.ChannelState;
+import com.fincher.iochannel.Utilities;
+import com.fincher.thread.RunnableTask;
+
+/**
+ * A task that services many non-blocking TCP connections with a single
+ * {@link Selector}.
+ *
+ * @author Brian Fincher
+ *
+ */
+class NioEventLoop implements RunnableTask {
+
+    private static final Logger LOG = Utilities.getInstance().getLogger(NioEventLoop.class);
+
+    /** The maximum time to block waiting for a socket to become ready. */
+    private static final long SELECT_TIMEOUT_MILLIS = 1000;
+
+    private final String id;
+
+    private final TcpChannel parent;
+
+    private final Selector selector;
+
+    /** Connections waiting to be registered with the selector. */
+    private final Queue<NioConnection> pendingRegistrations = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean continueExecution = true;
+
+    /**
+     * Constructs a new NioEventLoop.
+     * 
+     * @param id The ID of this event loop
+     * @param parent The parent TCP Channel
+     * @throws ChannelException If the selector cannot be opened
+     */
+    NioEventLoop(String id, TcpChannel parent) throws ChannelException {
+        this.id = id;
+        this.parent = parent;
+
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            throw new ChannelException(id, e);
+        }
+    }
+
+    String getId() {
+        return id;
+    }
+
+    /**
+     * Add a connection to be serviced by this event loop.
+     * 
+     * @param connection The connection
+     * @throws ChannelException If the connection cannot be placed in non-blocking
+     *         mode
+     */
+    void register(NioConnection connection) throws ChannelException {
+        try {
+            connection.getChannel().configureBlocking(false);
+        } catch (IOException e) {
+            throw new ChannelException(id, e);
+        }
+
+        pendingRegistrations.add(connection);
+        selector.wakeup();
+    }
+
+    /** Wake up the selector so that interest changes take effect. */
+    void wakeup() {
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            registerPendingConnections();
+
+            selector.select(SELECT_TIMEOUT_MILLIS);
+
+            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+                service(key);
+            }
+        } catch (ClosedSelectorException e) {
+            continueExecution = false;
+        } catch (IOException e) {
+            LOG.error(id + " " + e.getMessage(), e);
+        }
+    }
+
+    private void registerPendingConnections() {
+        NioConnection connection;
+        while ((connection = pendingRegistrations.poll()) != null) {
+            try {
+                SelectionKey key = connection.getChannel().register(selector, SelectionKey.OP_READ, connection);
+                connection.registered(key);
+            } catch (IOException e) {
+                LOG.error(id + " " + e.getMessage(), e);
+                connectionLost(connection);
+            }
+        }
+    }
+
+    private void service(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+        try {
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+
+            if (key.isValid() && key.isReadable()) {
+                connection.read();
+            }
+        } catch (IOException e) {
+            if (parent.getState() != ChannelState.CLOSED) {
+                LOG.warn("{} {} {}", id, connection.getSocketId(), e.getMessage());
+                connectionLost(connection);
+            }
+        }
+    }
+
+    private void connectionLost(NioConnection connection) {
+        connection.cancel();
+        try {
+            parent.connectionLost(connection.getSocket());
+        } catch (ChannelException ce) {
+            LOG.error(ce.getMessage(), ce);
+        }
+    }
+
+    @Override
+    public boolean continueExecution() {
+        return continueExecution;
+    }
+
+    @Override
+    public void terminate() {
+        continueExecution = false;
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOG.error(id + " " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.fincher.iochannel.tcp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+
+import com.fincher.iochannel.ChannelException;
+import com.fincher.iochannel.ChannelState;
+import com.fincher.iochannel.IoType;
+import com.fincher.iochannel.MessageBuffer;
+import com.fincher.iochannel.Utilities;
+import com.fincher.thread.CallableTask;
+import com.google.common.base.Preconditions;
+
+/**
+ * A TCP Server channel that services all accepted connections with a small
+ * fixed number of event loop threads using non-blocking sockets rather than a
+ * receive thread per connection.
+ *
+ * <p>
+ * Sends never block on a slow peer. Bytes that a peer's socket cannot accept
+ * are queued for that peer and written by its event loop as the peer drains.
+ * Once more than the high watermark is queued for a peer the
+ * {@link SlowConsumerPolicy} is applied until the queue drains to the low
+ * watermark.
+ *
+ * @author Brian Fincher
+ *
+ */
+public class NioTcpServerChannel extends TcpServerChannel {
+
+    private static final Logger LOG = Utilities.getInstance().getLogger(NioTcpServerChannel.class);
+
+    /** The default low watermark of a connection's queue of unsent bytes. */
+    public static final int DEFAULT_LOW_WATERMARK = 1024 * 1024;
+
+    /** The default high watermark of a connection's queue of unsent bytes. */
+    public static final int DEFAULT_HIGH_WATERMARK = 4 * 1024 * 1024;
+
+    private final StreamIo streamIo;
+
+    private final int numEventLoops;
+
+    private final List<NioEventLoop> eventLoops = new ArrayList<>();
+
+    private final List<Future<Void>> eventLoopFutures = new ArrayList<>();
+
+    private final Map<Socket, NioConnection> connections = new ConcurrentHashMap<>();
+
+    private int nextEventLoop = 0;
+
+    private int lowWatermark = DEFAULT_LOW_WATERMARK;
+
+    private int highWatermark = DEFAULT_HIGH_WATERMARK;
+
+    private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.EVICT;
+
+    private final AtomicLong numDroppedMessages = new AtomicLong();
+
+    private final AtomicLong numEvictions = new AtomicLong();
+
+    /**
+     * Constructs a new NIO TCP server socket.
+     * 
+     * @param id The ID of this IO Channel
+     * @param ioType Specifies the input/output status of this channel
+     * @param streamIo Used to determine how many bytes should be read from the
+     *        socket for each message
+     * @param localAddress The local address to which this socket will be bound. If
+     *        null "localhost" will be used
+     * @param numEventLoops The number of event loop threads used to service
+     *        connections
+     */
+    protected NioTcpServerChannel(String id, IoType ioType, StreamIo streamIo, InetSocketAddress localAddress,
+            int numEventLoops) {
+        super(id, ioType, streamIo, localAddress);
+        Preconditions.checkArgument(numEventLoops > 0, "numEventLoops must be greater than zero");
+        this.streamIo = streamIo;
+        this.numEventLoops = numEventLoops;
+    }
+
+    /**
+     * Creates a new NIO TCP server socket that is capable of both sending and
+     * receiving data.
+     * 
+     * @param id The ID of this IO Channel
+     * @param streamIo Used to determine how many bytes should be read from the
+     *        socket for each message
+     * @param localAddress The local address to which this socket will be bound. If
+     *        null "localhost" will be used
+     * @param numEventLoops The number of event loop threads used to service
+     *        connections
+     * @return a new NIO TCP server socket that is capable of both sending and
+     *         receiving data
+     */
+    public static NioTcpServerChannel createChannel(String id, StreamIo streamIo, InetSocketAddress localAddress,
+            int numEventLoops) {
+        return new NioTcpServerChannel(id, IoType.INPUT_AND_OUTPUT, streamIo, localAddress, numEventLoops);
+    }
+
+    /**
+     * Creates a new NIO TCP server socket that is capable of both sending and
+     * receiving data.
+     * 
+     * @param id The ID of this IO Channel
+     * @param messageHandler Used to notify clients of received data
+     * @param streamIo Used to determine how many bytes should be read from the
+     *        socket for each message
+     * @param localAddress The local address to which this socket will be bound. If
+     *        null "localhost" will be used
+     * @param numEventLoops The number of event loop threads used to service
+     *        connections
+     * @return a new NIO TCP server socket that is capable of both sending and
+     *         receiving data
+     */
+    public static NioTcpServerChannel createChannel(String id, Consumer<MessageBuffer> messageHandler,
+            StreamIo streamIo, InetSocketAddress localAddress, int numEventLoops) {
+        NioTcpServerChannel channel = new NioTcpServerChannel(id, IoType.INPUT_AND_OUTPUT, streamIo, localAddress,
+                numEventLoops);
+        channel.addMessageListener(messageHandler);
+        return channel;
+    }
+
+    /**
+     * Creates a new NIO TCP server socket that is capable of only sending data.
+     * 
+     * @param id The ID of this IO Channel
+     * @param streamIo Used to determine how many bytes should be read from the
+     *        socket for each message
+     * @param localAddress The local address to which this socket will be bound. If
+     *        null "localhost" will be used
+     * @param numEventLoops The number of event loop threads used to service
+     *        connections
+     * @return a new NIO TCP server socket that is capable of only sending data
+     */
+    public static NioTcpServerChannel createOutputOnly(String id, StreamIo streamIo, InetSocketAddress localAddress,
+            int numEventLoops) {
+        return new NioTcpServerChannel(id, IoType.OUTPUT_ONLY, streamIo, localAddress, numEventLoops);
+    }
+
+    /**
+     * Get the number of event loop threads used to service connections.
+     * 
+     * @return the number of event loop threads used to service connections
+     */
+    public int getNumEventLoops() {
+        return numEventLoops;
+    }
+
+    /**
+     * Sets the watermarks of each connection's queue of bytes that could not be
+     * written without blocking.
+     * 
+     * @param lowWatermark A connection that exceeded the high watermark may be
+     *        sent to again once its queue drains to this many bytes
+     * @param highWatermark The slow consumer policy is applied once more than this
+     *        many bytes are queued for a connection
+     */
+    public void setWriteBufferWatermarks(int lowWatermark, int highWatermark) {
+        Preconditions.checkState(getState() == ChannelState.INITIAL,
+                "The state must be INITIAL for setWriteBufferWatermarks");
+        Preconditions.checkArgument(lowWatermark >= 0, "lowWatermark cannot be negative");
+        Preconditions.checkArgument(highWatermark >= lowWatermark,
+                "highWatermark must be greater than or equal to lowWatermark");
+
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+    }
+
+    /**
+     * Get the low watermark of each connection's queue of unsent bytes.
+     * 
+     * @return the low watermark of each connection's queue of unsent bytes
+     */
+    public int getLowWatermark() {
+        return lowWatermark;
+    }
+
+    /**
+     * Get the high watermark of each connection's queue of unsent bytes.
+     * 
+     * @return the high watermark of each connection's queue of unsent bytes
+     */
+    public int getHighWatermark() {
+        return highWatermark;
+    }
+
+    /**
+     * Sets what to do with a connection that exceeds the high watermark. Defaults
+     * to {@link SlowConsumerPolicy#EVICT}.
+     * 
+     * @param slowConsumerPolicy The slow consumer policy
+     */
+    public void setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) {
+        Preconditions.checkState(getState() == ChannelState.INITIAL,
+                "The state must be INITIAL for setSlowConsumerPolicy");
+        Preconditions.checkNotNull(slowConsumerPolicy, "slowConsumerPolicy cannot be null");
+
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
+
+    /**
+     * Get what to do with a connection that exceeds the high watermark.
+     * 
+     * @return the slow consumer policy
+     */
+    public SlowConsumerPolicy getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
+    /**
+     * Get the number of messages that were not sent to a connection because it
+     * exceeded the high watermark.
+     * 
+     * @return the number of dropped messages
+     */
+    public long getNumDroppedMessages() {
+        return numDroppedMessages.get();
+    }
+
+    /**
+     * Get the number of connections that were closed because they exceeded the
+     * high watermark.
+     * 
+     * @return the number of evicted connections
+     */
+    public long getNumEvictions() {
+        return numEvictions.get();
+    }
+
+    /**
+     * Get the number of bytes waiting to be written to a connection.
+     * 
+     * @param socketId The ID of the connection
+     * @return the number of bytes waiting to be written or zero if there is no
+     *         such connection
+     */
+    public long getPendingBytes(String socketId) {
+        Socket socket;
+        synchronized (sockets) {
+            socket = sockets.get(socketId);
+        }
+        NioConnection connection = socket == null ? null : connections.get(socket);
+        return connection == null ? 0 : connection.getPendingBytes();
+    }
+
+    @Override
+    protected void performConnect() throws ChannelException {
+        if (eventLoops.isEmpty()) {
+            for (int i = 0; i < numEventLoops; i++) {
+                NioEventLoop eventLoop = new NioEventLoop(getId() + "EventLoop" + i, this);
+                eventLoops.add(eventLoop);
+                eventLoopFutures.add(getTaskExecutor().start(eventLoop.getId(), eventLoop));
+            }
+        }
+
+        super.performConnect();
+    }
+
+    @Override
+    protected CallableTask<Socket> getConnectTask() throws ChannelException {
+        try {
+            return new TcpServerConnectTask(this, ServerSocketChannel.open().socket());
+        } catch (IOException e) {
+            throw new ChannelException(getId(), e);
+        }
+    }
+
+    @Override
+    protected void registerSocket(String socketId, Socket socket) throws ChannelException {
+        NioEventLoop eventLoop = eventLoops.get(nextEventLoop);
+        nextEventLoop = (nextEventLoop + 1) % eventLoops.size();
+
+        NioConnection connection = new NioConnection(socketId, socket, streamIo, this, eventLoop, lowWatermark,
+                highWatermark, slowConsumerPolicy);
+        connections.put(socket, connection);
+        eventLoop.register(connection);
+
+        LOG.debug("{} {} registered with {}", getId(), socketId, eventLoop.getId());
+    }
+
+    @Override
+    protected void write(byte[] msgBytes, int offset, int length, Socket channel) throws IOException {
+        write(new ByteBuffer[] { ByteBuffer.wrap(msgBytes, offset, length) }, channel);
+    }
+
+    @Override
+    protected void write(ByteBuffer[] srcs, Socket channel) throws IOException {
+        NioConnection connection = connections.get(channel);
+        if (connection == null) {
+            throw new ChannelException(getId() + " socket is not connected");
+        }
+
+        switch (connection.write(srcs)) {
+        case DROPPED:
+            numDroppedMessages.incrementAndGet();
+            LOG.debug("{} {} message dropped", getId(), connection.getSocketId());
+            break;
+
+        case EVICT:
+            numEvictions.incrementAndGet();
+            LOG.warn("{} {} evicted slow consumer", getId(), connection.getSocketId());
+            connectionLost(channel);
+            break;
+
+        default:
+            break;
+        }
+    }
+
+    @Override
+    protected synchronized void connectionLost(Socket socket) throws ChannelException {
+        NioConnection connection = connections.remove(socket);
+        if (connection == null) {
+            // already handled
+            return;
+        }
+
+        connection.cancel();
+        super.connectionLost(socket);
+    }
+
+    /** Connections are lost on an event loop thread so there is nothing to wait for. */
+    @Override
+    protected Duration getConnectionLostDelay() {
+        return Duration.ZERO;
+    }
+
+    @Override
+    public void close() throws ChannelException {
+        try {
+            super.close();
+        } finally {
+            eventLoopFutures.forEach(future -> future.cancel(true));
+            eventLoops.forEach(NioEventLoop::terminate);
+            connections.clear();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.fincher.iochannel.tcp;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.fincher.iochannel.IoType;
+import com.fincher.iochannel.MessageBuffer;
+
+/**
+ * A TCP client that keeps several parallel connections to the same remote
+ * address so that sends are not limited to a single TCP stream. Each connection
+ * is a {@link TcpClientChannel} member that reconnects in the background
+ * according to its {@link ReconnectPolicy}.
+ *
+ * <p>
+ * Each message is sent on a single connection. By default connections are
+ * chosen round robin. If a send key extractor is set, messages with the same
+ * key are sent on the same connection so that they arrive in order. A
+ * connection that is down is skipped, and a send that fails is retried on the
+ * next connection.
+ *
+ * @author Brian Fincher
+ *
+ */
+public class PooledTcpClientChannel extends TcpClientGroupChannel {
+
+    /** Used to choose the connection for messages without a key. */
+    private final AtomicInteger nextMember = new AtomicInteger();
+
+    /**
+     * Constructs a new pooled TCP client.
+     * 
+     * @param id The ID of this IO Channel
+     * @param ioType Specifies the input/output status of this channel
+     * @param streamIo Used to determine how many bytes should be read from the
+     *        socket for each message
+     * @param localAddress The local address of each connection. If null
+     *        "localhost" will be used that the OS will choose an available port
+     * @param remoteAddress The remote address to which each connection is made
+     * @param numConnections The number of connections
+     */
+    private PooledTcpClientChannel(String id, IoType ioType, StreamIo streamIo,
+            InetSocketAddress localAddress, InetSocketAddress remoteAddress, int numConnections) {
+        super(id, ioType, streamIo, localAddress, Collections.nCopies(numConnections, remoteAddress));
+    }
+
+    /**
+     * Creates a new pooled TCP client that is capable of both sending and
+     * receiving data.
+     * 
+     * @param id The ID of this IO Channel
+     * @param messageHandler Used to notify clients of received data
+     * @param streamIo Used to determine how many bytes should be read from the
+     *        socket for each message
+     * @param localAddress The local address of each connection. If null
+     *        "localhost" will be used that the OS will choose an available port
+     * @param remoteAddress The remote address to which each connection is made
+     * @param numConnections The number of connections
+     * @return a new pooled TCP client that is capable of both sending and
+     *         receiving data
+     */
+    public static PooledTcpClientChannel createChannel(String id, Consumer<MessageBuffer> messageHandler,
+            StreamIo streamIo, InetSocketAddress localAddress, InetSocketAddress remoteAddress,
+            int numConnections) {
+        PooledTcpClientChannel channel = new PooledTcpClientChannel(id, IoType.INPUT_AND_OUTPUT, streamIo,
+                localAddress, remoteAddress, numConnections);
+        channel.addMessageListener(messageHandler);
+        return channel;
+    }
+
+    /**
+     * Creates a new pooled TCP client that is capable of both sending and
+     * receiving data.
+     * 
+     * @param id The ID of this IO Channel
+     * @param streamIo Used to determine how many bytes should be read from the
+     *        socket for each message
+     * @param localAddress The local address of each connection. If null
+     *        "localhost" will be used that the OS will choose an available port
+     * @param remoteAddress The remote address to which each connection is made
+     * @param numConnections The number of connections
+     * @return a new pooled TCP client that is capable of both sending and
+     *         receiving data
+     */
+    public static PooledTcpClientChannel createChannel(String id, StreamIo streamIo,
+            InetSocketAddress localAddress, InetSocketAddress remoteAddress, int numConnections) {
+        return new PooledTcpClientChannel(id, IoType.INPUT_AND_OUTPUT, streamIo, localAddress, remoteAddress,
+                numConnections);
+    }
+
+    /**
+     * Creates a new pooled TCP client that is capable of only sending data.
+     * 
+     * @param id The ID of this IO Channel
+     * @param streamIo Used to determine how many bytes should be read from the
+     *        socket for each message
+     * @param localAddress The local address of each connection. If null
+     *        "localhost" will be used that the OS will choose an available port
+     * @param remoteAddress The remote address to which each connection is made
+     * @param numConnections The number of connections
+     * @return a new pooled TCP client that is capable of only sending data
+     */
+    public static PooledTcpClientChannel createOutputOnlyChannel(String id, StreamIo streamIo,
+            InetSocketAddress localAddress, InetSocketAddress remoteAddress, int numConnections) {
+        return new PooledTcpClientChannel(id, IoType.OUTPUT_ONLY, streamIo, localAddress, remoteAddress,
+                numConnections);
+    }
+
+    /**
+     * Chooses the member for a message by the hash of its key or, if it has no
+     * key, round robin. If that member is not connected the next connected member
+     * is chosen.
+     */
+    @Override
+    protected int chooseMember(MessageBuffer message) {
+        int numMembers = getNumMembers();
+        Object key = getSendKey(message);
+        int first;
+        if (key == null) {
+            first = Math.floorMod(nextMember.getAndIncrement(), numMembers);
+        } else {
+            int hash = key.hashCode();
+            first = Math.floorMod(hash ^ (hash >>> 16), numMembers);
+        }
+
+        for (int i = 0; i < numMembers; i++) {
+            int index = (first + i) % numMembers;
+            if (isMemberConnected(index)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+}
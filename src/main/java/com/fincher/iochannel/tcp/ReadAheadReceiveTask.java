@@ -0,0 +1,92 @@
+package com.fincher.iochannel.tcp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import org.slf4j.Logger;
+
+import com.fincher.iochannel.ChannelException;
+import com.fincher.iochannel.Utilities;
+
+/**
+ * A receive task that reads as many bytes as are available from the socket in
+ * a single read and then delivers every complete message that was read. Bytes
+ * of a partial message are kept for the next read. When many small messages
+ * are waiting on the socket this uses far fewer reads than {@link ReceiveTask},
+ * which reads the header and body of each message separately.
+ *
+ * @author Brian Fincher
+ *
+ */
+class ReadAheadReceiveTask extends AbstractReceiveTask {
+
+    private static final Logger LOG = Utilities.getInstance().getLogger(ReadAheadReceiveTask.class);
+
+    private final InputStream inputStream;
+
+    private final FrameDecoder decoder;
+
+    /**
+     * Creates a new ReadAheadReceiveTask object.
+     * 
+     * @param id The ID of this ReceiveTask
+     * @param socket The TCP Socket
+     * @param streamIo Used to determine the length of each message
+     * @param parent The parent TCP Channel
+     * @param bufferSize The initial size of the read ahead buffer
+     * @throws ChannelException If an error occurs while getting the socket's
+     *         input stream
+     */
+    ReadAheadReceiveTask(String id, Socket socket, StreamIo streamIo, TcpChannel parent, int bufferSize)
+            throws ChannelException {
+        super(id, socket, parent);
+        decoder = new FrameDecoder(streamIo, bufferSize, parent.getReceiveBufferPolicy());
+
+        try {
+            this.inputStream = socket.getInputStream();
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    /**
+     * The body of the task. Reads available data from the socket and delivers
+     * each complete message.
+     */
+    @Override
+    public void run() {
+        try {
+            int bytesRead = decoder.read(inputStream);
+            if (bytesRead == -1) {
+                throw new EOFException();
+            }
+
+            int numMessages = decoder.decode(this::messageReceived);
+
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("{} read {} bytes containing {} messages", getId(), bytesRead, numMessages);
+            }
+        } catch (SocketTimeoutException e) {
+            // no action necessary
+        } catch (EOFException eofe) {
+            LOG.warn("end of stream reached");
+
+            try {
+                closeSocket();
+            } catch (ChannelException ce) {
+                LOG.error(ce.getMessage(), ce);
+            }
+        } catch (IOException ioe) {
+            LOG.error(ioe.getMessage(), ioe);
+
+            try {
+                closeSocket();
+            } catch (ChannelException ce) {
+                LOG.error(ce.getMessage(), ce);
+            }
+        }
+    }
+}
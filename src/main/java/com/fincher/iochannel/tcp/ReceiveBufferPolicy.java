@@ -0,0 +1,199 @@
+package com.fincher.iochannel.tcp;
+
+import java.io.IOException;
+
+import com.fincher.iochannel.BufferPool;
+import com.google.common.base.Preconditions;
+
+/**
+ * Controls the buffer into which each TCP connection reads messages. The buffer
+ * starts at the initial size, grows geometrically when a larger message
+ * arrives and shrinks back to the initial size once enough consecutive small
+ * messages have been received, so that a single large message does not pin
+ * memory for the life of the connection. A message larger than the maximum
+ * frame size closes the connection.
+ *
+ * <p>
+ * If a large frame pool is set, messages that do not fit in the initial size
+ * are instead read into a buffer acquired from the pool and the buffer is
+ * returned to the pool once the message has been delivered. The pool's buffer
+ * size should be the largest expected message.
+ *
+ * @author Brian Fincher
+ *
+ */
+public class ReceiveBufferPolicy {
+
+    /** The default initial size of the receive buffer. */
+    public static final int DEFAULT_INITIAL_SIZE = 4096;
+
+    /** The default number of consecutive small messages before shrinking. */
+    public static final int DEFAULT_SHRINK_AFTER = 32;
+
+    /** The largest array that can reliably be allocated. */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private int initialSize = DEFAULT_INITIAL_SIZE;
+
+    private int maxFrameSize = MAX_ARRAY_SIZE;
+
+    private double growthFactor = 2.0;
+
+    private int shrinkAfter = DEFAULT_SHRINK_AFTER;
+
+    private BufferPool largeFramePool;
+
+    /**
+     * Sets the initial size of the receive buffer. The buffer shrinks back to this
+     * size after growing. Defaults to 4096.
+     * 
+     * @param initialSize The initial size of the receive buffer
+     */
+    public void setInitialSize(int initialSize) {
+        Preconditions.checkArgument(initialSize > 0, "initialSize must be greater than zero");
+        this.initialSize = initialSize;
+    }
+
+    /**
+     * Get the initial size of the receive buffer.
+     * 
+     * @return the initial size of the receive buffer
+     */
+    public int getInitialSize() {
+        return initialSize;
+    }
+
+    /**
+     * Sets the largest message, including any header, that may be received. A
+     * connection that receives a larger message is closed. Defaults to the largest
+     * possible array.
+     * 
+     * @param maxFrameSize The largest message that may be received
+     */
+    public void setMaxFrameSize(int maxFrameSize) {
+        Preconditions.checkArgument(maxFrameSize > 0, "maxFrameSize must be greater than zero");
+        this.maxFrameSize = Math.min(maxFrameSize, MAX_ARRAY_SIZE);
+    }
+
+    /**
+     * Get the largest message that may be received.
+     * 
+     * @return the largest message that may be received
+     */
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    /**
+     * Sets the factor by which the receive buffer grows when a message does not
+     * fit. The buffer always grows to at least the size of the message. Defaults
+     * to 2.
+     * 
+     * @param growthFactor The growth factor, greater than one
+     */
+    public void setGrowthFactor(double growthFactor) {
+        Preconditions.checkArgument(growthFactor > 1, "growthFactor must be greater than one");
+        this.growthFactor = growthFactor;
+    }
+
+    /**
+     * Get the factor by which the receive buffer grows.
+     * 
+     * @return the growth factor
+     */
+    public double getGrowthFactor() {
+        return growthFactor;
+    }
+
+    /**
+     * Sets the number of consecutive messages that fit within the initial size
+     * after which a grown buffer shrinks back to the initial size. Defaults to 32.
+     * 
+     * @param shrinkAfter The number of small messages or zero to never shrink
+     */
+    public void setShrinkAfter(int shrinkAfter) {
+        Preconditions.checkArgument(shrinkAfter >= 0, "shrinkAfter cannot be negative");
+        this.shrinkAfter = shrinkAfter;
+    }
+
+    /**
+     * Get the number of consecutive small messages after which a grown buffer
+     * shrinks.
+     * 
+     * @return the number of small messages or zero if the buffer never shrinks
+     */
+    public int getShrinkAfter() {
+        return shrinkAfter;
+    }
+
+    /**
+     * Sets the pool from which buffers are acquired for messages that do not fit in
+     * the initial size. Defaults to null, which grows the connection's buffer
+     * instead.
+     * 
+     * @param largeFramePool A pool of heap buffers or null
+     */
+    public void setLargeFramePool(BufferPool largeFramePool) {
+        Preconditions.checkArgument(largeFramePool == null || !largeFramePool.isDirect(),
+                "largeFramePool must be a heap pool");
+        this.largeFramePool = largeFramePool;
+    }
+
+    /**
+     * Get the pool from which buffers are acquired for large messages.
+     * 
+     * @return the large frame pool or null
+     */
+    public BufferPool getLargeFramePool() {
+        return largeFramePool;
+    }
+
+    /**
+     * Make sure a message is not larger than the maximum frame size.
+     * 
+     * @param frameLength The length of the message, including any header
+     * @throws IOException If the message is too large
+     */
+    void checkFrameLength(long frameLength) throws IOException {
+        if (frameLength > maxFrameSize) {
+            throw new IOException("Frame length " + frameLength + " exceeds the maximum of " + maxFrameSize);
+        }
+    }
+
+    /**
+     * Should a message of the given length be read into a buffer from the large
+     * frame pool.
+     * 
+     * @param frameLength The length of the message, including any header
+     * @param capacity The initial capacity of the connection's buffer
+     * @return true if the message should be read into a pooled buffer
+     */
+    boolean usePool(int frameLength, int capacity) {
+        return largeFramePool != null && frameLength > capacity;
+    }
+
+    /**
+     * Get the size to which a buffer should grow.
+     * 
+     * @param capacity The current size of the buffer
+     * @param required The number of bytes that must fit
+     * @return the new size of the buffer
+     */
+    int grow(int capacity, int required) {
+        long grown = Math.min((long) (capacity * growthFactor), maxFrameSize);
+        return (int) Math.max(required, grown);
+    }
+
+    /**
+     * Should a grown buffer shrink back to its initial size.
+     * 
+     * @param capacity The current size of the buffer
+     * @param initialCapacity The initial size of the buffer
+     * @param smallFrames The number of consecutive messages that fit within the
+     *        initial size
+     * @return true if the buffer should shrink
+     */
+    boolean shouldShrink(int capacity, int initialCapacity, int smallFrames) {
+        return shrinkAfter > 0 && capacity > initialCapacity && smallFrames >= shrinkAfter;
+    }
+}
@@ -5,9 +5,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
 
 import org.slf4j.Logger;
 
+import com.fincher.iochannel.BufferPool;
 import com.fincher.iochannel.ChannelException;
 import com.fincher.iochannel.Utilities;
 
@@ -16,7 +18,7 @@ class ReceiveTask extends AbstractReceiveTask {
     private static final Logger LOG = Utilities.getInstance().getLogger(ReceiveTask.class);
 
     /** The byte array used to receive data. */
-    private byte[] buf = new byte[4096];
+    private byte[] buf;
 
     /** The length of headers that are used to determine the length of messages. */
     private final int headerLength;
@@ -25,6 +27,12 @@ class ReceiveTask extends AbstractReceiveTask {
 
     private final InputStream inputStream;
 
+    /** Determines how buf grows and shrinks. */
+    private final ReceiveBufferPolicy policy;
+
+    /** The number of consecutive messages that fit within the initial size. */
+    private int smallMessages;
+
     /**
      * Creates a new ReceiveTask object.
      * 
@@ -44,22 +52,29 @@ class ReceiveTask extends AbstractReceiveTask {
         } catch (IOException e) {
             throw new ChannelException(e);
         }
+
+        policy = parent.getReceiveBufferPolicy();
+        buf = new byte[policy.getInitialSize()];
     }
 
+    /**
+     * Grow buf if necessary, retaining the first offset bytes.
+     * 
+     * @param offset The number of bytes already read into buf
+     * @param length The number of bytes that must fit after offset
+     */
     private void growBufIfNecessary(int offset, int length) {
-        int bytesRemaining = buf.length - offset;
-        int delta = length - bytesRemaining;
-        if (delta > 0) {
-            byte[] newBuf = new byte[buf.length + delta + 100];
-            System.arraycopy(buf, 0, newBuf, 0, buf.length);
+        int required = offset + length;
+        if (required > buf.length) {
+            byte[] newBuf = new byte[policy.grow(buf.length, required)];
+            System.arraycopy(buf, 0, newBuf, 0, offset);
             buf = newBuf;
         }
     }
 
     /**
-     * Read data from the socket.
+     * Read data from the socket into buf.
      * 
-     * @param buf The byte array used to store the result of the read
      * @param offset The index into buf used to store the result of the read
      * @param length The number of bytes that should be read
      * @throws IOException If an exception occurs while reading from the socket
@@ -68,11 +83,22 @@ class ReceiveTask extends AbstractReceiveTask {
 
         // increase size of buf if necessary
         growBufIfNecessary(offset, length);
+        read(buf, offset, length);
+    }
 
+    /**
+     * Read data from the socket.
+     * 
+     * @param dest The byte array used to store the result of the read
+     * @param offset The index into dest used to store the result of the read
+     * @param length The number of bytes that should be read
+     * @throws IOException If an exception occurs while reading from the socket
+     */
+    private void read(byte[] dest, int offset, int length) throws IOException {
         int remaining = length;
         while (remaining > 0) {
             try {
-                int bytesRead = inputStream.read(buf, offset, remaining);
+                int bytesRead = inputStream.read(dest, offset, remaining);
 
                 if (bytesRead == -1) {
                     throw new EOFException();
@@ -119,9 +145,22 @@ class ReceiveTask extends AbstractReceiveTask {
                 LOG.debug("reading length {}", bytesToRead);
             }
 
-            read(offset, bytesToRead);
+            if (bytesToRead < 0) {
+                throw new IOException("Invalid message length " + messageLength);
+            }
+
+            // checked as a long so that a corrupt length cannot overflow past the maximum
+            policy.checkFrameLength((long) headerLength + bytesToRead);
+            int frameLength = bytesToRead + offset;
 
-            messageReceived(buf, 0, bytesToRead + offset);
+            if (policy.usePool(frameLength, policy.getInitialSize())) {
+                readIntoPool(offset, bytesToRead);
+            } else {
+                read(offset, bytesToRead);
+                messageReceived(buf, 0, frameLength);
+            }
+
+            shrinkBufIfNecessary(frameLength);
         } catch (EOFException eofe) {
             LOG.warn("end of stream reached");
 
@@ -140,4 +179,40 @@ class ReceiveTask extends AbstractReceiveTask {
             }
         }
     }
+
+    /**
+     * Read a large message into a buffer from the large frame pool rather than
+     * growing buf.
+     * 
+     * @param offset The number of header bytes in buf that are part of the message
+     * @param length The number of bytes remaining in the message
+     * @throws IOException If an exception occurs while reading from the socket
+     */
+    private void readIntoPool(int offset, int length) throws IOException {
+        BufferPool pool = policy.getLargeFramePool();
+        ByteBuffer slab = pool.acquire(offset + length);
+        try {
+            byte[] dest = slab.array();
+            int start = slab.arrayOffset();
+            System.arraycopy(buf, 0, dest, start, offset);
+            read(dest, start + offset, length);
+            messageReceived(dest, start, offset + length);
+        } finally {
+            pool.release(slab);
+        }
+    }
+
+    /**
+     * Shrink buf back to its initial size after enough consecutive small messages.
+     * 
+     * @param frameLength The length of the message that was just received
+     */
+    private void shrinkBufIfNecessary(int frameLength) {
+        int initialSize = policy.getInitialSize();
+        smallMessages = frameLength <= initialSize ? smallMessages + 1 : 0;
+        if (policy.shouldShrink(buf.length, Math.max(initialSize, headerLength), smallMessages)) {
+            buf = new byte[Math.max(initialSize, headerLength)];
+            smallMessages = 0;
+        }
+    }
 }
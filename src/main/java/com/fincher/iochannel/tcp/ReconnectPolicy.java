@@ -0,0 +1,167 @@
+package com.fincher.iochannel.tcp;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Determines how a {@link TcpClientChannel} connects and reconnects. The first
+ * attempt after a connection is lost is made after the initial delay, which
+ * defaults to zero so that a brief outage costs as little traffic as possible.
+ * Each later attempt waits twice as long as the one before, starting at the
+ * minimum delay and limited to the maximum delay. Every delay is reduced by a
+ * random amount of up to the jitter fraction so that many clients that lose
+ * their connections together do not reconnect in lockstep.
+ *
+ * @author Brian Fincher
+ *
+ */
+public class ReconnectPolicy {
+
+    private Duration initialDelay = Duration.ZERO;
+
+    private Duration minDelay = Duration.ofMillis(100);
+
+    private Duration maxDelay = Duration.ofSeconds(10);
+
+    private double multiplier = 2.0;
+
+    private double jitter = 0.5;
+
+    private Duration connectTimeout = Duration.ofSeconds(5);
+
+    /**
+     * Sets the delay before the first connection attempt. Defaults to zero.
+     * 
+     * @param initialDelay The delay before the first connection attempt
+     */
+    public void setInitialDelay(Duration initialDelay) {
+        Preconditions.checkArgument(!initialDelay.isNegative(), "initialDelay cannot be negative");
+        this.initialDelay = initialDelay;
+    }
+
+    /**
+     * Get the delay before the first connection attempt.
+     * 
+     * @return the delay before the first connection attempt
+     */
+    public Duration getInitialDelay() {
+        return initialDelay;
+    }
+
+    /**
+     * Sets the delays between failed connection attempts. Defaults to 100
+     * milliseconds and 10 seconds.
+     * 
+     * @param minDelay The delay after the first failed attempt
+     * @param maxDelay The longest delay between attempts
+     */
+    public void setDelays(Duration minDelay, Duration maxDelay) {
+        Preconditions.checkArgument(!minDelay.isNegative() && !minDelay.isZero(), "minDelay must be positive");
+        Preconditions.checkArgument(maxDelay.compareTo(minDelay) >= 0, "maxDelay cannot be less than minDelay");
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Get the delay after the first failed connection attempt.
+     * 
+     * @return the delay after the first failed attempt
+     */
+    public Duration getMinDelay() {
+        return minDelay;
+    }
+
+    /**
+     * Get the longest delay between connection attempts.
+     * 
+     * @return the longest delay between attempts
+     */
+    public Duration getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * Sets the factor by which the delay grows after each failed attempt. Defaults
+     * to 2.
+     * 
+     * @param multiplier The growth factor, at least one
+     */
+    public void setMultiplier(double multiplier) {
+        Preconditions.checkArgument(multiplier >= 1, "multiplier must be at least one");
+        this.multiplier = multiplier;
+    }
+
+    /**
+     * Get the factor by which the delay grows after each failed attempt.
+     * 
+     * @return the growth factor
+     */
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    /**
+     * Sets the largest fraction by which each delay is randomly reduced. Defaults
+     * to 0.5, so each delay is between half and all of its nominal value.
+     * 
+     * @param jitter The jitter fraction, from zero to one
+     */
+    public void setJitter(double jitter) {
+        Preconditions.checkArgument(jitter >= 0 && jitter <= 1, "jitter must be from 0 to 1");
+        this.jitter = jitter;
+    }
+
+    /**
+     * Get the largest fraction by which each delay is randomly reduced.
+     * 
+     * @return the jitter fraction
+     */
+    public double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * Sets the longest time a single connection attempt may take. Defaults to 5
+     * seconds.
+     * 
+     * @param connectTimeout The connect timeout
+     */
+    public void setConnectTimeout(Duration connectTimeout) {
+        Preconditions.checkArgument(!connectTimeout.isNegative() && !connectTimeout.isZero(),
+                "connectTimeout must be positive");
+        Preconditions.checkArgument(connectTimeout.toMillis() <= Integer.MAX_VALUE, "connectTimeout is too long");
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Get the longest time a single connection attempt may take.
+     * 
+     * @return the connect timeout
+     */
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Get the delay before a connection attempt.
+     * 
+     * @param attempt The number of attempts that have already failed
+     * @return the delay before the attempt
+     */
+    Duration getDelay(int attempt) {
+        long nanos;
+        if (attempt == 0) {
+            nanos = initialDelay.toNanos();
+        } else {
+            double nominal = minDelay.toNanos() * Math.pow(multiplier, attempt - 1.0);
+            nanos = (long) Math.min(nominal, maxDelay.toNanos());
+        }
+
+        if (nanos > 0 && jitter > 0) {
+            nanos -= (long) (nanos * jitter * ThreadLocalRandom.current().nextDouble());
+        }
+        return Duration.ofNanos(nanos);
+    }
+}
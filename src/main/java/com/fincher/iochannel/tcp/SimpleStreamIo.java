@@ -1,5 +1,7 @@
 package com.fincher.iochannel.tcp;
 
+import java.nio.ByteBuffer;
+
 /**
  * Uses a simple scheme of prepending a 4 byte integer containing the length of
  * the message before sending.
@@ -73,6 +75,23 @@ public class SimpleStreamIo implements StreamIo {
         return toReturn;
     }
 
+    /**
+     * Frames a message by placing a 4 byte integer containing its length in front
+     * of it without copying the message.
+     * 
+     * @param payload The message bytes from position to limit
+     * @return the 4 byte length followed by the payload
+     */
+    @Override
+    public ByteBuffer[] encode(ByteBuffer payload) {
+        int length = payload.remaining();
+        if (headerPartOfMessage) {
+            length += 4;
+        }
+
+        return new ByteBuffer[] { ByteBuffer.wrap(createLengthByteArray(length)), payload };
+    }
+
     /**
      * Create a byte array containing the bytes of the given integer
      * 
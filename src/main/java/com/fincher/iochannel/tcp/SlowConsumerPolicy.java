@@ -0,0 +1,20 @@
+package com.fincher.iochannel.tcp;
+
+/**
+ * Determines what a {@link NioTcpServerChannel} does with a connection whose
+ * queue of unsent bytes has grown past the high watermark.
+ *
+ * @author Brian Fincher
+ *
+ */
+public enum SlowConsumerPolicy {
+
+    /**
+     * Discard messages sent to the connection until its queue drains below the
+     * low watermark.
+     */
+    DROP,
+
+    /** Close the connection. */
+    EVICT
+}
@@ -1,6 +1,7 @@
 package com.fincher.iochannel.tcp;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Used to determine how to read from a TCP socket.
@@ -38,4 +39,72 @@ public interface StreamIo {
      */
     public boolean headerPartOfMessage();
 
+    /**
+     * Does this StreamIo precede each message with a header of
+     * {@link #getHeaderLength()} bytes? A StreamIo with a variable length header,
+     * or that finds the end of each message with a delimiter, returns false and is
+     * only read with {@link #decodeFrame}. Defaults to true.
+     * 
+     * @return true if each message has a fixed length header
+     */
+    public default boolean hasFixedLengthHeader() {
+        return true;
+    }
+
+    /**
+     * Locates the first message in bytes read from the stream without copying
+     * them. The default implementation decodes a fixed length header with
+     * {@link #getMessageLength(byte[])}; StreamIos with other framing override it.
+     * 
+     * @param buf The bytes read from the stream
+     * @param offset The offset within buf of the start of the frame
+     * @param available The number of bytes available from offset
+     * @param frame Populated with the location of the message. When the frame is
+     *        incomplete its frame length is set to the number of bytes required, if
+     *        known. Retains its scanned count until a complete frame is found
+     * @return true if a complete frame was found
+     * @throws IOException If the bytes do not form a valid frame
+     */
+    public default boolean decodeFrame(byte[] buf, int offset, int available, Frame frame) throws IOException {
+        int headerLength = getHeaderLength();
+        if (available < headerLength) {
+            return false;
+        }
+
+        byte[] header = frame.getHeader(headerLength);
+        System.arraycopy(buf, offset, header, 0, headerLength);
+        int messageLength = getMessageLength(header);
+
+        int frameLength;
+        int messageOffset;
+        if (headerPartOfMessage()) {
+            frameLength = messageLength;
+            messageOffset = offset;
+        } else {
+            frameLength = headerLength + messageLength;
+            messageOffset = offset + headerLength;
+        }
+
+        if (messageLength < 0 || frameLength < headerLength) {
+            throw new IOException("Invalid message length " + messageLength);
+        }
+
+        frame.set(messageOffset, messageLength, frameLength);
+        return available >= frameLength;
+    }
+
+    /**
+     * Frames a message for sending. The returned buffers are written to the socket,
+     * in order, with a single gathering write so that framing does not require
+     * copying the payload into a new array.
+     * 
+     * @param payload The message bytes from position to limit
+     * @return The buffers to write, one of which is the payload
+     * @throws UnsupportedOperationException If this StreamIo only supports
+     *         reading
+     */
+    public default ByteBuffer[] encode(ByteBuffer payload) {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support encoding");
+    }
+
 }
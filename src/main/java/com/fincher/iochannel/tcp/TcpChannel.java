@@ -4,11 +4,14 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
@@ -18,10 +21,10 @@ import com.fincher.iochannel.ChannelState;
 import com.fincher.iochannel.IoType;
 import com.fincher.iochannel.Listeners;
 import com.fincher.iochannel.MessageBuffer;
+import com.fincher.iochannel.PooledMessageBuffer;
 import com.fincher.iochannel.SocketIoChannel;
 import com.fincher.iochannel.Utilities;
 import com.fincher.thread.CallableTask;
-import com.fincher.thread.LongLivedTask;
 import com.fincher.thread.RunnableTask;
 import com.google.common.base.Preconditions;
 
@@ -52,10 +55,44 @@ public abstract class TcpChannel extends SocketIoChannel implements TcpChannelIf
 
     private ReceiveTaskFactory receiveTaskFactory = new DefaultReceiveTaskFactory();
 
+    /** The initial size of the read ahead buffer or zero if read ahead is disabled. */
+    private int readAheadBufferSize = 0;
+
+    /** Determines how the buffer of each connection grows and shrinks. */
+    private ReceiveBufferPolicy receiveBufferPolicy = new ReceiveBufferPolicy();
+
+    /** If not null, determines how small sends are coalesced into larger writes. */
+    private WriteCoalescingPolicy writeCoalescingPolicy;
+
+    /** Buffers sends when write coalescing is enabled, otherwise null. */
+    private WriteCoalescer writeCoalescer;
+
+    private Future<Void> writeCoalescerFuture;
+
+    /**
+     * The array of each socket into which framed messages are copied so that they
+     * are written with a single write. Only accessed while holding the socket's
+     * lock.
+     */
+    private final Map<Socket, byte[]> writeBuffers = new ConcurrentHashMap<>();
+
+    /** The size of the array into which framed messages are copied before writing. */
+    static final int WRITE_BUFFER_SIZE = 8192;
+
+    /** The initial size of the read ahead buffer used for a StreamIo without a fixed length header. */
+    static final int DEFAULT_READ_AHEAD_BUFFER_SIZE = 8192;
+
     private static final class DefaultReceiveTaskFactory implements ReceiveTaskFactory {
         @Override
         public RunnableTask createReceiveTask(String id, Socket socket, StreamIo streamIo, TcpChannel parent)
                 throws ChannelException {
+            if (parent.getReadAheadBufferSize() > 0) {
+                return new ReadAheadReceiveTask(id, socket, streamIo, parent, parent.getReadAheadBufferSize());
+            }
+            if (!streamIo.hasFixedLengthHeader()) {
+                // the frame length is not known until the header has been decoded
+                return new ReadAheadReceiveTask(id, socket, streamIo, parent, DEFAULT_READ_AHEAD_BUFFER_SIZE);
+            }
             return new ReceiveTask(id, socket, streamIo, parent);
         }
     }
@@ -84,6 +121,89 @@ public abstract class TcpChannel extends SocketIoChannel implements TcpChannelIf
         this.receiveTaskFactory = factory;
     }
 
+    /**
+     * Enables reading ahead on received connections. Rather than reading the
+     * header and body of each message separately, as many bytes as are available
+     * are read into a buffer and every complete message in the buffer is
+     * delivered. The buffer grows and shrinks according to the
+     * {@link ReceiveBufferPolicy}. A StreamIo without a fixed length header is
+     * always read ahead.
+     * 
+     * @param readAheadBufferSize The initial size of the read ahead buffer. Zero
+     *        disables read ahead
+     */
+    public void setReadAheadBufferSize(int readAheadBufferSize) {
+        Preconditions.checkState(getState() == ChannelState.INITIAL,
+                "The state must be INITIAL for setReadAheadBufferSize");
+        Preconditions.checkArgument(readAheadBufferSize >= 0, "readAheadBufferSize cannot be negative");
+
+        this.readAheadBufferSize = readAheadBufferSize;
+    }
+
+    /**
+     * Get the initial size of the read ahead buffer.
+     * 
+     * @return the initial size of the read ahead buffer or zero if read ahead is
+     *         disabled
+     */
+    public int getReadAheadBufferSize() {
+        return readAheadBufferSize;
+    }
+
+    /**
+     * Sets the policy that determines how the buffer into which each connection
+     * reads messages grows and shrinks, and the largest message that may be
+     * received.
+     * 
+     * @param receiveBufferPolicy The receive buffer policy
+     */
+    public void setReceiveBufferPolicy(ReceiveBufferPolicy receiveBufferPolicy) {
+        Preconditions.checkState(getState() == ChannelState.INITIAL,
+                "The state must be INITIAL for setReceiveBufferPolicy");
+        Preconditions.checkNotNull(receiveBufferPolicy, "receiveBufferPolicy cannot be null");
+
+        this.receiveBufferPolicy = receiveBufferPolicy;
+    }
+
+    /**
+     * Get the policy that determines how the buffer into which each connection
+     * reads messages grows and shrinks.
+     * 
+     * @return the receive buffer policy
+     */
+    public ReceiveBufferPolicy getReceiveBufferPolicy() {
+        return receiveBufferPolicy;
+    }
+
+    /**
+     * Enables coalescing of small sends into larger writes on each connection.
+     * Coalescing is disabled by default, so each send is written to the socket
+     * before the send returns.
+     * 
+     * <p>
+     * While coalescing, a send is recorded in the channel's metrics once it has
+     * been copied into the connection's buffer, so the send latency does not
+     * include the wait for the buffer to be written.
+     * 
+     * @param writeCoalescingPolicy Determines when buffered sends are written
+     */
+    public void setWriteCoalescingPolicy(WriteCoalescingPolicy writeCoalescingPolicy) {
+        Preconditions.checkState(getState() == ChannelState.INITIAL,
+                "The state must be INITIAL for setWriteCoalescingPolicy");
+        Preconditions.checkNotNull(writeCoalescingPolicy, "writeCoalescingPolicy cannot be null");
+
+        this.writeCoalescingPolicy = writeCoalescingPolicy;
+    }
+
+    /**
+     * Get the policy that determines how small sends are coalesced.
+     * 
+     * @return the write coalescing policy or null if coalescing is disabled
+     */
+    public WriteCoalescingPolicy getWriteCoalescingPolicy() {
+        return writeCoalescingPolicy;
+    }
+
     /**
      * Sets the TCP socket options for this socket.
      * 
@@ -105,6 +225,11 @@ public abstract class TcpChannel extends SocketIoChannel implements TcpChannelIf
     public final void connect() throws ChannelException, InterruptedException {
         Preconditions.checkState(getState() == ChannelState.INITIAL, "Cannot connect when state = " + getState());
 
+        if (writeCoalescingPolicy != null) {
+            writeCoalescer = new WriteCoalescer(getId() + "WriteCoalescer", this, writeCoalescingPolicy);
+            writeCoalescerFuture = getTaskExecutor().start(getId() + "WriteCoalescer", writeCoalescer);
+        }
+
         performConnect();
     }
 
@@ -118,7 +243,7 @@ public abstract class TcpChannel extends SocketIoChannel implements TcpChannelIf
         setState(ChannelState.CONNECTING);
 
         connectTask = getConnectTask();
-        connectTaskFuture = LongLivedTask.create(getId() + "ConnectTask", connectTask).start();
+        connectTaskFuture = getTaskExecutor().start(getId() + "ConnectTask", connectTask);
     }
 
     /**
@@ -152,6 +277,17 @@ public abstract class TcpChannel extends SocketIoChannel implements TcpChannelIf
 
         receiveTasks.values().forEach(future -> future.cancel(true));
 
+        if (writeCoalescer != null) {
+            try {
+                flush();
+            } catch (ChannelException ce) {
+                LOG.warn("{} flush on close failed: {}", getId(), ce.getMessage());
+            }
+            writeCoalescer.terminate();
+            writeCoalescerFuture.cancel(true);
+        }
+        writeBuffers.clear();
+
         synchronized (sockets) {
             for (Socket socket : sockets.values()) {
                 try {
@@ -170,12 +306,124 @@ public abstract class TcpChannel extends SocketIoChannel implements TcpChannelIf
         send(bytes, channel);
     }
 
-    protected final synchronized void send(byte[] msgBytes, int offset, int length, Socket channel) throws IOException {
+    /**
+     * Send bytes to a socket. Sends to the same socket are serialized but sends to
+     * different sockets may proceed concurrently.
+     * 
+     * @param msgBytes The bytes to send
+     * @param offset The offset into msgBytes
+     * @param length The number of bytes to send
+     * @param channel The socket to which the bytes will be sent
+     * @throws IOException If an exception occurs while sending
+     */
+    protected final void send(byte[] msgBytes, int offset, int length, Socket channel) throws IOException {
+        long start = sendStarted();
+        synchronized (channel) {
+            if (writeCoalescer == null) {
+                write(msgBytes, offset, length, channel);
+            } else {
+                writeCoalescer.write(msgBytes, offset, length, channel);
+            }
+        }
+        messageSent(length, start);
+    }
+
+    /**
+     * Send the remaining bytes of each buffer, in order, to a socket. Sends to the
+     * same socket are serialized but sends to different sockets may proceed
+     * concurrently.
+     * 
+     * @param srcs The buffers to send
+     * @param channel The socket to which the bytes will be sent
+     * @throws IOException If an exception occurs while sending
+     */
+    protected final void send(ByteBuffer[] srcs, Socket channel) throws IOException {
+        int length = 0;
+        for (ByteBuffer src : srcs) {
+            length += src.remaining();
+        }
+
+        long start = sendStarted();
+        synchronized (channel) {
+            if (writeCoalescer == null) {
+                write(srcs, channel);
+            } else {
+                writeCoalescer.write(srcs, channel);
+            }
+        }
+        messageSent(length, start);
+    }
+
+    /**
+     * Write bytes to a socket. By default the bytes are written to the socket's
+     * output stream.
+     * 
+     * @param msgBytes The bytes to write
+     * @param offset The offset into msgBytes
+     * @param length The number of bytes to write
+     * @param channel The socket to which the bytes will be written
+     * @throws IOException If an exception occurs while writing
+     */
+    protected void write(byte[] msgBytes, int offset, int length, Socket channel) throws IOException {
         OutputStream output = channel.getOutputStream();
         output.write(msgBytes, offset, length);
     }
 
-    protected final synchronized void send(byte[] msgBytes, Socket channel) throws IOException {
+    /**
+     * Write the remaining bytes of each buffer, in order, to a socket. A socket
+     * with a blocking SocketChannel is written with a single gathering write.
+     * Otherwise the buffers are copied into a reused array for the socket so that
+     * a header and a small payload are written to the output stream together.
+     * Heap buffers that do not fit in the array are written without being copied.
+     * 
+     * @param srcs The buffers to write
+     * @param channel The socket to which the bytes will be written
+     * @throws IOException If an exception occurs while writing
+     */
+    protected void write(ByteBuffer[] srcs, Socket channel) throws IOException {
+        SocketChannel socketChannel = channel.getChannel();
+        if (socketChannel != null && socketChannel.isBlocking()) {
+            long remaining = 0;
+            for (ByteBuffer src : srcs) {
+                remaining += src.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= socketChannel.write(srcs);
+            }
+            return;
+        }
+
+        OutputStream output = channel.getOutputStream();
+        byte[] writeBuffer = writeBuffers.computeIfAbsent(channel, socket -> new byte[WRITE_BUFFER_SIZE]);
+        int size = 0;
+        for (ByteBuffer src : srcs) {
+            while (src.hasRemaining()) {
+                int remaining = src.remaining();
+                if (src.hasArray() && remaining > writeBuffer.length - size) {
+                    if (size > 0) {
+                        output.write(writeBuffer, 0, size);
+                        size = 0;
+                    }
+                    output.write(src.array(), src.arrayOffset() + src.position(), remaining);
+                    src.position(src.limit());
+                } else {
+                    int length = Math.min(remaining, writeBuffer.length - size);
+                    src.get(writeBuffer, size, length);
+                    size += length;
+                    if (size == writeBuffer.length) {
+                        output.write(writeBuffer, 0, size);
+                        size = 0;
+                    }
+                }
+            }
+        }
+
+        if (size > 0) {
+            output.write(writeBuffer, 0, size);
+        }
+    }
+
+    protected final void send(byte[] msgBytes, Socket channel) throws IOException {
         send(msgBytes, 0, msgBytes.length, channel);
     }
 
@@ -198,23 +446,215 @@ public abstract class TcpChannel extends SocketIoChannel implements TcpChannelIf
      */
     @Override
     public void send(MessageBuffer message) throws ChannelException {
+        sendToAll(createSender(message), false);
+    }
+
+    @Override
+    public void send(StreamIo streamIo, MessageBuffer message) throws ChannelException {
+        sendToAll(createSender(streamIo, message), false);
+    }
 
+    /**
+     * Send data via this IO Channel, failing rather than logging a warning if no
+     * socket is connected. Used by a group to send the message on another member.
+     * 
+     * @param message The data to be sent
+     * @throws ChannelException If no socket is connected or an error occurs while
+     *         sending
+     */
+    void sendToConnected(MessageBuffer message) throws ChannelException {
+        sendToAll(createSender(message), true);
+    }
+
+    /**
+     * Frame and send a message via this IO Channel, failing rather than logging a
+     * warning if no socket is connected. Used by a group to send the message on
+     * another member.
+     * 
+     * @param streamIo Used to frame the message
+     * @param message The unframed message
+     * @throws ChannelException If no socket is connected or an error occurs while
+     *         sending
+     */
+    void sendToConnected(StreamIo streamIo, MessageBuffer message) throws ChannelException {
+        sendToAll(createSender(streamIo, message), true);
+    }
+
+    private SocketSender createSender(MessageBuffer message) {
         byte[] bytes = message.getBytes();
 
         logSend(LOG, message, "message length = " + bytes.length);
 
-        synchronized (sockets) {
-            if (sockets.values().isEmpty()) {
-                LOG.warn("{} Cannot send due to no sockets connected", getId());
+        return socket -> send(bytes, socket);
+    }
+
+    private SocketSender createSender(StreamIo streamIo, MessageBuffer message) {
+        ByteBuffer[] frame = encode(streamIo, message);
+        return socket -> send(duplicate(frame), socket);
+    }
+
+    @Override
+    public void send(StreamIo streamIo, MessageBuffer message, String channelId) throws ChannelException {
+        if (channelId.equals("*")) {
+            send(streamIo, message);
+        } else {
+            Socket socket = sockets.get(channelId);
+            if (socket == null) {
+                throw new ChannelException(getId() + " no such channel ID " + channelId);
             }
-            for (Socket socket : sockets.values()) {
-                try {
-                    send(bytes, socket);
-                } catch (IOException ioe) {
-                    throw new ChannelException(getId(), ioe);
+
+            try {
+                send(encode(streamIo, message), socket);
+            } catch (IOException ioe) {
+                throw new ChannelException(ioe);
+            }
+        }
+    }
+
+    /**
+     * Send messages to all connected sockets. The messages are copied into a
+     * single array and written while holding each socket's lock once.
+     * 
+     * @param messages The messages to send
+     * @throws ChannelException If an error occurs while sending
+     */
+    @Override
+    public void send(List<MessageBuffer> messages) throws ChannelException {
+        int length = 0;
+        for (MessageBuffer message : messages) {
+            logSend(LOG, message, "message length = " + message.getLength());
+            length += message.getLength();
+        }
+
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        for (MessageBuffer message : messages) {
+            bytes.put(message.getByteBuffer());
+        }
+        sendToAll(socket -> send(messages, bytes.array(), socket), false);
+    }
+
+    @Override
+    public void send(StreamIo streamIo, List<MessageBuffer> messages) throws ChannelException {
+        List<ByteBuffer[]> frames = new ArrayList<>(messages.size());
+        int length = 0;
+        for (MessageBuffer message : messages) {
+            ByteBuffer[] frame = encode(streamIo, message);
+            for (ByteBuffer buf : frame) {
+                length += buf.remaining();
+            }
+            frames.add(frame);
+        }
+
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        for (ByteBuffer[] frame : frames) {
+            for (ByteBuffer buf : frame) {
+                bytes.put(buf);
+            }
+        }
+        sendToAll(socket -> send(messages, bytes.array(), socket), false);
+    }
+
+    /** Write a batch of messages to a socket and record each message as sent. */
+    private void send(List<MessageBuffer> messages, byte[] bytes, Socket channel) throws IOException {
+        long start = sendStarted();
+        synchronized (channel) {
+            if (writeCoalescer == null) {
+                write(bytes, 0, bytes.length, channel);
+            } else {
+                writeCoalescer.write(bytes, 0, bytes.length, channel);
+            }
+        }
+
+        for (MessageBuffer message : messages) {
+            messageSent(message.getLength(), start);
+        }
+    }
+
+    /**
+     * Write the sends buffered for each connected socket. Does nothing if write
+     * coalescing is disabled.
+     * 
+     * @throws ChannelException If an error occurs while writing
+     */
+    @Override
+    public void flush() throws ChannelException {
+        if (writeCoalescer != null) {
+            forEachSocket(getSocketSnapshot(), socket -> {
+                synchronized (socket) {
+                    writeCoalescer.flush(socket);
+                }
+            });
+        }
+    }
+
+    private ByteBuffer[] encode(StreamIo streamIo, MessageBuffer message) {
+        logSend(LOG, message, "message length = " + message.getLength());
+
+        // pooled messages are read through their buffer to avoid copying them out
+        // of the pool. Other messages are wrapped so that stream writes can use the
+        // backing array
+        ByteBuffer payload = message instanceof PooledMessageBuffer ? message.getByteBuffer()
+                : ByteBuffer.wrap(message.getBytes());
+        return streamIo.encode(payload);
+    }
+
+    private static ByteBuffer[] duplicate(ByteBuffer[] frame) {
+        ByteBuffer[] copy = new ByteBuffer[frame.length];
+        for (int i = 0; i < frame.length; i++) {
+            copy[i] = frame[i].duplicate();
+        }
+        return copy;
+    }
+
+    /** Sends to a single socket. */
+    @FunctionalInterface
+    private interface SocketSender {
+        void send(Socket socket) throws IOException;
+    }
+
+    /**
+     * Sends to each connected socket, continuing past sockets that fail.
+     * 
+     * @param requireSocket Throw rather than log a warning if no socket is
+     *        connected
+     */
+    private void sendToAll(SocketSender sender, boolean requireSocket) throws ChannelException {
+        List<Socket> snapshot = getSocketSnapshot();
+        if (snapshot.isEmpty()) {
+            if (requireSocket) {
+                throw new ChannelException(getId() + " Cannot send due to no sockets connected");
+            }
+            LOG.warn("{} Cannot send due to no sockets connected", getId());
+        }
+
+        forEachSocket(snapshot, sender);
+    }
+
+    private List<Socket> getSocketSnapshot() {
+        // send outside of the lock so that a slow socket does not block connection
+        // changes
+        synchronized (sockets) {
+            return new ArrayList<>(sockets.values());
+        }
+    }
+
+    private void forEachSocket(List<Socket> snapshot, SocketSender sender) throws ChannelException {
+        ChannelException exception = null;
+        for (Socket socket : snapshot) {
+            try {
+                sender.send(socket);
+            } catch (IOException ioe) {
+                if (exception == null) {
+                    exception = new ChannelException(getId(), ioe);
+                } else {
+                    exception.addSuppressed(ioe);
                 }
             }
         }
+
+        if (exception != null) {
+            throw exception;
+        }
     }
 
     /**
@@ -278,24 +718,51 @@ public abstract class TcpChannel extends SocketIoChannel implements TcpChannelIf
     protected synchronized void connectionEstablished(Socket socket) throws ChannelException {
         String socketId = getSocketId(socket);
 
+        if (writeCoalescer != null) {
+            writeCoalescer.addSocket(socket);
+        }
+
         synchronized (sockets) {
             sockets.put(socketId, socket);
         }
 
         socketOptions.applySocketOptions(getId(), socket);
 
+        registerSocket(socketId, socket);
+
+        LOG.debug("{} setting state to CONNECTED", getId());
+        setState(ChannelState.CONNECTED);
+        getMetrics().connectionEstablished(getId(), socketId, isReconnect());
+
+        connectionEstablishedListeners.getListeners().forEach(listener -> listener.connectionEstablished(socketId));
+    }
+
+    /**
+     * Is a newly established connection a reconnection after a lost connection.
+     * Used only for metrics.
+     * 
+     * @return false by default
+     */
+    protected boolean isReconnect() {
+        return false;
+    }
+
+    /**
+     * Called when a socket connection is established to begin servicing the
+     * socket. By default a receive task is started for input channels.
+     * 
+     * @param socketId The ID of the socket
+     * @param socket The newly established socket connection
+     * @throws ChannelException If an exception occurs while servicing the socket
+     */
+    protected void registerSocket(String socketId, Socket socket) throws ChannelException {
         if (getIoType().isInput()) {
             String receiveTaskId = socketId;
             RunnableTask receiveTask = receiveTaskFactory.createReceiveTask(receiveTaskId, socket,
                     streamIo, this);
-            Future<Void> receiveTaskFuture = LongLivedTask.create(receiveTaskId, receiveTask).start();
+            Future<Void> receiveTaskFuture = getTaskExecutor().start(receiveTaskId, receiveTask);
             receiveTasks.put(socketId, receiveTaskFuture);
         }
-
-        LOG.debug("{} setting state to CONNECTED", getId());
-        setState(ChannelState.CONNECTED);
-
-        connectionEstablishedListeners.getListeners().forEach(listener -> listener.connectionEstablished(socketId));
     }
 
     /**
@@ -306,18 +773,25 @@ public abstract class TcpChannel extends SocketIoChannel implements TcpChannelIf
      *         loss event
      */
     protected synchronized void connectionLost(Socket socket) throws ChannelException {
-        LOG.atWarn().setMessage("{} {} connection lost")
-                .addArgument(this::getId)
-                .addArgument(() -> getSocketId(socket));
-
         String socketId = getSocketId(socket);
+        LOG.warn("{} {} connection lost", getId(), socketId);
+
+        getMetrics().connectionLost(getId(), socketId);
         connectionLostListeners.getListeners().forEach(listener -> listener.connectionLost(socketId));
 
-        sockets.remove(socketId);
+        if (writeCoalescer != null) {
+            writeCoalescer.removeSocket(socket);
+        }
+
+        writeBuffers.remove(socket);
+
+        synchronized (sockets) {
+            sockets.remove(socketId);
 
-        if (sockets.isEmpty()) {
-            LOG.debug("{} setting state to CONNECTING", getId());
-            setState(ChannelState.CONNECTING);
+            if (sockets.isEmpty() && getState() != ChannelState.CLOSED) {
+                LOG.debug("{} setting state to CONNECTING", getId());
+                setState(ChannelState.CONNECTING);
+            }
         }
 
         Future<?> receiveTask = receiveTasks.remove(getReceiveTaskId(socketId));
@@ -331,15 +805,28 @@ public abstract class TcpChannel extends SocketIoChannel implements TcpChannelIf
             LOG.error(e.getMessage(), e);
         } finally {
             // wait to give tasks time to close
-            try {
-                Utilities.sleep(this, getSocketSleepTime().plus(Duration.ofSeconds(1)));
-            } catch (InterruptedException ie) {
-                LOG.warn(getId() + " " + ie.getMessage(), ie);
-                Thread.currentThread().interrupt();
+            Duration delay = getConnectionLostDelay();
+            if (!delay.isZero()) {
+                try {
+                    Utilities.sleep(this, delay);
+                } catch (InterruptedException ie) {
+                    LOG.warn(getId() + " " + ie.getMessage(), ie);
+                    Thread.currentThread().interrupt();
+                }
             }
         }
     }
 
+    /**
+     * Gets the time to wait after a connection is lost to give receive tasks time
+     * to close.
+     * 
+     * @return the time to wait after a connection is lost
+     */
+    protected Duration getConnectionLostDelay() {
+        return getSocketSleepTime().plus(Duration.ofSeconds(1));
+    }
+
     @Override
     public int getNumConnections() {
         return sockets.size();
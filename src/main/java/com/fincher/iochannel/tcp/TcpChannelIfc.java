@@ -1,6 +1,8 @@
 package com.fincher.iochannel.tcp;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
+import java.util.List;
 
 import com.fincher.iochannel.ChannelException;
 import com.fincher.iochannel.IoChannelIfc;
@@ -27,6 +29,97 @@ public interface TcpChannelIfc extends IoChannelIfc<MessageBuffer> {
      */
     void send(MessageBuffer message, String channelId) throws ChannelException;
 
+    /**
+     * Frames a message with the given StreamIo and sends it to all connected
+     * sockets. The frame and the message are written together without first being
+     * copied into a single array. The default implementation frames the message
+     * into a new array and sends it with {@code send(MessageBuffer)}.
+     * 
+     * @param streamIo Used to frame the message
+     * @param message The unframed message to send
+     * @throws ChannelException If an error occurs while sending
+     */
+    default void send(StreamIo streamIo, MessageBuffer message) throws ChannelException {
+        send(new MessageBuffer(frame(streamIo, message)));
+    }
+
+    /**
+     * Frames a message with the given StreamIo and sends it on this channel. The
+     * frame and the message are written together without first being copied into
+     * a single array. The default implementation frames the message into a new
+     * array and sends it with {@link #send(MessageBuffer, String)}.
+     * 
+     * @param streamIo Used to frame the message
+     * @param message The unframed message to send
+     * @param channelId The ID of the channel on which to send this message. "*" if
+     *        sending to all channels
+     * @throws ChannelException If an exception occurs while sending or if the
+     *         channelID does not exist
+     */
+    default void send(StreamIo streamIo, MessageBuffer message, String channelId) throws ChannelException {
+        send(new MessageBuffer(frame(streamIo, message)), channelId);
+    }
+
+    /**
+     * Frames a message into a single array.
+     * 
+     * @param streamIo Used to frame the message
+     * @param message The unframed message
+     * @return the framed message
+     */
+    private static byte[] frame(StreamIo streamIo, MessageBuffer message) {
+        ByteBuffer[] frame = streamIo.encode(message.getByteBuffer());
+        int length = 0;
+        for (ByteBuffer buf : frame) {
+            length += buf.remaining();
+        }
+
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        for (ByteBuffer buf : frame) {
+            bytes.put(buf);
+        }
+        return bytes.array();
+    }
+
+    /**
+     * Sends several messages to all connected sockets, taking each socket's lock
+     * once and writing the messages together. The default implementation sends
+     * each message with {@link #send(MessageBuffer)}.
+     * 
+     * @param messages The messages to send
+     * @throws ChannelException If an error occurs while sending
+     */
+    default void send(List<MessageBuffer> messages) throws ChannelException {
+        for (MessageBuffer message : messages) {
+            send(message);
+        }
+    }
+
+    /**
+     * Frames several messages with the given StreamIo and sends them to all
+     * connected sockets, taking each socket's lock once and writing the frames
+     * together. The default implementation sends each message with
+     * {@link #send(StreamIo, MessageBuffer)}.
+     * 
+     * @param streamIo Used to frame the messages
+     * @param messages The unframed messages to send
+     * @throws ChannelException If an error occurs while sending
+     */
+    default void send(StreamIo streamIo, List<MessageBuffer> messages) throws ChannelException {
+        for (MessageBuffer message : messages) {
+            send(streamIo, message);
+        }
+    }
+
+    /**
+     * Write any sends that have been buffered by write coalescing. The default
+     * implementation does nothing, for channels that do not buffer sends.
+     * 
+     * @throws ChannelException If an error occurs while writing
+     */
+    default void flush() throws ChannelException {
+    }
+
     /**
      * Get the IDs of the sockets that are associated with this channel
      * 
@@ -2,11 +2,16 @@ package com.fincher.iochannel.tcp;
 
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
 
 import com.fincher.iochannel.ChannelException;
+import com.fincher.iochannel.ChannelState;
 import com.fincher.iochannel.IoType;
 import com.fincher.iochannel.MessageBuffer;
+import com.google.common.base.Preconditions;
 
 /**
  * A TCP client socket.
@@ -19,6 +24,12 @@ public class TcpClientChannel extends TcpChannel {
     /** The remote address to which this client is trying to connect. */
     private final InetSocketAddress remoteAddress;
 
+    /** Set once a connection has been lost so that later connections are reconnections. */
+    private boolean connectionLost = false;
+
+    /** Determines the delay before each connection attempt. */
+    private ReconnectPolicy reconnectPolicy = new ReconnectPolicy();
+
     /**
      * Constructs a new TCP client socket.
      * 
@@ -100,21 +111,105 @@ public class TcpClientChannel extends TcpChannel {
         return new TcpClientChannel(id, IoType.OUTPUT_ONLY, streamIo, localAddress, remoteAddress);
     }
 
+    /**
+     * Sets the policy that determines the delay before each connection attempt and
+     * the connect timeout. By default the first attempt after a connection is lost
+     * is made immediately.
+     * 
+     * @param reconnectPolicy The reconnect policy
+     */
+    public void setReconnectPolicy(ReconnectPolicy reconnectPolicy) {
+        Preconditions.checkState(getState() == ChannelState.INITIAL,
+                "The state must be INITIAL for setReconnectPolicy");
+        Preconditions.checkNotNull(reconnectPolicy, "reconnectPolicy cannot be null");
+        this.reconnectPolicy = reconnectPolicy;
+    }
+
+    /**
+     * Get the policy that determines the delay before each connection attempt.
+     * 
+     * @return the reconnect policy
+     */
+    public ReconnectPolicy getReconnectPolicy() {
+        return reconnectPolicy;
+    }
+
     /** Gets the Runnable used to create a connect thread. */
     @Override
     protected TcpClientConnectTask getConnectTask() {
-        return new TcpClientConnectTask(this, remoteAddress);
+        return new TcpClientConnectTask(this, remoteAddress, reconnectPolicy);
     }
 
     /**
-     * Called when the socket connection is lost.
+     * Called when the socket connection is lost. A new connect task is started
+     * unless the channel has been closed.
      * 
      * @param socket The socket what was lost
      */
     @Override
     protected synchronized void connectionLost(Socket socket) throws ChannelException {
+        // the socket may already have been reported lost
+        synchronized (sockets) {
+            if (sockets.get(getSocketId(socket)) != socket) {
+                return;
+            }
+        }
+
+        connectionLost = true;
         super.connectionLost(socket);
-        performConnect();
+
+        if (getState() != ChannelState.CLOSED) {
+            performConnect();
+        }
+    }
+
+    /**
+     * Treat the current connection as lost and start reconnecting. Used when a
+     * send fails, since an output only channel has no receive task to notice that
+     * the connection was lost.
+     * 
+     * @throws ChannelException If an error occurs while handling the lost
+     *         connection
+     */
+    synchronized void dropConnection() throws ChannelException {
+        List<Socket> snapshot;
+        synchronized (sockets) {
+            snapshot = new ArrayList<>(sockets.values());
+        }
+
+        for (Socket socket : snapshot) {
+            connectionLost(socket);
+        }
+    }
+
+    /**
+     * The reconnect policy determines when the next connection attempt is made, so
+     * there is no need to wait after a connection is lost.
+     * 
+     * @return zero
+     */
+    @Override
+    protected Duration getConnectionLostDelay() {
+        return Duration.ZERO;
+    }
+
+    /**
+     * Close this socket. Synchronized with {@link #connectionLost(Socket)} so that
+     * a connection lost while closing does not start a new connect task.
+     */
+    @Override
+    public synchronized void close() throws ChannelException {
+        super.close();
+    }
+
+    /**
+     * A connection is a reconnection once a connection has been lost.
+     * 
+     * @return true if a connection has previously been lost
+     */
+    @Override
+    protected boolean isReconnect() {
+        return connectionLost;
     }
 
     /**
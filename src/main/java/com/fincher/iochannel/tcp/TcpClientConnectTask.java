@@ -3,6 +3,7 @@ package com.fincher.iochannel.tcp;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.time.Duration;
 
 import org.slf4j.Logger;
 
@@ -10,7 +11,9 @@ import com.fincher.iochannel.Utilities;
 import com.fincher.thread.CallableTask;
 
 /**
- * Used to connect a TCP Client socket.
+ * Used to connect a TCP Client socket. Attempts are spaced according to the
+ * parent's {@link ReconnectPolicy}. The delay is spent in this task so that the
+ * parent channel is never locked while reconnecting.
  * 
  * @author Brian Fincher
  *
@@ -20,7 +23,7 @@ class TcpClientConnectTask implements CallableTask<Socket> {
     private static final Logger LOG = Utilities.getInstance().getLogger(TcpClientConnectTask.class);
 
     /** Should this task continue to execute. */
-    private boolean continueExecution = true;
+    private volatile boolean continueExecution = true;
 
     /** The parent object. */
     private final TcpClientChannel parent;
@@ -28,16 +31,25 @@ class TcpClientConnectTask implements CallableTask<Socket> {
     /** The remote address to which this client is trying to connect. */
     private final InetSocketAddress remoteAddress;
 
+    private final ReconnectPolicy reconnectPolicy;
+
+    /** The number of connection attempts that have failed. */
+    private int attempt = 0;
+
     /**
      * Constructs a new TcpClientConnectTask.
      * 
      * @param parent The parent object
      * @param remoteAddress The remote address to which this client is trying to
      *        connect
+     * @param reconnectPolicy Determines the delay before each attempt and the
+     *        connect timeout
      */
-    TcpClientConnectTask(TcpClientChannel parent, InetSocketAddress remoteAddress) {
+    TcpClientConnectTask(TcpClientChannel parent, InetSocketAddress remoteAddress,
+            ReconnectPolicy reconnectPolicy) {
         this.parent = parent;
         this.remoteAddress = remoteAddress;
+        this.reconnectPolicy = reconnectPolicy;
     }
 
     @Override
@@ -47,24 +59,36 @@ class TcpClientConnectTask implements CallableTask<Socket> {
 
     @Override
     public Socket call() throws InterruptedException, IOException {
-        try {
-            Socket socket = new Socket(remoteAddress.getAddress(), remoteAddress.getPort()); // NOSONAR
+        Duration delay = reconnectPolicy.getDelay(attempt);
+        if (!delay.isZero()) {
+            LOG.debug("{} waiting {} before connection attempt {}", parent.getId(), delay, attempt + 1);
+            Utilities.sleep(this, delay);
+        }
 
-            socket.setSoTimeout(2000);
+        if (!continueExecution) {
+            return null;
+        }
 
-            LOG.info("{} connection established.  Local port = {}", parent.getId(),
-                    socket.getLocalPort());
-            parent.connectionEstablished(socket);
-            continueExecution = false;
-            return socket;
+        // the socket read timeout comes from the parent's TcpSocketOptions
+        Socket socket = new Socket(); // NOSONAR
+        try {
+            socket.connect(remoteAddress, (int) reconnectPolicy.getConnectTimeout().toMillis());
         } catch (IOException ioe) {
-            Utilities.sleep(this, parent.getSocketSleepTime());
+            attempt++;
+            socket.close();
+            LOG.debug("{} connection attempt {} failed: {}", parent.getId(), attempt, ioe.getMessage());
             throw ioe;
         }
+
+        LOG.info("{} connection established.  Local port = {}", parent.getId(),
+                socket.getLocalPort());
+        continueExecution = false;
+        parent.connectionEstablished(socket);
+        return socket;
     }
 
     @Override
     public void terminate() {
-        // no action necessary
+        continueExecution = false;
     }
 }
@@ -0,0 +1,442 @@
+package com.fincher.iochannel.tcp;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+
+import com.fincher.iochannel.ChannelException;
+import com.fincher.iochannel.ChannelState;
+import com.fincher.iochannel.IoChannel;
+import com.fincher.iochannel.IoChannelDataType;
+import com.fincher.iochannel.IoType;
+import com.fincher.iochannel.Listeners;
+import com.fincher.iochannel.MessageBuffer;
+import com.fincher.iochannel.Utilities;
+import com.google.common.base.Preconditions;
+
+/**
+ * A TCP client made up of several {@link TcpClientChannel} members, each of
+ * which reconnects in the background according to its {@link ReconnectPolicy}.
+ * Each message is sent on the single member chosen by the subclass. A send that
+ * fails drops that member's connection and the message is sent on the member
+ * chosen next.
+ *
+ * <p>
+ * The socket IDs of this channel are the IDs of its connected members. Members
+ * may be configured through {@link #getMembers()} before connecting, for
+ * example to set socket options or metrics.
+ *
+ * @author Brian Fincher
+ *
+ */
+public abstract class TcpClientGroupChannel extends IoChannel<MessageBuffer> implements TcpChannelIfc {
+
+    private static final Logger LOG = Utilities.getInstance().getLogger(TcpClientGroupChannel.class);
+
+    /** The members of this group. */
+    private final TcpClientChannel[] members;
+
+    /** One if the member at each index is connected, otherwise zero. */
+    private final AtomicIntegerArray connected;
+
+    /** The number of bytes being sent on the member at each index. */
+    private final AtomicLongArray outstandingBytes;
+
+    /** If not null, extracts the key used to choose the member for each message. */
+    private Function<? super MessageBuffer, ?> sendKeyExtractor;
+
+    private final Listeners<ConnectionEstablishedListener, String> connectionEstablishedListeners = new Listeners<>();
+
+    private final Listeners<ConnectionLostListener, String> connectionLostListeners = new Listeners<>();
+
+    /**
+     * Constructs a new group with one member for each remote address. Member IDs
+     * are this channel's ID followed by a dash and the member's index.
+     * 
+     * @param id The ID of this IO Channel
+     * @param ioType Specifies the input/output status of this channel
+     * @param streamIo Used to determine how many bytes should be read from the
+     *        socket for each message
+     * @param localAddress The local address of each connection. If null
+     *        "localhost" will be used that the OS will choose an available port
+     * @param remoteAddresses The remote address of each member
+     */
+    protected TcpClientGroupChannel(String id, IoType ioType, StreamIo streamIo, InetSocketAddress localAddress,
+            List<InetSocketAddress> remoteAddresses) {
+        super(id, ioType);
+        Preconditions.checkArgument(!remoteAddresses.isEmpty(), "There must be at least one member");
+
+        int numMembers = remoteAddresses.size();
+        members = new TcpClientChannel[numMembers];
+        connected = new AtomicIntegerArray(numMembers);
+        outstandingBytes = new AtomicLongArray(numMembers);
+        for (int i = 0; i < numMembers; i++) {
+            String memberId = id + "-" + i;
+            InetSocketAddress remoteAddress = remoteAddresses.get(i);
+            TcpClientChannel member;
+            if (ioType.isInput()) {
+                member = TcpClientChannel.createChannel(memberId, streamIo, localAddress, remoteAddress);
+                member.addMessageListener(mb -> messageReceived(mb, LOG, memberId));
+            } else {
+                member = TcpClientChannel.createOutputOnlyChannel(memberId, streamIo, localAddress, remoteAddress);
+            }
+
+            int index = i;
+            member.addConnectionEstablishedListener(socketId -> memberConnected(index));
+            member.addConnectionLostListener(socketId -> memberLost(index));
+            members[i] = member;
+        }
+    }
+
+    /**
+     * Get the members of this group, for example to configure them before
+     * connecting.
+     * 
+     * @return the members of this group
+     */
+    public List<TcpClientChannel> getMembers() {
+        return List.of(members);
+    }
+
+    /**
+     * Sets the function that extracts the key used to choose the member on which
+     * each message is sent. Messages with the same key are sent on the same member
+     * while it is connected, so they arrive in order. See
+     * {@link com.fincher.iochannel.MessageKeyExtractors} for common extractors.
+     * 
+     * @param sendKeyExtractor Extracts the key from an unframed message
+     */
+    public void setSendKeyExtractor(Function<? super MessageBuffer, ?> sendKeyExtractor) {
+        Preconditions.checkState(getState() == ChannelState.INITIAL,
+                "The state must be INITIAL for setSendKeyExtractor");
+        Preconditions.checkNotNull(sendKeyExtractor, "sendKeyExtractor cannot be null");
+
+        this.sendKeyExtractor = sendKeyExtractor;
+    }
+
+    /**
+     * Get the key used to choose the member on which a message is sent.
+     * 
+     * @param message The unframed message
+     * @return the key or null if there is no key extractor or the message has no
+     *         key
+     */
+    protected final Object getSendKey(MessageBuffer message) {
+        return sendKeyExtractor == null ? null : sendKeyExtractor.apply(message);
+    }
+
+    /**
+     * Get the number of members in this group.
+     * 
+     * @return the number of members
+     */
+    protected final int getNumMembers() {
+        return members.length;
+    }
+
+    /**
+     * Is a member connected.
+     * 
+     * @param index The index of the member
+     * @return true if the member is connected
+     */
+    protected final boolean isMemberConnected(int index) {
+        return connected.get(index) == 1;
+    }
+
+    /**
+     * Get the number of bytes currently being sent on a member. Sends block while
+     * the socket's send buffer is full, so a slow peer accumulates outstanding
+     * bytes.
+     * 
+     * @param index The index of the member
+     * @return the number of bytes being sent
+     */
+    protected final long getOutstandingBytes(int index) {
+        return outstandingBytes.get(index);
+    }
+
+    /**
+     * Choose the member on which to send a message.
+     * 
+     * @param message The unframed message
+     * @return the index of a connected member or -1 if no member is connected
+     */
+    protected abstract int chooseMember(MessageBuffer message);
+
+    @Override
+    public IoChannelDataType getDataType() {
+        return IoChannelDataType.RAW_DATA;
+    }
+
+    @Override
+    public synchronized void connect() throws ChannelException, InterruptedException {
+        Preconditions.checkState(getState() == ChannelState.INITIAL, "Cannot connect when state = " + getState());
+
+        LOG.debug("{} Setting state to CONNECTING", getId());
+        setState(ChannelState.CONNECTING);
+        for (TcpClientChannel member : members) {
+            member.connect();
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return getState() == ChannelState.CONNECTED;
+    }
+
+    @Override
+    public void close() throws ChannelException {
+        synchronized (this) {
+            LOG.debug("{} setting state to CLOSED", getId());
+            setState(ChannelState.CLOSED);
+        }
+
+        ChannelException exception = null;
+        for (TcpClientChannel member : members) {
+            try {
+                member.close();
+            } catch (ChannelException ce) {
+                if (exception == null) {
+                    exception = ce;
+                } else {
+                    exception.addSuppressed(ce);
+                }
+            }
+        }
+
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private synchronized void memberConnected(int index) {
+        connected.set(index, 1);
+        if (getState() == ChannelState.CONNECTING) {
+            LOG.debug("{} setting state to CONNECTED", getId());
+            setState(ChannelState.CONNECTED);
+        }
+
+        String memberId = members[index].getId();
+        connectionEstablishedListeners.getListeners().forEach(listener -> listener.connectionEstablished(memberId));
+    }
+
+    private synchronized void memberLost(int index) {
+        if (connected.getAndSet(index, 0) == 0) {
+            return;
+        }
+
+        if (getState() == ChannelState.CONNECTED && getNumConnections() == 0) {
+            LOG.debug("{} setting state to CONNECTING", getId());
+            setState(ChannelState.CONNECTING);
+        }
+
+        String memberId = members[index].getId();
+        connectionLostListeners.getListeners().forEach(listener -> listener.connectionLost(memberId));
+    }
+
+    @Override
+    public void send(byte[] message) throws ChannelException {
+        send(new MessageBuffer(message));
+    }
+
+    /**
+     * Send a message on one of the members.
+     * 
+     * @param message The message to send
+     * @throws ChannelException If the send fails on every member
+     */
+    @Override
+    public void send(MessageBuffer message) throws ChannelException {
+        send(message, TcpClientChannel::sendToConnected);
+    }
+
+    @Override
+    public void send(StreamIo streamIo, MessageBuffer message) throws ChannelException {
+        send(message, (member, mb) -> member.sendToConnected(streamIo, mb));
+    }
+
+    /**
+     * Sends a message on this channel.
+     * 
+     * @param message The message to send
+     * @param channelId The ID of the member on which to send this message. "*"
+     *        to send the message on every connected member
+     * @throws ChannelException If an exception occurs while sending or if the
+     *         channelID does not exist
+     */
+    @Override
+    public void send(MessageBuffer message, String channelId) throws ChannelException {
+        for (TcpClientChannel member : getTargets(channelId)) {
+            member.send(message);
+        }
+    }
+
+    @Override
+    public void send(StreamIo streamIo, MessageBuffer message, String channelId) throws ChannelException {
+        for (TcpClientChannel member : getTargets(channelId)) {
+            member.send(streamIo, message);
+        }
+    }
+
+    /**
+     * Send messages on the members. Each message is sent on the member chosen for
+     * it, so messages with different keys may be sent on different members.
+     * 
+     * @param messages The messages to send
+     * @throws ChannelException If the send of a message fails on every member
+     */
+    @Override
+    public void send(List<MessageBuffer> messages) throws ChannelException {
+        for (MessageBuffer message : messages) {
+            send(message);
+        }
+    }
+
+    @Override
+    public void send(StreamIo streamIo, List<MessageBuffer> messages) throws ChannelException {
+        for (MessageBuffer message : messages) {
+            send(streamIo, message);
+        }
+    }
+
+    /**
+     * Write the sends buffered by each member.
+     * 
+     * @throws ChannelException If an error occurs while writing
+     */
+    @Override
+    public void flush() throws ChannelException {
+        ChannelException exception = null;
+        for (TcpClientChannel member : members) {
+            try {
+                member.flush();
+            } catch (ChannelException ce) {
+                if (exception == null) {
+                    exception = ce;
+                } else {
+                    exception.addSuppressed(ce);
+                }
+            }
+        }
+
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private List<TcpClientChannel> getTargets(String channelId) throws ChannelException {
+        if (channelId.equals("*")) {
+            List<TcpClientChannel> targets = new ArrayList<>(members.length);
+            for (int i = 0; i < members.length; i++) {
+                if (isMemberConnected(i)) {
+                    targets.add(members[i]);
+                }
+            }
+            return targets;
+        }
+
+        for (TcpClientChannel member : members) {
+            if (member.getId().equals(channelId)) {
+                return Collections.singletonList(member);
+            }
+        }
+        throw new ChannelException(getId() + " no such channel ID " + channelId);
+    }
+
+    /** Sends a message on a single member. */
+    @FunctionalInterface
+    private interface MemberSender {
+        void send(TcpClientChannel member, MessageBuffer message) throws ChannelException;
+    }
+
+    /**
+     * Send a message on the chosen member. If the send fails, including when the
+     * member lost its connection after it was chosen, the member's connection is
+     * dropped, which removes it from the choice, and the message is sent on the
+     * member chosen next.
+     */
+    private void send(MessageBuffer message, MemberSender sender) throws ChannelException {
+        ChannelException exception = null;
+        for (int attempt = 0; attempt < members.length; attempt++) {
+            int index = chooseMember(message);
+            if (index < 0) {
+                break;
+            }
+
+            TcpClientChannel member = members[index];
+            int length = message.getLength();
+            outstandingBytes.addAndGet(index, length);
+            try {
+                sender.send(member, message);
+                return;
+            } catch (ChannelException ce) {
+                LOG.warn("{} send failed on {}: {}", getId(), member.getId(), ce.getMessage());
+                member.dropConnection();
+                if (exception == null) {
+                    exception = ce;
+                } else {
+                    exception.addSuppressed(ce);
+                }
+            } finally {
+                outstandingBytes.addAndGet(index, -length);
+            }
+        }
+
+        if (exception != null) {
+            throw exception;
+        }
+        LOG.warn("{} Cannot send due to no sockets connected", getId());
+    }
+
+    /**
+     * Get the IDs of the connected members.
+     * 
+     * @return the IDs of the connected members
+     */
+    @Override
+    public List<String> getSocketIds() {
+        List<String> socketIds = new ArrayList<>(members.length);
+        for (int i = 0; i < members.length; i++) {
+            if (isMemberConnected(i)) {
+                socketIds.add(members[i].getId());
+            }
+        }
+        return socketIds;
+    }
+
+    @Override
+    public int getNumConnections() {
+        int numConnections = 0;
+        for (int i = 0; i < members.length; i++) {
+            numConnections += connected.get(i);
+        }
+        return numConnections;
+    }
+
+    @Override
+    public void addConnectionEstablishedListener(ConnectionEstablishedListener listener) {
+        connectionEstablishedListeners.addListener(listener);
+    }
+
+    @Override
+    public void removeConnectionEstablishedListener(ConnectionEstablishedListener listener) {
+        connectionEstablishedListeners.removeListener(listener);
+    }
+
+    @Override
+    public void addConnectionLostListener(ConnectionLostListener listener) {
+        connectionLostListeners.addListener(listener);
+    }
+
+    @Override
+    public void removeConnectionLostListener(ConnectionLostListener listener) {
+        connectionLostListeners.removeListener(listener);
+    }
+}
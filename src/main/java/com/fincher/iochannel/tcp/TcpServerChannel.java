@@ -3,6 +3,7 @@ package com.fincher.iochannel.tcp;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.time.Duration;
 import java.util.function.Consumer;
 
 import com.fincher.iochannel.ChannelException;
@@ -90,6 +91,16 @@ public class TcpServerChannel extends TcpChannel {
         return TcpServerConnectTask.create(this);
     }
 
+    /**
+     * Each connection has its own receive task, which is cancelled when its
+     * connection is lost, so there is nothing to wait for. Waiting would hold up
+     * the thread that lost the connection.
+     */
+    @Override
+    protected Duration getConnectionLostDelay() {
+        return Duration.ZERO;
+    }
+
     @Override
     public InetSocketAddress getlocalAddress() {
         TcpServerConnectTask serverConnectTask = (TcpServerConnectTask) connectTask;
@@ -0,0 +1,108 @@
+package com.fincher.iochannel.tcp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Precedes each message with its length encoded as a base 128 varint, as used by
+ * protocol buffers' delimited streams. Each byte holds seven bits of the length,
+ * least significant first, with the high bit set on every byte but the last. The
+ * length does not include the header.
+ *
+ * @author Brian Fincher
+ *
+ */
+public class VarintStreamIo implements StreamIo {
+
+    /** The most bytes needed to encode a positive int. */
+    static final int MAX_HEADER_LENGTH = 5;
+
+    /**
+     * Not supported because the header length varies with the message length.
+     * 
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public int getHeaderLength() {
+        throw new UnsupportedOperationException("VarintStreamIo does not have a fixed length header");
+    }
+
+    /**
+     * Not supported because the header length varies with the message length.
+     * 
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public int getMessageLength(byte[] header) {
+        throw new UnsupportedOperationException("VarintStreamIo does not have a fixed length header");
+    }
+
+    /**
+     * The header is never part of the message.
+     * 
+     * @return false
+     */
+    @Override
+    public boolean headerPartOfMessage() {
+        return false;
+    }
+
+    @Override
+    public boolean hasFixedLengthHeader() {
+        return false;
+    }
+
+    @Override
+    public boolean decodeFrame(byte[] buf, int offset, int available, Frame frame) throws IOException {
+        int length = 0;
+        int headerLength = 0;
+        int b;
+        do {
+            if (headerLength == available) {
+                return false;
+            }
+            b = buf[offset + headerLength];
+            if (headerLength == MAX_HEADER_LENGTH - 1 && (b & 0xf8) != 0) {
+                // the fifth byte may only hold the top three bits of a positive int
+                throw new IOException("Varint message length is larger than " + Integer.MAX_VALUE);
+            }
+
+            length |= (b & 0x7f) << (7 * headerLength);
+            headerLength++;
+        } while ((b & 0x80) != 0);
+
+        if (length > Integer.MAX_VALUE - headerLength) {
+            throw new IOException("Invalid message length " + length);
+        }
+
+        frame.set(offset + headerLength, length, headerLength + length);
+        return available >= headerLength + length;
+    }
+
+    @Override
+    public ByteBuffer[] encode(ByteBuffer payload) {
+        return new ByteBuffer[] { ByteBuffer.wrap(encodeLength(payload.remaining())), payload };
+    }
+
+    /**
+     * Encode a length as a varint.
+     * 
+     * @param length The length
+     * @return the encoded length
+     */
+    static byte[] encodeLength(int length) {
+        int headerLength = 1;
+        for (int remaining = length >>> 7; remaining != 0; remaining >>>= 7) {
+            headerLength++;
+        }
+
+        byte[] header = new byte[headerLength];
+        int remaining = length;
+        for (int i = 0; i < headerLength - 1; i++) {
+            header[i] = (byte) ((remaining & 0x7f) | 0x80);
+            remaining >>>= 7;
+        }
+        header[headerLength - 1] = (byte) remaining;
+        return header;
+    }
+}
@@ -0,0 +1,292 @@
+package com.fincher.iochannel.tcp;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+
+import com.fincher.iochannel.Utilities;
+import com.fincher.thread.RunnableTask;
+
+/**
+ * Buffers the sends of each connection of a {@link TcpChannel} according to a
+ * {@link WriteCoalescingPolicy}. Buffers are written by the sending thread when
+ * they reach the flush threshold and by this task when their deadline expires.
+ *
+ * <p>
+ * Writes and flushes of a socket must be made while holding the socket's lock,
+ * as {@link TcpChannel} does for all writes. This task takes the lock of each
+ * socket whose deadline has expired.
+ *
+ * @author Brian Fincher
+ *
+ */
+class WriteCoalescer implements RunnableTask {
+
+    private static final Logger LOG = Utilities.getInstance().getLogger(WriteCoalescer.class);
+
+    /** The longest time to park when no buffer has a deadline. */
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** The deadline of a buffer that is empty. */
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final String id;
+
+    private final TcpChannel parent;
+
+    private final int flushThreshold;
+
+    private final long maxDelayNanos;
+
+    /** The buffer of each connected socket. */
+    private final Map<Socket, PendingWrites> pendingWrites = new ConcurrentHashMap<>();
+
+    /** The thread running this task, which is unparked when an earlier deadline is set. */
+    private volatile Thread flushThread;
+
+    /** The time at which this task will next wake up. */
+    private volatile long wakeUpAt = NO_DEADLINE;
+
+    private volatile boolean continueExecution = true;
+
+    /** The bytes buffered for one socket. */
+    private static final class PendingWrites {
+        final byte[] buffer;
+
+        int size;
+
+        /** When the buffer must be written, or NO_DEADLINE if it is empty. */
+        volatile long deadline = NO_DEADLINE;
+
+        PendingWrites(int capacity) {
+            buffer = new byte[capacity];
+        }
+    }
+
+    /**
+     * Constructs a new WriteCoalescer.
+     * 
+     * @param id The ID of this task
+     * @param parent The channel whose sends are coalesced
+     * @param policy Determines when buffers are written
+     */
+    WriteCoalescer(String id, TcpChannel parent, WriteCoalescingPolicy policy) {
+        this.id = id;
+        this.parent = parent;
+        this.flushThreshold = policy.getFlushThreshold();
+        this.maxDelayNanos = policy.getMaxDelay().toNanos();
+    }
+
+    /**
+     * Start buffering the sends of a newly connected socket.
+     * 
+     * @param socket The socket
+     */
+    void addSocket(Socket socket) {
+        pendingWrites.put(socket, new PendingWrites(flushThreshold));
+    }
+
+    /**
+     * Stop buffering the sends of a socket. Bytes that have not been written are
+     * discarded.
+     * 
+     * @param socket The socket
+     */
+    void removeSocket(Socket socket) {
+        pendingWrites.remove(socket);
+    }
+
+    /**
+     * Buffer bytes to be written to a socket, writing the buffer if it reaches the
+     * flush threshold. The caller must hold the socket's lock.
+     * 
+     * @param bytes The bytes to write
+     * @param offset The offset into bytes
+     * @param length The number of bytes to write
+     * @param socket The socket to which the bytes will be written
+     * @throws IOException If an exception occurs while writing
+     */
+    void write(byte[] bytes, int offset, int length, Socket socket) throws IOException {
+        PendingWrites pending = pendingWrites.get(socket);
+        if (pending == null) {
+            parent.write(bytes, offset, length, socket);
+            return;
+        }
+
+        if (pending.size + length > pending.buffer.length) {
+            flush(pending, socket);
+        }
+
+        if (length >= pending.buffer.length) {
+            parent.write(bytes, offset, length, socket);
+            return;
+        }
+
+        System.arraycopy(bytes, offset, pending.buffer, pending.size, length);
+        buffered(pending, length, socket);
+    }
+
+    /**
+     * Buffer the remaining bytes of each buffer to be written to a socket, writing
+     * the buffer if it reaches the flush threshold. The caller must hold the
+     * socket's lock.
+     * 
+     * @param srcs The buffers to write
+     * @param socket The socket to which the bytes will be written
+     * @throws IOException If an exception occurs while writing
+     */
+    void write(ByteBuffer[] srcs, Socket socket) throws IOException {
+        PendingWrites pending = pendingWrites.get(socket);
+        int length = 0;
+        for (ByteBuffer src : srcs) {
+            length += src.remaining();
+        }
+
+        if (pending == null || length >= flushThreshold) {
+            if (pending != null) {
+                flush(pending, socket);
+            }
+            parent.write(srcs, socket);
+            return;
+        }
+
+        if (pending.size + length > pending.buffer.length) {
+            flush(pending, socket);
+        }
+
+        int position = pending.size;
+        for (ByteBuffer src : srcs) {
+            int remaining = src.remaining();
+            src.get(pending.buffer, position, remaining);
+            position += remaining;
+        }
+        buffered(pending, length, socket);
+    }
+
+    private void buffered(PendingWrites pending, int length, Socket socket) throws IOException {
+        boolean wasEmpty = pending.size == 0;
+        pending.size += length;
+
+        if (pending.size >= flushThreshold) {
+            flush(pending, socket);
+        } else if (wasEmpty) {
+            long deadline = System.nanoTime() + maxDelayNanos;
+            pending.deadline = deadline;
+            if (deadline < wakeUpAt) {
+                Thread thread = flushThread;
+                if (thread != null) {
+                    LockSupport.unpark(thread);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the bytes buffered for a socket. The caller must hold the socket's
+     * lock.
+     * 
+     * @param socket The socket
+     * @throws IOException If an exception occurs while writing
+     */
+    void flush(Socket socket) throws IOException {
+        PendingWrites pending = pendingWrites.get(socket);
+        if (pending != null) {
+            flush(pending, socket);
+        }
+    }
+
+    private void flush(PendingWrites pending, Socket socket) throws IOException {
+        if (pending.size == 0) {
+            return;
+        }
+
+        int size = pending.size;
+        pending.size = 0;
+        pending.deadline = NO_DEADLINE;
+        parent.write(pending.buffer, 0, size, socket);
+    }
+
+    /** Write the buffers whose deadline has expired, then park until the next deadline. */
+    @Override
+    public void run() {
+        flushThread = Thread.currentThread();
+
+        long next = flushExpired();
+        wakeUpAt = next;
+
+        // a deadline set before wakeUpAt was published may not have unparked this
+        // thread, so look again
+        if (earliestDeadline() < next) {
+            return;
+        }
+
+        long parkNanos = next == NO_DEADLINE ? IDLE_PARK_NANOS : next - System.nanoTime();
+        if (parkNanos > 0) {
+            LockSupport.parkNanos(this, Math.min(parkNanos, IDLE_PARK_NANOS));
+        }
+        wakeUpAt = System.nanoTime();
+    }
+
+    /**
+     * Write the buffers whose deadline has expired.
+     * 
+     * @return the earliest deadline of the buffers that were not written
+     */
+    private long flushExpired() {
+        long now = System.nanoTime();
+        long next = NO_DEADLINE;
+        for (Map.Entry<Socket, PendingWrites> entry : pendingWrites.entrySet()) {
+            PendingWrites pending = entry.getValue();
+            long deadline = pending.deadline;
+            if (deadline == NO_DEADLINE) {
+                continue;
+            }
+
+            if (deadline > now) {
+                next = Math.min(next, deadline);
+                continue;
+            }
+
+            Socket socket = entry.getKey();
+            synchronized (socket) {
+                if (pending.deadline <= now) {
+                    try {
+                        flush(pending, socket);
+                    } catch (IOException e) {
+                        // the connection will be found lost by the next send or receive
+                        LOG.warn("{} {} flush failed: {}", id, TcpChannel.getSocketId(socket), e.getMessage());
+                    }
+                }
+            }
+        }
+        return next;
+    }
+
+    private long earliestDeadline() {
+        long earliest = NO_DEADLINE;
+        for (PendingWrites pending : pendingWrites.values()) {
+            earliest = Math.min(earliest, pending.deadline);
+        }
+        return earliest;
+    }
+
+    @Override
+    public boolean continueExecution() {
+        return continueExecution;
+    }
+
+    @Override
+    public void terminate() {
+        continueExecution = false;
+        Thread thread = flushThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
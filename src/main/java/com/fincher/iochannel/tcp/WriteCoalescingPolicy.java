@@ -0,0 +1,71 @@
+package com.fincher.iochannel.tcp;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Determines how a {@link TcpChannel} coalesces small sends into larger writes.
+ * Rather than writing each message to the socket as it is sent, messages are
+ * copied into a buffer for each connection. The buffer is written when it holds
+ * at least the flush threshold, when the oldest buffered message has waited for
+ * the maximum delay, or when {@link TcpChannelIfc#flush()} is called. A message
+ * that is larger than the flush threshold is written without being copied.
+ *
+ * <p>
+ * A burst of small messages then costs one system call per flush rather than
+ * one per message, at the cost of up to the maximum delay of added latency.
+ * That delay is not seen by the channel's send metrics, which time each send
+ * only until it has been buffered.
+ *
+ * @author Brian Fincher
+ *
+ */
+public class WriteCoalescingPolicy {
+
+    private int flushThreshold = 16384;
+
+    private Duration maxDelay = Duration.of(100, ChronoUnit.MICROS);
+
+    /**
+     * Sets the number of buffered bytes at which the buffer is written. Defaults to
+     * 16 KiB.
+     * 
+     * @param flushThreshold The number of bytes at which the buffer is written
+     */
+    public void setFlushThreshold(int flushThreshold) {
+        Preconditions.checkArgument(flushThreshold > 0, "flushThreshold must be positive");
+        this.flushThreshold = flushThreshold;
+    }
+
+    /**
+     * Get the number of buffered bytes at which the buffer is written.
+     * 
+     * @return the number of bytes at which the buffer is written
+     */
+    public int getFlushThreshold() {
+        return flushThreshold;
+    }
+
+    /**
+     * Sets the longest time that a message may wait in the buffer before it is
+     * written. Defaults to 100 microseconds.
+     * 
+     * @param maxDelay The longest time that a message is buffered
+     */
+    public void setMaxDelay(Duration maxDelay) {
+        Preconditions.checkArgument(!maxDelay.isNegative() && !maxDelay.isZero(), "maxDelay must be positive");
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Get the longest time that a message may wait in the buffer before it is
+     * written.
+     * 
+     * @return the longest time that a message is buffered
+     */
+    public Duration getMaxDelay() {
+        return maxDelay;
+    }
+}
@@ -0,0 +1,80 @@
+package com.fincher.iochannel.udp;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.fincher.iochannel.BufferPool;
+import com.fincher.iochannel.MessageBuffer;
+
+/**
+ * The format of a datagram containing several coalesced messages. Each message
+ * is preceded by its length as a two byte unsigned big endian integer.
+ *
+ * @author Brian Fincher
+ *
+ */
+final class CoalescedDatagram {
+
+    /** The length of the header preceding each message. */
+    static final int HEADER_LENGTH = 2;
+
+    /** The largest message that can be sent in a coalesced datagram. */
+    static final int MAX_MESSAGE_LENGTH = UdpChannel.MAX_DATAGRAM_SIZE - HEADER_LENGTH;
+
+    private CoalescedDatagram() {
+    }
+
+    /**
+     * Write the header preceding a message.
+     *
+     * @param buf The buffer into which the header will be written
+     * @param offset The offset of the header within buf
+     * @param messageLength The length of the message following the header
+     */
+    static void putHeader(byte[] buf, int offset, int messageLength) {
+        buf[offset] = (byte) (messageLength >>> 8);
+        buf[offset + 1] = (byte) messageLength;
+    }
+
+    /**
+     * Split a coalesced datagram into its messages.
+     *
+     * @param pool The pool from which storage for each message will be obtained.
+     *        May be null
+     * @param buf The buffer containing the datagram
+     * @param offset The offset of the datagram within buf
+     * @param length The length of the datagram
+     * @param messages The list to which each message will be added
+     * @return The number of messages added
+     * @throws IOException If the datagram is not correctly formatted. No messages
+     *         are added
+     */
+    static int split(BufferPool pool, byte[] buf, int offset, int length, List<MessageBuffer> messages)
+            throws IOException {
+        int end = offset + length;
+
+        // validate the whole datagram first so that a malformed datagram adds nothing
+        int numMessages = 0;
+        for (int pos = offset; pos < end; numMessages++) {
+            if (end - pos < HEADER_LENGTH) {
+                throw new IOException("Truncated header in coalesced datagram");
+            }
+            pos += HEADER_LENGTH + getMessageLength(buf, pos);
+            if (pos > end) {
+                throw new IOException("Truncated message in coalesced datagram");
+            }
+        }
+
+        for (int pos = offset; pos < end;) {
+            int messageLength = getMessageLength(buf, pos);
+            messages.add(MessageBuffer.copyOf(pool, buf, pos + HEADER_LENGTH, messageLength));
+            pos += HEADER_LENGTH + messageLength;
+        }
+
+        return numMessages;
+    }
+
+    private static int getMessageLength(byte[] buf, int offset) {
+        return ((buf[offset] & 0xff) << 8) | (buf[offset + 1] & 0xff);
+    }
+}
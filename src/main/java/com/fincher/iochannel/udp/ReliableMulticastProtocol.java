@@ -0,0 +1,92 @@
+package com.fincher.iochannel.udp;
+
+import java.nio.ByteBuffer;
+
+import com.fincher.iochannel.MessageBuffer;
+
+/**
+ * The wire format shared by {@link ReliableMulticastSender} and
+ * {@link ReliableMulticastReceiver}.
+ *
+ * <p>
+ * Each datagram sent to the group starts with a one byte type and an eight
+ * byte sequence number. Data datagrams follow the header with the message.
+ * Heartbeats carry the sequence number of the last message sent so that
+ * receivers can detect the loss of the most recent messages. A NAK sent to the
+ * sender contains the first and last sequence numbers of a range of missing
+ * messages.
+ *
+ * @author Brian Fincher
+ *
+ */
+final class ReliableMulticastProtocol {
+
+    /** The type of a datagram containing a message. */
+    static final byte DATA = 0;
+
+    /** The type of a datagram containing the sequence number of the last message sent. */
+    static final byte HEARTBEAT = 1;
+
+    /** The length of the header of each datagram sent to the group. */
+    static final int HEADER_LENGTH = 9;
+
+    /** The length of a NAK. */
+    static final int NAK_LENGTH = 16;
+
+    private ReliableMulticastProtocol() {
+    }
+
+    /**
+     * Encode a data datagram.
+     *
+     * @param sequence The sequence number of the message
+     * @param message The message
+     * @return the encoded datagram
+     */
+    static byte[] encodeData(long sequence, MessageBuffer message) {
+        byte[] frame = new byte[HEADER_LENGTH + message.getLength()];
+        ByteBuffer.wrap(frame).put(DATA).putLong(sequence).put(message.getByteBuffer());
+        return frame;
+    }
+
+    /**
+     * Encode a heartbeat datagram.
+     *
+     * @param lastSequence The sequence number of the last message sent
+     * @return the encoded datagram
+     */
+    static byte[] encodeHeartbeat(long lastSequence) {
+        byte[] frame = new byte[HEADER_LENGTH];
+        ByteBuffer.wrap(frame).put(HEARTBEAT).putLong(lastSequence);
+        return frame;
+    }
+
+    /**
+     * Encode a NAK.
+     *
+     * @param first The first missing sequence number
+     * @param last The last missing sequence number
+     * @return the encoded NAK
+     */
+    static byte[] encodeNak(long first, long last) {
+        byte[] nak = new byte[NAK_LENGTH];
+        ByteBuffer.wrap(nak).putLong(first).putLong(last);
+        return nak;
+    }
+
+    static byte getType(byte[] frame) {
+        return frame[0];
+    }
+
+    static long getSequence(byte[] frame) {
+        return ByteBuffer.wrap(frame).getLong(1);
+    }
+
+    static long getNakFirst(byte[] nak) {
+        return ByteBuffer.wrap(nak).getLong(0);
+    }
+
+    static long getNakLast(byte[] nak) {
+        return ByteBuffer.wrap(nak).getLong(8);
+    }
+}
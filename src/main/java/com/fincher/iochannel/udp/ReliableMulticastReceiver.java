@@ -0,0 +1,556 @@
+package com.fincher.iochannel.udp;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+
+import com.fincher.iochannel.ChannelException;
+import com.fincher.iochannel.ChannelState;
+import com.fincher.iochannel.DelegatingIoChannelIfc;
+import com.fincher.iochannel.IoChannelIfc;
+import com.fincher.iochannel.Listeners;
+import com.fincher.iochannel.MessageBuffer;
+import com.fincher.iochannel.TaskExecutor;
+import com.fincher.iochannel.Utilities;
+import com.fincher.thread.RunnableTask;
+import com.google.common.base.Preconditions;
+
+/**
+ * The receiving side of a reliability layer over a {@link UdpMulticastChannel}.
+ * Messages sent by a {@link ReliableMulticastSender} are delivered to listeners
+ * in sequence order. Messages received ahead of a gap are held in a reorder
+ * window while the missing messages are NAKed to the sender. A gap that is
+ * still open after the maximum number of NAK retries, or that would overflow
+ * the window, is skipped and its messages are counted as lost.
+ *
+ * <p>
+ * Listeners are notified, and NAKs are sent, after the lock guarding the window
+ * has been released so that a slow listener or send does not hold up the
+ * receiving and NAK threads.
+ *
+ * @author Brian Fincher
+ *
+ */
+public class ReliableMulticastReceiver implements DelegatingIoChannelIfc<MessageBuffer> {
+
+    private static final Logger LOG = Utilities.getInstance().getLogger(ReliableMulticastReceiver.class);
+
+    /** The default time to wait for a retransmission before NAKing again. */
+    public static final Duration DEFAULT_NAK_INTERVAL = Duration.ofMillis(50);
+
+    /** The default number of times a gap is NAKed again before it is skipped. */
+    public static final int DEFAULT_MAX_NAK_RETRIES = 5;
+
+    private final String id;
+
+    /** Used to receive messages from the group. */
+    private final UdpChannel dataChannel;
+
+    /** Used to send NAKs to the sender. */
+    private final UdpChannel nakChannel;
+
+    private final Listeners<Consumer<MessageBuffer>, MessageBuffer> listeners = new Listeners<>();
+
+    /** The sequence number of each message held in the reorder window. */
+    private final long[] windowSequences;
+
+    /** The messages held in the reorder window, indexed by sequence number. */
+    private final MessageBuffer[] window;
+
+    /** Messages taken from the window in sequence order, waiting for listeners. Guarded by this. */
+    private final ArrayDeque<MessageBuffer> ready = new ArrayDeque<>();
+
+    /** The first and last sequence number of each run of missing messages waiting to be NAKed. Guarded by this. */
+    private final ArrayDeque<long[]> pendingNaks = new ArrayDeque<>();
+
+    /** Held while notifying listeners so that messages are delivered in order. */
+    private final Object deliveryLock = new Object();
+
+    /** The sequence number of the next message to deliver, -1 until the first message. Guarded by this. */
+    private long nextExpected = -1;
+
+    /** The highest sequence number known to have been sent. Guarded by this. */
+    private long highestSeen = -1;
+
+    /** The highest sequence number that has been NAKed. Guarded by this. */
+    private long nakedThrough = -1;
+
+    /** The time of the last NAK, from System.nanoTime. Guarded by this. */
+    private long lastNakTime;
+
+    /** The number of NAK retries for the oldest open gap. Guarded by this. */
+    private int nakRetries;
+
+    private Duration nakInterval = DEFAULT_NAK_INTERVAL;
+
+    private int maxNakRetries = DEFAULT_MAX_NAK_RETRIES;
+
+    private NakTask nakTask;
+
+    private Future<Void> nakFuture;
+
+    private long numGaps;
+
+    private final AtomicLong numNaksSent = new AtomicLong();
+
+    private long numLost;
+
+    private long numDuplicates;
+
+    /** NAKs gaps again, or skips them, when no retransmission arrives. */
+    private class NakTask implements RunnableTask {
+
+        private volatile boolean continueExecution = true;
+
+        @Override
+        public void run() {
+            try {
+                Thread.sleep(nakInterval.toMillis());
+                retryNaks();
+                deliverReady();
+                sendPendingNaks();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                continueExecution = false;
+            }
+        }
+
+        @Override
+        public boolean continueExecution() {
+            return continueExecution;
+        }
+
+        @Override
+        public void terminate() {
+            continueExecution = false;
+        }
+    }
+
+    /**
+     * Constructs a new ReliableMulticastReceiver.
+     *
+     * @param id The ID of this IO Channel
+     * @param dataChannel An input channel used to receive messages from the group
+     * @param nakChannel An output channel used to send NAKs to the sender
+     * @param windowSize The number of messages that can be held while waiting for
+     *        a missing message
+     */
+    protected ReliableMulticastReceiver(String id, UdpChannel dataChannel, UdpChannel nakChannel, int windowSize) {
+        Preconditions.checkArgument(dataChannel.isInput(), "dataChannel must be an input channel");
+        Preconditions.checkArgument(nakChannel.isOutput(), "nakChannel must be an output channel");
+        Preconditions.checkArgument(windowSize > 0, "windowSize must be greater than zero");
+
+        this.id = id;
+        this.dataChannel = dataChannel;
+        this.nakChannel = nakChannel;
+        windowSequences = new long[windowSize];
+        Arrays.fill(windowSequences, -1);
+        window = new MessageBuffer[windowSize];
+
+        dataChannel.addMessageListener(this::datagramReceived);
+    }
+
+    /**
+     * Creates a new ReliableMulticastReceiver.
+     *
+     * @param id The ID of this IO Channel
+     * @param localAddress The local address to which the multicast socket will be
+     *        bound
+     * @param multicastAddress The multicast group to join
+     * @param networkInterface The network interface on which to join the group.
+     *        May be null
+     * @param nakAddress The address of the sender to which NAKs will be sent
+     * @param windowSize The number of messages that can be held while waiting for
+     *        a missing message
+     * @return a new ReliableMulticastReceiver
+     */
+    public static ReliableMulticastReceiver createChannel(String id, InetSocketAddress localAddress,
+            InetAddress multicastAddress, NetworkInterface networkInterface, InetSocketAddress nakAddress,
+            int windowSize) {
+        return new ReliableMulticastReceiver(id,
+                UdpMulticastChannel.createInputChannel(id + "Data", localAddress, multicastAddress,
+                        networkInterface),
+                UdpChannel.createOutputChannel(id + "Nak", null, nakAddress), windowSize);
+    }
+
+    /**
+     * Creates a new ReliableMulticastReceiver using the given channels.
+     *
+     * @param id The ID of this IO Channel
+     * @param dataChannel An input channel used to receive messages, normally a
+     *        {@link UdpMulticastChannel}
+     * @param nakChannel An output channel used to send NAKs to the sender
+     * @param windowSize The number of messages that can be held while waiting for
+     *        a missing message
+     * @return a new ReliableMulticastReceiver
+     */
+    public static ReliableMulticastReceiver createChannel(String id, UdpChannel dataChannel, UdpChannel nakChannel,
+            int windowSize) {
+        return new ReliableMulticastReceiver(id, dataChannel, nakChannel, windowSize);
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public IoChannelIfc<MessageBuffer> getDelegate() {
+        return dataChannel;
+    }
+
+    @Override
+    public void addMessageListener(Consumer<MessageBuffer> listener) {
+        listeners.addListener(listener);
+    }
+
+    @Override
+    public void addMessageListener(Consumer<MessageBuffer> listener, Predicate<MessageBuffer> predicate) {
+        listeners.addListener(listener, predicate);
+    }
+
+    @Override
+    public void setMessageKeyExtractor(Function<? super MessageBuffer, ?> keyExtractor) {
+        Preconditions.checkState(getState() == ChannelState.INITIAL,
+                "The state must be INITIAL for setMessageKeyExtractor");
+        listeners.setKeyExtractor(keyExtractor);
+    }
+
+    @Override
+    public void addKeyedMessageListener(Object key, Consumer<MessageBuffer> listener) {
+        listeners.addKeyedListener(key, listener);
+    }
+
+    @Override
+    public boolean removeMessageListener(Consumer<MessageBuffer> listener) {
+        return listeners.removeListener(listener);
+    }
+
+    /**
+     * Sets the time to wait for a retransmission before NAKing a gap again.
+     *
+     * @param nakInterval The NAK interval
+     */
+    public void setNakInterval(Duration nakInterval) {
+        Preconditions.checkState(getState() == ChannelState.INITIAL, "The state must be INITIAL for setNakInterval");
+        Preconditions.checkArgument(!nakInterval.isNegative() && !nakInterval.isZero(),
+                "nakInterval must be positive");
+        this.nakInterval = nakInterval;
+    }
+
+    /**
+     * Get the time to wait for a retransmission before NAKing a gap again.
+     *
+     * @return the NAK interval
+     */
+    public Duration getNakInterval() {
+        return nakInterval;
+    }
+
+    /**
+     * Sets the number of times a gap is NAKed again before its messages are
+     * considered lost.
+     *
+     * @param maxNakRetries The maximum number of NAK retries
+     */
+    public void setMaxNakRetries(int maxNakRetries) {
+        Preconditions.checkState(getState() == ChannelState.INITIAL,
+                "The state must be INITIAL for setMaxNakRetries");
+        Preconditions.checkArgument(maxNakRetries >= 0, "maxNakRetries cannot be negative");
+        this.maxNakRetries = maxNakRetries;
+    }
+
+    /**
+     * Get the number of times a gap is NAKed again before its messages are
+     * considered lost.
+     *
+     * @return the maximum number of NAK retries
+     */
+    public int getMaxNakRetries() {
+        return maxNakRetries;
+    }
+
+    /**
+     * Get the number of gaps detected in the sequence numbers received.
+     *
+     * @return the number of gaps
+     */
+    public synchronized long getNumGaps() {
+        return numGaps;
+    }
+
+    /**
+     * Get the number of NAKs sent, including retries.
+     *
+     * @return the number of NAKs sent
+     */
+    public long getNumNaksSent() {
+        return numNaksSent.get();
+    }
+
+    /**
+     * Get the number of messages that were skipped because they were not received.
+     *
+     * @return the number of lost messages
+     */
+    public synchronized long getNumLost() {
+        return numLost;
+    }
+
+    /**
+     * Get the number of duplicate messages discarded.
+     *
+     * @return the number of duplicate messages
+     */
+    public synchronized long getNumDuplicates() {
+        return numDuplicates;
+    }
+
+    @Override
+    public void connect() throws ChannelException, InterruptedException {
+        nakChannel.connect();
+        dataChannel.connect();
+
+        nakTask = new NakTask();
+        nakFuture = TaskExecutor.platformThreads().start(id + "NakTask", nakTask);
+    }
+
+    private void datagramReceived(MessageBuffer datagram) {
+        byte[] frame = datagram.getBytes();
+        if (frame.length < ReliableMulticastProtocol.HEADER_LENGTH) {
+            LOG.warn("{} ignoring datagram of invalid length {}", id, frame.length);
+            return;
+        }
+
+        long sequence = ReliableMulticastProtocol.getSequence(frame);
+        if (sequence < 0) {
+            LOG.warn("{} ignoring datagram with invalid sequence number {}", id, sequence);
+            return;
+        }
+
+        switch (ReliableMulticastProtocol.getType(frame)) {
+            case ReliableMulticastProtocol.DATA:
+                MessageBuffer message = new MessageBuffer(frame, ReliableMulticastProtocol.HEADER_LENGTH,
+                        frame.length - ReliableMulticastProtocol.HEADER_LENGTH);
+                message.setReceivedFromIoChannelId(id);
+                messageReceived(sequence, message);
+                break;
+
+            case ReliableMulticastProtocol.HEARTBEAT:
+                heartbeatReceived(sequence);
+                break;
+
+            default:
+                LOG.warn("{} ignoring datagram of unknown type {}", id, ReliableMulticastProtocol.getType(frame));
+        }
+
+        deliverReady();
+        sendPendingNaks();
+    }
+
+    private synchronized void messageReceived(long sequence, MessageBuffer message) {
+        if (nextExpected < 0) {
+            nextExpected = sequence;
+        }
+
+        if (sequence < nextExpected || windowSequences[index(sequence)] == sequence) {
+            numDuplicates++;
+            return;
+        }
+
+        if (sequence >= nextExpected + window.length) {
+            // no room to hold this message, give up on the oldest missing messages
+            skipTo(sequence - window.length + 1);
+        }
+
+        highestSeen = Math.max(highestSeen, sequence);
+        int index = index(sequence);
+        windowSequences[index] = sequence;
+        window[index] = message;
+
+        deliverInOrder();
+        checkForGap();
+    }
+
+    private synchronized void heartbeatReceived(long lastSequence) {
+        if (nextExpected < 0) {
+            // joined after these messages were sent
+            nextExpected = lastSequence + 1;
+            return;
+        }
+
+        if (lastSequence >= nextExpected + window.length) {
+            // the missing messages cannot all be held, give up on the oldest of them
+            skipTo(lastSequence - window.length + 1);
+        }
+
+        highestSeen = Math.max(highestSeen, lastSequence);
+        checkForGap();
+    }
+
+    /** Deliver the held messages starting at nextExpected until a missing message is reached. */
+    private void deliverInOrder() {
+        while (deliver(nextExpected)) {
+            nextExpected++;
+        }
+
+        if (nextExpected > highestSeen) {
+            nakRetries = 0;
+        }
+    }
+
+    /** Queue the message with the given sequence number for listeners if it is held in the window. */
+    private boolean deliver(long sequence) {
+        int index = index(sequence);
+        if (windowSequences[index] != sequence) {
+            return false;
+        }
+
+        MessageBuffer message = window[index];
+        window[index] = null;
+        windowSequences[index] = -1;
+        ready.add(message);
+        return true;
+    }
+
+    /** Skip forward to the given sequence number, delivering held messages and counting missing ones as lost. */
+    private void skipTo(long sequence) {
+        long end = Math.min(sequence, nextExpected + window.length);
+        for (long s = nextExpected; s < end; s++) {
+            if (!deliver(s)) {
+                numLost++;
+            }
+        }
+        numLost += sequence - end;
+        nextExpected = sequence;
+        nakRetries = 0;
+        deliverInOrder();
+    }
+
+    /** NAK any messages that have become missing since the last NAK. */
+    private void checkForGap() {
+        long first = Math.max(nextExpected, nakedThrough + 1);
+        if (first <= highestSeen && queueNaks(first, highestSeen)) {
+            numGaps++;
+            lastNakTime = System.nanoTime();
+        }
+        nakedThrough = Math.max(nakedThrough, highestSeen);
+    }
+
+    /**
+     * Queue a NAK for each run of missing messages in the given range, limited to
+     * the messages that fit in the window.
+     *
+     * @return true if a NAK was queued
+     */
+    private boolean queueNaks(long first, long last) {
+        last = Math.min(last, nextExpected + window.length - 1);
+        boolean queued = false;
+        for (long s = first; s <= last; s++) {
+            if (windowSequences[index(s)] == s) {
+                continue;
+            }
+
+            long runStart = s;
+            while (s < last && windowSequences[index(s + 1)] != s + 1) {
+                s++;
+            }
+
+            pendingNaks.add(new long[] { runStart, s });
+            queued = true;
+        }
+        return queued;
+    }
+
+    /** Notify listeners of the messages taken from the window, in sequence order. */
+    private void deliverReady() {
+        synchronized (deliveryLock) {
+            while (true) {
+                MessageBuffer message;
+                synchronized (this) {
+                    message = ready.poll();
+                }
+                if (message == null) {
+                    return;
+                }
+                listeners.forEachListenerThatMatches(message, Consumer::accept);
+            }
+        }
+    }
+
+    /** Send the queued NAKs. */
+    private void sendPendingNaks() {
+        while (true) {
+            long[] run;
+            synchronized (this) {
+                run = pendingNaks.poll();
+            }
+            if (run == null) {
+                return;
+            }
+
+            try {
+                nakChannel.send(new MessageBuffer(ReliableMulticastProtocol.encodeNak(run[0], run[1])));
+                numNaksSent.incrementAndGet();
+            } catch (ChannelException e) {
+                LOG.error(id + " " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private synchronized void retryNaks() {
+        if (nextExpected < 0 || nextExpected > highestSeen
+                || System.nanoTime() - lastNakTime < nakInterval.toNanos()) {
+            return;
+        }
+
+        if (nakRetries < maxNakRetries) {
+            nakRetries++;
+            queueNaks(nextExpected, highestSeen);
+        } else {
+            // give up on the oldest gap
+            long next = nextExpected;
+            while (next <= highestSeen && windowSequences[index(next)] != next) {
+                next++;
+            }
+            LOG.warn("{} lost messages {} to {}", id, nextExpected, next - 1);
+            skipTo(next);
+        }
+        lastNakTime = System.nanoTime();
+    }
+
+    private int index(long sequence) {
+        return Math.floorMod(sequence, window.length);
+    }
+
+    @Override
+    public void close() throws ChannelException {
+        if (nakFuture != null) {
+            nakTask.terminate();
+            nakFuture.cancel(true);
+        }
+
+        try {
+            dataChannel.close();
+        } finally {
+            nakChannel.close();
+        }
+
+        synchronized (this) {
+            Arrays.fill(window, null);
+            Arrays.fill(windowSequences, -1);
+            ready.clear();
+            pendingNaks.clear();
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.fincher.iochannel.udp;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+import com.fincher.iochannel.ChannelException;
+import com.fincher.iochannel.ChannelState;
+import com.fincher.iochannel.DelegatingIoChannelIfc;
+import com.fincher.iochannel.IoChannelIfc;
+import com.fincher.iochannel.MessageBuffer;
+import com.fincher.iochannel.TaskExecutor;
+import com.fincher.iochannel.Utilities;
+import com.fincher.thread.RunnableTask;
+import com.google.common.base.Preconditions;
+
+/**
+ * The sending side of a reliability layer over a {@link UdpMulticastChannel}.
+ * Each message is stamped with a sequence number and kept in a bounded
+ * retransmit buffer. Messages NAKed by a {@link ReliableMulticastReceiver} are
+ * sent to the group again while they remain in the buffer. When no messages
+ * have been sent for a heartbeat interval, a heartbeat carrying the last
+ * sequence number is sent so that receivers can detect the loss of the most
+ * recent messages.
+ *
+ * @author Brian Fincher
+ *
+ */
+public class ReliableMulticastSender implements DelegatingIoChannelIfc<MessageBuffer> {
+
+    private static final Logger LOG = Utilities.getInstance().getLogger(ReliableMulticastSender.class);
+
+    /** The default time without sending after which a heartbeat is sent. */
+    public static final Duration DEFAULT_HEARTBEAT_INTERVAL = Duration.ofMillis(500);
+
+    private final String id;
+
+    /** Used to send messages to the group. */
+    private final UdpChannel dataChannel;
+
+    /** Used to receive NAKs from receivers. */
+    private final UdpChannel nakChannel;
+
+    /** The sequence number of each message in the retransmit buffer. */
+    private final long[] retransmitSequences;
+
+    /** The encoded datagram of each message in the retransmit buffer. */
+    private final byte[][] retransmitFrames;
+
+    /** The sequence number of the next message. Guarded by this. */
+    private long nextSequence = 0;
+
+    /** Has a message been sent since the last heartbeat. Guarded by this. */
+    private boolean sentSinceHeartbeat = false;
+
+    private Duration heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+
+    private HeartbeatTask heartbeatTask;
+
+    private Future<Void> heartbeatFuture;
+
+    private final AtomicLong numNaksReceived = new AtomicLong();
+
+    private final AtomicLong numRetransmits = new AtomicLong();
+
+    private final AtomicLong numUnrecoverable = new AtomicLong();
+
+    /** Sends a heartbeat if no messages were sent during the heartbeat interval. */
+    private class HeartbeatTask implements RunnableTask {
+
+        private volatile boolean continueExecution = true;
+
+        @Override
+        public void run() {
+            try {
+                Thread.sleep(heartbeatInterval.toMillis());
+                sendHeartbeat();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                continueExecution = false;
+            } catch (ChannelException e) {
+                LOG.error(id + " " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public boolean continueExecution() {
+            return continueExecution;
+        }
+
+        @Override
+        public void terminate() {
+            continueExecution = false;
+        }
+    }
+
+    /**
+     * Constructs a new ReliableMulticastSender.
+     *
+     * @param id The ID of this IO Channel
+     * @param dataChannel An output channel used to send messages to the group
+     * @param nakChannel An input channel used to receive NAKs
+     * @param retransmitBufferSize The number of recently sent messages retained
+     *        for retransmission
+     */
+    protected ReliableMulticastSender(String id, UdpChannel dataChannel, UdpChannel nakChannel,
+            int retransmitBufferSize) {
+        Preconditions.checkArgument(dataChannel.isOutput(), "dataChannel must be an output channel");
+        Preconditions.checkArgument(nakChannel.isInput(), "nakChannel must be an input channel");
+        Preconditions.checkArgument(retransmitBufferSize > 0, "retransmitBufferSize must be greater than zero");
+
+        this.id = id;
+        this.dataChannel = dataChannel;
+        this.nakChannel = nakChannel;
+        retransmitSequences = new long[retransmitBufferSize];
+        Arrays.fill(retransmitSequences, -1);
+        retransmitFrames = new byte[retransmitBufferSize][];
+
+        nakChannel.addMessageListener(this::nakReceived);
+    }
+
+    /**
+     * Creates a new ReliableMulticastSender.
+     *
+     * @param id The ID of this IO Channel
+     * @param localAddress The local address to which the multicast socket will be
+     *        bound
+     * @param multicastAddress The multicast group to which messages will be sent
+     * @param nakAddress The local address on which NAKs will be received
+     * @param retransmitBufferSize The number of recently sent messages retained
+     *        for retransmission
+     * @return a new ReliableMulticastSender
+     */
+    public static ReliableMulticastSender createChannel(String id, InetSocketAddress localAddress,
+            InetSocketAddress multicastAddress, InetSocketAddress nakAddress, int retransmitBufferSize) {
+        return new ReliableMulticastSender(id,
+                UdpMulticastChannel.createOutputChannel(id + "Data", localAddress, multicastAddress),
+                UdpChannel.createInputChannel(id + "Nak", nakAddress), retransmitBufferSize);
+    }
+
+    /**
+     * Creates a new ReliableMulticastSender using the given channels.
+     *
+     * @param id The ID of this IO Channel
+     * @param dataChannel An output channel used to send messages, normally a
+     *        {@link UdpMulticastChannel}
+     * @param nakChannel An input channel used to receive NAKs
+     * @param retransmitBufferSize The number of recently sent messages retained
+     *        for retransmission
+     * @return a new ReliableMulticastSender
+     */
+    public static ReliableMulticastSender createChannel(String id, UdpChannel dataChannel, UdpChannel nakChannel,
+            int retransmitBufferSize) {
+        return new ReliableMulticastSender(id, dataChannel, nakChannel, retransmitBufferSize);
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public IoChannelIfc<MessageBuffer> getDelegate() {
+        return dataChannel;
+    }
+
+    /**
+     * Sets the time without sending after which a heartbeat is sent.
+     *
+     * @param heartbeatInterval The heartbeat interval. Zero disables heartbeats
+     */
+    public void setHeartbeatInterval(Duration heartbeatInterval) {
+        Preconditions.checkState(getState() == ChannelState.INITIAL,
+                "The state must be INITIAL for setHeartbeatInterval");
+        Preconditions.checkArgument(!heartbeatInterval.isNegative(), "heartbeatInterval cannot be negative");
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    /**
+     * Get the time without sending after which a heartbeat is sent.
+     *
+     * @return the heartbeat interval
+     */
+    public Duration getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    /**
+     * Get the number of messages sent, excluding retransmissions.
+     *
+     * @return the number of messages sent
+     */
+    public synchronized long getNumSent() {
+        return nextSequence;
+    }
+
+    /**
+     * Get the number of NAKs received.
+     *
+     * @return the number of NAKs received
+     */
+    public long getNumNaksReceived() {
+        return numNaksReceived.get();
+    }
+
+    /**
+     * Get the number of messages sent again in response to NAKs.
+     *
+     * @return the number of retransmitted messages
+     */
+    public long getNumRetransmits() {
+        return numRetransmits.get();
+    }
+
+    /**
+     * Get the number of NAKed messages that could not be retransmitted because
+     * they were no longer in the retransmit buffer.
+     *
+     * @return the number of unrecoverable messages
+     */
+    public long getNumUnrecoverable() {
+        return numUnrecoverable.get();
+    }
+
+    @Override
+    public void connect() throws ChannelException, InterruptedException {
+        nakChannel.connect();
+        dataChannel.connect();
+
+        if (!heartbeatInterval.isZero()) {
+            heartbeatTask = new HeartbeatTask();
+            heartbeatFuture = TaskExecutor.platformThreads().start(id + "Heartbeat", heartbeatTask);
+        }
+    }
+
+    @Override
+    public void send(MessageBuffer message) throws ChannelException {
+        // sent while holding the lock so that messages are sent in sequence order
+        synchronized (this) {
+            long sequence = nextSequence;
+            byte[] frame = ReliableMulticastProtocol.encodeData(sequence, message);
+            dataChannel.send(new MessageBuffer(frame));
+
+            int index = (int) (sequence % retransmitFrames.length);
+            retransmitSequences[index] = sequence;
+            retransmitFrames[index] = frame;
+            nextSequence++;
+            sentSinceHeartbeat = true;
+        }
+    }
+
+    private synchronized void sendHeartbeat() throws ChannelException {
+        if (!sentSinceHeartbeat && nextSequence > 0) {
+            dataChannel.send(new MessageBuffer(ReliableMulticastProtocol.encodeHeartbeat(nextSequence - 1)));
+        }
+        sentSinceHeartbeat = false;
+    }
+
+    /** Retransmit each message in the NAKed range that is still buffered. */
+    private void nakReceived(MessageBuffer nak) {
+        byte[] bytes = nak.getBytes();
+        if (bytes.length != ReliableMulticastProtocol.NAK_LENGTH) {
+            LOG.warn("{} ignoring NAK of invalid length {}", id, bytes.length);
+            return;
+        }
+
+        numNaksReceived.incrementAndGet();
+        long first = ReliableMulticastProtocol.getNakFirst(bytes);
+        long last = ReliableMulticastProtocol.getNakLast(bytes);
+
+        synchronized (this) {
+            first = Math.max(first, 0);
+            last = Math.min(last, nextSequence - 1);
+            if (first > last) {
+                return;
+            }
+
+            // only the most recent messages are buffered, so a NAK for older messages
+            // is counted rather than looped over while holding the send lock
+            long oldestBuffered = Math.max(first, nextSequence - retransmitFrames.length);
+            numUnrecoverable.addAndGet(Math.min(oldestBuffered, last + 1) - first);
+
+            for (long sequence = oldestBuffered; sequence <= last; sequence++) {
+                int index = (int) (sequence % retransmitFrames.length);
+                if (retransmitSequences[index] != sequence) {
+                    numUnrecoverable.incrementAndGet();
+                    continue;
+                }
+
+                try {
+                    dataChannel.send(new MessageBuffer(retransmitFrames[index]));
+                    numRetransmits.incrementAndGet();
+                } catch (ChannelException e) {
+                    LOG.error(id + " " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws ChannelException {
+        if (heartbeatFuture != null) {
+            heartbeatTask.terminate();
+            heartbeatFuture.cancel(true);
+        }
+
+        try {
+            dataChannel.close();
+        } finally {
+            nakChannel.close();
+        }
+    }
+}
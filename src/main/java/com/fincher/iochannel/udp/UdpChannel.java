@@ -4,20 +4,41 @@ import java.io.IOException;
 import java.net.BindException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.SocketAddress;
 import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 
+import com.fincher.iochannel.BufferPool;
 import com.fincher.iochannel.ChannelException;
 import com.fincher.iochannel.ChannelState;
 import com.fincher.iochannel.IoType;
+import com.fincher.iochannel.Listeners;
 import com.fincher.iochannel.MessageBuffer;
+import com.fincher.iochannel.PooledMessageBuffer;
 import com.fincher.iochannel.SocketIoChannel;
 import com.fincher.iochannel.Utilities;
-import com.fincher.thread.LongLivedTask;
 import com.fincher.thread.RunnableTask;
 import com.google.common.base.Preconditions;
 
@@ -32,14 +53,47 @@ public class UdpChannel extends SocketIoChannel {
     /** Used by a task to receive messages. */
     private class ReceiveTask implements RunnableTask {
 
+        /** The index of the shard served by this task. */
+        private final int shard;
+
+        /** The socket from which messages are received. */
+        private final DatagramSocket receiveSocket;
+
         /** The byte array used to store received messages. */
         private final byte[] buf;
 
         /** The Datagram Packet used to receive messages. */
         private final DatagramPacket packet;
 
-        /** Constructs a new ReceiveTask. */
-        public ReceiveTask() {
+        /**
+         * A buffer obtained from the buffer pool into which the next datagram will be
+         * received. Retained across socket timeouts.
+         */
+        private ByteBuffer pooledBuffer;
+
+        /** The last message whose final reference was released by this task, for reuse. */
+        private PooledMessageBuffer released;
+
+        /** The messages split from a coalesced datagram. */
+        private final List<MessageBuffer> messages = new ArrayList<>();
+
+        /** A read only view of messages given to batch listeners. */
+        private final List<MessageBuffer> messagesView = Collections.unmodifiableList(messages);
+
+        /** The address and port of the last sender and its log string. */
+        private InetAddress lastSenderAddress;
+        private int lastSenderPort;
+        private String lastSender;
+
+        /**
+         * Constructs a new ReceiveTask.
+         * 
+         * @param shard The index of the shard served by this task
+         * @param receiveSocket The socket from which messages are received
+         */
+        public ReceiveTask(int shard, DatagramSocket receiveSocket) {
+            this.shard = shard;
+            this.receiveSocket = receiveSocket;
             buf = new byte[64 * 1024];
             packet = new DatagramPacket(buf, buf.length);
         }
@@ -48,9 +102,27 @@ public class UdpChannel extends SocketIoChannel {
         public void run() {
 
             try {
-                socket.receive(packet);
-                messageReceived(new MessageBuffer(buf, 0, packet.getLength()), logger,
-                        packet.getSocketAddress().toString());
+                if (splitCoalescedDatagrams) {
+                    receiveCoalesced();
+                    return;
+                }
+
+                MessageBuffer mb = receive();
+                if (mb == null) {
+                    return;
+                }
+
+                shardReceiveCounts.incrementAndGet(shard);
+                try {
+                    messageReceived(mb, logger, getSender());
+                    if (batchListeners.size() > 0) {
+                        notifyBatchListeners(Collections.singletonList(mb));
+                    }
+                } finally {
+                    if (mb.release() && mb instanceof PooledMessageBuffer) {
+                        released = (PooledMessageBuffer) mb;
+                    }
+                }
             } catch (SocketTimeoutException ste) {
                 // no action necessary
             } catch (IOException ioe) {
@@ -58,6 +130,79 @@ public class UdpChannel extends SocketIoChannel {
             }
         }
 
+        /** Receive a datagram and notify listeners of each message coalesced within it. */
+        private void receiveCoalesced() throws IOException {
+            if (!receivePacket()) {
+                return;
+            }
+            shardReceiveCounts.incrementAndGet(shard);
+
+            try {
+                CoalescedDatagram.split(getBufferPool(), buf, 0, packet.getLength(), messages);
+                String sender = getSender();
+                for (int i = 0; i < messages.size(); i++) {
+                    messageReceived(messages.get(i), logger, sender);
+                }
+
+                notifyBatchListeners(messagesView);
+            } finally {
+                messages.forEach(MessageBuffer::release);
+                messages.clear();
+            }
+        }
+
+        /** Get the sender of the last datagram, only creating a string when it changes. */
+        private String getSender() {
+            if (packet.getPort() != lastSenderPort || !packet.getAddress().equals(lastSenderAddress)) {
+                lastSenderAddress = packet.getAddress();
+                lastSenderPort = packet.getPort();
+                lastSender = packet.getSocketAddress().toString();
+            }
+            return lastSender;
+        }
+
+        /**
+         * Receive a datagram into the packet.
+         * 
+         * @return false if the socket was closed while receiving
+         */
+        private boolean receivePacket() throws IOException {
+            receiveSocket.receive(packet);
+
+            // a receive interrupted by close can return an empty packet
+            return !receiveSocket.isClosed();
+        }
+
+        /**
+         * Receive a datagram. If a heap buffer pool with buffers large enough for any
+         * datagram is configured the datagram is received directly into a pooled
+         * buffer rather than being copied. Otherwise the datagram is received into a
+         * reused array and only its bytes are copied, into a pooled buffer if there
+         * is a pool.
+         * 
+         * @return the datagram or null if the socket was closed while receiving
+         */
+        private MessageBuffer receive() throws IOException {
+            BufferPool bufferPool = getBufferPool();
+            if (bufferPool == null || bufferPool.isDirect() || bufferPool.getBufferSize() < buf.length) {
+                return receivePacket() ? MessageBuffer.copyOf(bufferPool, buf, 0, packet.getLength()) : null;
+            }
+
+            if (pooledBuffer == null) {
+                pooledBuffer = bufferPool.acquire(buf.length);
+                packet.setData(pooledBuffer.array(), pooledBuffer.arrayOffset(), buf.length);
+            }
+
+            if (!receivePacket()) {
+                return null;
+            }
+
+            MessageBuffer mb = PooledMessageBuffer.wrap(released, bufferPool, pooledBuffer, 0, packet.getLength());
+            pooledBuffer = null;
+            released = null;
+            return mb;
+        }
+
         @Override
         public boolean continueExecution() {
             return true;
@@ -69,6 +214,248 @@ public class UdpChannel extends SocketIoChannel {
         }
     }
 
+    /**
+     * Used by a task to receive messages in batches. Waits on a selector until a
+     * datagram arrives and then receives every other queued datagram, up to the
+     * batch size, from the non-blocking channel before notifying listeners.
+     */
+    private class BatchReceiveTask implements RunnableTask {
+
+        /** The index of the shard served by this task. */
+        private final int shard;
+
+        /** The channel from which messages are received. */
+        private final DatagramChannel receiveChannel;
+
+        /** Notified when the receive channel has a datagram. */
+        private final Selector receiveSelector;
+
+        /**
+         * Used to receive datagrams when there is not a buffer pool or the pool's
+         * buffers are smaller than a datagram.
+         */
+        private final ByteBuffer receiveBuffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+
+        /** The messages received during a single wake up. */
+        private final List<MessageBuffer> batch;
+
+        /** The address from which each message in the batch was received. */
+        private final List<String> senders;
+
+        /** A read only view of batch given to batch listeners. */
+        private final List<MessageBuffer> batchView;
+
+        /** The last sender and its log string. */
+        private SocketAddress lastSender;
+        private String lastSenderString;
+
+        /**
+         * A buffer obtained from the buffer pool into which the next datagram will be
+         * received. Retained when no datagram is available.
+         */
+        private ByteBuffer pooledBuffer;
+
+        /** Messages whose final reference was released by this task, for reuse. */
+        private final List<PooledMessageBuffer> released;
+
+        private volatile boolean continueExecution = true;
+
+        /**
+         * Constructs a new BatchReceiveTask.
+         * 
+         * @param shard The index of the shard served by this task
+         * @param receiveChannel The channel from which messages are received
+         * @param receiveSelector The selector with which the channel is registered
+         */
+        BatchReceiveTask(int shard, DatagramChannel receiveChannel, Selector receiveSelector) {
+            this.shard = shard;
+            this.receiveChannel = receiveChannel;
+            this.receiveSelector = receiveSelector;
+            batch = new ArrayList<>(receiveBatchSize);
+            senders = new ArrayList<>(receiveBatchSize);
+            released = new ArrayList<>(receiveBatchSize);
+            batchView = Collections.unmodifiableList(batch);
+        }
+
+        @Override
+        public void run() {
+            try {
+                // selecting with an action rather than the selected key set keeps the
+                // receive path free of allocation
+                if (receiveSelector.select(IGNORE_KEY, 1000) == 0) {
+                    return;
+                }
+
+                while (batch.size() < receiveBatchSize && receive()) {
+                    // receive until no datagrams remain or the batch is full
+                }
+
+                if (!batch.isEmpty()) {
+                    dispatch();
+                }
+            } catch (ClosedChannelException | ClosedSelectorException e) {
+                continueExecution = false;
+            } catch (IOException ioe) {
+                logger.error(ioe.getMessage(), ioe);
+            } finally {
+                releaseBatch();
+            }
+        }
+
+        /**
+         * Release the batch, keeping the messages whose last reference was released
+         * here so that the next datagrams can be wrapped without allocating.
+         */
+        private void releaseBatch() {
+            for (int i = 0; i < batch.size(); i++) {
+                MessageBuffer mb = batch.get(i);
+                if (mb.release() && mb instanceof PooledMessageBuffer && released.size() < receiveBatchSize) {
+                    released.add((PooledMessageBuffer) mb);
+                }
+            }
+            batch.clear();
+            senders.clear();
+        }
+
+        /**
+         * Receive a datagram and add it, or each message coalesced within it, to the
+         * batch. If a buffer pool with buffers large enough for any datagram is
+         * configured the datagram is received directly into a pooled buffer and
+         * wrapped by a previously released message.
+         * Otherwise the datagram is received into a reused buffer and only its bytes
+         * are copied, into a pooled buffer if there is a pool.
+         * 
+         * @return false if no datagram was available
+         */
+        private boolean receive() throws IOException {
+            BufferPool bufferPool = getBufferPool();
+            boolean copy = bufferPool == null || bufferPool.getBufferSize() < MAX_DATAGRAM_SIZE;
+            ByteBuffer buffer;
+            if (copy || splitCoalescedDatagrams) {
+                buffer = receiveBuffer;
+            } else {
+                if (pooledBuffer == null) {
+                    pooledBuffer = bufferPool.acquire(MAX_DATAGRAM_SIZE);
+                }
+                buffer = pooledBuffer;
+            }
+            buffer.clear();
+
+            SocketAddress sender = receiveChannel.receive(buffer);
+            if (sender == null) {
+                return false;
+            }
+            shardReceiveCounts.incrementAndGet(shard);
+
+            int numMessages = 1;
+            if (splitCoalescedDatagrams) {
+                try {
+                    numMessages = CoalescedDatagram.split(bufferPool, buffer.array(), 0, buffer.position(), batch);
+                } catch (IOException e) {
+                    // discard only this datagram, not the rest of the batch
+                    logger.warn(getId() + " discarded a datagram from " + sender + ": " + e.getMessage());
+                    return true;
+                }
+            } else if (copy) {
+                batch.add(MessageBuffer.copyOf(bufferPool, buffer.array(), 0, buffer.position()));
+            } else {
+                PooledMessageBuffer reused = released.isEmpty() ? null : released.remove(released.size() - 1);
+                batch.add(PooledMessageBuffer.wrap(reused, bufferPool, buffer, 0, buffer.position()));
+                pooledBuffer = null;
+            }
+
+            if (!sender.equals(lastSender)) {
+                lastSender = sender;
+                lastSenderString = sender.toString();
+            }
+            for (int i = 0; i < numMessages; i++) {
+                senders.add(lastSenderString);
+            }
+            return true;
+        }
+
+        private void dispatch() {
+            for (int i = 0; i < batch.size(); i++) {
+                messageReceived(batch.get(i), logger, senders.get(i));
+            }
+
+            notifyBatchListeners(batchView);
+        }
+
+        @Override
+        public boolean continueExecution() {
+            return continueExecution;
+        }
+
+        @Override
+        public void terminate() {
+            // closing the selector interrupts a blocked select
+            continueExecution = false;
+        }
+    }
+
+    /** The selection action used when only the readiness of a channel matters. */
+    private static final Consumer<SelectionKey> IGNORE_KEY = key -> {
+        // no action necessary
+    };
+
+    /** The largest possible UDP payload. */
+    static final int MAX_DATAGRAM_SIZE = 65507;
+
+    /**
+     * How long a send to a non-blocking channel whose send buffer is full waits for
+     * the buffer to drain before the datagram is dropped.
+     */
+    private static final long SEND_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * The largest UDP payload that fits in a single Ethernet frame without IP
+     * fragmentation.
+     */
+    public static final int ETHERNET_MTU_DATAGRAM_SIZE = 1472;
+
+    /** Used by a task to send messages queued when auto batching is enabled. */
+    private class SendTask implements RunnableTask {
+
+        /** The messages taken from the queue to be sent together. */
+        private final List<MessageBuffer> pending = new ArrayList<>();
+
+        private volatile boolean continueExecution = true;
+
+        @Override
+        public void run() {
+            try {
+                MessageBuffer first = sendQueue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    return;
+                }
+
+                // send everything that was queued while the previous batch was being sent
+                pending.add(first);
+                sendQueue.drainTo(pending);
+                sendMessages(pending);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                continueExecution = false;
+            } catch (IOException e) {
+                logger.error(getId() + " " + e.getMessage(), e);
+            } finally {
+                pending.forEach(MessageBuffer::release);
+                pending.clear();
+            }
+        }
+
+        @Override
+        public boolean continueExecution() {
+            return continueExecution;
+        }
+
+        @Override
+        public void terminate() {
+            continueExecution = false;
+        }
+    }
+
     private final Logger logger = Utilities.getInstance().getLogger(UdpChannel.class);
 
     /** For output sockets, the address to which messages will be sent. */
@@ -77,7 +464,62 @@ public class UdpChannel extends SocketIoChannel {
     /** The underlying UDP socket. */
     protected DatagramSocket socket;
 
-    private Future<?> receiveFuture;
+    /** The channel of the underlying UDP socket when receiving in batches. */
+    protected DatagramChannel datagramChannel;
+
+    /** The number of sockets that share the local port to receive datagrams. */
+    private int numReceiveShards = 1;
+
+    /** Every socket of this channel. The first is {@link #socket}. */
+    private final List<DatagramSocket> shardSockets = new ArrayList<>();
+
+    /** The number of datagrams received by each shard. */
+    private volatile AtomicLongArray shardReceiveCounts = new AtomicLongArray(0);
+
+    /** The maximum number of datagrams received per wake up or zero to receive one at a time. */
+    private int receiveBatchSize = 0;
+
+    private final Listeners<Consumer<List<MessageBuffer>>, List<MessageBuffer>> batchListeners = new Listeners<>();
+
+    private final List<Future<?>> receiveFutures = new ArrayList<>();
+
+    /** The selector of each batch receive task. */
+    private final List<Selector> receiveSelectors = new ArrayList<>();
+
+    /** The largest datagram into which outgoing messages are coalesced or zero to disable coalescing. */
+    private int coalescingDatagramSize = 0;
+
+    /** Whether received datagrams contain coalesced messages. */
+    private boolean splitCoalescedDatagrams = false;
+
+    /** The capacity of the auto batching send queue or zero to send on the calling thread. */
+    private int autoBatchQueueCapacity = 0;
+
+    /** Messages waiting to be sent by the auto batching send task. */
+    private BlockingQueue<MessageBuffer> sendQueue;
+
+    private Future<?> sendFuture;
+
+    /** Guards the reusable send state below. */
+    private final Object sendLock = new Object();
+
+    /** Reused for every datagram sent through {@link #socket}. */
+    private DatagramPacket sendPacket;
+
+    /** Reused for every datagram sent through {@link #datagramChannel}. */
+    private ByteBuffer sendBuffer;
+
+    /**
+     * Notified when the non-blocking {@link #datagramChannel} can send. Created
+     * the first time its send buffer is full.
+     */
+    private Selector sendSelector;
+
+    /** The number of datagrams dropped because the send buffer remained full. */
+    private final AtomicLong numDroppedDatagrams = new AtomicLong();
+
+    /** The buffer in which messages are coalesced. */
+    private byte[] coalesceBuffer;
 
     /** The UDP Socket Options. */
     protected UdpSocketOptions socketOptions = new UdpSocketOptions();
@@ -165,28 +607,261 @@ public class UdpChannel extends SocketIoChannel {
         this.socketOptions = socketOptions;
     }
 
+    /**
+     * Enables receiving datagrams in batches using a DatagramChannel. Each time a
+     * datagram arrives every other queued datagram, up to the batch size, is
+     * received without blocking before listeners are notified.
+     * 
+     * <p>
+     * Combined with a {@link BufferPool}, receiving in batches does not allocate
+     * once the pool is warmed up, provided listeners do not allocate and debug
+     * logging is disabled.
+     * 
+     * @param receiveBatchSize The maximum number of datagrams received per wake
+     *        up. Zero receives one datagram at a time using a DatagramSocket
+     */
+    public void setReceiveBatchSize(int receiveBatchSize) {
+        Preconditions.checkState(getState() == ChannelState.INITIAL,
+                getId() + " The state must be INITIAL for setReceiveBatchSize");
+        Preconditions.checkArgument(receiveBatchSize >= 0, "receiveBatchSize cannot be negative");
+        this.receiveBatchSize = receiveBatchSize;
+    }
+
+    /**
+     * Get the maximum number of datagrams received per wake up.
+     * 
+     * @return the maximum number of datagrams received per wake up or zero if
+     *         datagrams are received one at a time
+     */
+    public int getReceiveBatchSize() {
+        return receiveBatchSize;
+    }
+
+    /**
+     * Receive on several sockets bound to the same local port with SO_REUSEPORT,
+     * each served by its own thread. The operating system distributes datagrams
+     * across the sockets by hashing the sender's address so that the datagrams of
+     * a single sender are always received by the same shard and remain in order.
+     * All shards notify the same listeners.
+     * 
+     * @param numReceiveShards The number of receive sockets. 1 disables sharding
+     */
+    public void setNumReceiveShards(int numReceiveShards) {
+        Preconditions.checkState(getState() == ChannelState.INITIAL,
+                getId() + " The state must be INITIAL for setNumReceiveShards");
+        Preconditions.checkState(getIoType().isInput(), "Cannot shard an output only channel");
+        Preconditions.checkArgument(numReceiveShards > 0, "numReceiveShards must be greater than zero");
+        Preconditions.checkArgument(numReceiveShards == 1 || getlocalAddress().getPort() != 0,
+                "A local port is required to shard a channel");
+        this.numReceiveShards = numReceiveShards;
+    }
+
+    /**
+     * Get the number of sockets that share the local port to receive datagrams.
+     * 
+     * @return the number of receive sockets
+     */
+    public int getNumReceiveShards() {
+        return numReceiveShards;
+    }
+
+    /**
+     * Get the number of datagrams received by each shard, which shows how the
+     * operating system is distributing senders across the shards.
+     * 
+     * @return the number of datagrams received by each shard or an empty array if
+     *         this channel has not been connected
+     */
+    public long[] getShardReceiveCounts() {
+        AtomicLongArray counts = shardReceiveCounts;
+        long[] result = new long[counts.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = counts.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Get the number of datagrams that were not sent because the send buffer of a
+     * channel that also receives in batches remained full.
+     * 
+     * @return the number of dropped datagrams
+     */
+    public long getNumDroppedDatagrams() {
+        return numDroppedDatagrams.get();
+    }
+
+    /**
+     * Coalesce messages given to {@link #sendBatch(List)}, or queued when auto batching,
+     * into datagrams of up to the given size. Each message is preceded by a two
+     * byte length so the receiving channel must be configured with
+     * {@link #setSplitCoalescedDatagrams(boolean)}. A message larger than the
+     * datagram size is sent in a datagram of its own.
+     * 
+     * @param coalescingDatagramSize The largest datagram into which messages are
+     *        coalesced, such as {@link #ETHERNET_MTU_DATAGRAM_SIZE}. Zero disables
+     *        coalescing
+     */
+    public void setCoalescingDatagramSize(int coalescingDatagramSize) {
+        Preconditions.checkState(getState() == ChannelState.INITIAL,
+                getId() + " The state must be INITIAL for setCoalescingDatagramSize");
+        Preconditions.checkState(getIoType().isOutput(), "Cannot coalesce messages on an input only channel");
+        Preconditions.checkArgument(
+                coalescingDatagramSize == 0 || (coalescingDatagramSize > CoalescedDatagram.HEADER_LENGTH
+                        && coalescingDatagramSize <= MAX_DATAGRAM_SIZE),
+                "Invalid coalescingDatagramSize %s", coalescingDatagramSize);
+        this.coalescingDatagramSize = coalescingDatagramSize;
+    }
+
+    /**
+     * Get the largest datagram into which outgoing messages are coalesced.
+     * 
+     * @return the largest datagram into which outgoing messages are coalesced or
+     *         zero if coalescing is disabled
+     */
+    public int getCoalescingDatagramSize() {
+        return coalescingDatagramSize;
+    }
+
+    /**
+     * Split each received datagram into the messages coalesced within it by a
+     * sending channel configured with {@link #setCoalescingDatagramSize(int)}.
+     * 
+     * @param splitCoalescedDatagrams true if received datagrams contain coalesced
+     *        messages
+     */
+    public void setSplitCoalescedDatagrams(boolean splitCoalescedDatagrams) {
+        Preconditions.checkState(getState() == ChannelState.INITIAL,
+                getId() + " The state must be INITIAL for setSplitCoalescedDatagrams");
+        Preconditions.checkState(getIoType().isInput(), "Cannot receive on an output only channel");
+        this.splitCoalescedDatagrams = splitCoalescedDatagrams;
+    }
+
+    /**
+     * Do received datagrams contain coalesced messages.
+     * 
+     * @return true if received datagrams are split into coalesced messages
+     */
+    public boolean isSplitCoalescedDatagrams() {
+        return splitCoalescedDatagrams;
+    }
+
+    /**
+     * Queue sent messages to be sent by a dedicated task through a DatagramChannel.
+     * The task sends every message queued while it was sending the previous batch,
+     * coalescing them if enabled, so batches grow with the send rate without
+     * adding delay. Send blocks while the queue is full. Errors are logged rather
+     * than thrown to the sender, and messages still queued when the channel is
+     * closed are discarded.
+     * 
+     * @param autoBatchQueueCapacity The capacity of the send queue. Zero sends on
+     *        the calling thread
+     */
+    public void setAutoBatching(int autoBatchQueueCapacity) {
+        Preconditions.checkState(getState() == ChannelState.INITIAL,
+                getId() + " The state must be INITIAL for setAutoBatching");
+        Preconditions.checkState(getIoType().isOutput(), "Cannot send on an input only channel");
+        Preconditions.checkArgument(autoBatchQueueCapacity >= 0, "autoBatchQueueCapacity cannot be negative");
+        this.autoBatchQueueCapacity = autoBatchQueueCapacity;
+    }
+
+    /**
+     * Get the capacity of the auto batching send queue.
+     * 
+     * @return the capacity of the auto batching send queue or zero if auto batching
+     *         is disabled
+     */
+    public int getAutoBatchQueueCapacity() {
+        return autoBatchQueueCapacity;
+    }
+
+    /**
+     * Add a listener to be notified with all of the messages received in a single
+     * wake up, after the per-message listeners. The list and its messages are only
+     * valid for the duration of the call; a listener that holds on to a message
+     * must {@link MessageBuffer#retain()} it. When not receiving in batches the
+     * listener is notified with each message in a list of one.
+     * 
+     * @param listener The listener
+     */
+    public void addBatchMessageListener(Consumer<List<MessageBuffer>> listener) {
+        Preconditions.checkState(getIoType().isInput(), "Cannot set a message listener on an output only channel");
+        Preconditions.checkNotNull(listener, "Listener cannot be null");
+        batchListeners.addListener(listener);
+    }
+
+    /**
+     * Remove a batch message listener.
+     * 
+     * @param listener The listener to be removed
+     * @return true if the listener was removed
+     */
+    public boolean removeBatchMessageListener(Consumer<List<MessageBuffer>> listener) {
+        return batchListeners.removeListener(listener);
+    }
+
+    /**
+     * Notify the batch message listeners of the messages received in a single wake
+     * up.
+     * 
+     * @param messages The messages received
+     */
+    protected void notifyBatchListeners(List<MessageBuffer> messages) {
+        if (batchListeners.size() > 0) {
+            batchListeners.forEachListenerThatMatches(messages, Consumer::accept);
+        }
+    }
+
     @Override
     public void connect() throws ChannelException, InterruptedException {
         Preconditions.checkState(getState() == ChannelState.INITIAL,
                 getId() + " Illegal state for connect: " + getState());
 
-        boolean socketCreated = false;
-        while (!socketCreated) {
-            try {
-                socket = createSocket();
-                socketCreated = true;
-            } catch (BindException be) {
-                logger.warn("{} {} ", getId(), be.getMessage());
-                Thread.sleep(getBindExceptionSleepTimeMillis());
-            } catch (IOException se) {
-                throw new ChannelException(getId(), se);
+        boolean batchReceive = receiveBatchSize > 0 && getIoType().isInput();
+        boolean autoBatch = autoBatchQueueCapacity > 0 && getIoType().isOutput();
+        int numSockets = getIoType().isInput() ? numReceiveShards : 1;
+        shardReceiveCounts = new AtomicLongArray(numSockets);
+
+        for (int shard = 0; shard < numSockets; shard++) {
+            DatagramChannel shardChannel = null;
+            DatagramSocket shardSocket = null;
+            Selector receiveSelector = null;
+            while (shardSocket == null) {
+                try {
+                    if (batchReceive || autoBatch) {
+                        shardChannel = createDatagramChannel();
+                        if (batchReceive) {
+                            receiveSelector = openReceiveSelector(shardChannel);
+                        }
+                        shardSocket = shardChannel.socket();
+                    } else {
+                        shardSocket = createSocket();
+                    }
+                } catch (BindException be) {
+                    logger.warn("{} {} ", getId(), be.getMessage());
+                    Thread.sleep(getBindExceptionSleepTimeMillis());
+                } catch (IOException se) {
+                    closeSockets();
+                    throw new ChannelException(getId(), se);
+                }
             }
 
-        }
+            if (shard == 0) {
+                socket = shardSocket;
+                datagramChannel = shardChannel;
+            }
+            shardSockets.add(shardSocket);
 
-        if (getIoType().isInput()) {
-            receiveFuture = LongLivedTask.create(getId() + "ReceiveTask", new ReceiveTask()).start();
+            String taskId = numSockets == 1 ? getId() + "ReceiveTask" : getId() + "ReceiveTask" + shard;
+            if (batchReceive) {
+                receiveFutures.add(getTaskExecutor().start(taskId, new BatchReceiveTask(shard, shardChannel,
+                        receiveSelector)));
+            } else if (getIoType().isInput()) {
+                receiveFutures.add(getTaskExecutor().start(taskId, new ReceiveTask(shard, shardSocket)));
+            }
         }
+
+        initSend(autoBatch);
         setState(ChannelState.CONNECTED);
 
         logger.info("{} Connected to local address {} {}", getId(), socket.getLocalAddress(), socket.getLocalPort());
@@ -198,6 +873,37 @@ public class UdpChannel extends SocketIoChannel {
         }
     }
 
+    /** Create the reusable state used to send datagrams and start the auto batching task. */
+    private void initSend(boolean autoBatch) throws ChannelException {
+        if (!getIoType().isOutput()) {
+            return;
+        }
+
+        if (coalescingDatagramSize > 0) {
+            coalesceBuffer = new byte[MAX_DATAGRAM_SIZE];
+        }
+
+        if (datagramChannel == null) {
+            sendPacket = new DatagramPacket(new byte[0], 0, remoteAddress);
+        } else {
+            sendBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+            if (!getIoType().isInput()) {
+                try {
+                    // a connected channel skips the per datagram destination checks
+                    datagramChannel.connect(remoteAddress);
+                } catch (IOException e) {
+                    closeSockets();
+                    throw new ChannelException(getId(), e);
+                }
+            }
+        }
+
+        if (autoBatch) {
+            sendQueue = new ArrayBlockingQueue<>(autoBatchQueueCapacity);
+            sendFuture = getTaskExecutor().start(getId() + "SendTask", new SendTask());
+        }
+    }
+
     protected long getBindExceptionSleepTimeMillis() {
         return 2000;
     }
@@ -209,9 +915,90 @@ public class UdpChannel extends SocketIoChannel {
      * @throws IOException If an error occurs while creating the socket
      */
     protected DatagramSocket createSocket() throws IOException {
-        DatagramSocket createdSocket = new DatagramSocket(getlocalAddress());
-        socketOptions.applySocketOptions(getId(), createdSocket);
-        return createdSocket;
+        if (numReceiveShards == 1) {
+            DatagramSocket createdSocket = new DatagramSocket(getlocalAddress());
+            socketOptions.applySocketOptions(getId(), createdSocket);
+            return createdSocket;
+        }
+
+        // SO_REUSEPORT must be set before binding
+        DatagramSocket createdSocket = new DatagramSocket(null);
+        try {
+            socketOptions.applySocketOptions(getId(), createdSocket);
+            checkReusePortSupported(createdSocket.supportedOptions());
+            createdSocket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            createdSocket.bind(getlocalAddress());
+            return createdSocket;
+        } catch (IOException e) {
+            createdSocket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Allows children classes to create specific DatagramChannels when receiving
+     * in batches.
+     * 
+     * @return A DatagramChannel bound to the local address and port
+     * @throws IOException If an error occurs while creating the channel
+     */
+    protected DatagramChannel createDatagramChannel() throws IOException {
+        DatagramChannel createdChannel = DatagramChannel.open();
+        try {
+            socketOptions.applySocketOptions(getId(), createdChannel.socket());
+            if (numReceiveShards > 1) {
+                checkReusePortSupported(createdChannel.supportedOptions());
+                createdChannel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            createdChannel.bind(getlocalAddress());
+            return createdChannel;
+        } catch (IOException e) {
+            createdChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Put a batch receive channel in non-blocking mode and register it with a new
+     * selector. Closes the channel if it cannot be registered.
+     */
+    private Selector openReceiveSelector(DatagramChannel receiveChannel) throws IOException {
+        Selector receiveSelector = null;
+        try {
+            receiveSelector = Selector.open();
+            receiveChannel.configureBlocking(false);
+            receiveChannel.register(receiveSelector, SelectionKey.OP_READ);
+            receiveSelectors.add(receiveSelector);
+            return receiveSelector;
+        } catch (IOException e) {
+            receiveChannel.close();
+            if (receiveSelector != null) {
+                receiveSelector.close();
+            }
+            throw e;
+        }
+    }
+
+    /** Verify that SO_REUSEPORT, which is required to shard a channel, is supported. */
+    private void checkReusePortSupported(Set<SocketOption<?>> supportedOptions) throws IOException {
+        if (!supportedOptions.contains(StandardSocketOptions.SO_REUSEPORT)) {
+            throw new IOException("SO_REUSEPORT is not supported so the channel cannot be sharded");
+        }
+    }
+
+    /** Close every socket of this channel and the selectors of the receive tasks. */
+    private void closeSockets() {
+        shardSockets.forEach(DatagramSocket::close);
+        shardSockets.clear();
+
+        for (Selector receiveSelector : receiveSelectors) {
+            try {
+                receiveSelector.close();
+            } catch (IOException e) {
+                logger.warn(getId() + " " + e.getMessage(), e);
+            }
+        }
+        receiveSelectors.clear();
     }
 
     @Override
@@ -221,13 +1008,41 @@ public class UdpChannel extends SocketIoChannel {
 
     @Override
     public void close() throws ChannelException {
-        if (receiveFuture != null) {
-            receiveFuture.cancel(true);
+        receiveFutures.forEach(future -> future.cancel(true));
+        receiveFutures.clear();
+
+        if (sendFuture != null) {
+            sendFuture.cancel(true);
+            sendFuture = null;
+
+            MessageBuffer queued;
+            while ((queued = sendQueue.poll()) != null) {
+                queued.release();
+            }
+        }
+
+        closeSockets();
+        socket = null;
+
+        synchronized (sendLock) {
+            if (sendSelector != null) {
+                try {
+                    sendSelector.close();
+                } catch (IOException e) {
+                    logger.warn(getId() + " " + e.getMessage(), e);
+                }
+                sendSelector = null;
+            }
         }
 
-        if (socket != null) {
-            socket.close();
-            socket = null;
+        if (datagramChannel != null) {
+            try {
+                datagramChannel.close();
+            } catch (IOException e) {
+                throw new ChannelException(getId(), e);
+            } finally {
+                datagramChannel = null;
+            }
         }
 
         setState(ChannelState.CLOSED);
@@ -235,21 +1050,154 @@ public class UdpChannel extends SocketIoChannel {
 
     @Override
     public void send(MessageBuffer message) throws ChannelException {
-        Preconditions.checkState(getState() == ChannelState.CONNECTED,
-                "%s Cannot send on a channel that is not connected", getId());
+        checkCanSend();
 
-        Preconditions.checkState(getIoType().isOutput(), "%s Cannot send on an input only channel", getId());
+        if (sendQueue != null) {
+            enqueue(message);
+        } else if (coalescingDatagramSize > 0) {
+            sendBatch(Collections.singletonList(message));
+        } else {
+            try {
+                synchronized (sendLock) {
+                    logSend(message);
+                    sendDatagram(message.getBytes(), 0, message.getLength());
+                }
+            } catch (IOException ioe) {
+                throw new ChannelException(getId(), ioe);
+            }
+        }
+    }
+
+    /**
+     * Send several messages, coalescing them into as few datagrams as possible if
+     * {@link #setCoalescingDatagramSize(int)} is enabled. The messages are queued
+     * rather than sent if auto batching is enabled.
+     * 
+     * @param messages The messages to send
+     * @throws ChannelException If an error occurs while sending
+     */
+    public void sendBatch(List<MessageBuffer> messages) throws ChannelException {
+        checkCanSend();
 
-        logSend(logger, message,
-                "remote address = " + remoteAddress.toString() + " size = " + message.getBytes().length);
-        byte[] bytes = message.getBytes();
+        if (sendQueue != null) {
+            for (int i = 0; i < messages.size(); i++) {
+                enqueue(messages.get(i));
+            }
+            return;
+        }
 
         try {
-            DatagramPacket packet = new DatagramPacket(bytes, bytes.length, remoteAddress);
-            socket.send(packet);
+            sendMessages(messages);
         } catch (IOException ioe) {
             throw new ChannelException(getId(), ioe);
         }
+    }
+
+    private void checkCanSend() {
+        Preconditions.checkState(getState() == ChannelState.CONNECTED,
+                "%s Cannot send on a channel that is not connected", getId());
+
+        Preconditions.checkState(getIoType().isOutput(), "%s Cannot send on an input only channel", getId());
+    }
+
+    /** Queue a message to be sent by the auto batching task. */
+    private void enqueue(MessageBuffer message) throws ChannelException {
+        try {
+            sendQueue.put(message.retain());
+        } catch (InterruptedException e) {
+            message.release();
+            Thread.currentThread().interrupt();
+            throw new ChannelException(getId() + " interrupted while queueing a message", e);
+        }
+    }
+
+    /** Send messages in a tight loop, coalescing them if enabled. */
+    private void sendMessages(List<MessageBuffer> messages) throws IOException {
+        synchronized (sendLock) {
+            if (coalescingDatagramSize == 0) {
+                for (int i = 0; i < messages.size(); i++) {
+                    MessageBuffer message = messages.get(i);
+                    logSend(message);
+                    sendDatagram(message.getBytes(), 0, message.getLength());
+                }
+                return;
+            }
+
+            // check every message before sending any so that a batch is not partially sent
+            for (int i = 0; i < messages.size(); i++) {
+                if (messages.get(i).getLength() > CoalescedDatagram.MAX_MESSAGE_LENGTH) {
+                    throw new ChannelException(getId() + " a message of " + messages.get(i).getLength()
+                            + " bytes is too large to be coalesced");
+                }
+            }
+
+            int length = 0;
+            for (int i = 0; i < messages.size(); i++) {
+                MessageBuffer message = messages.get(i);
+                int messageLength = message.getLength();
+                if (length > 0 && length + CoalescedDatagram.HEADER_LENGTH + messageLength > coalescingDatagramSize) {
+                    sendDatagram(coalesceBuffer, 0, length);
+                    length = 0;
+                }
+
+                logSend(message);
+                CoalescedDatagram.putHeader(coalesceBuffer, length, messageLength);
+                message.getByteBuffer().get(coalesceBuffer, length + CoalescedDatagram.HEADER_LENGTH, messageLength);
+                length += CoalescedDatagram.HEADER_LENGTH + messageLength;
+            }
+
+            if (length > 0) {
+                sendDatagram(coalesceBuffer, 0, length);
+            }
+        }
+    }
+
+    /** Send a single datagram reusing the send packet or buffer. Must hold sendLock. */
+    private void sendDatagram(byte[] bytes, int offset, int length) throws IOException {
+        long start = sendStarted();
+        if (sendBuffer == null) {
+            sendPacket.setData(bytes, offset, length);
+            socket.send(sendPacket);
+        } else {
+            sendBuffer.clear();
+            sendBuffer.put(bytes, offset, length).flip();
+
+            // a channel that also receives in batches is in non-blocking mode
+            if (datagramChannel.send(sendBuffer, remoteAddress) == 0 && !awaitSend()) {
+                numDroppedDatagrams.incrementAndGet();
+                throw new IOException(getId() + " the send buffer remained full for " + SEND_TIMEOUT_MILLIS
+                        + " ms, datagram dropped");
+            }
+        }
+        messageSent(length, start);
+    }
+
+    /**
+     * Wait for the non-blocking channel to become writable and send the datagram in
+     * the send buffer. Must hold sendLock.
+     * 
+     * @return false if the datagram could not be sent before the send timeout
+     */
+    private boolean awaitSend() throws IOException {
+        if (sendSelector == null) {
+            sendSelector = Selector.open();
+            datagramChannel.register(sendSelector, SelectionKey.OP_WRITE);
+        }
 
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SEND_TIMEOUT_MILLIS);
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            sendSelector.select(IGNORE_KEY, Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+            if (datagramChannel.send(sendBuffer, remoteAddress) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void logSend(MessageBuffer message) {
+        if (logger.isInfoEnabled()) {
+            logSend(logger, message, "remote address = " + remoteAddress + " size = " + message.getLength());
+        }
     }
 }
@@ -2,23 +2,59 @@ package com.fincher.iochannel.udp;
 
 import java.io.IOException;
 import java.net.DatagramSocket;
+import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
 import java.net.NetworkInterface;
+import java.net.ProtocolFamily;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 
+import com.fincher.iochannel.BufferPool;
 import com.fincher.iochannel.ChannelException;
+import com.fincher.iochannel.ChannelState;
 import com.fincher.iochannel.IoType;
 import com.fincher.iochannel.MessageBuffer;
 import com.fincher.iochannel.Utilities;
+import com.fincher.thread.RunnableTask;
 import com.google.common.base.Preconditions;
 
 /**
  * A UDP Multicast representation of a Socket IO Channel.
  * 
+ * <p>
+ * An input channel created without a multicast group can join and leave any
+ * number of groups at runtime with {@link #joinGroup(InetAddress)} and
+ * {@link #leaveGroup(InetAddress)}. The JDK does not report the destination
+ * address of a received datagram, so each group is received on its own
+ * DatagramChannel bound to the group address. A single task services all of
+ * them through one Selector and sets the destination address of each received
+ * message to its group. Binding to a multicast address is not supported on
+ * Windows.
+ * 
  * @author Brian Fincher
  *
  */
@@ -29,6 +65,149 @@ public class UdpMulticastChannel extends UdpChannel {
     private final InetAddress multicastAddress;
     private final NetworkInterface networkInterface;
 
+    /**
+     * The groups joined by a multi group channel and the channel on which each is
+     * received, null until connected. Null if this is not a multi group channel.
+     * Guarded by itself.
+     */
+    private final Map<InetAddress, DatagramChannel> groups;
+
+    /** Group channels waiting to be registered with the selector by the receive task. */
+    private final Queue<DatagramChannel> pendingRegistrations = new ConcurrentLinkedQueue<>();
+
+    /** The number of datagrams received by a multi group channel. */
+    private final AtomicLong groupReceiveCount = new AtomicLong();
+
+    private Selector selector;
+
+    private GroupReceiveTask groupReceiveTask;
+
+    private Future<Void> groupReceiveFuture;
+
+    /**
+     * Receives from every group joined by a multi group channel. Waits on the
+     * selector and then receives up to the receive batch size datagrams from each
+     * ready group before notifying listeners.
+     */
+    private class GroupReceiveTask implements RunnableTask {
+
+        /** Notified when a group channel is ready to receive. */
+        private final Selector groupSelector;
+
+        private final ByteBuffer receiveBuffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+
+        /** The messages received during a single wake up. */
+        private final List<MessageBuffer> batch = new ArrayList<>();
+
+        /** The address from which each message in the batch was received. */
+        private final List<String> senders = new ArrayList<>();
+
+        /** A read only view of batch given to batch listeners. */
+        private final List<MessageBuffer> batchView = Collections.unmodifiableList(batch);
+
+        private volatile boolean continueExecution = true;
+
+        GroupReceiveTask(Selector groupSelector) {
+            this.groupSelector = groupSelector;
+        }
+
+        @Override
+        public void run() {
+            try {
+                DatagramChannel pending;
+                while ((pending = pendingRegistrations.poll()) != null) {
+                    register(pending);
+                }
+
+                if (groupSelector.select(1000) == 0) {
+                    return;
+                }
+
+                Iterator<SelectionKey> it = groupSelector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (key.isValid()) {
+                        receive((DatagramChannel) key.channel(), (InetAddress) key.attachment());
+                    }
+                }
+
+                for (int i = 0; i < batch.size(); i++) {
+                    messageReceived(batch.get(i), LOG, senders.get(i));
+                }
+                notifyBatchListeners(batchView);
+            } catch (ClosedSelectorException e) {
+                continueExecution = false;
+            } catch (IOException ioe) {
+                LOG.error(ioe.getMessage(), ioe);
+            } finally {
+                batch.forEach(MessageBuffer::release);
+                batch.clear();
+                senders.clear();
+            }
+        }
+
+        private void register(DatagramChannel groupChannel) throws IOException {
+            try {
+                InetAddress group = ((InetSocketAddress) groupChannel.getLocalAddress()).getAddress();
+                groupChannel.register(groupSelector, SelectionKey.OP_READ, group);
+            } catch (ClosedChannelException e) {
+                // the group was left before it was registered
+            }
+        }
+
+        /** Receive the datagrams waiting on a group channel and add them to the batch. */
+        private void receive(DatagramChannel groupChannel, InetAddress group) throws IOException {
+            BufferPool bufferPool = getBufferPool();
+            int maxDatagrams = Math.max(1, getReceiveBatchSize());
+            for (int i = 0; i < maxDatagrams; i++) {
+                receiveBuffer.clear();
+                SocketAddress sender;
+                try {
+                    sender = groupChannel.receive(receiveBuffer);
+                } catch (ClosedChannelException e) {
+                    // the group was left
+                    return;
+                }
+
+                if (sender == null) {
+                    return;
+                }
+                groupReceiveCount.incrementAndGet();
+
+                int first = batch.size();
+                if (isSplitCoalescedDatagrams()) {
+                    try {
+                        CoalescedDatagram.split(bufferPool, receiveBuffer.array(), 0, receiveBuffer.position(),
+                                batch);
+                    } catch (IOException e) {
+                        // discard only this datagram, not the rest of the batch
+                        LOG.warn(getId() + " discarded a datagram from " + sender + ": " + e.getMessage());
+                        continue;
+                    }
+                } else {
+                    batch.add(MessageBuffer.copyOf(bufferPool, receiveBuffer.array(), 0, receiveBuffer.position()));
+                }
+
+                String senderString = sender.toString();
+                for (int j = first; j < batch.size(); j++) {
+                    batch.get(j).setDestinationAddress(group);
+                    senders.add(senderString);
+                }
+            }
+        }
+
+        @Override
+        public boolean continueExecution() {
+            return continueExecution;
+        }
+
+        @Override
+        public void terminate() {
+            continueExecution = false;
+        }
+    }
+
     /**
      * Constructs a new UDP MULTICAST IO Channel.
      * 
@@ -53,6 +232,32 @@ public class UdpMulticastChannel extends UdpChannel {
 
         this.multicastAddress = multicastAddress;
         this.networkInterface = networkInterface;
+        groups = null;
+
+        socketOptions = new UdpMulticastSocketOptions();
+    }
+
+    /**
+     * Constructs a new multi group UDP MULTICAST IO Channel that has not joined
+     * any groups.
+     * 
+     * @param id The ID of this IO Channel
+     * @param localAddress The local address whose port will be used to receive
+     *        from each group
+     * @param networkInterface The network interface on which to join multicast
+     *        groups
+     */
+    UdpMulticastChannel(String id, InetSocketAddress localAddress, NetworkInterface networkInterface) {
+        super(id, IoType.INPUT_ONLY, localAddress);
+
+        Preconditions.checkArgument(localAddress != null && localAddress.getPort() != 0,
+                id + " localAddress port must be non zero");
+
+        Preconditions.checkNotNull(networkInterface);
+
+        this.multicastAddress = null;
+        this.networkInterface = networkInterface;
+        groups = new LinkedHashMap<>();
 
         socketOptions = new UdpMulticastSocketOptions();
     }
@@ -67,6 +272,7 @@ public class UdpMulticastChannel extends UdpChannel {
 
         socketOptions = new UdpMulticastSocketOptions();
         networkInterface = null;
+        groups = null;
     }
 
     /**
@@ -102,6 +308,41 @@ public class UdpMulticastChannel extends UdpChannel {
         return new UdpMulticastChannel(id, localAddress, multicastAddress, networkInterface);
     }
 
+    /**
+     * Creates a new input only UDP MULTICAST IO Channel that can receive from many
+     * multicast groups. Groups are joined with {@link #joinGroup(InetAddress)}.
+     * 
+     * @param id The ID of this IO Channel
+     * @param messageHandler Used to notify clients of received data
+     * @param localAddress The local address whose port will be used to receive
+     *        from each group
+     * @param networkInterface The network interface on which to join multicast
+     *        groups
+     * @return a new input only UDP MULTICAST IO Channel
+     */
+    public static UdpMulticastChannel createInputChannel(String id, Consumer<MessageBuffer> messageHandler,
+            InetSocketAddress localAddress, NetworkInterface networkInterface) {
+        UdpMulticastChannel channel = new UdpMulticastChannel(id, localAddress, networkInterface);
+        channel.addMessageListener(messageHandler);
+        return channel;
+    }
+
+    /**
+     * Creates a new input only UDP MULTICAST IO Channel that can receive from many
+     * multicast groups. Groups are joined with {@link #joinGroup(InetAddress)}.
+     * 
+     * @param id The ID of this IO Channel
+     * @param localAddress The local address whose port will be used to receive
+     *        from each group
+     * @param networkInterface The network interface on which to join multicast
+     *        groups
+     * @return a new input only UDP MULTICAST IO Channel
+     */
+    public static UdpMulticastChannel createInputChannel(String id, InetSocketAddress localAddress,
+            NetworkInterface networkInterface) {
+        return new UdpMulticastChannel(id, localAddress, networkInterface);
+    }
+
     /**
      * Creates a new output only UDP IO Channel.
      * 
@@ -116,14 +357,154 @@ public class UdpMulticastChannel extends UdpChannel {
         return new UdpMulticastChannel(id, localAddress, multicastAddress);
     }
 
+    /**
+     * Not supported. The operating system delivers every multicast datagram to
+     * each socket bound to the group port rather than distributing datagrams
+     * across them.
+     * 
+     * @param numReceiveShards ignored
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void setNumReceiveShards(int numReceiveShards) {
+        throw new UnsupportedOperationException("Multicast channels cannot be sharded");
+    }
+
+    /**
+     * Join a multicast group. A group joined before the channel is connected is
+     * joined when it connects.
+     * 
+     * @param group The multicast group
+     * @return false if the group had already been joined
+     * @throws ChannelException If the group could not be joined
+     */
+    public boolean joinGroup(InetAddress group) throws ChannelException {
+        checkMultiGroup("joinGroup");
+        Preconditions.checkArgument(group.isMulticastAddress(), group + " is not a valid multicast address");
+
+        synchronized (groups) {
+            ChannelState state = getState();
+            Preconditions.checkState(state != ChannelState.CLOSED, getId() + " Illegal state for joinGroup: " + state);
+            if (groups.containsKey(group)) {
+                return false;
+            }
+
+            DatagramChannel groupChannel = null;
+            if (state == ChannelState.CONNECTED) {
+                try {
+                    groupChannel = openGroupChannel(group);
+                } catch (IOException e) {
+                    throw new ChannelException(getId(), e);
+                }
+                pendingRegistrations.add(groupChannel);
+                selector.wakeup();
+            }
+            groups.put(group, groupChannel);
+            return true;
+        }
+    }
+
+    /**
+     * Leave a multicast group.
+     * 
+     * @param group The multicast group
+     * @return false if the group had not been joined
+     * @throws ChannelException If the group could not be left
+     */
+    public boolean leaveGroup(InetAddress group) throws ChannelException {
+        checkMultiGroup("leaveGroup");
+
+        synchronized (groups) {
+            if (!groups.containsKey(group)) {
+                return false;
+            }
+
+            DatagramChannel groupChannel = groups.remove(group);
+            if (groupChannel != null) {
+                try {
+                    // closing the channel drops its membership and cancels its selection key
+                    groupChannel.close();
+                } catch (IOException e) {
+                    throw new ChannelException(getId(), e);
+                }
+                LOG.info("{} left multicast group {}", getId(), group.getHostAddress());
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Get the groups joined by a multi group channel.
+     * 
+     * @return the groups joined
+     */
+    public Set<InetAddress> getGroups() {
+        checkMultiGroup("getGroups");
+        synchronized (groups) {
+            return new LinkedHashSet<>(groups.keySet());
+        }
+    }
+
+    private void checkMultiGroup(String method) {
+        Preconditions.checkState(groups != null,
+                getId() + " " + method + " requires a channel created without a multicast group");
+    }
+
+    /**
+     * Open a channel bound to the group address so that it only receives datagrams
+     * sent to that group.
+     */
+    private DatagramChannel openGroupChannel(InetAddress group) throws IOException {
+        ProtocolFamily family = group instanceof Inet6Address ? StandardProtocolFamily.INET6
+                : StandardProtocolFamily.INET;
+
+        DatagramChannel groupChannel = DatagramChannel.open(family);
+        try {
+            UdpMulticastSocketOptions socketOptions = (UdpMulticastSocketOptions) this.socketOptions;
+            socketOptions.applySocketOptions(getId(), groupChannel);
+            groupChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            groupChannel.bind(new InetSocketAddress(group, getlocalAddress().getPort()));
+            groupChannel.join(group, networkInterface);
+            groupChannel.configureBlocking(false);
+            LOG.info("{} joined multicast group {}", getId(), group.getHostAddress());
+            return groupChannel;
+        } catch (IOException e) {
+            groupChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the number of datagrams received. A multi group channel has a single
+     * count covering all of its groups.
+     * 
+     * @return the number of datagrams received
+     */
+    @Override
+    public long[] getShardReceiveCounts() {
+        if (groups == null) {
+            return super.getShardReceiveCounts();
+        }
+        return new long[] { groupReceiveCount.get() };
+    }
+
     @Override
     public void connect() throws ChannelException, InterruptedException {
+        if (groups != null) {
+            connectGroups();
+            return;
+        }
+
         super.connect();
 
         if (getIoType().isInput()) {
             try {
-                ((MulticastSocket) socket).joinGroup(
-                        new InetSocketAddress(multicastAddress, getlocalAddress().getPort()), networkInterface);
+                if (datagramChannel != null) {
+                    datagramChannel.join(multicastAddress, networkInterface);
+                } else {
+                    ((MulticastSocket) socket).joinGroup(
+                            new InetSocketAddress(multicastAddress, getlocalAddress().getPort()), networkInterface);
+                }
                 LOG.info("{} joined multicast group {}", getId(), multicastAddress.getHostAddress());
             } catch (IOException se) {
                 throw new ChannelException(getId(), se);
@@ -131,6 +512,82 @@ public class UdpMulticastChannel extends UdpChannel {
         }
     }
 
+    private void connectGroups() throws ChannelException {
+        Preconditions.checkState(getState() == ChannelState.INITIAL,
+                getId() + " Illegal state for connect: " + getState());
+
+        synchronized (groups) {
+            try {
+                selector = Selector.open();
+                for (Map.Entry<InetAddress, DatagramChannel> entry : groups.entrySet()) {
+                    DatagramChannel groupChannel = openGroupChannel(entry.getKey());
+                    entry.setValue(groupChannel);
+                    pendingRegistrations.add(groupChannel);
+                }
+            } catch (IOException e) {
+                closeGroups();
+                throw new ChannelException(getId(), e);
+            }
+
+            groupReceiveTask = new GroupReceiveTask(selector);
+            groupReceiveFuture = getTaskExecutor().start(getId() + "ReceiveTask", groupReceiveTask);
+            setState(ChannelState.CONNECTED);
+        }
+
+        LOG.info("{} Connected to local port {}", getId(), getlocalAddress().getPort());
+    }
+
+    @Override
+    public void close() throws ChannelException {
+        if (groups == null) {
+            super.close();
+            return;
+        }
+
+        if (groupReceiveFuture != null) {
+            groupReceiveTask.terminate();
+            groupReceiveFuture.cancel(true);
+            groupReceiveFuture = null;
+        }
+
+        synchronized (groups) {
+            try {
+                closeGroups();
+            } finally {
+                setState(ChannelState.CLOSED);
+            }
+        }
+    }
+
+    /** Close the channel of each group and the selector. */
+    private void closeGroups() throws ChannelException {
+        IOException exception = null;
+        for (Map.Entry<InetAddress, DatagramChannel> entry : groups.entrySet()) {
+            if (entry.getValue() != null) {
+                try {
+                    entry.getValue().close();
+                } catch (IOException e) {
+                    exception = e;
+                }
+                entry.setValue(null);
+            }
+        }
+        pendingRegistrations.clear();
+
+        if (selector != null) {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                exception = e;
+            }
+            selector = null;
+        }
+
+        if (exception != null) {
+            throw new ChannelException(getId(), exception);
+        }
+    }
+
     @Override
     protected DatagramSocket createSocket() throws IOException {
         MulticastSocket socket = new MulticastSocket(getlocalAddress().getPort());
@@ -140,4 +597,24 @@ public class UdpMulticastChannel extends UdpChannel {
         return socket;
     }
 
+    @Override
+    protected DatagramChannel createDatagramChannel() throws IOException {
+        ProtocolFamily family = multicastAddress instanceof Inet6Address ? StandardProtocolFamily.INET6
+                : StandardProtocolFamily.INET;
+
+        DatagramChannel createdChannel = DatagramChannel.open(family);
+        try {
+            UdpMulticastSocketOptions socketOptions = (UdpMulticastSocketOptions) this.socketOptions;
+            socketOptions.applySocketOptions(getId(), createdChannel);
+
+            // as with MulticastSocket, allow multiple receivers to bind to the group port
+            createdChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            createdChannel.bind(new InetSocketAddress(getlocalAddress().getPort()));
+            return createdChannel;
+        } catch (IOException e) {
+            createdChannel.close();
+            throw e;
+        }
+    }
+
 }
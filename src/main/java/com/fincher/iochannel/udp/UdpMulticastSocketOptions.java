@@ -3,6 +3,7 @@ package com.fincher.iochannel.udp;
 import java.io.IOException;
 import java.net.MulticastSocket;
 import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
 import java.util.Optional;
 
 import org.slf4j.Logger;
@@ -78,4 +79,23 @@ public class UdpMulticastSocketOptions extends UdpSocketOptions {
 
         LOG.info("{} timeToLive = {}.  loopbackDisabled = {}", socketId, socket.getTimeToLive(), loopbackDisabled);
     }
+
+    /**
+     * Sets the options represented by this object to the given channel.
+     * 
+     * @param socketId The ID of the socket
+     * @param channel The unbound channel for which options will be set
+     * @throws IOException If an exception occurs while applying socket options
+     */
+    public void applySocketOptions(String socketId, DatagramChannel channel) throws IOException {
+        super.applySocketOptions(socketId, channel.socket());
+        channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, timeToLive);
+
+        if (loopbackDisabled.isPresent()) {
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, false);
+        }
+
+        LOG.info("{} timeToLive = {}.  loopbackDisabled = {}", socketId,
+                channel.getOption(StandardSocketOptions.IP_MULTICAST_TTL), loopbackDisabled);
+    }
 }
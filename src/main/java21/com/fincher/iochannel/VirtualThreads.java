@@ -0,0 +1,23 @@
+package com.fincher.iochannel;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads on Java 21 and later.
+ * 
+ * @author Brian Fincher
+ *
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    static boolean isSupported() {
+        return true;
+    }
+
+    static ThreadFactory newThreadFactory() {
+        return Thread.ofVirtual().factory();
+    }
+}
@@ -0,0 +1,170 @@
+package com.fincher.iochannel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+
+public class AsyncDispatcherTest {
+
+    /** Collects tasks so that the test controls when listeners are notified. */
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+
+    private static MessageBuffer message(int value) {
+        return new MessageBuffer(new byte[] { (byte) value });
+    }
+
+    private static List<Integer> values(List<MessageBuffer> messages) {
+        List<Integer> values = new ArrayList<>();
+        messages.forEach(mb -> values.add((int) mb.getBytes()[0]));
+        return values;
+    }
+
+    @Test
+    public void testOrdering() {
+        AsyncDispatcher<MessageBuffer> dispatcher = new AsyncDispatcher<>(tasks::add, 200, OverflowPolicy.BLOCK);
+        List<MessageBuffer> received = new ArrayList<>();
+        Consumer<MessageBuffer> listener = received::add;
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            dispatcher.dispatch(listener, message(i));
+            expected.add(i);
+        }
+
+        assertTrue(received.isEmpty());
+        assertEquals(100, dispatcher.getQueueDepth());
+        assertEquals(1, tasks.size());
+
+        runTasks();
+        assertEquals(expected, values(received));
+        assertEquals(0, dispatcher.getQueueDepth());
+        assertEquals(0, dispatcher.getDropCount());
+    }
+
+    @Test
+    public void testDropNewest() {
+        AsyncDispatcher<MessageBuffer> dispatcher = new AsyncDispatcher<>(tasks::add, 2, OverflowPolicy.DROP_NEWEST);
+        List<MessageBuffer> received = new ArrayList<>();
+        Consumer<MessageBuffer> listener = received::add;
+        for (int i = 0; i < 5; i++) {
+            dispatcher.dispatch(listener, message(i));
+        }
+
+        assertEquals(2, dispatcher.getQueueDepth());
+        assertEquals(3, dispatcher.getDropCount());
+        runTasks();
+        assertEquals(List.of(0, 1), values(received));
+    }
+
+    @Test
+    public void testDropOldest() {
+        AsyncDispatcher<MessageBuffer> dispatcher = new AsyncDispatcher<>(tasks::add, 2, OverflowPolicy.DROP_OLDEST);
+        List<MessageBuffer> received = new ArrayList<>();
+        Consumer<MessageBuffer> listener = received::add;
+        for (int i = 0; i < 5; i++) {
+            dispatcher.dispatch(listener, message(i));
+        }
+
+        assertEquals(2, dispatcher.getQueueDepth());
+        assertEquals(3, dispatcher.getDropCount());
+        runTasks();
+        assertEquals(List.of(3, 4), values(received));
+    }
+
+    @Test
+    public void testCallback() {
+        AsyncDispatcher<MessageBuffer> dispatcher = new AsyncDispatcher<>(tasks::add, 1, OverflowPolicy.CALLBACK);
+        List<MessageBuffer> overflow = new ArrayList<>();
+        dispatcher.setOverflowHandler(overflow::add);
+
+        List<MessageBuffer> received = new ArrayList<>();
+        Consumer<MessageBuffer> listener = received::add;
+        for (int i = 0; i < 3; i++) {
+            dispatcher.dispatch(listener, message(i));
+        }
+
+        assertEquals(List.of(1, 2), values(overflow));
+        assertEquals(2, dispatcher.getDropCount());
+        runTasks();
+        assertEquals(List.of(0), values(received));
+    }
+
+    @Test
+    public void testPooledMessagesReleased() {
+        BufferPool pool = BufferPool.createHeapPool(16, 4);
+        AsyncDispatcher<MessageBuffer> dispatcher = new AsyncDispatcher<>(tasks::add, 1, OverflowPolicy.DROP_NEWEST);
+
+        PooledMessageBuffer delivered = PooledMessageBuffer.copyOf(pool, new byte[] { 1 }, 0, 1);
+        PooledMessageBuffer dropped = PooledMessageBuffer.copyOf(pool, new byte[] { 2 }, 0, 1);
+        List<Integer> refCounts = new ArrayList<>();
+        Consumer<MessageBuffer> listener = mb -> refCounts.add(((PooledMessageBuffer) mb).getRefCount());
+        dispatcher.dispatch(listener, delivered);
+        dispatcher.dispatch(listener, dropped);
+
+        // the dispatcher holds its own reference until the listener is notified
+        assertEquals(2, delivered.getRefCount());
+        assertEquals(1, dropped.getRefCount());
+
+        delivered.release();
+        dropped.release();
+        assertEquals(1, pool.getNumPooledBuffers());
+
+        runTasks();
+        assertEquals(List.of(1), refCounts);
+        assertEquals(0, delivered.getRefCount());
+        assertEquals(2, pool.getNumPooledBuffers());
+    }
+
+    @Test
+    public void testSlowListenerDoesNotBlockOthers() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            AsyncDispatcher<MessageBuffer> dispatcher = new AsyncDispatcher<>(executor, 100, OverflowPolicy.BLOCK);
+            CountDownLatch slowLatch = new CountDownLatch(1);
+            CountDownLatch fastLatch = new CountDownLatch(10);
+            List<MessageBuffer> slowReceived = Collections.synchronizedList(new ArrayList<>());
+
+            Consumer<MessageBuffer> slow = mb -> {
+                try {
+                    slowLatch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                slowReceived.add(mb);
+            };
+            Consumer<MessageBuffer> fast = mb -> fastLatch.countDown();
+
+            for (int i = 0; i < 10; i++) {
+                MessageBuffer mb = message(i);
+                dispatcher.dispatch(slow, mb);
+                dispatcher.dispatch(fast, mb);
+            }
+
+            assertTrue(fastLatch.await(5, TimeUnit.SECONDS));
+            assertTrue(slowReceived.isEmpty());
+
+            slowLatch.countDown();
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> slowReceived.size() == 10);
+            assertEquals(0, dispatcher.getQueueDepth());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.fincher.iochannel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+
+import com.fincher.iochannel.HistogramChannelMetrics.ChannelStats;
+import com.fincher.iochannel.tcp.SimpleStreamIo;
+import com.fincher.iochannel.tcp.TcpClientChannel;
+import com.fincher.iochannel.tcp.TcpServerChannel;
+
+public class HistogramChannelMetricsTest {
+
+    @Test
+    public void testRecord() {
+        HistogramChannelMetrics metrics = new HistogramChannelMetrics();
+        metrics.messageSent("a", 10, 1000);
+        metrics.messageSent("a", 20, 3000);
+        metrics.messageReceived("b", 5, 200);
+        metrics.stateChanged("a", ChannelState.INITIAL, ChannelState.CONNECTING);
+        metrics.connectionEstablished("a", "s1", false);
+        metrics.connectionLost("a", "s1");
+        metrics.connectionEstablished("a", "s1", true);
+
+        ChannelStats a = metrics.getStats("a");
+        assertEquals(2, a.getMessagesSent());
+        assertEquals(30, a.getBytesSent());
+        assertEquals(2, a.getSendLatency().getCount());
+        assertEquals(3000, a.getSendLatency().getMax());
+        assertEquals(ChannelState.CONNECTING, a.getState());
+        assertEquals(1, a.getStateTransitions(ChannelState.CONNECTING));
+        assertEquals(2, a.getConnects());
+        assertEquals(1, a.getReconnects());
+        assertEquals(1, a.getConnectionsLost());
+        assertEquals(ChannelState.CONNECTED, a.getSocketState("s1"));
+
+        ChannelStats b = metrics.getStats("b");
+        assertEquals(1, b.getMessagesReceived());
+        assertEquals(5, b.getBytesReceived());
+        assertEquals(200, b.getDispatchTime().getMax());
+        assertSame(b, metrics.getStats("b"));
+        assertEquals(2, metrics.getChannelIds().size());
+    }
+
+    @Test
+    public void testTcpChannels() throws Exception {
+        HistogramChannelMetrics metrics = new HistogramChannelMetrics();
+        SimpleStreamIo streamIo = new SimpleStreamIo();
+        InetSocketAddress address5041 = new InetSocketAddress(InetAddress.getLocalHost(), 5041);
+        InetSocketAddress localAddress0 = new InetSocketAddress(InetAddress.getLocalHost(), 0);
+
+        LinkedBlockingQueue<MessageBuffer> queue = new LinkedBlockingQueue<>();
+        TcpServerChannel server = TcpServerChannel.createChannel("server", queue::add, streamIo, address5041);
+        TcpClientChannel client = TcpClientChannel.createOutputOnlyChannel("client", streamIo, localAddress0,
+                address5041);
+        server.setMetrics(metrics);
+        client.setMetrics(metrics);
+        assertSame(metrics, client.getMetrics());
+
+        server.connect();
+        client.connect();
+        Awaitility.await().until(() -> client.isConnected() && server.isConnected());
+        assertThrows(IllegalStateException.class, () -> client.setMetrics(ChannelMetrics.NO_OP));
+
+        for (int i = 0; i < 10; i++) {
+            client.send(streamIo, new MessageBuffer(new byte[100]));
+        }
+        Awaitility.await().until(() -> queue.size() == 10);
+
+        ChannelStats clientStats = metrics.getStats("client");
+        assertEquals(10, clientStats.getMessagesSent());
+        assertEquals(1040, clientStats.getBytesSent());
+        assertEquals(10, clientStats.getSendLatency().getCount());
+        assertTrue(clientStats.getSendLatency().getMax() > 0);
+        assertEquals(1, clientStats.getConnects());
+        assertEquals(0, clientStats.getReconnects());
+        assertEquals(1, clientStats.getStateTransitions(ChannelState.CONNECTED));
+
+        ChannelStats serverStats = metrics.getStats("server");
+        Awaitility.await().until(() -> serverStats.getMessagesReceived() == 10);
+        assertEquals(1000, serverStats.getBytesReceived());
+        assertEquals(10, serverStats.getDispatchTime().getCount());
+        assertEquals(1, serverStats.getSocketIds().size());
+
+        client.close();
+        server.close();
+        assertEquals(ChannelState.CLOSED, clientStats.getState());
+        assertEquals(ChannelState.CLOSED, serverStats.getState());
+    }
+}
@@ -3,9 +3,12 @@ package com.fincher.iochannel;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
@@ -69,6 +72,29 @@ public class IOChannelTest {
         }
     }
 
+    @Test
+    public void testAddKeyedMessageListener() {
+        List<MessageBuffer> received = new ArrayList<>();
+        Consumer<MessageBuffer> listener = received::add;
+        channel.setMessageKeyExtractor(MessageKeyExtractors.bigEndianInt(0));
+        channel.addKeyedMessageListener(7, listener);
+
+        MessageBuffer mb1 = new MessageBuffer(new byte[] { 0, 0, 0, 7, 1 });
+        MessageBuffer mb2 = new MessageBuffer(new byte[] { 0, 0, 0, 8, 1 });
+        channel.messageReceived(mb1, Mockito.mock(Logger.class), "");
+        channel.messageReceived(mb2, Mockito.mock(Logger.class), "");
+        assertEquals(List.of(mb1), received);
+
+        assertTrue(channel.removeMessageListener(listener));
+        channel.messageReceived(mb1, Mockito.mock(Logger.class), "");
+        assertEquals(1, received.size());
+
+        IoChannel<MessageBuffer> output = new TestImpl("id", IoType.OUTPUT_ONLY);
+        assertThrows(IllegalStateException.class,
+                () -> output.setMessageKeyExtractor(MessageKeyExtractors.bigEndianInt(0)));
+        assertThrows(IllegalStateException.class, () -> output.addKeyedMessageListener(7, listener));
+    }
+
     @Test
     public void testAddMessageListenerWithPredicate() {
         try {
@@ -120,6 +146,33 @@ public class IOChannelTest {
         assertFalse(channel.removeMessageListener(listener2));
     }
 
+    @Test
+    public void testAsyncDispatcher() {
+        List<Runnable> tasks = new ArrayList<>();
+        AsyncDispatcher<MessageBuffer> dispatcher = new AsyncDispatcher<>(tasks::add, 10, OverflowPolicy.BLOCK);
+        channel.setAsyncDispatcher(dispatcher);
+        assertEquals(dispatcher, channel.getAsyncDispatcher());
+
+        AtomicReference<MessageBuffer> ref = new AtomicReference<MessageBuffer>();
+        channel.addMessageListener(mb -> ref.set(mb));
+
+        MessageBuffer mb = new MessageBuffer(new byte[1]);
+        channel.messageReceived(mb, Mockito.mock(Logger.class), "");
+        assertNull(ref.get());
+        assertEquals(1, dispatcher.getQueueDepth());
+
+        tasks.forEach(Runnable::run);
+        assertEquals(mb, ref.get());
+
+        channel = new TestImpl("id", IoType.OUTPUT_ONLY);
+        try {
+            channel.setAsyncDispatcher(dispatcher);
+            fail("expected exception");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
     @Test
     public void testIsInputAndIsOutput() {
         channel = new TestImpl("id", IoType.OUTPUT_ONLY);
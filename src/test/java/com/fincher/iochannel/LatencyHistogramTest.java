@@ -0,0 +1,55 @@
+package com.fincher.iochannel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        for (long value : new long[] { 0, 1, 127, 128, 129, 130, 1000, 123456789, Long.MAX_VALUE }) {
+            int index = LatencyHistogram.bucketIndex(value);
+            long highest = LatencyHistogram.highestValueInBucket(index);
+            assertTrue(highest >= value, value + " " + highest);
+            assertTrue(highest - value <= value / 64, value + " " + highest);
+            if (index > 0) {
+                assertTrue(LatencyHistogram.highestValueInBucket(index - 1) < value);
+            }
+        }
+
+        assertEquals(127, LatencyHistogram.bucketIndex(127));
+        assertEquals(128, LatencyHistogram.bucketIndex(128));
+        assertEquals(128, LatencyHistogram.bucketIndex(129));
+        assertEquals(129, LatencyHistogram.bucketIndex(130));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMax());
+        assertEquals(500_500, histogram.getMean(), 0.001);
+
+        long median = histogram.getValueAtPercentile(50);
+        assertTrue(median >= 500_000 && median <= 500_000 * 65 / 64, Long.toString(median));
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue(p99 >= 990_000 && p99 <= 990_000 * 65 / 64, Long.toString(p99));
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+
+        histogram.record(-5);
+        // negative values are recorded as zero
+        assertEquals(0, histogram.getValueAtPercentile(0.05));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+}
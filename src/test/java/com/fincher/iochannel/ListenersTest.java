@@ -0,0 +1,125 @@
+package com.fincher.iochannel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+public class ListenersTest {
+
+    @Test
+    public void testAddRemove() {
+        Listeners<Consumer<String>, String> listeners = new Listeners<>();
+        List<String> received1 = new ArrayList<>();
+        List<String> received2 = new ArrayList<>();
+        Consumer<String> listener1 = received1::add;
+        Consumer<String> listener2 = received2::add;
+
+        listeners.addListener(listener1);
+        listeners.addListener(listener2, s -> s.startsWith("a"));
+        assertEquals(2, listeners.size());
+
+        listeners.forEachListenerThatMatches("abc", Consumer::accept);
+        listeners.forEachListenerThatMatches("def", Consumer::accept);
+        assertEquals(List.of("abc", "def"), received1);
+        assertEquals(List.of("abc"), received2);
+
+        assertEquals(List.of(listener1), listeners.getListenersThatMatch("def").collect(Collectors.toList()));
+        assertEquals(List.of(listener1, listener2), listeners.getListeners().collect(Collectors.toList()));
+
+        assertTrue(listeners.removeListener(listener1));
+        assertFalse(listeners.removeListener(listener1));
+        assertEquals(1, listeners.size());
+
+        listeners.forEachListenerThatMatches("ghi", Consumer::accept);
+        assertEquals(2, received1.size());
+    }
+
+    @Test
+    public void testRegistrationDuringDispatch() {
+        Listeners<Consumer<String>, String> listeners = new Listeners<>();
+        List<String> received = new ArrayList<>();
+        Consumer<String> added = received::add;
+
+        Consumer<String> selfRemoving = new Consumer<>() {
+            @Override
+            public void accept(String s) {
+                listeners.removeListener(this);
+                listeners.addListener(added);
+            }
+        };
+        listeners.addListener(selfRemoving);
+
+        // the snapshot taken at the start of dispatch is not affected
+        listeners.forEachListenerThatMatches("first", Consumer::accept);
+        assertTrue(received.isEmpty());
+
+        listeners.forEachListenerThatMatches("second", Consumer::accept);
+        assertEquals(List.of("second"), received);
+    }
+
+    @Test
+    public void testKeyedListeners() {
+        Listeners<Consumer<String>, String> listeners = new Listeners<>();
+        List<String> receivedA = new ArrayList<>();
+        List<String> receivedB = new ArrayList<>();
+        List<String> receivedAll = new ArrayList<>();
+        Consumer<String> listenerA = receivedA::add;
+        Consumer<String> listenerB = receivedB::add;
+        Consumer<String> listenerAll = receivedAll::add;
+
+        assertThrows(IllegalStateException.class, () -> listeners.addKeyedListener("a", listenerA));
+
+        listeners.setKeyExtractor(s -> s.isEmpty() ? null : s.substring(0, 1));
+        listeners.addKeyedListener("a", listenerA);
+        listeners.addKeyedListener("b", listenerB);
+        listeners.addKeyedListener("b", listenerA);
+        listeners.addListener(listenerAll);
+        assertEquals(4, listeners.size());
+
+        listeners.forEachListenerThatMatches("abc", Consumer::accept);
+        listeners.forEachListenerThatMatches("bcd", Consumer::accept);
+        listeners.forEachListenerThatMatches("cde", Consumer::accept);
+        listeners.forEachListenerThatMatches("", Consumer::accept);
+        assertEquals(List.of("abc", "bcd"), receivedA);
+        assertEquals(List.of("bcd"), receivedB);
+        assertEquals(List.of("abc", "bcd", "cde", ""), receivedAll);
+
+        assertEquals(List.of(listenerB, listenerA, listenerAll),
+                listeners.getListenersThatMatch("bcd").collect(Collectors.toList()));
+
+        // removing a listener removes it from every key
+        assertTrue(listeners.removeListener(listenerA));
+        assertEquals(2, listeners.size());
+        listeners.forEachListenerThatMatches("abc", Consumer::accept);
+        listeners.forEachListenerThatMatches("bcd", Consumer::accept);
+        assertEquals(2, receivedA.size());
+        assertEquals(2, receivedB.size());
+    }
+
+    @Test
+    public void testKeyExtractorThrows() {
+        Listeners<Consumer<String>, String> listeners = new Listeners<>();
+        List<String> receivedA = new ArrayList<>();
+        List<String> receivedAll = new ArrayList<>();
+        listeners.setKeyExtractor(s -> s.substring(0, 1));
+        listeners.addKeyedListener("a", receivedA::add);
+        listeners.addListener(receivedAll::add, s -> true);
+
+        // the empty string cannot be keyed but is still given to the unkeyed listeners
+        listeners.forEachListenerThatMatches("", Consumer::accept);
+        listeners.forEachListenerThatMatches("abc", Consumer::accept);
+        assertEquals(List.of("abc"), receivedA);
+        assertEquals(List.of("", "abc"), receivedAll);
+        assertEquals(1, listeners.getNumKeyExtractorFailures());
+        assertEquals(1, listeners.getListenersThatMatch("").count());
+        assertEquals(2, listeners.getNumKeyExtractorFailures());
+    }
+}
@@ -63,4 +63,18 @@ public class MessageBufferTest {
         assertArrayEquals(expected, bytes);
     }
 
+
+    @Test
+    public void testSubclassProvidingBytes() {
+        MessageBuffer mb = new MessageBuffer() {
+            @Override
+            public byte[] getBytes() {
+                return new byte[] { 7, 8, 9 };
+            }
+        };
+
+        assertEquals(3, mb.getLength());
+        assertEquals(8, mb.getByte(1));
+        assertEquals(9, mb.getByteBuffer().get(2));
+    }
 }
@@ -0,0 +1,36 @@
+package com.fincher.iochannel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+public class MessageKeyExtractorsTest {
+
+    @Test
+    public void testAsciiString() {
+        Function<MessageBuffer, Object> extractor = MessageKeyExtractors.asciiString(1, 6);
+        assertEquals("IBM", extractor.apply(new MessageBuffer("xIBM   y".getBytes())));
+        assertEquals("GOOGLE", extractor.apply(new MessageBuffer("xGOOGLE".getBytes())));
+        assertEquals("AB", extractor.apply(new MessageBuffer(new byte[] { 0, 'A', 'B', 0, 0, 0, 0 })));
+        assertNull(extractor.apply(new MessageBuffer("xIBM".getBytes())));
+    }
+
+    @Test
+    public void testBigEndianInt() {
+        Function<MessageBuffer, Object> extractor = MessageKeyExtractors.bigEndianInt(2);
+        assertEquals(0x01020304, extractor.apply(new MessageBuffer(new byte[] { 9, 9, 1, 2, 3, 4 })));
+        assertEquals(-1, extractor.apply(new MessageBuffer(new byte[] { 9, 9, -1, -1, -1, -1 })));
+        assertNull(extractor.apply(new MessageBuffer(new byte[] { 9, 9, 1, 2, 3 })));
+    }
+
+    @Test
+    public void testPooledMessage() {
+        BufferPool pool = BufferPool.createHeapPool(16, 1);
+        MessageBuffer mb = MessageBuffer.copyOf(pool, "xxIBM".getBytes(), 1, 4);
+        assertEquals("IBM", MessageKeyExtractors.asciiString(1, 3).apply(mb));
+        mb.release();
+    }
+}
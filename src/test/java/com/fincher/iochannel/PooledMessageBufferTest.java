@@ -0,0 +1,130 @@
+package com.fincher.iochannel;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+public class PooledMessageBufferTest {
+
+    @Test
+    public void testRetainRelease() {
+        BufferPool pool = BufferPool.createHeapPool(16, 2);
+        byte[] bytes = { 10, 11, 12, 13, 14, 20 };
+
+        PooledMessageBuffer mb = PooledMessageBuffer.copyOf(pool, bytes, 1, 3);
+        assertEquals(3, mb.getLength());
+        assertEquals(1, mb.getRefCount());
+
+        ByteBuffer view = mb.getByteBuffer();
+        assertTrue(view.isReadOnly());
+        assertEquals(3, view.remaining());
+        assertEquals(11, view.get(0));
+        assertArrayEquals(new byte[] { 11, 12, 13 }, mb.getBytes());
+
+        assertSame(mb, mb.retain());
+        assertFalse(mb.release());
+        assertEquals(0, pool.getNumPooledBuffers());
+        assertTrue(mb.release());
+        assertEquals(1, pool.getNumPooledBuffers());
+
+        assertThrows(IllegalStateException.class, mb::getBytes);
+        assertThrows(IllegalStateException.class, mb::getByteBuffer);
+        assertThrows(IllegalStateException.class, mb::retain);
+        assertThrows(IllegalStateException.class, mb::release);
+    }
+
+    @Test
+    public void testWrapWithoutCopy() {
+        BufferPool pool = BufferPool.createDirectPool(16, 1);
+        ByteBuffer buffer = pool.acquire(8);
+        assertTrue(buffer.isDirect());
+        buffer.put(4, (byte) 7);
+
+        PooledMessageBuffer mb = PooledMessageBuffer.wrap(pool, buffer, 4, 2);
+        buffer.put(5, (byte) 8);
+        assertArrayEquals(new byte[] { 7, 8 }, mb.getBytes());
+
+        assertThrows(IndexOutOfBoundsException.class, () -> PooledMessageBuffer.wrap(pool, buffer, 10, 10));
+
+        mb.release();
+        assertSame(buffer, pool.acquire(1));
+    }
+
+    @Test
+    public void testPoolLimits() {
+        BufferPool pool = BufferPool.createHeapPool(16, 1);
+        assertEquals(16, pool.getBufferSize());
+        assertFalse(pool.isDirect());
+
+        ByteBuffer large = pool.acquire(32);
+        assertEquals(32, large.capacity());
+        pool.release(large);
+        assertEquals(0, pool.getNumPooledBuffers());
+
+        pool.release(pool.acquire(1));
+        pool.release(ByteBuffer.allocate(16));
+        assertEquals(1, pool.getNumPooledBuffers());
+    }
+
+    @Test
+    public void testUnpooledMessageBuffer() {
+        MessageBuffer mb = new MessageBuffer(new byte[] { 1, 2 });
+        assertSame(mb, mb.retain());
+        assertFalse(mb.release());
+        assertEquals(2, mb.getLength());
+        assertEquals(2, mb.getByteBuffer().get(1));
+    }
+
+    @Test
+    public void testReleaseAfterLastReference() {
+        BufferPool pool = BufferPool.createHeapPool(16, 1);
+
+        PooledMessageBuffer mb = PooledMessageBuffer.copyOf(pool, new byte[] { 1, 2, 3 }, 0, 3);
+        assertTrue(mb.release());
+
+        // the buffer is reused but the message is not, so releasing the stale
+        // message again does not release the new one
+        PooledMessageBuffer next = PooledMessageBuffer.copyOf(pool, new byte[] { 5, 6 }, 0, 2);
+        assertNotSame(mb, next);
+        assertEquals(0, pool.getNumPooledBuffers());
+        assertThrows(IllegalStateException.class, mb::release);
+        assertEquals(1, next.getRefCount());
+        assertArrayEquals(new byte[] { 5, 6 }, next.getBytes());
+
+        assertTrue(next.release());
+        assertEquals(1, pool.getNumPooledBuffers());
+    }
+
+    @Test
+    public void testWrapReleasedMessage() {
+        BufferPool pool = BufferPool.createHeapPool(16, 1);
+        PooledMessageBuffer mb = PooledMessageBuffer.wrap(pool, pool.acquire(16), 0, 3);
+        mb.setReceivedFromIoChannelId("channel");
+        long transactionId = mb.getTransactionId();
+
+        // a message can only be reused once its last reference is released
+        assertThrows(IllegalStateException.class, () -> PooledMessageBuffer.wrap(mb, pool, pool.acquire(16), 0, 1));
+        assertTrue(mb.release());
+
+        ByteBuffer buffer = pool.acquire(16);
+        buffer.put(2, (byte) 9);
+        assertSame(mb, PooledMessageBuffer.wrap(mb, pool, buffer, 2, 1));
+        assertEquals(1, mb.getRefCount());
+        assertNotEquals(transactionId, mb.getTransactionId());
+        assertNull(mb.getReceivedFromChannelId());
+        assertArrayEquals(new byte[] { 9 }, mb.getBytes());
+
+        assertTrue(mb.release());
+        assertEquals(1, pool.getNumPooledBuffers());
+    }
+}
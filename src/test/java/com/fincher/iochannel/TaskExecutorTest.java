@@ -0,0 +1,159 @@
+package com.fincher.iochannel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+
+import com.fincher.iochannel.tcp.SimpleStreamIo;
+import com.fincher.iochannel.tcp.TcpClientChannel;
+import com.fincher.thread.CallableTask;
+import com.fincher.thread.RunnableTask;
+
+public class TaskExecutorTest {
+
+    private static class CountingTask implements RunnableTask {
+        final AtomicInteger count = new AtomicInteger();
+        final AtomicBoolean terminated = new AtomicBoolean();
+        final int maxCount;
+
+        CountingTask(int maxCount) {
+            this.maxCount = maxCount;
+        }
+
+        @Override
+        public void run() {
+            count.incrementAndGet();
+            Thread.yield();
+        }
+
+        @Override
+        public boolean continueExecution() {
+            return !terminated.get() && count.get() < maxCount;
+        }
+
+        @Override
+        public void terminate() {
+            terminated.set(true);
+        }
+    }
+
+    @Test
+    public void testFromThreadFactory() throws Exception {
+        AtomicInteger threadsCreated = new AtomicInteger();
+        ThreadFactory delegate = Executors.defaultThreadFactory();
+        TaskExecutor executor = TaskExecutor.fromThreadFactory(r -> {
+            threadsCreated.incrementAndGet();
+            return delegate.newThread(r);
+        });
+
+        CountingTask finite = new CountingTask(10);
+        Future<Void> future = executor.start("finite", finite);
+        future.get(5, TimeUnit.SECONDS);
+        assertEquals(10, finite.count.get());
+        assertEquals(1, threadsCreated.get());
+
+        CountingTask infinite = new CountingTask(Integer.MAX_VALUE);
+        future = executor.start("infinite", infinite);
+        Awaitility.await().until(() -> infinite.count.get() > 0);
+        future.cancel(true);
+        assertTrue(infinite.terminated.get());
+        assertEquals(2, threadsCreated.get());
+    }
+
+    @Test
+    public void testCallableResult() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        CallableTask<Integer> task = new CallableTask<>() {
+            @Override
+            public Integer call() {
+                return count.incrementAndGet();
+            }
+
+            @Override
+            public boolean continueExecution() {
+                return count.get() < 3;
+            }
+
+            @Override
+            public void terminate() {
+            }
+        };
+
+        assertEquals(3, TaskExecutor.fromThreadFactory(Executors.defaultThreadFactory())
+                .start("callable", task).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        if (TaskExecutor.isVirtualThreadsSupported()) {
+            CountingTask task = new CountingTask(10);
+            TaskExecutor.virtualThreads().start("virtual", task).get(5, TimeUnit.SECONDS);
+            assertEquals(10, task.count.get());
+        } else {
+            assertThrows(UnsupportedOperationException.class, TaskExecutor::virtualThreads);
+        }
+    }
+
+    @Test
+    public void testVirtualThreadsOnJava21() throws Exception {
+        // run by the testJava21 task against the multi-release jar
+        assumeTrue(Runtime.version().feature() >= 21);
+        assertTrue(TaskExecutor.isVirtualThreadsSupported());
+
+        AtomicBoolean virtual = new AtomicBoolean();
+        RunnableTask task = new CountingTask(1) {
+            @Override
+            public void run() {
+                try {
+                    virtual.set((Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+                super.run();
+            }
+        };
+        TaskExecutor.virtualThreads().start("virtual", task).get(5, TimeUnit.SECONDS);
+        assertTrue(virtual.get());
+    }
+
+    @Test
+    public void testChannelUsesTaskExecutor() throws Exception {
+        AtomicInteger threadsCreated = new AtomicInteger();
+        ThreadFactory delegate = Executors.defaultThreadFactory();
+        TaskExecutor executor = TaskExecutor.fromThreadFactory(r -> {
+            threadsCreated.incrementAndGet();
+            return delegate.newThread(r);
+        });
+
+        InetSocketAddress remoteAddress = new InetSocketAddress(InetAddress.getLocalHost(), 5014);
+        TcpClientChannel client = TcpClientChannel.createChannel("client", mb -> {
+        }, new SimpleStreamIo(), null, remoteAddress);
+
+        assertEquals(TaskExecutor.platformThreads(), client.getTaskExecutor());
+        client.setTaskExecutor(executor);
+        assertEquals(executor, client.getTaskExecutor());
+
+        try {
+            client.connect();
+            assertEquals(1, threadsCreated.get());
+            assertThrows(IllegalStateException.class, () -> client.setTaskExecutor(executor));
+            assertFalse(client.isConnected());
+        } finally {
+            client.close();
+        }
+    }
+}
@@ -1,11 +1,26 @@
 package com.fincher.iochannel;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
 public class TransactionIdFactoryTest {
 
+    @AfterEach
+    public void after() {
+        TransactionIdFactory.init(0, Long.MAX_VALUE);
+    }
+
     @Test
     public void test() {
         TransactionIdFactory.init(5, 7);
@@ -15,4 +30,66 @@ public class TransactionIdFactoryTest {
         assertEquals(5, TransactionIdFactory.getNextTid());
     }
 
+    @Test
+    public void testBlocks() {
+        TransactionIdFactory.init(0, 24, 10);
+        for (int i = 0; i <= 24; i++) {
+            assertEquals(i, TransactionIdFactory.getNextTid());
+        }
+        assertEquals(0, TransactionIdFactory.getNextTid());
+
+        TransactionIdFactory.init(Long.MAX_VALUE - 2, Long.MAX_VALUE, 2);
+        assertEquals(Long.MAX_VALUE - 2, TransactionIdFactory.getNextTid());
+        assertEquals(Long.MAX_VALUE - 1, TransactionIdFactory.getNextTid());
+        assertEquals(Long.MAX_VALUE, TransactionIdFactory.getNextTid());
+        assertEquals(Long.MAX_VALUE - 2, TransactionIdFactory.getNextTid());
+
+        assertThrows(IllegalArgumentException.class, () -> TransactionIdFactory.init(0, 10, 0));
+        assertThrows(IllegalArgumentException.class, () -> TransactionIdFactory.init(10, 0));
+
+        // a block cannot be larger than the range, however the range is computed
+        assertThrows(IllegalArgumentException.class,
+                () -> TransactionIdFactory.init(Long.MAX_VALUE - 2, Long.MAX_VALUE, 10));
+        assertThrows(IllegalArgumentException.class, () -> TransactionIdFactory.init(0, 9, 11));
+        TransactionIdFactory.init(0, 9, 10);
+        TransactionIdFactory.init(Long.MIN_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testUniqueUnderContention() throws InterruptedException {
+        testUniqueUnderContention(Long.MAX_VALUE, 1, 10000);
+        testUniqueUnderContention(Long.MAX_VALUE, 64, 10000);
+
+        // a small range with large blocks. Each thread leases two blocks, which
+        // together fill the range without wrapping
+        testUniqueUnderContention(7999, 500, 1000);
+    }
+
+    private void testUniqueUnderContention(long maxTid, int blockSize, int idsPerThread)
+            throws InterruptedException {
+        TransactionIdFactory.init(0, maxTid, blockSize);
+
+        int numThreads = 8;
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        for (int i = 0; i < numThreads; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < idsPerThread; j++) {
+                        ids.add(TransactionIdFactory.getNextTid());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(numThreads * idsPerThread, ids.size());
+    }
+
 }
@@ -2,10 +2,23 @@ package com.fincher.iochannel;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
+import org.awaitility.Awaitility;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
@@ -16,6 +29,7 @@ public class TransformingIoChannelTest {
     public IoChannelIfc<MessageBuffer> getDelegate() {
         @SuppressWarnings("unchecked")
         IoChannelIfc<MessageBuffer> delegate = Mockito.mock(IoChannelIfc.class);
+        Mockito.when(delegate.getState()).thenReturn(ChannelState.INITIAL);
         return delegate;
     }
 
@@ -66,6 +80,164 @@ public class TransformingIoChannelTest {
         channel.close();
     }
 
+    @Test
+    public void testParallelDecoding() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            TestImpl channel = new TestImpl("id", getDelegate()) {
+                @Override
+                protected String decode(MessageBuffer mb) throws ChannelException {
+                    // decode times vary so that messages finish out of order
+                    try {
+                        Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    // a message that fails to decode is skipped without holding up
+                    // later messages
+                    if (new String(mb.getBytes()).equals("100")) {
+                        throw new ChannelException("testException");
+                    }
+                    return super.decode(mb);
+                }
+            };
+            channel.setParallelDecoding(executor, 4, 16);
+            assertThrows(IllegalStateException.class, () -> channel.setParallelDecoding(executor, 4, 16));
+
+            List<String> received = Collections.synchronizedList(new ArrayList<>());
+            channel.addTransformedMessageListener(received::add);
+
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                channel.handleMessage(new MessageBuffer(String.valueOf(i).getBytes()));
+                if (i != 100) {
+                    expected.add(String.valueOf(i));
+                }
+            }
+
+            Awaitility.await().until(() -> received.size() == 199);
+            assertEquals(expected, received);
+            Awaitility.await().until(() -> channel.getNumDecodesInFlight() == 0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testParallelDecodingBackpressure() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch latch = new CountDownLatch(1);
+        try {
+            TestImpl channel = new TestImpl("id", getDelegate()) {
+                @Override
+                protected String decode(MessageBuffer mb) throws ChannelException {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return super.decode(mb);
+                }
+            };
+            assertThrows(IllegalArgumentException.class, () -> channel.setParallelDecoding(executor, 2, 1));
+            channel.setParallelDecoding(executor, 1, 2);
+
+            List<String> received = Collections.synchronizedList(new ArrayList<>());
+            channel.addTransformedMessageListener(received::add);
+
+            // the third message waits until one of the first two is delivered
+            Thread receiver = new Thread(() -> {
+                for (int i = 0; i < 3; i++) {
+                    channel.handleMessage(new MessageBuffer(String.valueOf(i).getBytes()));
+                }
+            });
+            receiver.start();
+            Awaitility.await().until(() -> receiver.getState() == Thread.State.WAITING);
+            assertEquals(2, channel.getNumDecodesInFlight());
+            assertTrue(received.isEmpty());
+
+            latch.countDown();
+            receiver.join(5000);
+            Awaitility.await().until(() -> received.size() == 3);
+            assertEquals(List.of("0", "1", "2"), received);
+        } finally {
+            latch.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testParallelDecodingRejected() throws Exception {
+        AtomicBoolean accept = new AtomicBoolean(false);
+        Executor executor = task -> {
+            if (!accept.get()) {
+                throw new RejectedExecutionException("rejected");
+            }
+            task.run();
+        };
+
+        TestImpl channel = new TestImpl("id", getDelegate());
+        channel.setParallelDecoding(executor, 1, 2);
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        channel.addTransformedMessageListener(received::add);
+
+        // rejected messages are released and do not hold permits
+        BufferPool pool = BufferPool.createHeapPool(16, 4);
+        List<PooledMessageBuffer> rejected = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            PooledMessageBuffer mb = PooledMessageBuffer.copyOf(pool, new byte[] { (byte) ('0' + i) }, 0, 1);
+            rejected.add(mb);
+            channel.handleMessage(mb);
+        }
+        assertEquals(0, channel.getNumDecodesInFlight());
+        for (PooledMessageBuffer mb : rejected) {
+            assertEquals(1, mb.getRefCount());
+        }
+
+        // delivery moves past the rejected messages
+        accept.set(true);
+        channel.handleMessage(new MessageBuffer("5".getBytes()));
+        assertEquals(List.of("5"), received);
+        assertEquals(0, channel.getNumDecodesInFlight());
+    }
+
+    @Test
+    public void testCloseReleasesQueuedMessages() throws Exception {
+        // an executor that never runs its tasks
+        List<Runnable> tasks = new ArrayList<>();
+        IoChannelIfc<MessageBuffer> delegate = getDelegate();
+        TestImpl channel = new TestImpl("id", delegate);
+        channel.setParallelDecoding(tasks::add, 1, 4);
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        channel.addTransformedMessageListener(received::add);
+
+        BufferPool pool = BufferPool.createHeapPool(16, 4);
+        PooledMessageBuffer first = PooledMessageBuffer.copyOf(pool, new byte[] { '0' }, 0, 1);
+        PooledMessageBuffer second = PooledMessageBuffer.copyOf(pool, new byte[] { '1' }, 0, 1);
+        channel.handleMessage(first);
+        channel.handleMessage(second);
+        assertEquals(2, channel.getNumDecodesInFlight());
+        assertEquals(2, first.getRefCount());
+
+        channel.close();
+        Mockito.verify(delegate).close();
+        assertEquals(0, channel.getNumDecodesInFlight());
+        assertEquals(1, first.getRefCount());
+        assertEquals(1, second.getRefCount());
+
+        // messages received after close are discarded
+        channel.handleMessage(first);
+        assertEquals(1, first.getRefCount());
+        tasks.forEach(Runnable::run);
+        assertTrue(received.isEmpty());
+        assertEquals(0, channel.getNumDecodesInFlight());
+
+        Mockito.when(delegate.getState()).thenReturn(ChannelState.CONNECTED);
+        assertThrows(IllegalStateException.class,
+                () -> new TestImpl("id2", delegate).setParallelDecoding(tasks::add, 1, 4));
+    }
+
     public static interface TestImplIfc extends TransformingIoChannelIfc<MessageBuffer, String, String> {
         void setBlowUpOnDecode(boolean val);
 
@@ -3,10 +3,13 @@ package com.fincher.iochannel.tcp;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import java.util.Arrays;
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import com.fincher.iochannel.MessageBuffer;
+
 public class DelegatingTcpChannelTest {
 
     @Test
@@ -49,6 +52,24 @@ public class DelegatingTcpChannelTest {
         channel.send(bytes);
         Mockito.verify(delegate, Mockito.times(1)).send(bytes);
 
+        SimpleStreamIo streamIo = new SimpleStreamIo();
+        MessageBuffer mb = new MessageBuffer(bytes);
+        channel.send(streamIo, mb);
+        Mockito.verify(delegate, Mockito.times(1)).send(streamIo, mb);
+
+        channel.send(streamIo, mb, "id1");
+        Mockito.verify(delegate, Mockito.times(1)).send(streamIo, mb, "id1");
+
+        List<MessageBuffer> messages = Arrays.asList(mb);
+        channel.send(messages);
+        Mockito.verify(delegate, Mockito.times(1)).send(messages);
+
+        channel.send(streamIo, messages);
+        Mockito.verify(delegate, Mockito.times(1)).send(streamIo, messages);
+
+        channel.flush();
+        Mockito.verify(delegate, Mockito.times(1)).flush();
+
         channel.close();
 
     }
@@ -0,0 +1,121 @@
+package com.fincher.iochannel.tcp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class DelimiterStreamIoTest {
+
+    private final List<byte[]> frames = new ArrayList<>();
+
+    private void addFrame(byte[] buf, int offset, int length) {
+        frames.add(Arrays.copyOfRange(buf, offset, offset + length));
+    }
+
+    private static byte[] toBytes(ByteBuffer[] buffers) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (ByteBuffer bb : buffers) {
+            byte[] bytes = new byte[bb.remaining()];
+            bb.get(bytes);
+            out.writeBytes(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testIndexOf() {
+        byte[] buf = new byte[40];
+        for (int from = 0; from < 20; from++) {
+            for (int pos = from; pos < buf.length; pos++) {
+                Arrays.fill(buf, (byte) 0x01);
+                buf[pos] = (byte) 0x80;
+                assertEquals(pos, DelimiterStreamIo.indexOf(buf, from, buf.length, (byte) 0x80));
+                assertEquals(pos < 30 ? pos : -1, DelimiterStreamIo.indexOf(buf, from, 30, (byte) 0x80));
+            }
+        }
+
+        // a byte just above a match must not be mistaken for the match
+        Arrays.fill(buf, (byte) 0x01);
+        buf[5] = 0;
+        buf[6] = 0x01;
+        assertEquals(5, DelimiterStreamIo.indexOf(buf, 0, buf.length, (byte) 0));
+        assertEquals(-1, DelimiterStreamIo.indexOf(buf, 6, buf.length, (byte) 0));
+    }
+
+    @Test
+    public void testDecodeFrame() throws IOException {
+        DelimiterStreamIo streamIo = DelimiterStreamIo.stxEtx();
+        byte[] bytes = toBytes(streamIo.encode(ByteBuffer.wrap("hello world".getBytes())));
+        assertEquals(13, bytes.length);
+        assertEquals(DelimiterStreamIo.STX, bytes[0]);
+        assertEquals(DelimiterStreamIo.ETX, bytes[12]);
+
+        Frame frame = new Frame();
+        assertFalse(streamIo.decodeFrame(bytes, 0, 10, frame));
+        assertEquals(0, frame.getFrameLength());
+        assertEquals(10, frame.getScanned());
+
+        assertTrue(streamIo.decodeFrame(bytes, 0, bytes.length, frame));
+        assertEquals(1, frame.getMessageOffset());
+        assertEquals(11, frame.getMessageLength());
+        assertEquals(13, frame.getFrameLength());
+
+        byte[] invalid = { 'x', DelimiterStreamIo.ETX };
+        assertThrows(IOException.class, () -> streamIo.decodeFrame(invalid, 0, invalid.length, new Frame()));
+    }
+
+    @Test
+    public void testMultiByteDelimiter() throws IOException {
+        DelimiterStreamIo streamIo = new DelimiterStreamIo((byte) '\r', (byte) '\n');
+        byte[] stream = "one\rtwo\r\nthree\r\n\r\n".getBytes();
+
+        // deliver one byte at a time so that the delimiter is split across reads
+        FrameDecoder decoder = new FrameDecoder(streamIo, 4);
+        for (int i = 0; i < stream.length; i++) {
+            decoder.read(Channels.newChannel(new ByteArrayInputStream(stream, i, 1)));
+            decoder.decode(this::addFrame);
+        }
+
+        assertEquals(3, frames.size());
+        assertArrayEquals("one\rtwo".getBytes(), frames.get(0));
+        assertArrayEquals("three".getBytes(), frames.get(1));
+        assertArrayEquals(new byte[0], frames.get(2));
+
+        assertThrows(IllegalArgumentException.class, () -> streamIo.encode(ByteBuffer.wrap("a\r\nb".getBytes())));
+
+        // buffers without an accessible array are checked too
+        ByteBuffer readOnly = ByteBuffer.wrap("xa\r\nb".getBytes()).asReadOnlyBuffer();
+        readOnly.position(1);
+        assertThrows(IllegalArgumentException.class, () -> streamIo.encode(readOnly));
+        ByteBuffer direct = ByteBuffer.allocateDirect(5).put("a\r\nb".getBytes());
+        direct.flip();
+        assertThrows(IllegalArgumentException.class, () -> streamIo.encode(direct));
+        assertEquals(2, streamIo.encode(ByteBuffer.wrap("a\rb\n".getBytes(), 0, 3).asReadOnlyBuffer()).length);
+    }
+
+    @Test
+    public void testMaxFrameLength() throws IOException {
+        DelimiterStreamIo streamIo = new DelimiterStreamIo(false, (byte) 0, new byte[] { '\n' }, 16);
+        FrameDecoder decoder = new FrameDecoder(streamIo, 4);
+        ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(new byte[16]));
+        assertThrows(IOException.class, () -> {
+            while (decoder.read(channel) > 0) {
+                decoder.decode(this::addFrame);
+            }
+        });
+    }
+}
@@ -0,0 +1,132 @@
+package com.fincher.iochannel.tcp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fincher.iochannel.BufferPool;
+
+public class FrameDecoderTest {
+
+    private final List<byte[]> frames = new ArrayList<>();
+
+    private void addFrame(byte[] buf, int offset, int length) {
+        frames.add(Arrays.copyOfRange(buf, offset, offset + length));
+    }
+
+    @Test
+    public void testManyFramesPerRead() throws IOException {
+        SimpleStreamIo streamIo = new SimpleStreamIo();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (byte i = 0; i < 100; i++) {
+            stream.write(streamIo.prePendLength(new byte[] { i, i }));
+        }
+
+        FrameDecoder decoder = new FrameDecoder(streamIo, 4096);
+        decoder.read(Channels.newChannel(new ByteArrayInputStream(stream.toByteArray())));
+        assertEquals(100, decoder.decode(this::addFrame));
+
+        assertEquals(100, frames.size());
+        for (byte i = 0; i < 100; i++) {
+            assertArrayEquals(new byte[] { i, i }, frames.get(i));
+        }
+    }
+
+    @Test
+    public void testPartialFrames() throws IOException {
+        SimpleStreamIo streamIo = new SimpleStreamIo(true);
+        byte[] frame = streamIo.prePendLength(new byte[10000]);
+        frame[frame.length - 1] = 5;
+
+        FrameDecoder decoder = new FrameDecoder(streamIo, 16);
+        for (int i = 0; i < frame.length; i += 7) {
+            ReadableByteChannel channel = Channels.newChannel(
+                    new ByteArrayInputStream(frame, i, Math.min(7, frame.length - i)));
+            decoder.read(channel);
+            decoder.decode(this::addFrame);
+        }
+
+        assertEquals(1, frames.size());
+        assertArrayEquals(frame, frames.get(0));
+        assertEquals(frame.length, decoder.capacity());
+    }
+
+    @Test
+    public void testInvalidLength() throws IOException {
+        FrameDecoder decoder = new FrameDecoder(new SimpleStreamIo(true), 16);
+        decoder.read(Channels.newChannel(new ByteArrayInputStream(
+                ByteBuffer.allocate(4).putInt(2).array())));
+
+        assertThrows(IOException.class, () -> decoder.decode(this::addFrame));
+    }
+
+    @Test
+    public void testReceiveBufferPolicy() throws IOException {
+        SimpleStreamIo streamIo = new SimpleStreamIo();
+        ReceiveBufferPolicy policy = new ReceiveBufferPolicy();
+        policy.setShrinkAfter(3);
+        policy.setMaxFrameSize(1000);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(streamIo.prePendLength(new byte[100]));
+        for (byte i = 0; i < 3; i++) {
+            stream.write(streamIo.prePendLength(new byte[] { i }));
+        }
+
+        FrameDecoder decoder = new FrameDecoder(streamIo, 16, policy);
+        ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(stream.toByteArray()));
+        while (decoder.read(channel) > 0) {
+            decoder.decode(this::addFrame);
+        }
+
+        // grew for the large frame then shrank after three small frames
+        assertEquals(4, frames.size());
+        assertEquals(100, frames.get(0).length);
+        assertEquals(16, decoder.capacity());
+
+        decoder.read(Channels.newChannel(new ByteArrayInputStream(streamIo.prePendLength(new byte[1000]))));
+        assertThrows(IOException.class, () -> decoder.decode(this::addFrame));
+    }
+
+    @Test
+    public void testLargeFramePool() throws IOException {
+        SimpleStreamIo streamIo = new SimpleStreamIo();
+        BufferPool pool = BufferPool.createHeapPool(2048, 1);
+        ReceiveBufferPolicy policy = new ReceiveBufferPolicy();
+        policy.setLargeFramePool(pool);
+
+        byte[] large = new byte[1000];
+        Arrays.fill(large, (byte) 7);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(streamIo.prePendLength(large));
+        stream.write(streamIo.prePendLength(new byte[] { 1 }));
+        byte[] bytes = stream.toByteArray();
+
+        FrameDecoder decoder = new FrameDecoder(streamIo, 16, policy);
+        for (int i = 0; i < bytes.length; i += 10) {
+            InputStream input = new ByteArrayInputStream(bytes, i, Math.min(10, bytes.length - i));
+            while (decoder.read(input) > 0) {
+                decoder.decode(this::addFrame);
+            }
+        }
+
+        assertEquals(2, frames.size());
+        assertArrayEquals(large, frames.get(0));
+        assertArrayEquals(new byte[] { 1 }, frames.get(1));
+        assertEquals(16, decoder.capacity());
+        assertEquals(1, pool.getNumPooledBuffers());
+    }
+}
@@ -0,0 +1,62 @@
+package com.fincher.iochannel.tcp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.jupiter.api.Test;
+
+public class LengthPrefixStreamIoTest {
+
+    @Test
+    public void testTwoByteBigEndian() throws IOException {
+        LengthPrefixStreamIo streamIo = LengthPrefixStreamIo.twoByteBigEndian();
+        ByteBuffer[] encoded = streamIo.encode(ByteBuffer.wrap(new byte[258]));
+        assertArrayEquals(new byte[] { 1, 2 }, encoded[0].array());
+        assertEquals(258, streamIo.getMessageLength(new byte[] { 1, 2 }));
+
+        byte[] bytes = new byte[260];
+        bytes[0] = 1;
+        bytes[1] = 2;
+        Frame frame = new Frame();
+        assertFalse(streamIo.decodeFrame(bytes, 0, 259, frame));
+        assertEquals(260, frame.getFrameLength());
+        assertTrue(streamIo.decodeFrame(bytes, 0, 260, frame));
+        assertEquals(2, frame.getMessageOffset());
+        assertEquals(258, frame.getMessageLength());
+
+        assertThrows(IllegalArgumentException.class, () -> streamIo.encode(ByteBuffer.wrap(new byte[65536])));
+    }
+
+    @Test
+    public void testFourByteLittleEndian() throws IOException {
+        LengthPrefixStreamIo streamIo = LengthPrefixStreamIo.fourByteLittleEndian();
+        ByteBuffer[] encoded = streamIo.encode(ByteBuffer.wrap(new byte[258]));
+        assertArrayEquals(new byte[] { 2, 1, 0, 0 }, encoded[0].array());
+
+        byte[] invalid = { (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff };
+        assertThrows(IOException.class, () -> streamIo.decodeFrame(invalid, 0, invalid.length, new Frame()));
+    }
+
+    @Test
+    public void testHeaderPartOfMessage() throws IOException {
+        LengthPrefixStreamIo streamIo = new LengthPrefixStreamIo(1, ByteOrder.BIG_ENDIAN, true);
+        ByteBuffer[] encoded = streamIo.encode(ByteBuffer.wrap(new byte[3]));
+        assertArrayEquals(new byte[] { 4 }, encoded[0].array());
+
+        byte[] bytes = { 4, 7, 8, 9 };
+        Frame frame = new Frame();
+        assertTrue(streamIo.decodeFrame(bytes, 0, bytes.length, frame));
+        assertEquals(0, frame.getMessageOffset());
+        assertEquals(4, frame.getMessageLength());
+
+        byte[] invalid = { 0 };
+        assertThrows(IOException.class, () -> streamIo.decodeFrame(invalid, 0, invalid.length, new Frame()));
+    }
+}
@@ -0,0 +1,122 @@
+package com.fincher.iochannel.tcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+
+import com.fincher.iochannel.MessageBuffer;
+import com.fincher.iochannel.MessageKeyExtractors;
+
+public class MultiEndpointTcpClientChannelTest {
+
+    private static final int NUM_KEYS = 100;
+
+    private final SimpleStreamIo streamIo = new SimpleStreamIo();
+
+    private final List<LinkedBlockingQueue<MessageBuffer>> queues = List.of(new LinkedBlockingQueue<>(),
+            new LinkedBlockingQueue<>(), new LinkedBlockingQueue<>());
+
+    private TcpServerChannel createServer(int index, InetSocketAddress address) throws Exception {
+        TcpServerChannel server = TcpServerChannel.createChannel("server" + index, queues.get(index)::add, streamIo,
+                address);
+        server.connect();
+        return server;
+    }
+
+    @Test
+    public void testRouting() throws Exception {
+        InetAddress localHost = InetAddress.getLocalHost();
+        List<InetSocketAddress> addresses = List.of(new InetSocketAddress(localHost, 5045),
+                new InetSocketAddress(localHost, 5046), new InetSocketAddress(localHost, 5047));
+
+        MultiEndpointTcpClientChannel client = MultiEndpointTcpClientChannel.createChannel("client", streamIo,
+                null, addresses);
+        client.setSendKeyExtractor(MessageKeyExtractors.bigEndianInt(0));
+        for (TcpClientChannel member : client.getMembers()) {
+            ReconnectPolicy reconnectPolicy = new ReconnectPolicy();
+            reconnectPolicy.setDelays(Duration.ofMillis(10), Duration.ofMillis(50));
+            member.setReconnectPolicy(reconnectPolicy);
+        }
+
+        List<TcpServerChannel> servers = new ArrayList<>();
+        try {
+            for (int i = 0; i < addresses.size(); i++) {
+                servers.add(createServer(i, addresses.get(i)));
+            }
+            client.connect();
+            Awaitility.await().until(() -> client.getNumConnections() == 3);
+
+            // messages without a key are spread over the idle endpoints
+            for (int i = 0; i < 30; i++) {
+                client.send(streamIo, new MessageBuffer(new byte[] { (byte) i }));
+            }
+            Awaitility.await().until(() -> queues.stream().mapToInt(LinkedBlockingQueue::size).sum() == 30);
+            for (LinkedBlockingQueue<MessageBuffer> queue : queues) {
+                assertEquals(10, queue.size());
+                queue.clear();
+            }
+
+            Map<Integer, Integer> routes = sendKeys(client);
+            assertEquals(3, routes.values().stream().distinct().count());
+
+            // only the keys of a stopped endpoint move
+            servers.get(1).close();
+            Awaitility.await().until(() -> client.getNumConnections() == 2);
+            Map<Integer, Integer> failoverRoutes = sendKeys(client);
+            for (int key = 0; key < NUM_KEYS; key++) {
+                if (routes.get(key) == 1) {
+                    assertNotEquals(1, failoverRoutes.get(key));
+                } else {
+                    assertEquals(routes.get(key), failoverRoutes.get(key));
+                }
+            }
+
+            // the keys move back when the endpoint returns
+            servers.set(1, createServer(1, addresses.get(1)));
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> client.getNumConnections() == 3);
+            assertEquals(routes, sendKeys(client));
+        } finally {
+            client.close();
+            for (TcpServerChannel server : servers) {
+                server.close();
+            }
+        }
+    }
+
+    /** Send a message for each key and get the index of the server that received each key. */
+    private Map<Integer, Integer> sendKeys(MultiEndpointTcpClientChannel client) throws Exception {
+        for (int key = 0; key < NUM_KEYS; key++) {
+            client.send(streamIo, new MessageBuffer(ByteBuffer.allocate(4).putInt(key).array()));
+        }
+        Awaitility.await().until(() -> queues.stream().mapToInt(LinkedBlockingQueue::size).sum() == NUM_KEYS);
+
+        Map<Integer, Integer> routes = new HashMap<>();
+        for (int i = 0; i < queues.size(); i++) {
+            for (MessageBuffer mb : queues.get(i)) {
+                routes.put(ByteBuffer.wrap(mb.getBytes()).getInt(), i);
+            }
+            queues.get(i).clear();
+        }
+        assertEquals(NUM_KEYS, routes.size());
+        return routes;
+    }
+
+    @Test
+    public void testNoEndpoints() {
+        assertThrows(IllegalArgumentException.class,
+                () -> MultiEndpointTcpClientChannel.createOutputOnlyChannel("client", streamIo, null, List.of()));
+    }
+}
@@ -0,0 +1,218 @@
+package com.fincher.iochannel.tcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+
+import com.fincher.iochannel.ChannelException;
+import com.fincher.iochannel.MessageBuffer;
+import com.google.common.io.Closer;
+
+public class NioTcpServerChannelTest {
+
+    @Test
+    public void testSendAndReceive() throws Exception {
+        SimpleStreamIo streamIo = new SimpleStreamIo();
+        InetSocketAddress serverAddress = new InetSocketAddress(InetAddress.getLocalHost(), 5010);
+
+        BlockingQueue<MessageBuffer> serverQueue = new LinkedBlockingQueue<>();
+        BlockingQueue<MessageBuffer> clientQueue = new LinkedBlockingQueue<>();
+        AtomicInteger connectionsEstablished = new AtomicInteger();
+        AtomicInteger connectionsLost = new AtomicInteger();
+
+        try (Closer closer = Closer.create()) {
+            NioTcpServerChannel server = closer.register(
+                    NioTcpServerChannel.createChannel("server", serverQueue::add, streamIo, serverAddress, 2));
+            assertEquals(2, server.getNumEventLoops());
+            server.addConnectionEstablishedListener(id -> connectionsEstablished.incrementAndGet());
+            server.addConnectionLostListener(id -> connectionsLost.incrementAndGet());
+            server.connect();
+
+            TcpClientChannel[] clients = new TcpClientChannel[3];
+            for (int i = 0; i < clients.length; i++) {
+                clients[i] = closer.register(TcpClientChannel.createChannel("client" + i, clientQueue::add, streamIo,
+                        null, serverAddress));
+                clients[i].connect();
+            }
+
+            Awaitility.await().until(() -> server.getNumConnections() == clients.length);
+            assertEquals(clients.length, connectionsEstablished.get());
+
+            for (int i = 0; i < clients.length; i++) {
+                Awaitility.await().until(clients[i]::isConnected);
+                for (int j = 0; j < 10; j++) {
+                    clients[i].send(streamIo.prePendLength(new byte[] { (byte) i, (byte) j }));
+                }
+            }
+
+            Awaitility.await().until(() -> serverQueue.size() == clients.length * 10);
+            for (MessageBuffer mb : serverQueue) {
+                assertEquals(2, mb.getBytes().length);
+                assertEquals("server", mb.getReceivedFromChannelId());
+            }
+
+            server.send(streamIo.prePendLength("broadcast".getBytes()));
+            Awaitility.await().until(() -> clientQueue.size() == clients.length);
+
+            List<String> socketIds = server.getSocketIds();
+            server.send(new MessageBuffer(streamIo.prePendLength("direct".getBytes())), socketIds.get(0));
+            Awaitility.await().until(() -> clientQueue.size() == clients.length + 1);
+
+            assertThrows(ChannelException.class,
+                    () -> server.send(new MessageBuffer(new byte[0]), "no channel id"));
+
+            clients[0].close();
+            Awaitility.await().until(() -> connectionsLost.get() == 1);
+        }
+    }
+
+    @Test
+    public void testLargeMessages() throws Exception {
+        SimpleStreamIo streamIo = new SimpleStreamIo(true);
+        InetSocketAddress serverAddress = new InetSocketAddress(InetAddress.getLocalHost(), 5011);
+
+        BlockingQueue<MessageBuffer> serverQueue = new LinkedBlockingQueue<>();
+        BlockingQueue<MessageBuffer> clientQueue = new LinkedBlockingQueue<>();
+
+        try (Closer closer = Closer.create()) {
+            NioTcpServerChannel server = closer.register(
+                    NioTcpServerChannel.createChannel("server", serverQueue::add, streamIo, serverAddress, 1));
+            server.connect();
+
+            TcpClientChannel client = closer.register(
+                    TcpClientChannel.createChannel("client", clientQueue::add, streamIo, null, serverAddress));
+            client.connect();
+
+            Awaitility.await().until(() -> client.isConnected() && server.isConnected());
+
+            byte[] payload = new byte[1024 * 1024];
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] = (byte) i;
+            }
+
+            client.send(streamIo.prePendLength(payload));
+            server.send(streamIo.prePendLength(payload));
+
+            Awaitility.await().until(() -> serverQueue.size() == 1 && clientQueue.size() == 1);
+
+            byte[] received = serverQueue.take().getBytes();
+            assertEquals(payload.length + 4, received.length);
+            assertEquals(payload[payload.length - 1], received[received.length - 1]);
+            assertEquals(payload.length + 4, clientQueue.take().getBytes().length);
+        }
+    }
+
+    @Test
+    public void testSlowConsumerDropped() throws Exception {
+        SimpleStreamIo streamIo = new SimpleStreamIo();
+        InetSocketAddress serverAddress = new InetSocketAddress(InetAddress.getLocalHost(), 5012);
+
+        try (Closer closer = Closer.create()) {
+            NioTcpServerChannel server = closer.register(
+                    NioTcpServerChannel.createOutputOnly("server", streamIo, serverAddress, 1));
+            server.setWriteBufferWatermarks(0, 64 * 1024);
+            server.setSlowConsumerPolicy(SlowConsumerPolicy.DROP);
+            server.connect();
+
+            Socket slowPeer = closer.register(connectSlowPeer(serverAddress));
+            Awaitility.await().until(() -> server.getNumConnections() == 1);
+            String socketId = server.getSocketIds().get(0);
+
+            byte[] message = streamIo.prePendLength(new byte[16 * 1024]);
+            for (int i = 0; i < 10_000 && server.getNumDroppedMessages() == 0; i++) {
+                server.send(message);
+            }
+
+            assertTrue(server.getNumDroppedMessages() > 0);
+            assertTrue(server.getPendingBytes(socketId) > server.getHighWatermark());
+            assertEquals(1, server.getNumConnections());
+            assertEquals(0, server.getNumEvictions());
+
+            // the queue drains once the peer reads
+            InputStream input = slowPeer.getInputStream();
+            Thread reader = new Thread(() -> {
+                byte[] buf = new byte[64 * 1024];
+                try {
+                    while (input.read(buf) != -1) {
+                        // discard
+                    }
+                } catch (IOException e) {
+                    // socket closed
+                }
+            });
+            reader.start();
+            Awaitility.await().until(() -> server.getPendingBytes(socketId) == 0);
+
+            long numDropped = server.getNumDroppedMessages();
+            server.send(message);
+            assertEquals(numDropped, server.getNumDroppedMessages());
+        }
+    }
+
+    @Test
+    public void testSlowConsumerEvicted() throws Exception {
+        SimpleStreamIo streamIo = new SimpleStreamIo();
+        InetSocketAddress serverAddress = new InetSocketAddress(InetAddress.getLocalHost(), 5013);
+        AtomicInteger connectionsLost = new AtomicInteger();
+
+        try (Closer closer = Closer.create()) {
+            NioTcpServerChannel server = closer.register(
+                    NioTcpServerChannel.createOutputOnly("server", streamIo, serverAddress, 1));
+            server.setWriteBufferWatermarks(0, 64 * 1024);
+            assertEquals(SlowConsumerPolicy.EVICT, server.getSlowConsumerPolicy());
+            server.addConnectionLostListener(id -> connectionsLost.incrementAndGet());
+            server.connect();
+
+            Socket slowPeer = closer.register(connectSlowPeer(serverAddress));
+            Awaitility.await().until(() -> server.getNumConnections() == 1);
+
+            byte[] message = streamIo.prePendLength(new byte[16 * 1024]);
+            for (int i = 0; i < 10_000 && server.getNumConnections() > 0; i++) {
+                server.send(message);
+            }
+
+            assertEquals(0, server.getNumConnections());
+            assertEquals(1, server.getNumEvictions());
+            assertEquals(1, connectionsLost.get());
+        }
+    }
+
+    /** Connect a peer with a small receive buffer that only reads when told to. */
+    private static Socket connectSlowPeer(InetSocketAddress serverAddress) {
+        AtomicReference<Socket> ref = new AtomicReference<>();
+        Awaitility.await().ignoreExceptions().until(() -> {
+            Socket socket = new Socket();
+            socket.setReceiveBufferSize(4096);
+            try {
+                socket.connect(serverAddress);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+            ref.set(socket);
+            return true;
+        });
+        return ref.get();
+    }
+
+    @Test
+    public void testInvalidNumEventLoops() {
+        assertThrows(IllegalArgumentException.class,
+                () -> NioTcpServerChannel.createChannel("server", new SimpleStreamIo(), null, 0));
+    }
+}
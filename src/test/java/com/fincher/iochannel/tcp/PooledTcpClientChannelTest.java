@@ -0,0 +1,124 @@
+package com.fincher.iochannel.tcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+
+import com.fincher.iochannel.ChannelException;
+import com.fincher.iochannel.ChannelState;
+import com.fincher.iochannel.HistogramChannelMetrics;
+import com.fincher.iochannel.MessageBuffer;
+import com.fincher.iochannel.MessageKeyExtractors;
+
+public class PooledTcpClientChannelTest {
+
+    @Test
+    public void testPool() throws Exception {
+        SimpleStreamIo streamIo = new SimpleStreamIo();
+
+        InetSocketAddress address5043 = new InetSocketAddress(InetAddress.getLocalHost(), 5043);
+        InetSocketAddress localAddress0 = new InetSocketAddress(InetAddress.getLocalHost(), 0);
+
+        LinkedBlockingQueue<MessageBuffer> queue = new LinkedBlockingQueue<>();
+        LinkedBlockingQueue<MessageBuffer> replies = new LinkedBlockingQueue<>();
+        HistogramChannelMetrics metrics = new HistogramChannelMetrics();
+
+        PooledTcpClientChannel pool = PooledTcpClientChannel.createChannel("pool", replies::add, streamIo,
+                localAddress0, address5043, 4);
+        pool.setSendKeyExtractor(MessageKeyExtractors.bigEndianInt(0));
+        List<TcpClientChannel> members = pool.getMembers();
+        assertEquals(4, members.size());
+        for (TcpClientChannel member : members) {
+            ReconnectPolicy reconnectPolicy = new ReconnectPolicy();
+            reconnectPolicy.setDelays(Duration.ofMillis(10), Duration.ofMillis(50));
+            member.setReconnectPolicy(reconnectPolicy);
+            member.setMetrics(metrics);
+        }
+
+        TcpServerChannel server1 = TcpServerChannel.createChannel("server1", queue::add, streamIo, address5043);
+        server1.connect();
+        pool.connect();
+
+        try {
+            Awaitility.await().until(() -> pool.getNumConnections() == 4 && server1.getNumConnections() == 4);
+            assertTrue(pool.isConnected());
+            assertEquals(List.of("pool-0", "pool-1", "pool-2", "pool-3"), pool.getSocketIds());
+
+            // messages without a key are sent round robin
+            for (int i = 0; i < 8; i++) {
+                pool.send(streamIo, new MessageBuffer(new byte[] { (byte) i }));
+            }
+            Awaitility.await().until(() -> queue.size() == 8);
+            for (TcpClientChannel member : members) {
+                assertEquals(2, metrics.getStats(member.getId()).getMessagesSent());
+            }
+
+            // messages with the same key are sent on the same connection
+            for (int i = 0; i < 10; i++) {
+                pool.send(streamIo, new MessageBuffer(new byte[] { 0, 0, 0, 7, (byte) i }));
+            }
+            Awaitility.await().until(() -> queue.size() == 18);
+            long keyed = members.stream()
+                    .filter(member -> metrics.getStats(member.getId()).getMessagesSent() == 12)
+                    .count();
+            assertEquals(1, keyed);
+
+            pool.send(new MessageBuffer(streamIo.prePendLength(new byte[] { 1 })), "pool-2");
+            Awaitility.await().until(() -> queue.size() == 19);
+            assertThrows(ChannelException.class, () -> pool.send(new MessageBuffer(new byte[1]), "bogus"));
+
+            server1.send(new MessageBuffer(streamIo.prePendLength(new byte[] { 2 })));
+            Awaitility.await().until(() -> replies.size() == 4);
+
+            // the pool rebuilds its connections when the server comes back
+            server1.close();
+            Awaitility.await().until(() -> pool.getState() == ChannelState.CONNECTING);
+            assertEquals(0, pool.getNumConnections());
+
+            TcpServerChannel server2 = TcpServerChannel.createChannel("server2", queue::add, streamIo,
+                    address5043);
+            try {
+                server2.connect();
+                Awaitility.await().atMost(Duration.ofSeconds(5))
+                        .until(() -> pool.getNumConnections() == 4 && server2.getNumConnections() == 4);
+                assertTrue(pool.isConnected());
+            } finally {
+                server2.close();
+            }
+        } finally {
+            pool.close();
+            server1.close();
+        }
+
+        assertEquals(ChannelState.CLOSED, pool.getState());
+    }
+
+    @Test
+    public void testOffNominal() throws Exception {
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLocalHost(), 5044);
+        assertThrows(IllegalArgumentException.class,
+                () -> PooledTcpClientChannel.createOutputOnlyChannel("pool", new SimpleStreamIo(), null, address, 0));
+
+        PooledTcpClientChannel pool = PooledTcpClientChannel.createOutputOnlyChannel("pool", new SimpleStreamIo(),
+                null, address, 2);
+        assertThrows(IllegalStateException.class, () -> pool.addMessageListener(mb -> {
+        }));
+
+        // sending with no connections is not an error
+        pool.connect();
+        pool.send(new byte[] { 1 });
+        assertEquals(ChannelState.CONNECTING, pool.getState());
+        assertThrows(IllegalStateException.class,
+                () -> pool.setSendKeyExtractor(MessageKeyExtractors.bigEndianInt(0)));
+        pool.close();
+    }
+}
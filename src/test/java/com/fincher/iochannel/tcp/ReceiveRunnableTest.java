@@ -4,15 +4,25 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.net.Socket;
 
 import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import com.fincher.iochannel.BufferPool;
+import com.fincher.iochannel.MessageBuffer;
 
 public class ReceiveRunnableTest {
 
@@ -34,6 +44,7 @@ public class ReceiveRunnableTest {
         when(streamIo.getHeaderLength()).thenReturn(4097);
         when(inputStream.read(any(byte[].class), anyInt(), anyInt())).thenReturn(4097);
         when(socket.getInputStream()).thenReturn(inputStream);
+        when(parent.getReceiveBufferPolicy()).thenReturn(new ReceiveBufferPolicy());
 
         ReceiveTask rr = new ReceiveTask("id", socket, streamIo, parent);
         rr.run();
@@ -41,7 +52,122 @@ public class ReceiveRunnableTest {
         Field f = ReceiveTask.class.getDeclaredField("buf");
         f.setAccessible(true);
         byte[] buf = (byte[]) f.get(rr);
-        assertEquals(4197, buf.length);
+        assertEquals(8192, buf.length);
+    }
+
+    @Test
+    public void testReadAhead() throws IOException {
+        SimpleStreamIo streamIo = new SimpleStreamIo();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (byte i = 0; i < 100; i++) {
+            stream.write(streamIo.prePendLength(new byte[] { i }));
+        }
+
+        // the last message is split across reads
+        byte[] bytes = stream.toByteArray();
+        InputStream inputStream = spy(new ByteArrayInputStream(bytes));
+
+        Socket socket = mock(Socket.class);
+        TcpChannel parent = mock(TcpChannel.class);
+        when(socket.getInputStream()).thenReturn(inputStream);
+        when(parent.getReceiveBufferPolicy()).thenReturn(new ReceiveBufferPolicy());
+
+        ReadAheadReceiveTask task = new ReadAheadReceiveTask("id", socket, streamIo, parent, bytes.length - 1);
+        task.run();
+        verify(parent, times(99)).messageReceived(any(MessageBuffer.class), any(Logger.class), anyString());
+
+        task.run();
+        verify(parent, times(100)).messageReceived(any(MessageBuffer.class), any(Logger.class), anyString());
+        verify(inputStream, times(2)).read(any(byte[].class), anyInt(), anyInt());
+
+        task.run();
+        verify(parent).connectionLost(socket);
     }
 
+    @Test
+    public void testReceiveBufferPolicy() throws IOException, ReflectiveOperationException {
+        SimpleStreamIo streamIo = new SimpleStreamIo();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(streamIo.prePendLength(new byte[10000]));
+        stream.write(streamIo.prePendLength(new byte[] { 1 }));
+        stream.write(streamIo.prePendLength(new byte[] { 2 }));
+        stream.write(streamIo.prePendLength(new byte[20000]));
+
+        Socket socket = mock(Socket.class);
+        TcpChannel parent = mock(TcpChannel.class);
+        when(socket.getInputStream()).thenReturn(new ByteArrayInputStream(stream.toByteArray()));
+
+        ReceiveBufferPolicy policy = new ReceiveBufferPolicy();
+        policy.setShrinkAfter(2);
+        policy.setMaxFrameSize(15000);
+        when(parent.getReceiveBufferPolicy()).thenReturn(policy);
+
+        Field f = ReceiveTask.class.getDeclaredField("buf");
+        f.setAccessible(true);
+
+        ReceiveTask task = new ReceiveTask("id", socket, streamIo, parent);
+        task.run();
+        assertEquals(10000, ((byte[]) f.get(task)).length);
+
+        // shrinks after two small messages
+        task.run();
+        assertEquals(10000, ((byte[]) f.get(task)).length);
+        task.run();
+        assertEquals(ReceiveBufferPolicy.DEFAULT_INITIAL_SIZE, ((byte[]) f.get(task)).length);
+        verify(parent, times(3)).messageReceived(any(MessageBuffer.class), any(Logger.class), anyString());
+
+        // the last message is too large
+        task.run();
+        verify(parent).connectionLost(socket);
+        verify(parent, times(3)).messageReceived(any(MessageBuffer.class), any(Logger.class), anyString());
+    }
+
+    @Test
+    public void testCorruptLengthClosesConnection() throws IOException, ReflectiveOperationException {
+        SimpleStreamIo streamIo = new SimpleStreamIo();
+        Socket socket = mock(Socket.class);
+        TcpChannel parent = mock(TcpChannel.class);
+        when(socket.getInputStream())
+                .thenReturn(new ByteArrayInputStream(SimpleStreamIo.createLengthByteArray(0x7FFFFFFF)));
+        when(parent.getReceiveBufferPolicy()).thenReturn(new ReceiveBufferPolicy());
+
+        // rejected before the buffer grows to the length
+        ReceiveTask task = new ReceiveTask("id", socket, streamIo, parent);
+        task.run();
+        verify(parent).connectionLost(socket);
+        Field f = ReceiveTask.class.getDeclaredField("buf");
+        f.setAccessible(true);
+        assertEquals(ReceiveBufferPolicy.DEFAULT_INITIAL_SIZE, ((byte[]) f.get(task)).length);
+
+        // a negative length is rejected too
+        Socket negativeSocket = mock(Socket.class);
+        when(negativeSocket.getInputStream())
+                .thenReturn(new ByteArrayInputStream(SimpleStreamIo.createLengthByteArray(-1)));
+        new ReceiveTask("id", negativeSocket, streamIo, parent).run();
+        verify(parent).connectionLost(negativeSocket);
+        verify(parent, times(0)).messageReceived(any(MessageBuffer.class), any(Logger.class), anyString());
+    }
+
+    @Test
+    public void testLargeFramePool() throws IOException, ReflectiveOperationException {
+        SimpleStreamIo streamIo = new SimpleStreamIo();
+        Socket socket = mock(Socket.class);
+        TcpChannel parent = mock(TcpChannel.class);
+        when(socket.getInputStream()).thenReturn(new ByteArrayInputStream(streamIo.prePendLength(new byte[10000])));
+
+        BufferPool pool = BufferPool.createHeapPool(16384, 1);
+        ReceiveBufferPolicy policy = new ReceiveBufferPolicy();
+        policy.setLargeFramePool(pool);
+        when(parent.getReceiveBufferPolicy()).thenReturn(policy);
+
+        ReceiveTask task = new ReceiveTask("id", socket, streamIo, parent);
+        task.run();
+        verify(parent).messageReceived(any(MessageBuffer.class), any(Logger.class), anyString());
+
+        // the message was read into the pool rather than growing the buffer
+        Field f = ReceiveTask.class.getDeclaredField("buf");
+        f.setAccessible(true);
+        assertEquals(ReceiveBufferPolicy.DEFAULT_INITIAL_SIZE, ((byte[]) f.get(task)).length);
+        assertEquals(1, pool.getNumPooledBuffers());
+    }
 }
@@ -0,0 +1,62 @@
+package com.fincher.iochannel.tcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+public class ReconnectPolicyTest {
+
+    @Test
+    public void testDelays() {
+        ReconnectPolicy policy = new ReconnectPolicy();
+        policy.setJitter(0);
+        assertEquals(Duration.ZERO, policy.getDelay(0));
+        assertEquals(Duration.ofMillis(100), policy.getDelay(1));
+        assertEquals(Duration.ofMillis(200), policy.getDelay(2));
+        assertEquals(Duration.ofMillis(400), policy.getDelay(3));
+        assertEquals(Duration.ofSeconds(10), policy.getDelay(100));
+
+        policy.setInitialDelay(Duration.ofMillis(50));
+        policy.setDelays(Duration.ofMillis(10), Duration.ofMillis(25));
+        policy.setMultiplier(3);
+        assertEquals(Duration.ofMillis(50), policy.getDelay(0));
+        assertEquals(Duration.ofMillis(10), policy.getDelay(1));
+        assertEquals(Duration.ofMillis(25), policy.getDelay(2));
+        assertEquals(Duration.ofMillis(25), policy.getDelay(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testJitter() {
+        ReconnectPolicy policy = new ReconnectPolicy();
+        assertEquals(0.5, policy.getJitter());
+        assertEquals(Duration.ZERO, policy.getDelay(0));
+
+        for (int i = 0; i < 1000; i++) {
+            Duration delay = policy.getDelay(2);
+            assertTrue(delay.compareTo(Duration.ofMillis(100)) >= 0, delay.toString());
+            assertTrue(delay.compareTo(Duration.ofMillis(200)) <= 0, delay.toString());
+        }
+    }
+
+    @Test
+    public void testOffNominal() {
+        ReconnectPolicy policy = new ReconnectPolicy();
+        assertThrows(IllegalArgumentException.class, () -> policy.setInitialDelay(Duration.ofMillis(-1)));
+        assertThrows(IllegalArgumentException.class, () -> policy.setDelays(Duration.ZERO, Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class,
+                () -> policy.setDelays(Duration.ofSeconds(2), Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class, () -> policy.setMultiplier(0.5));
+        assertThrows(IllegalArgumentException.class, () -> policy.setJitter(1.5));
+        assertThrows(IllegalArgumentException.class, () -> policy.setConnectTimeout(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> policy.setConnectTimeout(Duration.ofDays(30)));
+
+        assertEquals(Duration.ofMillis(100), policy.getMinDelay());
+        assertEquals(Duration.ofSeconds(10), policy.getMaxDelay());
+        assertEquals(2.0, policy.getMultiplier());
+        assertEquals(Duration.ofSeconds(5), policy.getConnectTimeout());
+    }
+}
@@ -1,13 +1,20 @@
 package com.fincher.iochannel.tcp;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import com.fincher.iochannel.ChannelException;
@@ -77,6 +84,65 @@ public class TcpChannelTest {
         impl.close();
     }
 
+    @Test
+    public void testWriteFrameWithSingleWrite() throws IOException {
+        TestImpl impl = new TestImpl();
+        CountingOutputStream out = new CountingOutputStream();
+        Socket socket = Mockito.mock(Socket.class);
+        Mockito.when(socket.getOutputStream()).thenReturn(out);
+
+        byte[] body = new byte[100];
+        Arrays.fill(body, (byte) 7);
+        ByteBuffer header = ByteBuffer.allocate(4).putInt(body.length);
+        header.flip();
+        ByteBuffer payload = ByteBuffer.allocateDirect(body.length).put(body);
+        payload.flip();
+
+        impl.write(new ByteBuffer[] { header, payload }, socket);
+        assertEquals(1, out.numWrites);
+        assertEquals(104, out.size());
+        assertEquals(ByteBuffer.wrap(out.toByteArray(), 4, 100), ByteBuffer.wrap(body));
+
+        // a frame larger than the write buffer is written in more than one write
+        out.reset();
+        out.numWrites = 0;
+        byte[] large = new byte[TcpChannel.WRITE_BUFFER_SIZE * 2];
+        header.clear();
+        header.putInt(large.length).flip();
+        impl.write(new ByteBuffer[] { header, ByteBuffer.wrap(large) }, socket);
+        assertEquals(large.length + 4, out.size());
+
+        impl.close();
+    }
+
+    @Test
+    public void testInterfaceDefaults() throws ChannelException {
+        TcpChannelIfc channel = Mockito.mock(TcpChannelIfc.class, Mockito.CALLS_REAL_METHODS);
+        Mockito.doNothing().when(channel).send(Mockito.any(MessageBuffer.class));
+        SimpleStreamIo streamIo = new SimpleStreamIo();
+        MessageBuffer first = new MessageBuffer(new byte[] { 1 });
+        MessageBuffer second = new MessageBuffer(new byte[] { 2, 3 });
+
+        channel.send(List.of(first, second));
+        Mockito.verify(channel).send(first);
+        Mockito.verify(channel).send(second);
+
+        // each message is framed into a single array before it is sent
+        ArgumentCaptor<MessageBuffer> captor = ArgumentCaptor.forClass(MessageBuffer.class);
+        channel.send(streamIo, List.of(second));
+        Mockito.verify(channel, Mockito.times(3)).send(captor.capture());
+        assertArrayEquals(streamIo.prePendLength(new byte[] { 2, 3 }), captor.getValue().getBytes());
+
+        channel.flush();
+    }
+
+    @Test
+    public void testServerConnectionLostDelay() {
+        // a server does not hold up the thread that lost a connection
+        TcpServerChannel server = TcpServerChannel.createChannel("server", new SimpleStreamIo(), null);
+        assertEquals(Duration.ZERO, server.getConnectionLostDelay());
+    }
+
     @Test
     public void testCloseWithException() throws IOException {
         TestImpl impl = new TestImpl();
@@ -89,6 +155,16 @@ public class TcpChannelTest {
         assertThrows(ChannelException.class, () -> impl.close());
     }
 
+    private static class CountingOutputStream extends ByteArrayOutputStream {
+        int numWrites;
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            numWrites++;
+            super.write(b, off, len);
+        }
+    }
+
     class TestImpl extends TcpChannel {
 
         public TestImpl() {
@@ -0,0 +1,73 @@
+package com.fincher.iochannel.tcp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+
+import com.fincher.iochannel.ChannelException;
+import com.fincher.iochannel.IoType;
+import com.fincher.iochannel.MessageBuffer;
+
+public class TcpClientGroupChannelTest {
+
+    /**
+     * A group that first chooses member 0 regardless of its connection, as though
+     * it was lost after it was chosen, and then member 1.
+     */
+    private static class TestGroup extends TcpClientGroupChannel {
+
+        private final AtomicInteger numChoices = new AtomicInteger();
+
+        TestGroup(StreamIo streamIo, List<InetSocketAddress> remoteAddresses) {
+            super("group", IoType.INPUT_AND_OUTPUT, streamIo, null, remoteAddresses);
+        }
+
+        @Override
+        protected int chooseMember(MessageBuffer message) {
+            return numChoices.getAndIncrement() % 2;
+        }
+    }
+
+    @Test
+    public void testFailoverFromDisconnectedMember() throws Exception {
+        SimpleStreamIo streamIo = new SimpleStreamIo();
+        InetSocketAddress address5061 = new InetSocketAddress(InetAddress.getLocalHost(), 5061);
+        InetSocketAddress address5062 = new InetSocketAddress(InetAddress.getLocalHost(), 5062);
+
+        LinkedBlockingQueue<MessageBuffer> queue = new LinkedBlockingQueue<>();
+        TcpServerChannel server = TcpServerChannel.createChannel("server", queue::add, streamIo, address5062);
+
+        // nothing listens on the first member's address so it never connects
+        TestGroup group = new TestGroup(streamIo, List.of(address5061, address5062));
+        try {
+            server.connect();
+            group.connect();
+            Awaitility.await().until(() -> group.getNumConnections() == 1);
+
+            group.send(streamIo, new MessageBuffer(new byte[] { 1 }));
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> queue.size() == 1);
+            assertArrayEquals(new byte[] { 1 }, queue.take().getBytes());
+
+            group.send(new MessageBuffer(streamIo.prePendLength(new byte[] { 2 })));
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> queue.size() == 1);
+            assertArrayEquals(new byte[] { 2 }, queue.take().getBytes());
+
+            // the send fails once no member has a connection
+            server.close();
+            Awaitility.await().until(() -> group.getNumConnections() == 0);
+            assertThrows(ChannelException.class, () -> group.send(streamIo, new MessageBuffer(new byte[] { 3 })));
+        } finally {
+            group.close();
+            server.close();
+        }
+    }
+}
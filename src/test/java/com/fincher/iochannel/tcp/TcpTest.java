@@ -1,5 +1,6 @@
 package com.fincher.iochannel.tcp;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
@@ -9,6 +10,8 @@ import static org.mockito.Mockito.mock;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -19,11 +22,14 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.slf4j.Logger;
 
+import com.fincher.iochannel.BufferPool;
 import com.fincher.iochannel.ChannelException;
+import com.fincher.iochannel.HistogramChannelMetrics;
 import com.fincher.iochannel.IoChannelDataType;
 import com.fincher.iochannel.IoChannelTesterBase;
 import com.fincher.iochannel.IoType;
 import com.fincher.iochannel.MessageBuffer;
+import com.fincher.iochannel.PooledMessageBuffer;
 import com.google.common.io.Closer;
 
 /** A JUnit tester for TCP sockets */
@@ -209,6 +215,195 @@ public class TcpTest extends IoChannelTesterBase<MessageBuffer> {
         for (byte i = 0; i < 5; i++) {
             assertEquals(i, queue.take().getBytes()[4]);
         }
+
+        // framed sends produce the same bytes as prePendLength
+        byte[] payload = "framed".getBytes();
+        BufferPool pool = BufferPool.createHeapPool(64, 1);
+        client.send(streamIo, new MessageBuffer(payload));
+        client.send(streamIo, PooledMessageBuffer.copyOf(pool, payload, 0, payload.length));
+        client.send(streamIo, new MessageBuffer(payload), client.getSocketIds().get(0));
+
+        Awaitility.await().until(() -> queue.size() == 3);
+        for (MessageBuffer mb : queue) {
+            assertArrayEquals(streamIo.prePendLength(payload), mb.getBytes());
+        }
+    }
+
+    @Test
+    public void testVariableLengthFraming() throws Exception {
+        testFraming(new VarintStreamIo());
+        testFraming(DelimiterStreamIo.stxEtx());
+    }
+
+    private void testFraming(StreamIo streamIo) throws Exception {
+        InetSocketAddress address5040 = new InetSocketAddress(InetAddress.getLocalHost(), 5040);
+        InetSocketAddress localAddress0 = new InetSocketAddress(InetAddress.getLocalHost(), 0);
+
+        LinkedBlockingQueue<MessageBuffer> queue = new LinkedBlockingQueue<>();
+
+        TcpServerChannel server = TcpServerChannel.createChannel("server", queue::add, streamIo, address5040);
+        TcpClientChannel client = TcpClientChannel.createOutputOnlyChannel("client", streamIo, localAddress0,
+                address5040);
+
+        server.connect();
+        client.connect();
+        Awaitility.await().until(() -> client.isConnected() && server.isConnected());
+
+        byte[] large = new byte[20000];
+        Arrays.fill(large, (byte) 'x');
+        for (byte i = 0; i < 5; i++) {
+            client.send(streamIo, new MessageBuffer(new byte[] { 'a', (byte) ('0' + i) }));
+        }
+        client.send(streamIo, new MessageBuffer(large));
+
+        Awaitility.await().until(() -> queue.size() == 6);
+        for (byte i = 0; i < 5; i++) {
+            assertArrayEquals(new byte[] { 'a', (byte) ('0' + i) }, queue.take().getBytes());
+        }
+        assertArrayEquals(large, queue.take().getBytes());
+
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void testReconnect() throws Exception {
+        SimpleStreamIo streamIo = new SimpleStreamIo(true);
+
+        InetSocketAddress address5042 = new InetSocketAddress(InetAddress.getLocalHost(), 5042);
+        InetSocketAddress localAddress0 = new InetSocketAddress(InetAddress.getLocalHost(), 0);
+
+        LinkedBlockingQueue<MessageBuffer> queue = new LinkedBlockingQueue<>();
+        HistogramChannelMetrics metrics = new HistogramChannelMetrics();
+
+        ReconnectPolicy reconnectPolicy = new ReconnectPolicy();
+        reconnectPolicy.setDelays(Duration.ofMillis(10), Duration.ofMillis(50));
+        reconnectPolicy.setConnectTimeout(Duration.ofSeconds(1));
+
+        TcpClientChannel client = TcpClientChannel.createChannel("client", streamIo, localAddress0, address5042);
+        client.setReconnectPolicy(reconnectPolicy);
+        client.setMetrics(metrics);
+        assertEquals(reconnectPolicy, client.getReconnectPolicy());
+
+        TcpServerChannel server1 = TcpServerChannel.createChannel("server1", queue::add, streamIo, address5042);
+        server1.connect();
+        client.connect();
+        Awaitility.await().until(() -> client.isConnected() && server1.isConnected());
+
+        try {
+            client.setReconnectPolicy(new ReconnectPolicy());
+            fail("Should have got exception");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        server1.close();
+        Awaitility.await().until(() -> !client.isConnected());
+
+        TcpServerChannel server2 = TcpServerChannel.createChannel("server2", queue::add, streamIo, address5042);
+        try {
+            server2.connect();
+            Awaitility.await().atMost(Duration.ofSeconds(2)).until(() -> client.isConnected());
+
+            client.send(new MessageBuffer(streamIo.prePendLength(new byte[] { 1 })));
+            Awaitility.await().until(() -> queue.size() == 1);
+
+            assertEquals(2, metrics.getStats("client").getConnects());
+            assertEquals(1, metrics.getStats("client").getReconnects());
+            assertEquals(1, metrics.getStats("client").getConnectionsLost());
+        } finally {
+            client.close();
+            server2.close();
+        }
+    }
+
+    @Test
+    public void testWriteCoalescing() throws Exception {
+        SimpleStreamIo streamIo = new SimpleStreamIo();
+
+        InetSocketAddress address5048 = new InetSocketAddress(InetAddress.getLocalHost(), 5048);
+        LinkedBlockingQueue<MessageBuffer> queue = new LinkedBlockingQueue<>();
+
+        // a long delay so that only the threshold and explicit flushes write
+        WriteCoalescingPolicy flushPolicy = new WriteCoalescingPolicy();
+        flushPolicy.setFlushThreshold(64);
+        flushPolicy.setMaxDelay(Duration.ofSeconds(10));
+
+        WriteCoalescingPolicy deadlinePolicy = new WriteCoalescingPolicy();
+        deadlinePolicy.setMaxDelay(Duration.ofMillis(1));
+
+        TcpClientChannel client1 = TcpClientChannel.createOutputOnlyChannel("client1", streamIo, null, address5048);
+        client1.setWriteCoalescingPolicy(flushPolicy);
+        assertEquals(flushPolicy, client1.getWriteCoalescingPolicy());
+        TcpClientChannel client2 = TcpClientChannel.createOutputOnlyChannel("client2", streamIo, null, address5048);
+        client2.setWriteCoalescingPolicy(deadlinePolicy);
+
+        TcpServerChannel server = TcpServerChannel.createChannel("server", queue::add, streamIo, address5048);
+        try {
+            server.connect();
+            client1.connect();
+            client2.connect();
+            Awaitility.await().until(() -> client1.isConnected() && client2.isConnected());
+
+            try {
+                client1.setWriteCoalescingPolicy(new WriteCoalescingPolicy());
+                fail("Should have got exception");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+
+            // small sends wait for a flush
+            for (int i = 0; i < 3; i++) {
+                client1.send(streamIo, new MessageBuffer(new byte[] { (byte) i, 0, 0, 0 }));
+            }
+            Awaitility.await().during(Duration.ofMillis(200)).until(queue::isEmpty);
+            client1.flush();
+            Awaitility.await().until(() -> queue.size() == 3);
+            for (int i = 0; i < 3; i++) {
+                assertEquals(i, queue.take().getBytes()[0]);
+            }
+
+            // 12 byte frames: the sixth does not fit in the buffer so the first five
+            // are written
+            for (int i = 0; i < 8; i++) {
+                client1.send(streamIo, new MessageBuffer(new byte[8]));
+            }
+            Awaitility.await().until(() -> queue.size() == 5);
+            client1.flush();
+            Awaitility.await().until(() -> queue.size() == 8);
+            queue.clear();
+
+            // a message larger than the threshold is written immediately
+            client1.send(streamIo, new MessageBuffer(new byte[100]));
+            Awaitility.await().until(() -> queue.size() == 1);
+            queue.clear();
+
+            client1.send(streamIo, Arrays.asList(new MessageBuffer(new byte[] { 1 }),
+                    new MessageBuffer(new byte[] { 2, 2 }), new MessageBuffer(new byte[] { 3, 3, 3 })));
+            client1.flush();
+            Awaitility.await().until(() -> queue.size() == 3);
+            assertArrayEquals(new byte[] { 1 }, queue.take().getBytes());
+            assertArrayEquals(new byte[] { 2, 2 }, queue.take().getBytes());
+            assertArrayEquals(new byte[] { 3, 3, 3 }, queue.take().getBytes());
+
+            // buffered sends are written when the delay expires
+            client2.send(streamIo, new MessageBuffer(new byte[] { 4 }));
+            client2.send(Arrays.asList(new MessageBuffer(streamIo.prePendLength(new byte[] { 5 })),
+                    new MessageBuffer(streamIo.prePendLength(new byte[] { 6 }))));
+            Awaitility.await().until(() -> queue.size() == 3);
+            assertArrayEquals(new byte[] { 4 }, queue.take().getBytes());
+            assertArrayEquals(new byte[] { 5 }, queue.take().getBytes());
+            assertArrayEquals(new byte[] { 6 }, queue.take().getBytes());
+
+            // sends buffered when a channel closes are written
+            client1.send(streamIo, new MessageBuffer(new byte[] { 7 }));
+            client1.close();
+            Awaitility.await().until(() -> queue.size() == 1);
+        } finally {
+            client1.close();
+            client2.close();
+            server.close();
+        }
     }
 
     @Test
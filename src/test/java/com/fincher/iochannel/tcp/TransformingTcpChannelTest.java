@@ -3,6 +3,7 @@ package com.fincher.iochannel.tcp;
 import org.mockito.Mockito;
 
 import com.fincher.iochannel.ChannelException;
+import com.fincher.iochannel.ChannelState;
 import com.fincher.iochannel.IoChannelIfc;
 import com.fincher.iochannel.MessageBuffer;
 import com.fincher.iochannel.TransformingIoChannelTest;
@@ -12,6 +13,7 @@ public class TransformingTcpChannelTest extends TransformingIoChannelTest {
     @Override
     public IoChannelIfc<MessageBuffer> getDelegate() {
         TcpChannelIfc delegate = Mockito.mock(TcpChannelIfc.class);
+        Mockito.when(delegate.getState()).thenReturn(ChannelState.INITIAL);
         return delegate;
     }
 
@@ -0,0 +1,98 @@
+package com.fincher.iochannel.tcp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class VarintStreamIoTest {
+
+    private final List<byte[]> frames = new ArrayList<>();
+
+    private void addFrame(byte[] buf, int offset, int length) {
+        frames.add(Arrays.copyOfRange(buf, offset, offset + length));
+    }
+
+    @Test
+    public void testEncodeLength() throws IOException {
+        assertArrayEquals(new byte[] { 0 }, VarintStreamIo.encodeLength(0));
+        assertArrayEquals(new byte[] { 127 }, VarintStreamIo.encodeLength(127));
+        assertArrayEquals(new byte[] { (byte) 0x80, 1 }, VarintStreamIo.encodeLength(128));
+        assertArrayEquals(new byte[] { (byte) 0xac, 0x02 }, VarintStreamIo.encodeLength(300));
+
+        VarintStreamIo streamIo = new VarintStreamIo();
+        byte[] max = VarintStreamIo.encodeLength(Integer.MAX_VALUE);
+        assertEquals(VarintStreamIo.MAX_HEADER_LENGTH, max.length);
+
+        Frame frame = new Frame();
+        byte[] largest = VarintStreamIo.encodeLength(Integer.MAX_VALUE - VarintStreamIo.MAX_HEADER_LENGTH);
+        assertFalse(streamIo.decodeFrame(largest, 0, largest.length, frame));
+        assertEquals(Integer.MAX_VALUE, frame.getFrameLength());
+
+        // the frame length would overflow
+        assertThrows(IOException.class, () -> streamIo.decodeFrame(max, 0, max.length, new Frame()));
+    }
+
+    @Test
+    public void testDecodeFrame() throws IOException {
+        VarintStreamIo streamIo = new VarintStreamIo();
+        byte[] bytes = new byte[302];
+        bytes[0] = (byte) 0xac;
+        bytes[1] = 0x02;
+
+        Frame frame = new Frame();
+        assertFalse(streamIo.decodeFrame(bytes, 0, 1, frame));
+        assertEquals(0, frame.getFrameLength());
+
+        assertFalse(streamIo.decodeFrame(bytes, 0, 2, frame));
+        assertEquals(302, frame.getFrameLength());
+
+        assertTrue(streamIo.decodeFrame(bytes, 0, bytes.length, frame));
+        assertEquals(2, frame.getMessageOffset());
+        assertEquals(300, frame.getMessageLength());
+
+        byte[] tooLong = { (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f };
+        assertThrows(IOException.class, () -> streamIo.decodeFrame(tooLong, 0, tooLong.length, new Frame()));
+    }
+
+    @Test
+    public void testPartialFrames() throws IOException {
+        VarintStreamIo streamIo = new VarintStreamIo();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int length : new int[] { 0, 1, 127, 128, 5000 }) {
+            for (ByteBuffer bb : streamIo.encode(ByteBuffer.wrap(new byte[length]))) {
+                stream.write(bb.array(), bb.position(), bb.remaining());
+            }
+        }
+        byte[] bytes = stream.toByteArray();
+
+        FrameDecoder decoder = new FrameDecoder(streamIo, 16);
+        for (int i = 0; i < bytes.length; i += 3) {
+            ReadableByteChannel channel = Channels.newChannel(
+                    new ByteArrayInputStream(bytes, i, Math.min(3, bytes.length - i)));
+            while (decoder.read(channel) > 0) {
+                decoder.decode(this::addFrame);
+            }
+        }
+
+        assertEquals(5, frames.size());
+        assertEquals(0, frames.get(0).length);
+        assertEquals(1, frames.get(1).length);
+        assertEquals(127, frames.get(2).length);
+        assertEquals(128, frames.get(3).length);
+        assertEquals(5000, frames.get(4).length);
+    }
+}
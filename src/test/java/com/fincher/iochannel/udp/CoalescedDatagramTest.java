@@ -0,0 +1,66 @@
+package com.fincher.iochannel.udp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fincher.iochannel.BufferPool;
+import com.fincher.iochannel.MessageBuffer;
+import com.fincher.iochannel.PooledMessageBuffer;
+
+public class CoalescedDatagramTest {
+
+    @Test
+    public void testSplit() throws IOException {
+        byte[] buf = new byte[16];
+        CoalescedDatagram.putHeader(buf, 1, 3);
+        buf[3] = 1;
+        buf[4] = 2;
+        buf[5] = 3;
+        CoalescedDatagram.putHeader(buf, 6, 0);
+        CoalescedDatagram.putHeader(buf, 8, 1);
+        buf[10] = 4;
+
+        List<MessageBuffer> messages = new ArrayList<>();
+        assertEquals(3, CoalescedDatagram.split(null, buf, 1, 10, messages));
+        assertEquals(3, messages.size());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, messages.get(0).getBytes());
+        assertEquals(0, messages.get(1).getLength());
+        assertArrayEquals(new byte[] { 4 }, messages.get(2).getBytes());
+
+        BufferPool pool = BufferPool.createHeapPool(16, 4);
+        messages.clear();
+        CoalescedDatagram.split(pool, buf, 1, 10, messages);
+        assertTrue(messages.get(0) instanceof PooledMessageBuffer);
+        messages.forEach(MessageBuffer::release);
+    }
+
+    @Test
+    public void testLargeLength() throws IOException {
+        byte[] buf = new byte[CoalescedDatagram.MAX_MESSAGE_LENGTH + CoalescedDatagram.HEADER_LENGTH];
+        CoalescedDatagram.putHeader(buf, 0, CoalescedDatagram.MAX_MESSAGE_LENGTH);
+
+        List<MessageBuffer> messages = new ArrayList<>();
+        CoalescedDatagram.split(null, buf, 0, buf.length, messages);
+        assertEquals(CoalescedDatagram.MAX_MESSAGE_LENGTH, messages.get(0).getLength());
+    }
+
+    @Test
+    public void testMalformed() {
+        byte[] buf = new byte[8];
+        CoalescedDatagram.putHeader(buf, 0, 2);
+        CoalescedDatagram.putHeader(buf, 4, 3);
+
+        List<MessageBuffer> messages = new ArrayList<>();
+        assertThrows(IOException.class, () -> CoalescedDatagram.split(null, buf, 0, 8, messages));
+        assertThrows(IOException.class, () -> CoalescedDatagram.split(null, buf, 0, 5, messages));
+        assertEquals(0, messages.size());
+    }
+}
@@ -1,6 +1,9 @@
 package com.fincher.iochannel.udp;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
@@ -14,9 +17,13 @@ import java.net.InterfaceAddress;
 import java.net.MulticastSocket;
 import java.net.NetworkInterface;
 import java.net.UnknownHostException;
+import java.time.Duration;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
+import org.awaitility.Awaitility;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -79,6 +86,92 @@ public class MulticastTest extends IoChannelTesterBase<MessageBuffer> {
         test(input, output, new TestDataFactory());
     }
 
+    @Test
+    public void testBatchReceive() throws UnknownHostException {
+        InetSocketAddress localAddress0 = new InetSocketAddress(address, 0);
+        InetSocketAddress localAddress5022 = new InetSocketAddress(address, 5022);
+        InetSocketAddress multicastAddress = new InetSocketAddress(Inet4Address.getByName("239.1.1.1"), 5022);
+
+        UdpMulticastChannel output = UdpMulticastChannel.createOutputChannel("output", localAddress0, multicastAddress);
+
+        UdpMulticastChannel input = UdpMulticastChannel.createInputChannel("input", messageQueue::add, localAddress5022,
+                multicastAddress.getAddress(), networkInterface);
+        input.setReceiveBatchSize(16);
+
+        test(input, output, new TestDataFactory());
+    }
+
+    @Test
+    public void testMultipleGroups() throws Exception {
+        InetSocketAddress localAddress0 = new InetSocketAddress(address, 0);
+        InetSocketAddress localAddress5039 = new InetSocketAddress(address, 5039);
+        InetAddress group2 = Inet4Address.getByName("239.1.1.2");
+        InetAddress group3 = Inet4Address.getByName("239.1.1.3");
+        InetAddress group4 = Inet4Address.getByName("239.1.1.4");
+
+        UdpMulticastChannel output2 = UdpMulticastChannel.createOutputChannel("output2", localAddress0,
+                new InetSocketAddress(group2, 5039));
+        UdpMulticastChannel output3 = UdpMulticastChannel.createOutputChannel("output3", localAddress0,
+                new InetSocketAddress(group3, 5039));
+        UdpMulticastChannel output4 = UdpMulticastChannel.createOutputChannel("output4", localAddress0,
+                new InetSocketAddress(group4, 5039));
+
+        UdpMulticastChannel input = UdpMulticastChannel.createInputChannel("input", messageQueue::add,
+                localAddress5039, networkInterface);
+        List<MessageBuffer> group3Messages = new CopyOnWriteArrayList<>();
+        input.addMessageListener(group3Messages::add, mb -> group3.equals(mb.getDestinationAddress()));
+
+        assertTrue(input.joinGroup(group2));
+        assertTrue(input.joinGroup(group3));
+        assertFalse(input.joinGroup(group3));
+        assertThrows(IllegalArgumentException.class, () -> input.joinGroup(address));
+
+        try {
+            input.connect();
+            output2.connect();
+            output3.connect();
+            output4.connect();
+
+            output2.send(new MessageBuffer("group2".getBytes()));
+            output3.send(new MessageBuffer("group3".getBytes()));
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> messageQueue.size() == 2);
+
+            for (MessageBuffer mb : messageQueue) {
+                InetAddress expectedGroup = new String(mb.getBytes()).equals("group2") ? group2 : group3;
+                assertEquals(expectedGroup, mb.getDestinationAddress());
+            }
+            assertEquals(1, group3Messages.size());
+            messageQueue.clear();
+
+            // change the membership while connected
+            assertTrue(input.leaveGroup(group2));
+            assertFalse(input.leaveGroup(group2));
+            assertTrue(input.joinGroup(group4));
+            assertEquals(Set.of(group3, group4), input.getGroups());
+
+            output2.send(new MessageBuffer("group2".getBytes()));
+            output3.send(new MessageBuffer("group3".getBytes()));
+            output4.send(new MessageBuffer("group4".getBytes()));
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> messageQueue.size() == 2);
+
+            // allow time for a datagram to group 2 to arrive if it had not been left
+            Thread.sleep(100);
+            assertEquals(2, messageQueue.size());
+            for (MessageBuffer mb : messageQueue) {
+                assertFalse(group2.equals(mb.getDestinationAddress()));
+            }
+            assertEquals(2, group3Messages.size());
+            assertEquals(4, input.getShardReceiveCounts()[0]);
+        } finally {
+            output2.close();
+            output3.close();
+            output4.close();
+            input.close();
+        }
+
+        assertThrows(IllegalStateException.class, () -> input.joinGroup(group2));
+    }
+
     @Test
     public void testConnectThrowsIOException() throws Exception {
         TestChannel channel = new TestChannel();
@@ -101,6 +194,12 @@ public class MulticastTest extends IoChannelTesterBase<MessageBuffer> {
 
         assertThrows(IllegalArgumentException.class,
                 () -> new UdpMulticastChannel("", localAddr1234, localhost, networkInterface));
+
+        UdpMulticastChannel channel = new UdpMulticastChannel("", localAddr1234, mcAddr, networkInterface);
+        assertThrows(UnsupportedOperationException.class, () -> channel.setNumReceiveShards(2));
+        assertThrows(IllegalStateException.class, () -> channel.joinGroup(mcAddr));
+
+        assertThrows(IllegalArgumentException.class, () -> new UdpMulticastChannel("", localAddr0, networkInterface));
     }
 
     private class TestChannel extends UdpMulticastChannel {
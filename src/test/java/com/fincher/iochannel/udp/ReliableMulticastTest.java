@@ -0,0 +1,353 @@
+package com.fincher.iochannel.udp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+
+import com.fincher.iochannel.ChannelException;
+import com.fincher.iochannel.IoType;
+import com.fincher.iochannel.MessageBuffer;
+
+/**
+ * Test the reliable multicast sender and receiver. Unicast channels on the
+ * loopback interface carry the data so that loss can be injected.
+ *
+ * @author Brian Fincher
+ *
+ */
+public class ReliableMulticastTest {
+
+    /** An output channel that drops the data datagrams with chosen sequence numbers. */
+    private static class LossyUdpChannel extends UdpChannel {
+
+        /** Sequence numbers dropped the first time they are sent. */
+        private final Set<Long> dropOnce = ConcurrentHashMap.newKeySet();
+
+        /** Sequence numbers dropped every time they are sent. */
+        private final Set<Long> dropAlways = ConcurrentHashMap.newKeySet();
+
+        LossyUdpChannel(String id, InetSocketAddress localAddress, InetSocketAddress remoteAddress) {
+            super(id, IoType.OUTPUT_ONLY, localAddress, remoteAddress);
+        }
+
+        @Override
+        public void send(MessageBuffer message) throws ChannelException {
+            byte[] frame = message.getBytes();
+            if (ReliableMulticastProtocol.getType(frame) == ReliableMulticastProtocol.DATA) {
+                long sequence = ReliableMulticastProtocol.getSequence(frame);
+                if (dropOnce.remove(sequence) || dropAlways.contains(sequence)) {
+                    return;
+                }
+            }
+            super.send(message);
+        }
+    }
+
+    private final List<String> received = new CopyOnWriteArrayList<>();
+
+    private static InetSocketAddress address(int port) throws Exception {
+        return new InetSocketAddress(InetAddress.getByName("localhost"), port);
+    }
+
+    private static InetSocketAddress anyAddress() throws Exception {
+        return new InetSocketAddress(InetAddress.getByName("0.0.0.0"), 0);
+    }
+
+    private ReliableMulticastReceiver createReceiver(int dataPort, int nakPort, int windowSize) throws Exception {
+        ReliableMulticastReceiver receiver = ReliableMulticastReceiver.createChannel("receiver",
+                UdpChannel.createInputChannel("receiverData", address(dataPort)),
+                UdpChannel.createOutputChannel("receiverNak", anyAddress(), address(nakPort)), windowSize);
+        receiver.addMessageListener(mb -> received.add(new String(mb.getBytes())));
+        return receiver;
+    }
+
+    private ReliableMulticastSender createSender(LossyUdpChannel dataChannel, int nakPort,
+            int retransmitBufferSize) throws Exception {
+        return ReliableMulticastSender.createChannel("sender", dataChannel,
+                UdpChannel.createInputChannel("senderNak", address(nakPort)), retransmitBufferSize);
+    }
+
+    private static void sendMessages(ReliableMulticastSender sender, int numMessages) throws ChannelException {
+        for (int i = 0; i < numMessages; i++) {
+            sender.send(new MessageBuffer(("message " + i).getBytes()));
+        }
+    }
+
+    private static List<Integer> range(int numMessages) {
+        return IntStream.range(0, numMessages).boxed().collect(Collectors.toList());
+    }
+
+    private void assertReceivedInOrder(List<Integer> expected) {
+        assertEquals(expected.size(), received.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("message " + expected.get(i), received.get(i));
+        }
+    }
+
+    @Test
+    public void testRetransmit() throws Exception {
+        LossyUdpChannel dataChannel = new LossyUdpChannel("senderData", anyAddress(), address(5029));
+        dataChannel.dropOnce.addAll(List.of(3L, 10L, 11L, 12L, 40L));
+
+        ReliableMulticastSender sender = createSender(dataChannel, 5030, 64);
+        ReliableMulticastReceiver receiver = createReceiver(5029, 5030, 64);
+
+        try {
+            receiver.connect();
+            sender.connect();
+
+            sendMessages(sender, 50);
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> received.size() == 50);
+
+            assertReceivedInOrder(range(50));
+            assertEquals(50, sender.getNumSent());
+            assertEquals(3, receiver.getNumGaps());
+            assertTrue(receiver.getNumNaksSent() >= 3);
+            assertTrue(sender.getNumNaksReceived() >= 3);
+            assertTrue(sender.getNumRetransmits() >= 5);
+            assertEquals(0, sender.getNumUnrecoverable());
+            assertEquals(0, receiver.getNumLost());
+        } finally {
+            sender.close();
+            receiver.close();
+        }
+    }
+
+    @Test
+    public void testHeartbeatRecoversTailLoss() throws Exception {
+        LossyUdpChannel dataChannel = new LossyUdpChannel("senderData", anyAddress(), address(5031));
+        dataChannel.dropOnce.addAll(List.of(8L, 9L));
+
+        ReliableMulticastSender sender = createSender(dataChannel, 5032, 64);
+        sender.setHeartbeatInterval(Duration.ofMillis(50));
+        assertEquals(Duration.ofMillis(50), sender.getHeartbeatInterval());
+        ReliableMulticastReceiver receiver = createReceiver(5031, 5032, 64);
+
+        try {
+            receiver.connect();
+            sender.connect();
+
+            sendMessages(sender, 10);
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> received.size() == 10);
+
+            assertReceivedInOrder(range(10));
+            assertEquals(1, receiver.getNumGaps());
+            assertEquals(0, receiver.getNumLost());
+        } finally {
+            sender.close();
+            receiver.close();
+        }
+    }
+
+    @Test
+    public void testUnrecoverableLoss() throws Exception {
+        LossyUdpChannel dataChannel = new LossyUdpChannel("senderData", anyAddress(), address(5033));
+        dataChannel.dropAlways.add(5L);
+
+        ReliableMulticastSender sender = createSender(dataChannel, 5034, 64);
+        ReliableMulticastReceiver receiver = createReceiver(5033, 5034, 64);
+        receiver.setNakInterval(Duration.ofMillis(20));
+        receiver.setMaxNakRetries(2);
+        assertThrows(IllegalArgumentException.class, () -> receiver.setMaxNakRetries(-1));
+        assertThrows(IllegalArgumentException.class, () -> receiver.setNakInterval(Duration.ZERO));
+
+        try {
+            receiver.connect();
+            sender.connect();
+
+            assertThrows(IllegalStateException.class, () -> receiver.setMaxNakRetries(1));
+
+            sendMessages(sender, 10);
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> received.size() == 9);
+
+            assertReceivedInOrder(List.of(0, 1, 2, 3, 4, 6, 7, 8, 9));
+            assertEquals(1, receiver.getNumLost());
+            assertEquals(1, receiver.getNumGaps());
+            assertEquals(3, receiver.getNumNaksSent());
+        } finally {
+            sender.close();
+            receiver.close();
+        }
+    }
+
+    @Test
+    public void testWindowOverflow() throws Exception {
+        LossyUdpChannel dataChannel = new LossyUdpChannel("senderData", anyAddress(), address(5035));
+        dataChannel.dropAlways.add(2L);
+
+        // a retransmit buffer too small to hold the NAKed message once the window overflows
+        ReliableMulticastSender sender = createSender(dataChannel, 5036, 1);
+        ReliableMulticastReceiver receiver = createReceiver(5035, 5036, 4);
+        receiver.setNakInterval(Duration.ofSeconds(10));
+
+        try {
+            receiver.connect();
+            sender.connect();
+
+            sendMessages(sender, 10);
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> received.size() == 9);
+
+            assertReceivedInOrder(List.of(0, 1, 3, 4, 5, 6, 7, 8, 9));
+            assertEquals(1, receiver.getNumLost());
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> sender.getNumNaksReceived() == 1);
+            assertEquals(1, sender.getNumUnrecoverable());
+        } finally {
+            sender.close();
+            receiver.close();
+        }
+    }
+
+    @Test
+    public void testDuplicatesDiscarded() throws Exception {
+        ReliableMulticastReceiver receiver = createReceiver(5037, 5038, 8);
+        UdpChannel output = UdpChannel.createOutputChannel("output", anyAddress(), address(5037));
+
+        try {
+            receiver.connect();
+            output.connect();
+
+            MessageBuffer message = new MessageBuffer("message 0".getBytes());
+            output.send(new MessageBuffer(ReliableMulticastProtocol.encodeData(0, message)));
+            output.send(new MessageBuffer(ReliableMulticastProtocol.encodeData(0, message)));
+            output.send(new MessageBuffer(ReliableMulticastProtocol.encodeData(1, message)));
+
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> received.size() == 2);
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> receiver.getNumDuplicates() == 1);
+            assertEquals(0, receiver.getNumGaps());
+        } finally {
+            output.close();
+            receiver.close();
+        }
+    }
+
+    @Test
+    public void testInvalidSequenceDiscarded() throws Exception {
+        ReliableMulticastReceiver receiver = createReceiver(5052, 5053, 8);
+        UdpChannel output = UdpChannel.createOutputChannel("output", anyAddress(), address(5052));
+
+        try {
+            receiver.connect();
+            output.connect();
+
+            output.send(new MessageBuffer(
+                    ReliableMulticastProtocol.encodeData(-1, new MessageBuffer("invalid".getBytes()))));
+            output.send(new MessageBuffer(ReliableMulticastProtocol.encodeHeartbeat(-5)));
+            for (int i = 0; i < 2; i++) {
+                MessageBuffer message = new MessageBuffer(("message " + i).getBytes());
+                output.send(new MessageBuffer(ReliableMulticastProtocol.encodeData(i, message)));
+            }
+
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> received.size() == 2);
+            assertReceivedInOrder(range(2));
+            assertEquals(0, receiver.getNumGaps());
+        } finally {
+            output.close();
+            receiver.close();
+        }
+    }
+
+    @Test
+    public void testHeartbeatFarAhead() throws Exception {
+        ReliableMulticastReceiver receiver = createReceiver(5059, 5060, 8);
+        receiver.setNakInterval(Duration.ofSeconds(10));
+        UdpChannel output = UdpChannel.createOutputChannel("output", anyAddress(), address(5059));
+
+        final long lastSequence = 1_000_000_000L;
+        try {
+            receiver.connect();
+            output.connect();
+
+            output.send(new MessageBuffer(ReliableMulticastProtocol.encodeData(0,
+                    new MessageBuffer("message 0".getBytes()))));
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> received.size() == 1);
+
+            // only the messages that fit in the window are waited for and NAKed
+            output.send(new MessageBuffer(ReliableMulticastProtocol.encodeHeartbeat(lastSequence)));
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> receiver.getNumNaksSent() == 1);
+            assertEquals(lastSequence - 8, receiver.getNumLost());
+            assertEquals(1, receiver.getNumGaps());
+
+            for (long sequence = lastSequence - 7; sequence <= lastSequence; sequence++) {
+                MessageBuffer message = new MessageBuffer(("message " + sequence).getBytes());
+                output.send(new MessageBuffer(ReliableMulticastProtocol.encodeData(sequence, message)));
+            }
+
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> received.size() == 9);
+            assertEquals("message " + lastSequence, received.get(8));
+            assertEquals(lastSequence - 8, receiver.getNumLost());
+        } finally {
+            output.close();
+            receiver.close();
+        }
+    }
+
+    @Test
+    public void testListenerDoesNotHoldReceiverLock() throws Exception {
+        ReliableMulticastReceiver receiver = createReceiver(5054, 5055, 8);
+        CountDownLatch listenerEntered = new CountDownLatch(1);
+        CountDownLatch releaseListener = new CountDownLatch(1);
+        receiver.addMessageListener(mb -> {
+            listenerEntered.countDown();
+            try {
+                releaseListener.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        UdpChannel output = UdpChannel.createOutputChannel("output", anyAddress(), address(5054));
+
+        try {
+            receiver.connect();
+            output.connect();
+
+            MessageBuffer message = new MessageBuffer("message 0".getBytes());
+            output.send(new MessageBuffer(ReliableMulticastProtocol.encodeData(0, message)));
+            assertTrue(listenerEntered.await(5, TimeUnit.SECONDS));
+
+            // the receiver's state can be read while a listener is running
+            assertEquals(0L, CompletableFuture.supplyAsync(receiver::getNumLost).get(5, TimeUnit.SECONDS));
+        } finally {
+            releaseListener.countDown();
+            output.close();
+            receiver.close();
+        }
+    }
+
+    @Test
+    public void testNakOutsideRetransmitBuffer() throws Exception {
+        LossyUdpChannel dataChannel = new LossyUdpChannel("senderData", anyAddress(), address(5056));
+        ReliableMulticastSender sender = createSender(dataChannel, 5057, 4);
+        UdpChannel nakOutput = UdpChannel.createOutputChannel("nakOutput", anyAddress(), address(5057));
+
+        try {
+            sender.connect();
+            nakOutput.connect();
+            sendMessages(sender, 10);
+
+            // only the last 4 messages are buffered, however wide the NAKed range
+            nakOutput.send(new MessageBuffer(ReliableMulticastProtocol.encodeNak(Long.MIN_VALUE, Long.MAX_VALUE)));
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> sender.getNumNaksReceived() == 1);
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> sender.getNumRetransmits() == 4);
+            assertEquals(6, sender.getNumUnrecoverable());
+        } finally {
+            nakOutput.close();
+            sender.close();
+        }
+    }
+}
@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doAnswer;
@@ -12,13 +13,25 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.BindException;
+import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import org.awaitility.Awaitility;
 import org.junit.jupiter.api.AfterAll;
@@ -28,11 +41,13 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 
+import com.fincher.iochannel.BufferPool;
 import com.fincher.iochannel.ChannelException;
 import com.fincher.iochannel.ChannelState;
 import com.fincher.iochannel.IoChannelTesterBase;
 import com.fincher.iochannel.IoType;
 import com.fincher.iochannel.MessageBuffer;
+import com.fincher.iochannel.PooledMessageBuffer;
 import com.fincher.iochannel.TestDataFactoryIfc;
 import com.fincher.iochannel.TestUtilities;
 import com.fincher.iochannel.Utilities;
@@ -75,6 +90,449 @@ public class UdpTest extends IoChannelTesterBase<MessageBuffer> {
         test(input, output, new TestDataFactory());
     }
 
+    @Test
+    @Timeout(value = 10)
+    public void testUnicastWithBufferPool() throws Exception {
+        InetSocketAddress localAddress0 = new InetSocketAddress(InetAddress.getByName("0.0.0.0"), 0);
+        InetSocketAddress localAddress5020 = new InetSocketAddress(InetAddress.getByName("localhost"), 5020);
+
+        BufferPool pool = BufferPool.createHeapPool(64 * 1024, 8);
+        UdpChannel output = UdpChannel.createOutputChannel("output", localAddress0, localAddress5020);
+        UdpChannel input = UdpChannel.createInputChannel("input", mb -> messageQueue.add(mb.retain()),
+                localAddress5020);
+        input.setBufferPool(pool);
+        assertEquals(pool, input.getBufferPool());
+
+        test(input, output, new TestDataFactory());
+
+        for (MessageBuffer mb : messageQueue) {
+            assertTrue(mb instanceof PooledMessageBuffer);
+            assertTrue(new String(mb.getBytes()).startsWith("Hello World "));
+            assertTrue(mb.release());
+        }
+
+        assertEquals(5, pool.getNumPooledBuffers());
+    }
+
+    @Test
+    @Timeout(value = 10)
+    public void testUnicastWithSmallBufferPool() throws Exception {
+        InetSocketAddress localAddress0 = new InetSocketAddress(InetAddress.getByName("0.0.0.0"), 0);
+        InetSocketAddress localAddress5049 = new InetSocketAddress(InetAddress.getByName("localhost"), 5049);
+
+        // buffers smaller than a datagram are filled by copying the received bytes
+        BufferPool pool = BufferPool.createHeapPool(1024, 8);
+        UdpChannel output = UdpChannel.createOutputChannel("output", localAddress0, localAddress5049);
+        UdpChannel input = UdpChannel.createInputChannel("input",
+                mb -> messageQueue.add(new MessageBuffer(mb.getBytes())), localAddress5049);
+        input.setBufferPool(pool);
+
+        try {
+            input.connect();
+            output.connect();
+
+            for (int i = 0; i < 10; i++) {
+                output.send(new MessageBuffer(("Hello World " + i).getBytes()));
+                int expected = i + 1;
+                Awaitility.await().until(() -> messageQueue.size() == expected);
+            }
+
+            int i = 0;
+            for (MessageBuffer mb : messageQueue) {
+                assertEquals("Hello World " + i++, new String(mb.getBytes()));
+            }
+
+            // a single pooled buffer was reused for every message
+            Awaitility.await().until(() -> pool.getNumPooledBuffers() == 1);
+        } finally {
+            input.close();
+            output.close();
+        }
+    }
+
+    @Test
+    @Timeout(value = 10)
+    public void testBatchReceiveWithSmallBufferPool() throws Exception {
+        InetSocketAddress localAddress0 = new InetSocketAddress(InetAddress.getByName("0.0.0.0"), 0);
+        InetSocketAddress localAddress5050 = new InetSocketAddress(InetAddress.getByName("localhost"), 5050);
+
+        BufferPool pool = BufferPool.createHeapPool(1024, 8);
+        UdpChannel output = UdpChannel.createOutputChannel("output", localAddress0, localAddress5050);
+        UdpChannel input = UdpChannel.createInputChannel("input",
+                mb -> messageQueue.add(new MessageBuffer(mb.getBytes())), localAddress5050);
+        input.setBufferPool(pool);
+        input.setReceiveBatchSize(8);
+
+        try {
+            input.connect();
+            output.connect();
+
+            for (int i = 0; i < 10; i++) {
+                output.send(new MessageBuffer(("Hello World " + i).getBytes()));
+                int expected = i + 1;
+                Awaitility.await().until(() -> messageQueue.size() == expected);
+            }
+
+            int i = 0;
+            for (MessageBuffer mb : messageQueue) {
+                assertEquals("Hello World " + i++, new String(mb.getBytes()));
+            }
+
+            // a single pooled buffer was reused for every message
+            Awaitility.await().until(() -> pool.getNumPooledBuffers() == 1);
+        } finally {
+            input.close();
+            output.close();
+        }
+    }
+
+    @Test
+    @Timeout(value = 10)
+    public void testBatchReceive() throws Exception {
+        InetSocketAddress localAddress0 = new InetSocketAddress(InetAddress.getByName("0.0.0.0"), 0);
+        InetSocketAddress localAddress5021 = new InetSocketAddress(InetAddress.getByName("localhost"), 5021);
+
+        BufferPool pool = BufferPool.createHeapPool(64 * 1024, 16);
+        UdpChannel output = UdpChannel.createOutputChannel("output", localAddress0, localAddress5021);
+        UdpChannel input = UdpChannel.createInputChannel("input",
+                mb -> messageQueue.add(new MessageBuffer(mb.getBytes())), localAddress5021);
+        input.setBufferPool(pool);
+        input.setReceiveBatchSize(8);
+        assertEquals(8, input.getReceiveBatchSize());
+
+        // hold up the first batch so that the remaining datagrams queue in the socket
+        CountDownLatch firstBatchReceived = new CountDownLatch(1);
+        CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        Consumer<List<MessageBuffer>> batchListener = batch -> {
+            batchSizes.add(batch.size());
+            firstBatchReceived.countDown();
+            try {
+                releaseFirstBatch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        input.addBatchMessageListener(batchListener);
+
+        try {
+            input.connect();
+            output.connect();
+
+            output.send(new MessageBuffer("Hello World 0".getBytes()));
+            assertTrue(firstBatchReceived.await(5, TimeUnit.SECONDS));
+
+            for (int i = 1; i < 20; i++) {
+                output.send(new MessageBuffer(("Hello World " + i).getBytes()));
+            }
+            Thread.sleep(100);
+            releaseFirstBatch.countDown();
+
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> messageQueue.size() == 20);
+
+            assertEquals(20, batchSizes.stream().mapToInt(Integer::intValue).sum());
+            assertTrue(batchSizes.stream().allMatch(size -> size <= 8));
+            assertTrue(batchSizes.stream().anyMatch(size -> size > 1));
+
+            int i = 0;
+            for (MessageBuffer mb : messageQueue) {
+                assertEquals("Hello World " + i++, new String(mb.getBytes()));
+            }
+
+            assertTrue(input.removeBatchMessageListener(batchListener));
+        } finally {
+            input.close();
+            output.close();
+        }
+
+        assertTrue(pool.getNumPooledBuffers() > 0);
+    }
+
+    @Test
+    @Timeout(value = 30)
+    public void testBatchReceiveDoesNotAllocate() throws Exception {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        final int numWarmup = 10000;
+        final int numMeasured = 10000;
+
+        InetSocketAddress localAddress0 = new InetSocketAddress(InetAddress.getByName("0.0.0.0"), 0);
+        InetSocketAddress localAddress5023 = new InetSocketAddress(InetAddress.getByName("localhost"), 5023);
+
+        // the listener runs on the receive thread so it measures that thread's
+        // allocations between the first and last measured message
+        AtomicInteger numReceived = new AtomicInteger();
+        AtomicLong allocatedBefore = new AtomicLong();
+        AtomicLong allocatedAfter = new AtomicLong();
+        Consumer<MessageBuffer> listener = mb -> {
+            int count = numReceived.incrementAndGet();
+            if (count == numWarmup || count == numWarmup + numMeasured) {
+                long allocated = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+                (count == numWarmup ? allocatedBefore : allocatedAfter).set(allocated);
+            }
+        };
+
+        UdpChannel output = UdpChannel.createOutputChannel("output", localAddress0, localAddress5023);
+        UdpChannel input = UdpChannel.createInputChannel("input", listener, localAddress5023);
+        input.setBufferPool(BufferPool.createHeapPool(64 * 1024, 64));
+        input.setReceiveBatchSize(32);
+
+        try {
+            input.connect();
+            output.connect();
+
+            byte[] bytes = new byte[64];
+            while (numReceived.get() < numWarmup + numMeasured) {
+                // send in small bursts so the socket's receive buffer does not overflow.
+                // Datagrams may still be dropped so only wait a short time for each burst
+                int target = numReceived.get() + 16;
+                for (int i = 0; i < 16; i++) {
+                    output.send(new MessageBuffer(bytes));
+                }
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+                while (numReceived.get() < target && System.nanoTime() < deadline) {
+                    Thread.onSpinWait();
+                }
+            }
+        } finally {
+            input.close();
+            output.close();
+        }
+
+        long bytesPerMessage = (allocatedAfter.get() - allocatedBefore.get()) / numMeasured;
+        assertEquals(0, bytesPerMessage, "bytes allocated per message");
+    }
+
+    @Test
+    @Timeout(value = 20)
+    public void testShardedReceive() throws Exception {
+        testShardedReceive(5024, 0);
+    }
+
+    @Test
+    @Timeout(value = 20)
+    public void testShardedBatchReceive() throws Exception {
+        testShardedReceive(5025, 16);
+    }
+
+    private void testShardedReceive(int port, int receiveBatchSize) throws Exception {
+        try (DatagramSocket probe = new DatagramSocket(null)) {
+            assumeTrue(probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT));
+        }
+
+        final int numShards = 4;
+        final int numSenders = 32;
+        final int numMessagesPerSender = 10;
+
+        InetSocketAddress localAddress0 = new InetSocketAddress(InetAddress.getByName("0.0.0.0"), 0);
+        InetSocketAddress localAddress = new InetSocketAddress(InetAddress.getByName("localhost"), port);
+
+        UdpChannel input = UdpChannel.createInputChannel("input", messageQueue::add, localAddress);
+        input.setNumReceiveShards(numShards);
+        input.setReceiveBatchSize(receiveBatchSize);
+        assertEquals(numShards, input.getNumReceiveShards());
+        assertEquals(0, input.getShardReceiveCounts().length);
+
+        // each sender has its own source port so the kernel hashes it to one shard
+        List<UdpChannel> outputs = new ArrayList<>();
+        try {
+            input.connect();
+            for (int i = 0; i < numSenders; i++) {
+                UdpChannel output = UdpChannel.createOutputChannel("output" + i, localAddress0, localAddress);
+                outputs.add(output);
+                output.connect();
+            }
+
+            for (int i = 0; i < numMessagesPerSender; i++) {
+                for (UdpChannel output : outputs) {
+                    output.send(new MessageBuffer(("Hello World " + i).getBytes()));
+                }
+            }
+
+            Awaitility.await().atMost(Duration.ofSeconds(10))
+                    .until(() -> messageQueue.size() == numSenders * numMessagesPerSender);
+
+            long[] counts = input.getShardReceiveCounts();
+            assertEquals(numShards, counts.length);
+            assertEquals(numSenders * numMessagesPerSender, Arrays.stream(counts).sum());
+            assertTrue(Arrays.stream(counts).filter(count -> count > 0).count() > 1,
+                    "datagrams should be spread across shards " + Arrays.toString(counts));
+        } finally {
+            input.close();
+            for (UdpChannel output : outputs) {
+                output.close();
+            }
+        }
+    }
+
+    @Test
+    public void testShardingPreconditions() throws Exception {
+        UdpChannel output = UdpChannel.createOutputChannel("output", null, new InetSocketAddress(5026));
+        assertThrows(IllegalStateException.class, () -> output.setNumReceiveShards(2));
+
+        UdpChannel ephemeral = UdpChannel.createInputChannel("input", null);
+        assertThrows(IllegalArgumentException.class, () -> ephemeral.setNumReceiveShards(2));
+        ephemeral.setNumReceiveShards(1);
+
+        UdpChannel input = UdpChannel.createInputChannel("input", new InetSocketAddress(5026));
+        assertThrows(IllegalArgumentException.class, () -> input.setNumReceiveShards(0));
+    }
+
+    @Test
+    @Timeout(value = 10)
+    public void testCoalescedSend() throws Exception {
+        InetSocketAddress localAddress0 = new InetSocketAddress(InetAddress.getByName("0.0.0.0"), 0);
+        InetSocketAddress localAddress5027 = new InetSocketAddress(InetAddress.getByName("localhost"), 5027);
+
+        UdpChannel output = UdpChannel.createOutputChannel("output", localAddress0, localAddress5027);
+        output.setCoalescingDatagramSize(UdpChannel.ETHERNET_MTU_DATAGRAM_SIZE);
+        assertEquals(UdpChannel.ETHERNET_MTU_DATAGRAM_SIZE, output.getCoalescingDatagramSize());
+
+        UdpChannel input = UdpChannel.createInputChannel("input", messageQueue::add, localAddress5027);
+        input.setSplitCoalescedDatagrams(true);
+        assertTrue(input.isSplitCoalescedDatagrams());
+
+        assertThrows(IllegalStateException.class, () -> input.setCoalescingDatagramSize(1000));
+        assertThrows(IllegalStateException.class, () -> output.setSplitCoalescedDatagrams(true));
+        assertThrows(IllegalArgumentException.class, () -> output.setCoalescingDatagramSize(70000));
+
+        try {
+            input.connect();
+            output.connect();
+
+            // 100 messages of 16 or 17 bytes with headers fill two datagrams
+            List<MessageBuffer> messages = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                messages.add(new MessageBuffer(String.format("Hello World %02d", i).getBytes()));
+            }
+            output.sendBatch(messages);
+
+            // too large to be coalesced with another message so sent on its own
+            output.send(new MessageBuffer(new byte[2000]));
+
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> messageQueue.size() == 101);
+
+            int i = 0;
+            for (MessageBuffer mb : messageQueue) {
+                if (i < 100) {
+                    assertEquals(String.format("Hello World %02d", i), new String(mb.getBytes()));
+                } else {
+                    assertEquals(2000, mb.getLength());
+                }
+                i++;
+            }
+
+            assertEquals(3, input.getShardReceiveCounts()[0]);
+
+            assertThrows(ChannelException.class, () -> output.send(new MessageBuffer(new byte[65506])));
+        } finally {
+            input.close();
+            output.close();
+        }
+    }
+
+    @Test
+    @Timeout(value = 10)
+    public void testMalformedCoalescedDatagram() throws Exception {
+        InetSocketAddress localAddress0 = new InetSocketAddress(InetAddress.getByName("0.0.0.0"), 0);
+        InetSocketAddress localAddress5051 = new InetSocketAddress(InetAddress.getByName("localhost"), 5051);
+
+        UdpChannel output = UdpChannel.createOutputChannel("output", localAddress0, localAddress5051);
+        output.setCoalescingDatagramSize(UdpChannel.ETHERNET_MTU_DATAGRAM_SIZE);
+
+        UdpChannel input = UdpChannel.createInputChannel("input",
+                mb -> messageQueue.add(new MessageBuffer(mb.getBytes())), localAddress5051);
+        input.setSplitCoalescedDatagrams(true);
+        input.setReceiveBatchSize(8);
+
+        try (DatagramSocket rawSocket = new DatagramSocket()) {
+            input.connect();
+            output.connect();
+
+            // a header giving a length longer than the datagram, then a valid datagram
+            byte[] malformed = new byte[] { 0, 10, 1, 2 };
+            rawSocket.send(new DatagramPacket(malformed, malformed.length, localAddress5051));
+            output.sendBatch(List.of(new MessageBuffer("Hello".getBytes()), new MessageBuffer("World".getBytes())));
+
+            Awaitility.await().until(() -> messageQueue.size() == 2);
+            assertEquals("Hello", new String(messageQueue.poll().getBytes()));
+            assertEquals("World", new String(messageQueue.poll().getBytes()));
+        } finally {
+            input.close();
+            output.close();
+        }
+    }
+
+    @Test
+    @Timeout(value = 10)
+    public void testSendFromBatchReceiveChannel() throws Exception {
+        InetSocketAddress localAddress5058 = new InetSocketAddress(InetAddress.getByName("localhost"), 5058);
+
+        // the channel sends to itself through the non-blocking channel it receives from
+        UdpChannel channel = new UdpChannel("channel", IoType.INPUT_AND_OUTPUT, localAddress5058, localAddress5058) {
+        };
+        channel.addMessageListener(mb -> messageQueue.add(new MessageBuffer(mb.getBytes())));
+        channel.setReceiveBatchSize(16);
+
+        final int numMessages = 100;
+        try {
+            channel.connect();
+            for (int i = 0; i < numMessages; i++) {
+                channel.send(new MessageBuffer(("Hello World " + i).getBytes()));
+            }
+
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> messageQueue.size() == numMessages);
+            assertEquals(0, channel.getNumDroppedDatagrams());
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    @Timeout(value = 10)
+    public void testAutoBatching() throws Exception {
+        InetSocketAddress localAddress0 = new InetSocketAddress(InetAddress.getByName("0.0.0.0"), 0);
+        InetSocketAddress localAddress5028 = new InetSocketAddress(InetAddress.getByName("localhost"), 5028);
+
+        UdpChannel output = UdpChannel.createOutputChannel("output", localAddress0, localAddress5028);
+        output.setAutoBatching(256);
+        output.setCoalescingDatagramSize(UdpChannel.ETHERNET_MTU_DATAGRAM_SIZE);
+        assertEquals(256, output.getAutoBatchQueueCapacity());
+
+        UdpChannel input = UdpChannel.createInputChannel("input",
+                mb -> messageQueue.add(new MessageBuffer(mb.getBytes())), localAddress5028);
+        input.setSplitCoalescedDatagrams(true);
+        input.setReceiveBatchSize(16);
+        input.setBufferPool(BufferPool.createHeapPool(1024, 16));
+
+        final int numMessages = 1000;
+        try {
+            input.connect();
+            output.connect();
+
+            for (int i = 0; i < numMessages; i++) {
+                output.send(new MessageBuffer(String.format("Hello World %03d", i).getBytes()));
+            }
+
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> messageQueue.size() == numMessages);
+
+            int i = 0;
+            for (MessageBuffer mb : messageQueue) {
+                assertEquals(String.format("Hello World %03d", i++), new String(mb.getBytes()));
+            }
+
+            // messages queued while the send task was busy were coalesced
+            assertTrue(input.getShardReceiveCounts()[0] < numMessages);
+        } finally {
+            input.close();
+            output.close();
+        }
+    }
+
     @Test
     @Timeout(value = 10)
     public void testConnectThrowsIOException() throws Exception {